@@ -0,0 +1,45 @@
+package com.github.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Set;
+
+/**
+ * <pre>
+ * 运行基准测试, 参数跟 jmh 的一致, 不指定结果格式和文件时输出到当前目录的 benchmark-result.json, 方便不同提交之间对比
+ *
+ * java -jar benchmarks.jar                       运行所有
+ * java -jar benchmarks.jar Json Id -rff a.json   只运行类名匹配 Json 或 Id 的, 结果写到 a.json
+ * java -jar benchmarks.jar -l                    列出所有
+ * java -jar benchmarks.jar -h                    查看参数
+ * </pre>
+ */
+public class BenchmarkApplication {
+
+    private static final String DEFAULT_RESULT = "benchmark-result.json";
+    /** 这些参数只是查看信息, 直接交给 jmh 处理 */
+    private static final Set<String> INFO_ARGS = Set.of("-h", "-l", "-lp", "-lprof", "-lrf");
+
+    public static void main(String[] args) throws Exception {
+        for (String arg : args) {
+            if (INFO_ARGS.contains(arg)) {
+                org.openjdk.jmh.Main.main(args);
+                return;
+            }
+        }
+
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmd);
+        if (!cmd.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!cmd.getResult().hasValue()) {
+            builder.result(DEFAULT_RESULT);
+        }
+        new Runner(builder.build()).run();
+    }
+}
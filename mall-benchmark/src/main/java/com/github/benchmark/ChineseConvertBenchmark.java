@@ -0,0 +1,23 @@
+package com.github.benchmark;
+
+import com.github.common.util.ChineseConvert;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChineseConvertBenchmark {
+
+    @Param({ "0.05", "1234.56", "100000010.01", "987654321012.99" })
+    private String money;
+
+    @Benchmark
+    public String upperCase() {
+        return ChineseConvert.upperCase(money);
+    }
+}
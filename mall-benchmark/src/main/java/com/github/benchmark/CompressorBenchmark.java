@@ -0,0 +1,36 @@
+package com.github.benchmark;
+
+import com.github.common.util.Compressor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressorBenchmark {
+
+    private String html;
+
+    @Setup
+    public void setup() {
+        StringBuilder sbd = new StringBuilder();
+        sbd.append("<!DOCTYPE html>\n<html>\n<head>\n    <meta charset=\"utf-8\">\n    <title>benchmark</title>\n");
+        sbd.append("    <style type=\"text/css\">\n        body { margin: 0;   padding: 0; }\n    </style>\n");
+        sbd.append("    <script type=\"text/javascript\">\n        // comment\n        var a = 1;\n        function f() { return a + 1; }\n    </script>\n");
+        sbd.append("</head>\n<body>\n    <!-- comment -->\n");
+        for (int i = 0; i < 100; i++) {
+            sbd.append("    <div class=\"item\">\n        <span>  第 ").append(i).append(" 行  </span>\n    </div>\n");
+        }
+        sbd.append("    <pre>\n  keep   this\n    </pre>\n    <textarea>\n  keep  this too\n</textarea>\n</body>\n</html>\n");
+        html = sbd.toString();
+    }
+
+    @Benchmark
+    public String html() {
+        return Compressor.html(html);
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.benchmark;
+
+import com.github.common.encrypt.Encrypt;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptBenchmark {
+
+    private static final String AES_KEY = "0123456789abcdef";
+    private static final String HMAC_KEY = "benchmark-secret";
+
+    private String data;
+    private String aesData;
+    private Map<String, Object> jwtMap;
+    private String jwt;
+    private String password;
+    private String bcrypt;
+
+    @Setup
+    public void setup() {
+        data = "{\"id\":1234567890,\"name\":\"张三\",\"phone\":\"13012345678\",\"roles\":[\"admin\",\"user\"]}";
+        aesData = Encrypt.aesEncode(data, AES_KEY);
+
+        jwtMap = new HashMap<>();
+        jwtMap.put("id", 1234567890L);
+        jwtMap.put("name", "张三");
+        jwt = Encrypt.jwtEncode(HMAC_KEY, new HashMap<>(jwtMap), 1, TimeUnit.DAYS);
+
+        password = "abc123456";
+        bcrypt = Encrypt.bcryptEncode(password);
+    }
+
+    @Benchmark
+    public String aesEncode() {
+        return Encrypt.aesEncode(data, AES_KEY);
+    }
+
+    @Benchmark
+    public String aesDecode() {
+        return Encrypt.aesDecode(aesData, AES_KEY);
+    }
+
+    @Benchmark
+    public String hmacSha256() {
+        return Encrypt.toHmacSha256(data, HMAC_KEY);
+    }
+
+    @Benchmark
+    public String jwtSign() {
+        return Encrypt.jwtEncode(HMAC_KEY, new HashMap<>(jwtMap), 1, TimeUnit.DAYS);
+    }
+
+    @Benchmark
+    public Map<String, Object> jwtVerify() {
+        return Encrypt.jwtDecode(HMAC_KEY, jwt);
+    }
+
+    /** bcrypt 本身就是慢的(毫秒级), 单独用毫秒看 */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String bcryptEncode() {
+        return Encrypt.bcryptEncode(password);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean bcryptCheck() {
+        return Encrypt.checkBcrypt(password, bcrypt);
+    }
+}
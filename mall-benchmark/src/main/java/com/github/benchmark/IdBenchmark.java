@@ -0,0 +1,59 @@
+package com.github.benchmark;
+
+import com.github.common.util.IdUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 同一毫秒最多生成 4096 个, 所以多线程时的上限由时间决定, 主要看竞争时有没有明显的下降
+ *   getId*: 当前的 {@link IdUtil}(CAS)
+ *   lock*:  之前的实现 {@link LockIdUtil}(synchronized + ReentrantLock), 作为基准
+ *
+ * java -jar benchmarks.jar IdBenchmark
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public long getId1Thread() {
+        return IdUtil.getId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long getId8Thread() {
+        return IdUtil.getId();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long getId64Thread() {
+        return IdUtil.getId();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long lock1Thread() {
+        return LockIdUtil.getId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long lock8Thread() {
+        return LockIdUtil.getId();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public long lock64Thread() {
+        return LockIdUtil.getId();
+    }
+}
@@ -0,0 +1,108 @@
+package com.github.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.github.common.json.JsonUtil;
+import com.github.common.money.Money;
+import lombok.Data;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * convert 对比「先转 json 字符串再解析」的方式, 加上 -prof gc 可以看到每次调用分配的内存(gc.alloc.rate.norm)
+ *
+ * java -jar benchmarks.jar JsonBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Data
+    public static class Item {
+        private Long id;
+        private String name;
+        private Money price;
+        private Integer num;
+        private Date createTime;
+        private List<String> tags;
+    }
+
+    @Data
+    public static class ItemVo {
+        private Long id;
+        private String name;
+        private Money price;
+        private Integer num;
+        private Date createTime;
+    }
+
+    /** 跟 JsonUtil 中转换用的 mapper 配置一致 */
+    private static final ObjectMapper CONVERT_MAPPER = JsonMapper.builder()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(DeserializationFeature.READ_UNKNOWN_ENUM_VALUES_AS_NULL)
+            .build();
+
+    private Item item;
+    private List<Item> itemList;
+    private String json;
+
+    @Setup
+    public void setup() {
+        item = new Item();
+        item.setId(1234567890123L);
+        item.setName("测试商品 benchmark item");
+        item.setPrice(new Money("1234.56"));
+        item.setNum(10);
+        item.setCreateTime(new Date());
+        List<String> tags = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tags.add("tag-" + i);
+        }
+        item.setTags(tags);
+        json = JsonUtil.toJson(item);
+        itemList = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            itemList.add(item);
+        }
+    }
+
+    @Benchmark
+    public String toJson() {
+        return JsonUtil.toJson(item);
+    }
+
+    @Benchmark
+    public Item toObject() {
+        return JsonUtil.toObject(json, Item.class);
+    }
+
+    @Benchmark
+    public ItemVo convert() {
+        return JsonUtil.convert(item, ItemVo.class);
+    }
+
+    @Benchmark
+    public ItemVo convertWithString() throws Exception {
+        return CONVERT_MAPPER.readValue(CONVERT_MAPPER.writeValueAsString(item), ItemVo.class);
+    }
+
+    @Benchmark
+    public List<ItemVo> convertList() {
+        return JsonUtil.convertList(itemList, ItemVo.class);
+    }
+
+    @Benchmark
+    public List<ItemVo> convertListWithString() throws Exception {
+        return CONVERT_MAPPER.readValue(CONVERT_MAPPER.writeValueAsString(itemList),
+                CONVERT_MAPPER.getTypeFactory().constructCollectionType(List.class, ItemVo.class));
+    }
+}
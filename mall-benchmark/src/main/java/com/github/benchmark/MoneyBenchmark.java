@@ -0,0 +1,59 @@
+package com.github.benchmark;
+
+import com.github.common.money.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+
+    private Money a;
+    private Money b;
+
+    @Setup
+    public void setup() {
+        a = new Money("1234.56");
+        b = new Money(7890L);
+    }
+
+    @Benchmark
+    public Money parse() {
+        return new Money("1234.56");
+    }
+
+    @Benchmark
+    public Money plus() {
+        return a.plus(b);
+    }
+
+    @Benchmark
+    public Money less() {
+        return a.less(b);
+    }
+
+    @Benchmark
+    public Money multiply() {
+        return a.multiply(3);
+    }
+
+    @Benchmark
+    public Money divide() {
+        return a.divide(3);
+    }
+
+    @Benchmark
+    public String show() {
+        return a.toShow();
+    }
+
+    @Benchmark
+    public String toChinese() {
+        return a.toChinese();
+    }
+}
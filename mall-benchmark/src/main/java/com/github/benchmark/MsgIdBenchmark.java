@@ -0,0 +1,71 @@
+package com.github.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.common.json.JsonUtil;
+import com.github.common.util.Obj;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 从 mq 消息体中取 msgId: 「转成字符串再解析成 Map」 对比 「在字节上流式读取」, 加上 -prof gc 可以看到每次调用分配的内存
+ *
+ * java -jar benchmarks.jar MsgIdBenchmark -prof gc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MsgIdBenchmark {
+
+    private static final TypeReference<Map<String, Object>> MAP_REFERENCE = new TypeReference<>(){};
+    private static final List<String> KEYS = List.of("msgId", "messageId", "msg_id", "message_id");
+
+    /** 消息体大小 */
+    @Param({ "1024", "102400" })
+    private int size;
+
+    /** msgId 在消息体的开头还是末尾 */
+    @Param({ "head", "tail" })
+    private String position;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; items.length() < size; i++) {
+            if (i > 0) {
+                items.append(",");
+            }
+            items.append("{\"id\":").append(i).append(",\"name\":\"商品名称-").append(i).append("\",\"price\":\"12.34\"}");
+        }
+        String msgId = "\"msgId\":\"" + Obj.uuid16() + "\"";
+        String json = "head".equals(position)
+                ? ("{" + msgId + ",\"items\":[" + items + "]}")
+                : ("{\"items\":[" + items + "]," + msgId + "}");
+        body = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String map() {
+        Map<String, Object> map = JsonUtil.toObjectType(new String(body, StandardCharsets.UTF_8), MAP_REFERENCE);
+        for (String key : KEYS) {
+            String msgId = Obj.toStr(map.get(key));
+            if (Obj.isNotBlank(msgId)) {
+                return msgId;
+            }
+        }
+        return Obj.EMPTY;
+    }
+
+    @Benchmark
+    public String stream() {
+        return JsonUtil.readField(body, KEYS);
+    }
+}
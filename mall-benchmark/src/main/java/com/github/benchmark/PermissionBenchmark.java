@@ -0,0 +1,78 @@
+package com.github.benchmark;
+
+import com.github.common.mvc.PermissionTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** 5000 条权限时, 逐条比较 与 权限树 判断一次权限的耗时 */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionBenchmark {
+
+    private static final String[] METHODS = { "GET", "POST", "PUT", "DELETE", "*", "GET,POST" };
+
+    @Param({ "5000" })
+    private int size;
+
+    private List<String[]> permissionList;
+    private PermissionTrie trie;
+    /** 最后一条才匹配上 */
+    private String hitUrl;
+    private String missUrl;
+
+    @Setup
+    public void setup() {
+        permissionList = new ArrayList<>(size);
+        PermissionTrie.Builder builder = PermissionTrie.builder();
+        for (int i = 0; i < size; i++) {
+            String url = (i % 2 == 0) ? ("/module" + (i % 50) + "/res" + i + "/*") : ("/module" + (i % 50) + "/res" + i + "/info");
+            String method = METHODS[i % METHODS.length];
+            permissionList.add(new String[] { url, method });
+            builder.add(url, method);
+        }
+        trie = builder.build();
+        hitUrl = "/module" + ((size - 2) % 50) + "/res" + (size - 2) + "/detail/1";
+        missUrl = "/module1/unknown/info";
+    }
+
+    @Benchmark
+    public boolean linearHit() {
+        return linear(hitUrl, "GET");
+    }
+
+    @Benchmark
+    public boolean linearMiss() {
+        return linear(missUrl, "GET");
+    }
+
+    @Benchmark
+    public boolean trieHit() {
+        return trie.match(hitUrl, "GET");
+    }
+
+    @Benchmark
+    public boolean trieMiss() {
+        return trie.match(missUrl, "GET");
+    }
+
+    private boolean linear(String url, String method) {
+        for (String[] permission : permissionList) {
+            String permissionUrl = permission[0];
+            String permissionMethod = permission[1];
+            boolean urlCheck = permissionUrl.equals(url)
+                    || (permissionUrl.endsWith("/*") && url.startsWith(permissionUrl.replace("*", "")));
+            boolean methodCheck = "*".equals(permissionMethod) || permissionMethod.contains(method);
+            if (urlCheck && methodCheck) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
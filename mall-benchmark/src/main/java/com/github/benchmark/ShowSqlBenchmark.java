@@ -0,0 +1,95 @@
+package com.github.benchmark;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.common.sql.ShowSqlInterceptor;
+import com.github.common.util.Obj;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * <pre>
+ * 每条 sql 在拦截器中的开销(pre + post).
+ *   oldTiming       之前的计时: 两次正则处理空白符, 拼接 "id~time" 放进 Cache<Thread, String>, 执行后取出拆开再删除
+ *   slowTiming      开启慢 sql(阈值 1 秒)且没有达到阈值: ThreadLocal 中的 long + 两次 nanoTime, 不生成 sql 字符串
+ *   noTiming        没有开启慢 sql, 也没有开启输出
+ *   regexCompact / scannerCompact  只看处理空白符
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShowSqlBenchmark {
+
+    private static final String SQL = """
+
+                SELECT id, user_name, nick_name, phone, status, create_time
+                FROM t_user
+                WHERE status = 1  AND create_time >= '2024-01-01 00:00:00'
+                ORDER BY id DESC
+                LIMIT 20
+            """;
+    private static final Pattern BLANK_REGEX = Pattern.compile("\\s{1,}");
+    private static final AtomicLong ID = new AtomicLong();
+    private static final Cache<Thread, String> SQL_TIME_CACHE =
+            Caffeine.newBuilder().maximumSize(2000).expireAfterWrite(30, TimeUnit.MINUTES).build();
+
+    private final Supplier<String> sql = () -> SQL;
+    private ShowSqlInterceptor slowInterceptor;
+    private ShowSqlInterceptor interceptor;
+
+    @Setup
+    public void setup() {
+        Properties props = new Properties();
+        props.setProperty("showSqlSlowMillis", "1000");
+        slowInterceptor = new ShowSqlInterceptor();
+        slowInterceptor.init(null, props, null);
+        interceptor = new ShowSqlInterceptor();
+        interceptor.init(null, new Properties(), null);
+    }
+
+    @Benchmark
+    public long oldTiming() {
+        // pre
+        String realSql = BLANK_REGEX.matcher(sql.get().replaceFirst("^\\s*?\n", "")).replaceAll(" ");
+        long id = ID.incrementAndGet();
+        SQL_TIME_CACHE.put(Thread.currentThread(), id + "~" + System.currentTimeMillis());
+        // post
+        realSql = BLANK_REGEX.matcher(sql.get().replaceFirst("^\\s*?\n", "")).replaceAll(" ");
+        String idAndTime = SQL_TIME_CACHE.getIfPresent(Thread.currentThread());
+        String[] split = idAndTime.split("~");
+        long use = System.currentTimeMillis() - Obj.toLong(split[1]);
+        SQL_TIME_CACHE.invalidate(Thread.currentThread());
+        return use + realSql.length() + Obj.toLong(split[0]);
+    }
+
+    @Benchmark
+    public Object slowTiming() {
+        slowInterceptor.preProcess(sql, null);
+        return slowInterceptor.postProcess(sql, null, null, null);
+    }
+
+    @Benchmark
+    public Object noTiming() {
+        interceptor.preProcess(sql, null);
+        return interceptor.postProcess(sql, null, null, null);
+    }
+
+    @Benchmark
+    public String regexCompact() {
+        return BLANK_REGEX.matcher(SQL.replaceFirst("^\\s*?\n", "")).replaceAll(" ");
+    }
+
+    @Benchmark
+    public String scannerCompact() {
+        return ShowSqlInterceptor.compact(SQL);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.global.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 一次请求: json 转换器解析请求体 + 输出脱敏的请求体日志, 加上 -prof gc 可以看到每次请求分配的内存
+ *   old: 读成 byte[] -> new String -> 解析成对象 -> toJson -> 再用 byte[] 解析一次
+ *   tee: 转换器读原始的流, 顺便复制最多 64K({@link LogTeeInputStream}) -> 流式脱敏
+ *
+ * 放在跟 LogTeeInputStream 相同的包中, 以便使用包内可见的类
+ *
+ * java -jar benchmarks.jar RequestBodyLogBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestBodyLogBenchmark {
+
+    private static final int MAX_BYTES = 65536;
+
+    /** 请求体大小 */
+    @Param({ "1024", "65536", "1048576" })
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private GlobalLogHandler logHandler;
+    private byte[] body;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = new ObjectMapper();
+        logHandler = new GlobalLogHandler(objectMapper);
+        ReflectionTestUtils.setField(logHandler, "hasDesensitization", true);
+
+        StringBuilder sbd = new StringBuilder("{\"orderNo\": \"A0001\", \"items\": [\n");
+        int bytes = sbd.length() + 3;
+        for (int i = 0; ; i++) {
+            String item = (i > 0 ? ",\n" : "") + objectMapper.writeValueAsString(Map.of("id", i, "userName", "user" + i,
+                    "password", "pwd" + i, "phone", "130" + (10_000_000 + i), "address", "北京市东城区紫禁城乾清宫" + i, "remark", "备注"));
+            bytes += item.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes > size) {
+                break;
+            }
+            sbd.append(item);
+        }
+        body = sbd.append("\n]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Object old(Blackhole blackhole) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ByteArrayInputStream(body).transferTo(output);
+        byte[] bytes = output.toByteArray();
+        blackhole.consume(logHandler.toJson(objectMapper.readValue(new String(bytes, StandardCharsets.UTF_8).trim(), Object.class)));
+        return objectMapper.readValue(new ByteArrayInputStream(bytes), Object.class);
+    }
+
+    @Benchmark
+    public Object tee(Blackhole blackhole) throws IOException {
+        LogTeeInputStream tee = new LogTeeInputStream(new ByteArrayInputStream(body), MAX_BYTES);
+        Object value = objectMapper.readValue(tee, Object.class);
+        blackhole.consume(logHandler.toJson(tee.bytes(), tee.length(), tee.total()));
+        return value;
+    }
+}
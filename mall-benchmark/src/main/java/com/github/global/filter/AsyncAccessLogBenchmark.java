@@ -0,0 +1,96 @@
+package com.github.global.filter;
+
+import com.github.common.util.LogUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <pre>
+ * 8 个请求线程输出请求日志, 日志输出到一个加锁并且每条要写 50us 左右的地方(appender), 用 SampleTime 看输出这一步的 p50/p99
+ *   sync:  请求线程格式化并等 appender 写完
+ *   async: 请求线程只把记录放进 {@link AsyncAccessLog} 的环形队列, 满了丢弃
+ *
+ * 放在跟 AsyncAccessLog 相同的包中, 以便使用包内可见的类
+ *
+ * java -jar benchmarks.jar AsyncAccessLogBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class AsyncAccessLogBenchmark {
+
+    private Sink sink;
+    private AsyncAccessLog asyncLog;
+
+    @Setup
+    public void setup() {
+        sink = new Sink();
+        asyncLog = new AsyncAccessLog(8192, 256, "drop", 1, sink::write);
+    }
+
+    @TearDown
+    public void tearDown() {
+        asyncLog.close();
+    }
+
+    @Benchmark
+    public void sync(Request request) {
+        sink.write(AccessLogRecord.of(request.request, "10.0.0.1", true, false).format());
+    }
+
+    @Benchmark
+    public boolean async(Request request) {
+        return asyncLog.offer(AccessLogRecord.of(request.request, "10.0.0.1", true, true));
+    }
+
+    /** 每个请求线程一个请求, 日志上下文中有各自的跟踪号 */
+    @State(Scope.Thread)
+    public static class Request {
+        private static final AtomicInteger INDEX = new AtomicInteger();
+
+        private MockHttpServletRequest request;
+
+        @Setup
+        public void setup() {
+            String n = String.valueOf(INDEX.incrementAndGet());
+            LogUtil.putTraceAndIp("trace-" + n, "10.0.0.1", null);
+            request = new MockHttpServletRequest("POST", "/order/create");
+            request.addHeader("Content-Type", "application/x-www-form-urlencoded");
+            request.addHeader("token", "d1651d1122894b7faf27255149c14dbc");
+            request.addHeader("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)");
+            Map<String, String[]> params = new HashMap<>();
+            params.put("n", new String[] { n });
+            params.put("phone", new String[] { "13012345678" });
+            request.addParameters(params);
+        }
+
+        @TearDown
+        public void tearDown() {
+            LogUtil.unbind();
+        }
+    }
+
+    /** 加锁的 appender, 每条写 50us 左右(不占用 cpu) */
+    private static class Sink {
+        private final StringBuilder buffer = new StringBuilder();
+
+        synchronized void write(String line) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+            if (buffer.length() > 1024 * 1024) {
+                buffer.setLength(0);
+            }
+            buffer.append(line).append('\n');
+        }
+    }
+}
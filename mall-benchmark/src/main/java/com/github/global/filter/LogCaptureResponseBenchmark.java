@@ -0,0 +1,88 @@
+package com.github.global.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.global.config.GlobalLogHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 一次响应: json 转换器写响应 + 输出脱敏的响应日志, 加上 -prof gc 可以看到每次响应分配的内存
+ *   old: 转换器序列化一次 -> 日志再用脱敏的 ObjectMapper 序列化一次
+ *   capture: 转换器写的时候顺便复制最多 64K({@link LogCaptureResponse}) -> 流式脱敏
+ * 小的响应两种方式差不多(解析+生成 跟 再序列化一次 的开销相当), 超过 64K 之后日志的开销不再随响应变大
+ *
+ * 放在跟 LogCaptureResponse 相同的包中, 以便调用包内可见的 log()
+ *
+ * java -jar benchmarks.jar LogCaptureResponseBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogCaptureResponseBenchmark {
+
+    private static final int MAX_BYTES = 65536;
+
+    /** 返回值大约多少字节 */
+    @Param({ "1024", "65536", "1048576" })
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private GlobalLogHandler logHandler;
+    private Map<String, Object> value;
+
+    @Setup
+    public void setup() {
+        objectMapper = new ObjectMapper();
+        logHandler = new GlobalLogHandler(objectMapper);
+        ReflectionTestUtils.setField(logHandler, "hasDesensitization", true);
+
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0, bytes = 0; bytes < size; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", i);
+            item.put("userName", "user" + i);
+            item.put("password", "pwd" + i);
+            item.put("phone", "130" + (10_000_000 + i));
+            item.put("address", "北京市东城区紫禁城乾清宫" + i);
+            item.put("amount", i * 1.5);
+            item.put("vip", i % 2 == 0);
+            item.put("remark", null);
+            items.add(item);
+            bytes += 180;
+        }
+        value = new LinkedHashMap<>();
+        value.put("code", 0);
+        value.put("msg", "成功");
+        value.put("data", Map.of("orderNo", "A0001", "items", items));
+    }
+
+    @Benchmark
+    public String old() throws IOException {
+        objectMapper.writeValue(new MockHttpServletResponse().getOutputStream(), value);
+        return logHandler.toJson(value);
+    }
+
+    /** 跟 ResponseBodyAdvice 一样: 写之前 capture, 转换器写响应, 处理完由 LogTraceFilter 输出 */
+    @Benchmark
+    public void capture(Blackhole blackhole) throws IOException {
+        LogCaptureResponse response = new LogCaptureResponse(new MockHttpServletResponse());
+        response.capture(logHandler.captureLimit(MAX_BYTES),
+                stream -> blackhole.consume(logHandler.toJson(stream.bytes(), stream.length(), stream.total())));
+        objectMapper.writeValue(response.getOutputStream(), value);
+        response.log();
+    }
+}
@@ -0,0 +1,189 @@
+package com.github.mq.handle;
+
+import com.github.global.service.RedissonService;
+import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <pre>
+ * 清空 2000 条积压的发送失败的消息, 每次 redis、db、mq 的往返用 100us 模拟(不占用 cpu)
+ *   shards = 1, parallelism = 1: 一个分片、一条一条地重试(原来的方式)
+ *   shards = 8, parallelism = 8: 8 个分片, 每批消息用 8 个线程并行重试
+ *
+ * 放在跟 MqRetryHandler 相同的包中, 跟单元测试一样用内存中的 redis、db 和 mq
+ *
+ * java -jar benchmarks.jar MqRetryBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MqRetryBenchmark {
+
+    private static final int COUNT = 2000;
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Param({ "1", "8" })
+    private int shards;
+
+    @Param({ "1", "8" })
+    private int parallelism;
+
+    private MqRetryHandler handler;
+
+    @Setup(Level.Invocation)
+    public void setup() {
+        MemoryMqSendService db = new MemoryMqSendService();
+        Date past = new Date(System.currentTimeMillis() - 1000);
+        for (int i = 1; i <= COUNT; i++) {
+            MqSend row = new MqSend();
+            row.setId((long) i);
+            row.setMsgId("msg-" + i);
+            row.setType(MqInfo.EXAMPLE.name().toLowerCase());
+            row.setStatus(MqConst.FAIL);
+            row.setRetryCount(0);
+            row.setMsg("{\"id\":" + i + "}");
+            row.setCreateTime(past);
+            row.setNextRetryTime(past);
+            db.rows.put(row.getId(), row);
+        }
+
+        handler = new MqRetryHandler(new MemoryRedissonService(), db, null, new MemoryMqSenderHandler(db));
+        ReflectionTestUtils.setField(handler, "mqRetryLimit", 200);
+        ReflectionTestUtils.setField(handler, "maxRetryCount", 5);
+        ReflectionTestUtils.setField(handler, "retryShards", shards);
+        ReflectionTestUtils.setField(handler, "retryParallelism", parallelism);
+        ReflectionTestUtils.setField(handler, "retryLeaseSeconds", 60);
+        ReflectionTestUtils.setField(handler, "retryBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(handler, "retryMaxBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(handler, "msgLockSeconds", 60);
+        handler.afterPropertiesSet();
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        handler.destroy();
+    }
+
+    @Benchmark
+    public boolean drainBacklog() {
+        return handler.handlerSend();
+    }
+
+    private static void roundTrip() {
+        LockSupport.parkNanos(ROUND_TRIP_NANOS);
+    }
+
+    private static class MemoryRedissonService extends RedissonService {
+        private final Map<String, Object> keys = new ConcurrentHashMap<>();
+
+        MemoryRedissonService() {
+            super(null);
+        }
+
+        @Override
+        public <T> Set<String> setIfAbsent(Collection<String> keyList, T value, long time, TimeUnit unit) {
+            roundTrip();
+            Set<String> returnSet = new LinkedHashSet<>();
+            for (String key : keyList) {
+                if (keys.putIfAbsent(key, value) == null) {
+                    returnSet.add(key);
+                }
+            }
+            return returnSet;
+        }
+        @Override
+        public boolean deleteIfValue(String key, String value) {
+            roundTrip();
+            return keys.remove(key, value);
+        }
+        @Override
+        public boolean expireIfValue(String key, String value, long time, TimeUnit unit) {
+            roundTrip();
+            return value.equals(keys.get(key));
+        }
+    }
+
+    private static class MemoryMqSendService extends MqSendService {
+        private final Map<Long, MqSend> rows = new ConcurrentHashMap<>();
+
+        MemoryMqSendService() {
+            super(null);
+        }
+
+        /** 跟 sql 的条件一致 */
+        @Override
+        public List<MqSend> queryRetryMsg(int shard, int shards, int maxRetryCount, int limit) {
+            roundTrip();
+            long now = System.currentTimeMillis();
+            List<MqSend> list = new ArrayList<>();
+            for (MqSend row : rows.values()) {
+                if (row.getId() % shards == shard && row.getStatus() == MqConst.FAIL
+                        && row.getRetryCount() < maxRetryCount && row.getNextRetryTime().getTime() <= now) {
+                    list.add(row);
+                }
+            }
+            list.sort(Comparator.comparing(MqSend::getNextRetryTime));
+            List<MqSend> returnList = new ArrayList<>();
+            for (MqSend row : list.subList(0, Math.min(limit, list.size()))) {
+                MqSend returnRow = new MqSend();
+                returnRow.setId(row.getId());
+                returnRow.setMsgId(row.getMsgId());
+                returnRow.setType(row.getType());
+                returnRow.setRetryCount(row.getRetryCount());
+                returnRow.setMsg(row.getMsg());
+                returnList.add(returnRow);
+            }
+            return returnList;
+        }
+        @Override
+        public void updateNextRetryTime(List<Long> ids, Date nextRetryTime) {
+            roundTrip();
+            for (Long id : ids) {
+                rows.get(id).setNextRetryTime(nextRetryTime);
+            }
+        }
+        @Override
+        public void updateById(MqSend data) {
+            roundTrip();
+            MqSend row = rows.get(data.getId());
+            row.setStatus(data.getStatus());
+            if (data.getRetryCount() != null) {
+                row.setRetryCount(data.getRetryCount());
+            }
+        }
+    }
+
+    /** 跟 MqSenderHandler#provide 一样: 发送成功则状态改为成功, 重试次数 +1 */
+    private static class MemoryMqSenderHandler extends MqSenderHandler {
+        private final MemoryMqSendService db;
+
+        MemoryMqSenderHandler(MemoryMqSendService db) {
+            super(null, db);
+            this.db = db;
+        }
+
+        @Override
+        public void doProvideJustJson(String msgId, MqInfo mqInfo, String searchKey, String json) {
+            roundTrip();
+            MqSend row = db.rows.get(Long.parseLong(msgId.substring("msg-".length())));
+            MqSend update = new MqSend();
+            update.setId(row.getId());
+            update.setStatus(MqConst.SUCCESS);
+            update.setRetryCount(row.getRetryCount() + 1);
+            db.updateById(update);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.common.export;
+
+import com.github.common.util.LogUtil;
+import com.github.common.util.Obj;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * <pre>
+ * 导出时获取每一行中各列的值, 结果跟 {@link Obj#getFieldMethod(Object, String)} 一致
+ *
+ * 每个类的 get 方法只在第一次用到时用 LambdaMetafactory 生成一次(跟直接调用 get 方法差不多), 之后从缓存中取,
+ * 不再每个单元格都走一遍反射; 日期格式也是预先构建好的.
+ * 缓存用 ClassValue 挂在类上, 类(和它的类加载器)被卸载时一起回收, 不会因为静态 Map 引用着类而泄漏.
+ *
+ * 实例跟标题头绑定, 一次导出用一个实例, 不要在多个线程中共用
+ * </pre>
+ */
+public final class ExportRowAccessor {
+
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /** 没有对应 get 方法时返回 null */
+    private static final Function<Object, Object> NIL = data -> null;
+
+    /** 每个类的 { 属性名: 生成的 get 方法 } */
+    private static final ClassValue<Map<String, Function<Object, Object>>> GETTER_CACHE = new ClassValue<>() {
+        @Override
+        protected Map<String, Function<Object, Object>> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+
+    private final String[] fields;
+
+    private Class<?> lastClass;
+    private Function<Object, Object>[] lastGetters;
+
+    /** @param fields 标题头中的属性名, 一般是 {@link com.github.common.export.poi.ExportColumnHandler#collectTitle(Class)} 返回的 keySet */
+    public ExportRowAccessor(Collection<String> fields) {
+        this.fields = fields.toArray(new String[0]);
+    }
+
+    /** 获取一行数据中第 index 列的值(如果是 null 则返回空字符串) */
+    public String getValue(Object data, int index) {
+        if (Obj.isNull(data)) {
+            return Obj.EMPTY;
+        }
+        if (data instanceof Map) {
+            return Obj.getFieldMethod(data, fields[index]);
+        }
+        return format(getters(data.getClass())[index].apply(data));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Function<Object, Object>[] getters(Class<?> clazz) {
+        if (clazz != lastClass) {
+            Map<String, Function<Object, Object>> getterMap = GETTER_CACHE.get(clazz);
+            Function<Object, Object>[] getters = new Function[fields.length];
+            for (int i = 0; i < fields.length; i++) {
+                getters[i] = getterMap.computeIfAbsent(fields[i], field -> compileGetter(clazz, field));
+            }
+            lastClass = clazz;
+            lastGetters = getters;
+        }
+        return lastGetters;
+    }
+
+    /** 如果是枚举则调用枚举的 getValue 方法, 如果是日期则格式化, 否则返回 toString */
+    private static String format(Object value) {
+        if (Obj.isNull(value)) {
+            return Obj.EMPTY;
+        } else if (value.getClass().isEnum()) {
+            Map<String, Function<Object, Object>> getterMap = GETTER_CACHE.get(value.getClass());
+            Function<Object, Object> getter = getterMap.computeIfAbsent("value", field -> compileGetter(value.getClass(), field));
+            return Obj.toStr(Obj.defaultIfNull(getter.apply(value), value));
+        } else if (value instanceof Date d) {
+            return DATE_TIME_FORMATTER.format(LocalDateTime.ofInstant(d.toInstant(), ZoneId.systemDefault()));
+        } else {
+            return Obj.toStr(value);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> compileGetter(Class<?> clazz, String field) {
+        if (Obj.isBlank(field)) {
+            return NIL;
+        }
+        String methodName = "get" + field.substring(0, 1).toUpperCase() + field.substring(1);
+        Method method = Obj.getMethod(clazz, methodName);
+        if (Obj.isNull(method) || method.getParameterCount() != 0) {
+            return NIL;
+        }
+
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+                    MethodType.methodType(Object.class, Object.class), handle, handle.type().wrap());
+            return (Function<Object, Object>) site.getTarget().invokeExact();
+        } catch (Throwable e) {
+            if (LogUtil.ROOT_LOG.isDebugEnabled()) {
+                LogUtil.ROOT_LOG.debug("class({}) method({}) can not compile, use reflection", clazz.getName(), methodName, e);
+            }
+            return data -> Obj.invokeMethod(data, methodName);
+        }
+    }
+}
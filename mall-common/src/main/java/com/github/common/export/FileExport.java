@@ -9,7 +9,6 @@ import com.github.common.util.Obj;
 import org.apache.poi.ss.usermodel.Workbook;
 
 import java.io.*;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
@@ -106,10 +105,10 @@ public final class FileExport {
         }
 
         // 没有数据或没有标题, 返回一个内容为空的文件
-        String content = ExportCsv.getContent(titleMap, dataList);
         String fileName = encodeName(name) + ".csv";
-        try {
-            Files.write(new File(dir, fileName).toPath(), content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        try (OutputStream output = Files.newOutputStream(new File(dir, fileName).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            ExportCsv.write(titleMap, Arr.isEmpty(dataList) ? null : dataList.iterator(), output);
         } catch (IOException e) {
             throw new RuntimeException(String.format("保存文件(%s)到(%s)时异常", fileName, directory), e);
         }
@@ -15,6 +15,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 
@@ -108,8 +109,38 @@ public final class WebExport {
         typeAndHeader(response, "text/csv", fileName);
 
         // 没有数据或没有标题, 返回一个内容为空的文件
-        byte[] content = ExportCsv.getContent(titleMap, dataList).getBytes(StandardCharsets.UTF_8);
-        response.getOutputStream().write(content);
+        ExportCsv.write(titleMap, Arr.isEmpty(dataList) ? null : dataList.iterator(), response.getOutputStream());
+    }
+
+    /**
+     * 流式导出 csv 格式文件, 数据逐行写到输出流, 不会把整个文件放进内存. 在 Controller 中调用!
+     *
+     * @param name 导出时的文件名
+     * @param dataIterator 导出的数据(比如 Stream#iterator 或 {@link ExportCsv#pageIterator}), 每个字段上有使用 &#064;ExportColumn 注解来说明导出的列名
+     * @param clazz 导出的实体类. 主要用来获取标题头
+     */
+    public static <T> void exportCsv(String name, Iterator<T> dataIterator, Class<T> clazz,
+                                     HttpServletResponse response) throws IOException {
+        exportCsv(name, ExportColumnHandler.collectTitle(clazz), dataIterator, response);
+    }
+
+    /**
+     * 流式导出 csv 格式文件, 数据逐行写到输出流, 不会把整个文件放进内存. 在 Controller 中调用!
+     *
+     * <pre>
+     * // 分页查询, 查到空数据为止
+     * WebExport.exportCsv("文件名", titleMap, ExportCsv.pageIterator(page -&gt; xxService.pageList(page, 1000)), response);
+     * </pre>
+     *
+     * @param name 导出时的文件名
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param dataIterator 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对)
+     */
+    public static void exportCsv(String name, LinkedHashMap<String, String> titleMap, Iterator<?> dataIterator,
+                                 HttpServletResponse response) throws IOException {
+        String fileName = encodeName(name) + ".csv";
+        typeAndHeader(response, "text/csv", fileName);
+        ExportCsv.write(titleMap, dataIterator, response.getOutputStream());
     }
 
     /**
@@ -1,9 +1,13 @@
 package com.github.common.export.csv;
 
+import com.github.common.export.ExportRowAccessor;
 import com.github.common.util.Arr;
 import com.github.common.util.Obj;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.IntFunction;
 
 public class ExportCsv {
 
@@ -22,6 +26,9 @@ public class ExportCsv {
     private static final String QUOTE = "\"";
     private static final String REPLACE_QUOTE = "\"\"";
 
+    /** 流式写入时的缓冲大小(字符数), 写满即刷到输出流 */
+    private static final int WRITE_BUFFER_SIZE = 8192;
+
     public static String getContent(LinkedHashMap<String, String> titleMap, List<?> dataList) {
         StringBuilder sbd = new StringBuilder();
         if (Arr.isNotEmpty(titleMap)) {
@@ -34,20 +41,14 @@ public class ExportCsv {
                 }
             }
             if (Arr.isNotEmpty(dataList)) {
-                Set<String> titles = titleMap.keySet();
+                ExportRowAccessor accessor = new ExportRowAccessor(titleMap.keySet());
+                int size = titleMap.size();
                 for (Object data : dataList) {
                     if (Obj.isNotNull(data)) {
                         if (sbd.length() > 0) {
                             sbd.append(WRAP);
                         }
-                        i = 0;
-                        for (String title : titles) {
-                            sbd.append(handleCsvContent(Obj.getFieldMethod(data, title)));
-                            i++;
-                            if (i != titleMap.size()) {
-                                sbd.append(SPLIT);
-                            }
-                        }
+                        appendRow(sbd, accessor, size, data);
                     }
                 }
             }
@@ -55,6 +56,75 @@ public class ExportCsv {
         return sbd.toString();
     }
 
+    /**
+     * 将数据逐行写入输出流, 内存中只保留一行数据和一个固定大小的缓冲, 输出流不会被关闭
+     *
+     * @param titleMap 标题(key 为英文, value 为标题内容)
+     * @param dataIterator 导出的数据(每个 object 都是一行, object 中的属性名与标题中的 key 相对), 可以是 Stream#iterator 或 {@link #pageIterator}
+     */
+    public static void write(LinkedHashMap<String, String> titleMap, Iterator<?> dataIterator, OutputStream output) throws IOException {
+        if (Arr.isEmpty(titleMap)) {
+            return;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        String head = writeCsvHead(titleMap);
+        writer.write(head);
+        boolean hasContent = !head.isEmpty();
+        if (Obj.isNotNull(dataIterator)) {
+            ExportRowAccessor accessor = new ExportRowAccessor(titleMap.keySet());
+            int size = titleMap.size();
+            StringBuilder sbd = new StringBuilder();
+            while (dataIterator.hasNext()) {
+                Object data = dataIterator.next();
+                if (Obj.isNotNull(data)) {
+                    sbd.setLength(0);
+                    appendRow(sbd, accessor, size, data);
+                    if (hasContent) {
+                        writer.write(WRAP);
+                    }
+                    writer.append(sbd);
+                    hasContent = hasContent || sbd.length() > 0;
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * 将分页查询转换成迭代器, 从第 1 页开始查, 查到空数据为止, 内存中只保留当前页的数据
+     *
+     * @param pageFetcher 入参是页码(从 1 开始), 返回当前页的数据
+     */
+    public static <T> Iterator<T> pageIterator(IntFunction<List<T>> pageFetcher) {
+        return new Iterator<>() {
+            private int page = 0;
+            private Iterator<T> current = Collections.emptyIterator();
+            private boolean end = false;
+
+            @Override
+            public boolean hasNext() {
+                while (!end && !current.hasNext()) {
+                    List<T> list = pageFetcher.apply(++page);
+                    if (Arr.isEmpty(list)) {
+                        end = true;
+                    } else {
+                        current = list.iterator();
+                    }
+                }
+                return !end;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
     public static String writeCsvHead(LinkedHashMap<String, String> titleMap) {
         StringJoiner joiner = new StringJoiner(SPLIT);
         if (titleMap != null && titleMap.size() > 0) {
@@ -68,24 +138,27 @@ public class ExportCsv {
     public static String writeCsvContent(LinkedHashSet<String> titles, List<?> dataList) {
         StringBuilder sbd = new StringBuilder();
         if (titles != null && titles.size() > 0 && dataList != null && dataList.size() > 0) {
+            ExportRowAccessor accessor = new ExportRowAccessor(titles);
+            int size = titles.size();
             for (Object data : dataList) {
                 if (Obj.isNotNull(data)) {
                     sbd.append(WRAP);
-
-                    int i = 0;
-                    for (String title : titles) {
-                        sbd.append(handleCsvContent(Obj.getFieldMethod(data, title)));
-                        i++;
-                        if (i != titles.size()) {
-                            sbd.append(SPLIT);
-                        }
-                    }
+                    appendRow(sbd, accessor, size, data);
                 }
             }
         }
         return sbd.toString();
     }
 
+    private static void appendRow(StringBuilder sbd, ExportRowAccessor accessor, int size, Object data) {
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sbd.append(SPLIT);
+            }
+            sbd.append(handleCsvContent(accessor.getValue(data, i)));
+        }
+    }
+
     private static String handleCsvContent(String content) {
         if (Obj.isBlank(content)) {
             return Obj.EMPTY;
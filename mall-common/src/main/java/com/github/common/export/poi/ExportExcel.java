@@ -1,5 +1,6 @@
 package com.github.common.export.poi;
 
+import com.github.common.export.ExportRowAccessor;
 import com.github.common.util.Arr;
 import com.github.common.util.Obj;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
@@ -136,6 +137,8 @@ public class ExportExcel {
             String sheetName = entry.getKey();
             // 标题头, 这里跟数据中的属性相对应
             Set<Map.Entry<String, String>> titleEntry = titleMap.get(sheetName).entrySet();
+            ExportRowAccessor accessor = new ExportRowAccessor(titleMap.get(sheetName).keySet());
+            int titleSize = titleEntry.size();
 
             // 当前 sheet 的数据
             dataList = entry.getValue();
@@ -185,11 +188,11 @@ public class ExportExcel {
                             rowIndex++;
                             cellIndex = 0;
                             row = sheet.createRow(rowIndex);
-                            for (Map.Entry<String, String> titleMapEntry : titleEntry) {
+                            for (int k = 0; k < titleSize; k++) {
                                 // 数据列
                                 cell = row.createCell(cellIndex);
 
-                                cellData = Obj.getFieldMethod(data, titleMapEntry.getKey());
+                                cellData = accessor.getValue(data, k);
                                 if (Obj.isDouble(cellData)) {
                                     if (!hasBigData) {
                                         cell.setCellStyle(numberStyle);
@@ -2,15 +2,18 @@ package com.github.common.json;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.json.JsonReadFeature;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.*;
 import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.github.common.date.FormatType;
 import com.github.common.util.Arr;
 import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -131,28 +134,27 @@ public class JsonUtil {
             return null;
         }
 
-        String json;
-        if (source instanceof String s) {
-            json = s;
-        } else {
+        ObjectMapper targetMapper = (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
+        if (source instanceof String json) {
+            if (Obj.isBlank(json)) {
+                return null;
+            }
             try {
-                json = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER).writeValueAsString(source);
+                return targetMapper.readValue(json, clazz);
             } catch (Exception e) {
                 if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                    LogUtil.ROOT_LOG.error("obj({}) to json exception", Obj.compress(source.toString()), e);
+                    LogUtil.ROOT_LOG.error("json({}) to Class({}) exception", Obj.compress(json), clazz.getName(), e);
                 }
                 return null;
             }
         }
 
-        if (Obj.isBlank(json)) {
-            return null;
-        }
+        ObjectMapper sourceMapper = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
         try {
-            return (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER).readValue(json, clazz);
+            return tokenConvert(source, sourceMapper, targetMapper, targetMapper.constructType(clazz));
         } catch (Exception e) {
             if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                LogUtil.ROOT_LOG.error("json({}) to Class({}) exception", Obj.compress(json), clazz.getName(), e);
+                LogUtil.ROOT_LOG.error("obj({}) to Class({}) exception", Obj.compress(source.toString()), clazz.getName(), e);
             }
             return null;
         }
@@ -169,27 +171,16 @@ public class JsonUtil {
             return Collections.emptyList();
         }
 
-        String json;
-        try {
-            json = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER).writeValueAsString(sourceList);
-        } catch (Exception e) {
-            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                LogUtil.ROOT_LOG.error("List({}) to json exception", Obj.compress(sourceList.toString()), e);
-            }
-            return Collections.emptyList();
-        }
-        if (Obj.isBlank(json)) {
-            return Collections.emptyList();
-        }
-
         String key = clazz.getName();
         try {
-            ObjectMapper mapper = (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
-            return mapper.readValue(json, TYPE_CACHE.computeIfAbsent(key,
-                    fun -> mapper.getTypeFactory().constructCollectionType(List.class, clazz)));
+            ObjectMapper sourceMapper = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
+            ObjectMapper targetMapper = (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
+            List<T> list = tokenConvert(sourceList, sourceMapper, targetMapper, TYPE_CACHE.computeIfAbsent(key,
+                    fun -> targetMapper.getTypeFactory().constructCollectionType(List.class, clazz)));
+            return Obj.isNull(list) ? Collections.emptyList() : list;
         } catch (Exception e) {
             if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                LogUtil.ROOT_LOG.error("json({}) to List<{}> exception", Obj.compress(json), key, e);
+                LogUtil.ROOT_LOG.error("List({}) to List<{}> exception", Obj.compress(sourceList.toString()), key, e);
             }
             return Collections.emptyList();
         }
@@ -206,27 +197,16 @@ public class JsonUtil {
             return Collections.emptyMap();
         }
 
-        String json;
-        try {
-            json = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER).writeValueAsString(sourceMap);
-        } catch (Exception e) {
-            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                LogUtil.ROOT_LOG.error("Map({}) to json exception", Obj.compress(sourceMap.toString()), e);
-            }
-            return Collections.emptyMap();
-        }
-        if (Obj.isBlank(json)) {
-            return Collections.emptyMap();
-        }
-
         String key = keyClass.getName() + ", " + valueClass.getName();
         try {
-            ObjectMapper mapper = (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
-            return mapper.readValue(json, TYPE_CACHE.computeIfAbsent(key,
-                    fun -> mapper.getTypeFactory().constructMapType(LinkedHashMap.class, keyClass, valueClass)));
+            ObjectMapper sourceMapper = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
+            ObjectMapper targetMapper = (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
+            Map<K,V> map = tokenConvert(sourceMap, sourceMapper, targetMapper, TYPE_CACHE.computeIfAbsent(key,
+                    fun -> targetMapper.getTypeFactory().constructMapType(LinkedHashMap.class, keyClass, valueClass)));
+            return Obj.isNull(map) ? Collections.emptyMap() : map;
         } catch (Exception e) {
             if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                LogUtil.ROOT_LOG.error("json({}) to List<{}> exception", Obj.compress(json), key, e);
+                LogUtil.ROOT_LOG.error("Map({}) to Map<{}> exception", Obj.compress(sourceMap.toString()), key, e);
             }
             return Collections.emptyMap();
         }
@@ -261,33 +241,50 @@ public class JsonUtil {
             return null;
         }
 
-        String json;
-        if (source instanceof String s) {
-            json = s;
-        } else {
+        ObjectMapper targetMapper = (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
+        if (source instanceof String json) {
+            if (Obj.isBlank(json)) {
+                return null;
+            }
             try {
-                json = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER).writeValueAsString(source);
+                return targetMapper.readValue(json, type);
             } catch (Exception e) {
                 if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                    LogUtil.ROOT_LOG.error("obj({}) to json exception", Obj.compress(source.toString()), e);
+                    LogUtil.ROOT_LOG.error("json({}) to Class({}) exception", Obj.compress(json), type.getType().getTypeName(), e);
                 }
                 return null;
             }
         }
 
-        if (Obj.isBlank(json)) {
-            return null;
-        }
+        ObjectMapper sourceMapper = (ignoreSourceAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER);
         try {
-            return (ignoreTargetAnnotation ? IGNORE_OBJECT_MAPPER : EMPTY_OBJECT_MAPPER).readValue(json, type);
+            return tokenConvert(source, sourceMapper, targetMapper, targetMapper.constructType(type));
         } catch (Exception e) {
             if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                LogUtil.ROOT_LOG.error("json({}) to Class({}) exception", Obj.compress(json), type.getClass().getName(), e);
+                LogUtil.ROOT_LOG.error("obj({}) to Class({}) exception", Obj.compress(source.toString()), type.getType().getTypeName(), e);
             }
             return null;
         }
     }
 
+    /**
+     * 用 source 的 mapper 将对象序列化成 token 流(TokenBuffer), 再用 target 的 mapper 从 token 流反序列化.
+     * 跟「先转成 json 字符串再解析」的结果一致, 但中间不会生成 String 及 char[].
+     * 只有目标是 Map 或 Object 这种无类型时有区别: 小数保留原来的 BigDecimal, byte[] 不会转成 base64 字符串(跟 ObjectMapper#convertValue 一致)
+     */
+    private static <T> T tokenConvert(Object source, ObjectMapper sourceMapper, ObjectMapper targetMapper,
+                                      JavaType type) throws IOException {
+        try (TokenBuffer buffer = new TokenBuffer(sourceMapper, false)) {
+            if (targetMapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)) {
+                buffer.forceUseOfBigDecimal(true);
+            }
+            sourceMapper.writeValue(buffer, source);
+            try (JsonParser parser = buffer.asParser(targetMapper)) {
+                return targetMapper.readValue(parser, type);
+            }
+        }
+    }
+
     /** 对象转换成 json 字符串 */
     public static String toJson(Object obj) {
         if (Obj.isNull(obj)) {
@@ -423,4 +420,66 @@ public class JsonUtil {
             return Collections.emptyMap();
         }
     }
+
+    /**
+     * 流式读取 json 对象第一层的字段值(字符串、数字或布尔), 不会把整个 json 解析成 Map.
+     * keys 靠前的优先, 找到第一个 key 时立即返回, 其他 key 有值时先记下来继续往后找, 嵌套的对象和数组直接跳过
+     *
+     * @param json 字节数据, 编码(UTF-8/16/32)会自动识别
+     * @return 没有找到或不是 json 对象时返回 null
+     */
+    public static String readField(byte[] json, List<String> keys) {
+        if (json == null || json.length == 0 || Arr.isEmpty(keys)) {
+            return null;
+        }
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(json)) {
+            return readField(parser, keys);
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("read field({}) from json exception", keys, e);
+            }
+            return null;
+        }
+    }
+    /** 流式读取 json 对象第一层的字段值, 见 {@link #readField(byte[], List)} */
+    public static String readField(String json, List<String> keys) {
+        if (Obj.isBlank(json) || Arr.isEmpty(keys)) {
+            return null;
+        }
+        try (JsonParser parser = OBJECT_MAPPER.getFactory().createParser(json)) {
+            return readField(parser, keys);
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("read field({}) from json({}) exception", keys, Obj.compress(json), e);
+            }
+            return null;
+        }
+    }
+    private static String readField(JsonParser parser, List<String> keys) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String value = null;
+        int index = keys.size();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if (token.isStructStart()) {
+                parser.skipChildren();
+                continue;
+            }
+            int i = keys.indexOf(name);
+            if (i >= 0 && i < index && token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                String text = parser.getText();
+                if (Obj.isNotBlank(text)) {
+                    if (i == 0) {
+                        return text;
+                    }
+                    value = text;
+                    index = i;
+                }
+            }
+        }
+        return value;
+    }
 }
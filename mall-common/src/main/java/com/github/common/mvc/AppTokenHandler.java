@@ -1,17 +1,36 @@
 package com.github.common.mvc;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.common.Const;
 import com.github.common.encrypt.Encrypt;
+import com.github.common.encrypt.jwt.JWTVerifier;
 import com.github.common.exception.NotLoginException;
 import com.github.common.json.JsonUtil;
 import com.github.common.util.Arr;
 import com.github.common.util.Obj;
 import com.github.common.util.RequestUtil;
 
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
 
-/** 专门针对 app 操作的 token 处理器, 登录时生成 token, 每次请求都刷新过期时间, 删除由客户端处理 */
+/**
+ * <pre>
+ * 专门针对 app 操作的 token 处理器, 登录时生成 token, 每次请求都刷新过期时间, 删除由客户端处理
+ *
+ * 验证通过的 token 放在本地缓存中(键是 token 的摘要, 在 token 过期时失效, 最多缓存 30 分钟), 同一个 token 在这段时间内只验签一次;
+ * 同一个请求中多次获取 session 信息只会转换一次. 退出时调用 {@link #revokeToken()} 拒绝这个 token 直到它过期,
+ * 默认只在当前节点生效, 用 {@link #setRevokedTokenStore} 换成共享存储后所有节点都生效.
+ *
+ * 缓存中有的 token 直接返回, 不查询注销的存储(共享存储时是一次网络往返), 只在没有缓存(验签)时查一次;
+ * 因此注销时除了写入存储, 还要通知所有节点调用 {@link #evictVerified} 清掉各自缓存中的这个 token
+ * </pre>
+ */
 public final class AppTokenHandler {
 
     /** 生成 token 的过期时间 */
@@ -19,6 +38,33 @@ public final class AppTokenHandler {
     /** 生成 token 的过期时间单位 */
     private static final TimeUnit TOKEN_EXPIRE_TIME_UNIT = TimeUnit.DAYS;
 
+    /** 验证通过的 token 在本地缓存的最长时间, token 没有过期时间时也用这个 */
+    private static final long MAX_CACHE_MS = TimeUnit.MINUTES.toMillis(30);
+    /** 用 token 获取的 session 信息放在请求中的前缀 */
+    private static final String REQUEST_SESSION = AppTokenHandler.class.getName() + "-SESSION-";
+    /** 请求中没有 session 信息时放的值, 避免同一个请求中重复验证无效的 token */
+    private static final Object NIL = new Object();
+
+    /** 验证通过的 token: key 是 token 的摘要, value 是解码后的数据, token 过期时失效 */
+    private static final Cache<String, VerifiedToken> VERIFIED_TOKEN = Caffeine.newBuilder()
+            .maximumSize(20000).expireAfter(new TokenExpiry<VerifiedToken>(VerifiedToken::expireMs, MAX_CACHE_MS)).build();
+    /** 已经注销的 token, 只在 token 过期时失效 */
+    private static volatile RevokedTokenStore revokedTokenStore = new MemoryRevokedTokenStore();
+
+    /** 替换已注销 token 的存储, 多节点部署时在启动时换成共享存储 */
+    public static void setRevokedTokenStore(RevokedTokenStore store) {
+        if (Obj.isNotNull(store)) {
+            revokedTokenStore = store;
+        }
+    }
+
+    /** 其他节点注销了 token 时调用: 清掉本地缓存中验证过的, 之后的请求会重新查询是否已注销 */
+    public static void evictVerified(String digest) {
+        if (Obj.isNotBlank(digest)) {
+            VERIFIED_TOKEN.invalidate(digest);
+        }
+    }
+
     /** 基于存进 session 的数据(7 天后过期)生成 token 返回, 登录后调用返回给 app 由其保存下来 */
     public static <T> String generateToken(T session) {
         return generateToken(session, TOKEN_EXPIRE_TIME);
@@ -43,14 +89,15 @@ public final class AppTokenHandler {
     public static String resetTokenExpireTime(long expireDay) {
         String token = getToken();
         if (Obj.isNotBlank(token)) {
-            Map<String, Object> session;
+            VerifiedToken verified;
             try {
-                session = Encrypt.jwtDecode(token);
+                verified = verify(token);
             } catch (Exception e) {
                 throw new NotLoginException(e.getMessage());
             }
-            if (Arr.isNotEmpty(session)) {
-                return genToken(session, expireDay);
+            if (Arr.isNotEmpty(verified.session())) {
+                // 生成时会往 map 中写过期时间, 不能改缓存中的数据
+                return genToken(new LinkedHashMap<>(verified.session()), expireDay);
             }
         }
         return Obj.EMPTY;
@@ -68,19 +115,111 @@ public final class AppTokenHandler {
         return token;
     }
 
-    /** 从 token 中读 session 信息, 如果登录已过期或解密失败将返回 null */
+    /** 从 token 中读 session 信息, 如果登录已过期或解密失败或已注销将返回 null. 同一个请求中多次调用只会处理一次 */
+    @SuppressWarnings("unchecked")
     public static <T> T getSessionInfoWithToken(Class<T> clazz) {
+        HttpServletRequest request = RequestUtil.getRequest();
+        String attributeName = REQUEST_SESSION + clazz.getName();
+        if (Obj.isNotNull(request)) {
+            Object memo = request.getAttribute(attributeName);
+            if (Obj.isNotNull(memo)) {
+                return memo == NIL ? null : (T) memo;
+            }
+        }
+
+        T info = null;
         String token = getToken();
         if (Obj.isNotBlank(token)) {
             Map<String, Object> session = null;
             try {
-                session = Encrypt.jwtDecode(token);
+                session = verify(token).session();
             } catch (Exception ignore) {
             }
             if (Arr.isNotEmpty(session)) {
-                return JsonUtil.convert(session, clazz);
+                info = JsonUtil.convert(session, clazz);
             }
         }
-        return null;
+        if (Obj.isNotNull(request)) {
+            request.setAttribute(attributeName, Obj.isNull(info) ? NIL : info);
+        }
+        return info;
+    }
+
+    /** 注销当前请求中的 token(直到 token 过期), 退出登录时调用 */
+    public static void revokeToken() {
+        String token = getToken();
+        if (Obj.isBlank(token)) {
+            return;
+        }
+
+        HttpServletRequest request = RequestUtil.getRequest();
+        if (Obj.isNotNull(request)) {
+            for (String name : Collections.list(request.getAttributeNames())) {
+                if (name.startsWith(REQUEST_SESSION)) {
+                    request.removeAttribute(name);
+                }
+            }
+        }
+
+        VerifiedToken verified;
+        try {
+            verified = verify(token);
+        } catch (Exception ignore) {
+            // 无效或已经注销的 token 无需处理
+            return;
+        }
+        String digest = Encrypt.toSha256(token);
+        revokedTokenStore.revoke(digest, verified.expireMs());
+        VERIFIED_TOKEN.invalidate(digest);
+    }
+
+    /** 验证 token, 验证通过的放入缓存, 过期、验签失败、已注销将抛出异常. 缓存中有时不查询注销的存储 */
+    private static VerifiedToken verify(String token) {
+        String digest = Encrypt.toSha256(token);
+        VerifiedToken verified = VERIFIED_TOKEN.getIfPresent(digest);
+        if (Obj.isNotNull(verified)) {
+            // 缓存只会在过期时间失效, 这里再检查一次是防止时间上的误差
+            if (verified.expireMs() > 0 && System.currentTimeMillis() >= verified.expireMs()) {
+                VERIFIED_TOKEN.invalidate(digest);
+                throw new NotLoginException("登录已过期, 请重新登录");
+            }
+            return verified;
+        }
+
+        if (revokedTokenStore.isRevoked(digest)) {
+            throw new NotLoginException("登录已退出, 请重新登录");
+        }
+        Map<String, Object> session = Encrypt.jwtDecode(token);
+        long expireMs = Obj.toLong(session.get(JWTVerifier.EXP));
+        verified = new VerifiedToken(session, expireMs);
+        VERIFIED_TOKEN.put(digest, verified);
+        return verified;
+    }
+
+    /** 包内使用, 测试用 */
+    static long verifiedTokenSize() {
+        VERIFIED_TOKEN.cleanUp();
+        return VERIFIED_TOKEN.estimatedSize();
+    }
+
+    /** @param expireMs token 的过期时间(毫秒时间戳), 0 表示不过期 */
+    private record VerifiedToken(Map<String, Object> session, long expireMs) {}
+
+    /** 缓存在 token 过期时失效, token 没有过期时间则在 maxMs 之后失效 */
+    private record TokenExpiry<V>(ToLongFunction<V> expireMs, long maxMs) implements Expiry<String, V> {
+        @Override
+        public long expireAfterCreate(String key, V value, long currentTime) {
+            long expire = expireMs.applyAsLong(value);
+            long remainMs = expire > 0 ? Math.min(expire - System.currentTimeMillis(), maxMs) : maxMs;
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(remainMs, 0));
+        }
+        @Override
+        public long expireAfterUpdate(String key, V value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+        @Override
+        public long expireAfterRead(String key, V value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
     }
 }
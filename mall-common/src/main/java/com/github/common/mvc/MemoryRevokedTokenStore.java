@@ -0,0 +1,45 @@
+package com.github.common.mvc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/** 放在当前节点内存中的已注销 token, 没有数量上限, 过期的在查询时及每分钟一次的注销时清除 */
+final class MemoryRevokedTokenStore implements RevokedTokenStore {
+
+    private static final long SWEEP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /** key 是 token 的摘要, value 是 token 的过期时间 */
+    private final ConcurrentMap<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile long nextSweepMs;
+
+    @Override
+    public void revoke(String digest, long expireMs) {
+        long now = System.currentTimeMillis();
+        if (expireMs > 0 && expireMs <= now) {
+            return;
+        }
+        revoked.put(digest, expireMs > 0 ? expireMs : Long.MAX_VALUE);
+        if (now >= nextSweepMs) {
+            nextSweepMs = now + SWEEP_INTERVAL_MS;
+            revoked.values().removeIf(expire -> expire <= now);
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String digest) {
+        Long expireMs = revoked.get(digest);
+        if (expireMs == null) {
+            return false;
+        }
+        if (expireMs <= System.currentTimeMillis()) {
+            revoked.remove(digest, expireMs);
+            return false;
+        }
+        return true;
+    }
+
+    int size() {
+        return revoked.size();
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.common.mvc;
+
+import com.github.common.util.Obj;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * <pre>
+ * 按 url 的路径段(/ 分隔)构建的权限树, 每个节点用位来记录允许的请求方法, 构建之后不可变.
+ * 判断权限的耗时只跟 url 的层级有关, 跟权限的数量无关
+ *
+ * 匹配规则跟逐条比较一致:
+ *   url: 以 /* 结尾的是前缀匹配(/user/* 可以访问 /user/info 及 /user/a/b), 否则全字匹配
+ *   method: * 表示所有方法, 否则包含请求方法就可以访问(GET,POST 可以访问 GET 和 POST)
+ *
+ * PermissionTrie trie = PermissionTrie.builder().add("/user/*", "GET,POST").add("/order/info", "*").build();
+ * trie.match("/user/info", "GET");
+ * </pre>
+ */
+public final class PermissionTrie implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final String SPLIT = "/";
+    private static final String WILDCARD = "*";
+    private static final String PREFIX_WILDCARD = SPLIT + WILDCARD;
+
+    /** 请求方法对应的位, 不在这里面的方法用字符串比较 */
+    private static final List<String> METHODS = List.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS", "TRACE");
+    private static final int ALL_METHOD = -1;
+
+    private final Node root;
+    /** 以 /* 结尾但前面还有 * 的(比如 /a/*&#47;b/*), 无法放进树中, 逐条比较 */
+    private final List<Entry> otherList;
+
+    private PermissionTrie(Node root, List<Entry> otherList) {
+        this.root = root;
+        this.otherList = otherList;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** 有访问权限就返回 true */
+    public boolean match(String url, String method) {
+        if (Obj.isNull(url) || Obj.isNull(method)) {
+            return false;
+        }
+
+        int bit = methodBit(method);
+        Node node = root;
+        int start = 0;
+        for (;;) {
+            int end = url.indexOf(SPLIT, start);
+            String segment = (end < 0) ? url.substring(start) : url.substring(start, end);
+            node = node.children.get(segment);
+            if (Obj.isNull(node)) {
+                break;
+            }
+            if (end < 0) {
+                // 所有的段都匹配上了: 全字匹配
+                if (node.exact.match(bit, method)) {
+                    return true;
+                }
+                break;
+            }
+            // 后面还有段(包括空的段, 比如 /user/ 之于 /user/*): 前缀匹配
+            if (node.prefix.match(bit, method)) {
+                return true;
+            }
+            start = end + 1;
+        }
+
+        for (Entry entry : otherList) {
+            if (url.startsWith(entry.url) && entry.method.match(bit, method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int methodBit(String method) {
+        int index = METHODS.indexOf(method);
+        return index < 0 ? 0 : (1 << index);
+    }
+
+
+    public static final class Builder {
+        private final MutableNode root = new MutableNode();
+        private final List<Entry> otherList = new ArrayList<>();
+
+        private Builder() {}
+
+        /**
+         * @param url 权限路径, 以 /* 结尾表示前缀匹配
+         * @param method 权限方法, * 表示所有, 多个用逗号隔开
+         */
+        public Builder add(String url, String method) {
+            if (Obj.isNull(url) || Obj.isNull(method)) {
+                return this;
+            }
+
+            boolean prefix = url.endsWith(PREFIX_WILDCARD);
+            String path = prefix ? url.substring(0, url.length() - PREFIX_WILDCARD.length()) : url;
+            if (prefix && path.contains(WILDCARD)) {
+                MutableMethod mm = new MutableMethod();
+                mm.add(method);
+                otherList.add(new Entry(url.replace(WILDCARD, ""), mm.toMethodMatch()));
+                return this;
+            }
+
+            MutableNode node = root;
+            for (String segment : path.split(SPLIT, -1)) {
+                node = node.children.computeIfAbsent(segment, k -> new MutableNode());
+            }
+            (prefix ? node.prefix : node.exact).add(method);
+            return this;
+        }
+
+        public PermissionTrie build() {
+            return new PermissionTrie(root.toNode(), List.copyOf(otherList));
+        }
+    }
+
+    private static final class MutableNode {
+        private final Map<String, MutableNode> children = new HashMap<>();
+        private final MutableMethod exact = new MutableMethod();
+        private final MutableMethod prefix = new MutableMethod();
+
+        private Node toNode() {
+            Map<String, Node> map = new HashMap<>();
+            for (Map.Entry<String, MutableNode> entry : children.entrySet()) {
+                map.put(entry.getKey(), entry.getValue().toNode());
+            }
+            return new Node(Map.copyOf(map), exact.toMethodMatch(), prefix.toMethodMatch());
+        }
+    }
+
+    private static final class MutableMethod {
+        private int mask;
+        private final Set<String> otherMethods = new LinkedHashSet<>();
+
+        private void add(String method) {
+            if (WILDCARD.equals(method)) {
+                mask = ALL_METHOD;
+                return;
+            }
+            for (int i = 0; i < METHODS.size(); i++) {
+                if (method.contains(METHODS.get(i))) {
+                    mask |= (1 << i);
+                }
+            }
+            otherMethods.add(method);
+        }
+
+        private MethodMatch toMethodMatch() {
+            // 已经是所有方法了就不需要再比较字符串
+            return new MethodMatch(mask, mask == ALL_METHOD ? List.of() : List.copyOf(otherMethods));
+        }
+    }
+
+    private record Node(Map<String, Node> children, MethodMatch exact, MethodMatch prefix) implements Serializable {}
+
+    private record Entry(String url, MethodMatch method) implements Serializable {}
+
+    /** @param otherMethods 配置的原始方法, 请求方法不在 {@link #METHODS} 中时用来比较 */
+    private record MethodMatch(int mask, List<String> otherMethods) implements Serializable {
+        private boolean match(int bit, String method) {
+            if (mask == ALL_METHOD || (mask & bit) != 0) {
+                return true;
+            }
+            if (bit == 0) {
+                for (String otherMethod : otherMethods) {
+                    if (otherMethod.contains(method)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.common.mvc;
+
+/**
+ * <pre>
+ * 已经注销的 token, 键是 token 的摘要, 只按 token 的过期时间失效, 不能按数量淘汰(淘汰了就相当于恢复了这个 token).
+ *
+ * 默认放在当前节点的内存中, 多节点部署时用 {@link AppTokenHandler#setRevokedTokenStore} 换成 redis 之类的共享存储,
+ * 共享存储在注销时要通知所有节点调用 {@link AppTokenHandler#evictVerified}, 验证过的 token 在本地缓存中时不会再查询这里
+ * </pre>
+ */
+public interface RevokedTokenStore {
+
+    /**
+     * 注销
+     *
+     * @param digest token 的摘要
+     * @param expireMs token 的过期时间(毫秒时间戳), 0 表示不过期
+     */
+    void revoke(String digest, long expireMs);
+
+    /** 是否已经注销 */
+    boolean isRevoked(String digest);
+}
@@ -1,11 +1,10 @@
 package com.github.common.sql;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.common.date.Dates;
 import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
 import com.mysql.cj.MysqlConnection;
+import com.mysql.cj.PreparedQuery;
 import com.mysql.cj.Query;
 import com.mysql.cj.Session;
 import com.mysql.cj.conf.HostInfo;
@@ -18,98 +17,193 @@ import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
-import java.util.regex.Pattern;
 
 /**
+ * <pre>
  * mysql 5 的连接参数是: &statementInterceptors=com.github.common.sql.ShowSql5Interceptor
  * mysql 8 的连接参数是: &queryInterceptors=com.github.common.sql.ShowSqlInterceptor
+ *
+ * 两种输出:
+ *   1. 当前线程设置了 {@link ShowSqlThreadLocal#setPrint()} 且 sqlLog 开启了 debug 时, 执行前输出 sql, 执行后输出耗时
+ *   2. 连接参数中加上 &showSqlSlowMillis=500 时, 每条 sql 都计时, 耗时达到 500 毫秒的用 warn 输出 耗时、返回条数 和 sql.
+ *      没有超过的只有两次 nanoTime 和一次 ThreadLocal 取值, 不会生成 sql 字符串
+ *   3. 连接参数中加上 &showSqlStats=true 时, 每条 sql 按指纹汇总到 {@link SqlStatistics#GLOBAL}.
+ *      预编译的 sql 用带 ? 的原始 sql 生成指纹, 不需要生成带参数值的 sql
+ * </pre>
  */
 public class ShowSqlInterceptor implements QueryInterceptor {
 
-    private static final String TIME_SPLIT = "~";
-    private static final Pattern BLANK_REGEX = Pattern.compile("\\s{1,}");
+    /** 慢 sql 的阈值(毫秒), 在连接参数中设置, 不设置或小于 0 时不计时 */
+    static final String SLOW_MILLIS = "showSqlSlowMillis";
+    /** 是否按指纹汇总统计, 在连接参数中设置 */
+    static final String STATS = "showSqlStats";
+
     private static final AtomicLong ID = new AtomicLong(0L);
-    /** 每条 sql 执行前记录时间戳, 如果使用 ThreadLocal 会有 pre 了但运行时异常不去 post 的情况 */
-    private static final Cache<Thread, String> SQL_TIME_CACHE =
-            Caffeine.newBuilder().maximumSize(2000).expireAfterWrite(30, TimeUnit.MINUTES).build();
+    /**
+     * 每条 sql 执行前记录时间. 执行时异常没有 post 的, 下一条 sql 的 pre 会覆盖掉;
+     * 每个线程只有一个对象, 不会像 Cache<Thread, String> 那样每次都拼接字符串再拆开
+     */
+    private static final ThreadLocal<SqlTime> SQL_TIME = ThreadLocal.withInitial(SqlTime::new);
+
+    private long slowNanos = -1;
+    private boolean stats;
 
     @Override
     public QueryInterceptor init(MysqlConnection conn, Properties props, Log log) {
+        if (Obj.isNotNull(props)) {
+            long slowMillis = Obj.toLong(props.getProperty(SLOW_MILLIS), -1L);
+            slowNanos = slowMillis < 0 ? -1 : TimeUnit.MILLISECONDS.toNanos(slowMillis);
+            stats = Obj.toBool(props.getProperty(STATS));
+        }
         return this;
     }
 
     @Override
     public <T extends Resultset> T preProcess(Supplier<String> sql, Query query) {
-        if (ShowSqlThreadLocal.hasPrint() && LogUtil.SQL_LOG.isDebugEnabled()) {
-            String realSql = getRealSql(sql);
-            if (Obj.isNotBlank(realSql)) {
-                long id = ID.addAndGet(1);
-                SQL_TIME_CACHE.put(Thread.currentThread(), id + TIME_SPLIT + System.currentTimeMillis());
-                String dataSource = "";
-                if (Obj.isNotNull(query)) {
-                    Session session = query.getSession();
-                    if (Obj.isNotNull(session)) {
-                        HostInfo hostInfo = session.getHostInfo();
-                        if (Obj.isNotNull(hostInfo)) {
-                            dataSource = ", db: " + hostInfo.getHost() + ":" + hostInfo.getPort() + "/" + hostInfo.getDatabase();
-                        }
-                    }
+        boolean print = ShowSqlThreadLocal.hasPrint() && LogUtil.SQL_LOG.isDebugEnabled();
+        if (print || slowNanos >= 0 || stats) {
+            SqlTime time = SQL_TIME.get();
+            time.id = 0;
+            if (print) {
+                String realSql = getRealSql(sql);
+                if (Obj.isNotBlank(realSql)) {
+                    time.id = ID.incrementAndGet();
+                    LogUtil.SQL_LOG.debug("id: {}{}, sql: {}", time.id, dataSource(query), realSql);
                 }
-                LogUtil.SQL_LOG.debug("id: {}{}, sql: {}", id, dataSource, realSql);
             }
+            time.running = true;
+            time.start = System.nanoTime();
         }
         return null;
     }
 
-    private String getRealSql(Supplier<String> sql) {
+    @Override
+    public <T extends Resultset> T postProcess(Supplier<String> sql, Query query, T rs, ServerSession serverSession) {
+        boolean print = ShowSqlThreadLocal.hasPrint() && LogUtil.SQL_LOG.isDebugEnabled();
+        if (print || slowNanos >= 0 || stats) {
+            long end = System.nanoTime();
+            SqlTime time = SQL_TIME.get();
+            if (!time.running) {
+                return null;
+            }
+            time.running = false;
+            long useNanos = end - time.start;
+
+            if (print && time.id > 0) {
+                StringBuilder sbd = new StringBuilder();
+                sbd.append("id: ").append(time.id);
+                sbd.append(", use-time: ").append(Dates.toHuman(TimeUnit.NANOSECONDS.toMillis(useNanos)));
+                if (Obj.isNotNull(rs) && rs.hasRows()) {
+                    sbd.append(", return-size: ").append(returnSize(rs));
+                }
+                LogUtil.SQL_LOG.debug(sbd.toString());
+            }
+            if (slowNanos >= 0 && useNanos >= slowNanos && LogUtil.SQL_LOG.isWarnEnabled()) {
+                // 只有慢 sql 才生成 sql 字符串并处理空白符
+                String realSql = getRealSql(sql);
+                if (Obj.isNotBlank(realSql)) {
+                    LogUtil.SQL_LOG.warn("slow sql, use-time: {}, return-size: {}{}, sql: {}",
+                            Dates.toHuman(TimeUnit.NANOSECONDS.toMillis(useNanos)),
+                            returnSize(rs), dataSource(query), realSql);
+                }
+            }
+            if (stats) {
+                SqlStatistics.GLOBAL.record(statsSql(sql, query), useNanos, returnSize(rs));
+            }
+        }
+        return null;
+    }
+
+    private static int returnSize(Resultset rs) {
+        return (Obj.isNotNull(rs) && rs.hasRows()) ? rs.getRows().size() : 0;
+    }
+
+    /** 预编译的用原始 sql(参数是 ?), 其他的才生成 sql */
+    private static String statsSql(Supplier<String> sql, Query query) {
+        if (query instanceof PreparedQuery) {
+            String originalSql = ((PreparedQuery) query).getOriginalSql();
+            if (Obj.isNotBlank(originalSql)) {
+                return originalSql;
+            }
+        }
+        return Obj.isNull(sql) ? null : sql.get();
+    }
+
+    private static String getRealSql(Supplier<String> sql) {
         if (Obj.isNull(sql)) {
             return null;
         }
 
         // String realSql = SQLUtils.formatMySql(sql.get().replaceFirst("^\\s*?\n", ""));
         // String realSql = SqlFormat.format(sql.get().replaceFirst("^\\s*?\n", ""));
-        return BLANK_REGEX.matcher(sql.get().replaceFirst("^\\s*?\n", "")).replaceAll(" ");
+        return compact(sql.get());
     }
 
-    @Override
-    public <T extends Resultset> T postProcess(Supplier<String> sql, Query query, T rs, ServerSession serverSession) {
-        if (ShowSqlThreadLocal.hasPrint() && LogUtil.SQL_LOG.isDebugEnabled()) {
-            String realSql = getRealSql(sql);
-            if (Obj.isNotBlank(realSql)) {
-                Thread thread = Thread.currentThread();
-                String idAndTime = SQL_TIME_CACHE.getIfPresent(thread);
-                if (Obj.isNotNull(idAndTime)) {
-                    try {
-                        String[] split = idAndTime.split(TIME_SPLIT);
-                        if (split.length == 2) {
-                            long id = Obj.toLong(split[0]);
-                            long start = Obj.toLong(split[1]);
-
-                            StringBuilder sbd = new StringBuilder();
-                            if (Obj.greater0(id)) {
-                                sbd.append("id: ").append(id);
-                            }
-                            if (Obj.greater0(start)) {
-                                sbd.append(", use-time: ").append(Dates.toHuman(System.currentTimeMillis() - start));
-                            }
-                            if (Obj.isNotNull(rs) && rs.hasRows()) {
-                                sbd.append(", return-size: ").append(rs.getRows().size());
-                            }
-                            LogUtil.SQL_LOG.debug(sbd.toString());
-                        }
-                    } finally {
-                        SQL_TIME_CACHE.invalidate(thread);
-                    }
+    /**
+     * 一次遍历: 去掉首尾的空白符, 中间连续的空白符(跟正则的 \s 一样: 空格 \t \n \x0B \f \r)换成一个空格.
+     * 不需要处理时返回原字符串
+     */
+    public static String compact(String sql) {
+        if (Obj.isNull(sql)) {
+            return null;
+        }
+        int len = sql.length();
+        int i = 0;
+        // 第一个需要改动的位置: 开头的空白符、不是单个空格的空白符、连续的空白符
+        for (; i < len; i++) {
+            char c = sql.charAt(i);
+            if (isBlank(c) && (i == 0 || c != ' ' || i + 1 == len || isBlank(sql.charAt(i + 1)))) {
+                break;
+            }
+        }
+        if (i == len) {
+            return sql;
+        }
+
+        StringBuilder sbd = new StringBuilder(len);
+        sbd.append(sql, 0, i);
+        boolean blank = false;
+        for (; i < len; i++) {
+            char c = sql.charAt(i);
+            if (isBlank(c)) {
+                blank = true;
+            } else {
+                if (blank && sbd.length() > 0) {
+                    sbd.append(' ');
                 }
+                blank = false;
+                sbd.append(c);
             }
         }
-        return null;
+        return sbd.toString();
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static String dataSource(Query query) {
+        if (Obj.isNotNull(query)) {
+            Session session = query.getSession();
+            if (Obj.isNotNull(session)) {
+                HostInfo hostInfo = session.getHostInfo();
+                if (Obj.isNotNull(hostInfo)) {
+                    return ", db: " + hostInfo.getHost() + ":" + hostInfo.getPort() + "/" + hostInfo.getDatabase();
+                }
+            }
+        }
+        return "";
     }
 
     @Override
     public boolean executeTopLevelOnly() { return false; }
     @Override
     public void destroy() {
-        SQL_TIME_CACHE.cleanUp();
+    }
+
+    private static final class SqlTime {
+        private boolean running;
+        private long id;
+        private long start;
     }
 }
@@ -0,0 +1,216 @@
+package com.github.common.sql;
+
+import com.github.common.util.Obj;
+
+/**
+ * <pre>
+ * sql 指纹: 只有字面量不同的 sql 归一成同一条, 一次遍历
+ *
+ * 1. 字符串('abc' "abc" x'0F' b'01' n'abc')、数字(1 -1 1.5 .5 1e3 0x1F) 换成 ?
+ * 2. 只有 ? 的括号换成 (?+), 所以 in (1, 2, 3) 跟 in (?) 一样; values (?+), (?+) 多行插入合并成一个 (?+)
+ * 3. 去掉注释(/* *&#47;  -- 和 #), 连续的空白符换成一个空格, 逗号后面统一一个空格, 括号内侧不要空格
+ * 4. 关键字和表名列名转成小写, `` 中的原样保留
+ *
+ * select * from t_user where id in (1,2) and name = 'abc'  -->  select * from t_user where id in (?+) and name = ?
+ * </pre>
+ */
+public final class SqlFingerprint {
+
+    private static final String LIST = "(?+)";
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private SqlFingerprint() {}
+
+    public static String fingerprint(String sql) {
+        if (Obj.isNull(sql)) {
+            return null;
+        }
+        int len = sql.length();
+        StringBuilder sbd = new StringBuilder(len);
+        // 还没有闭合的左括号在 sbd 中的位置
+        int[] parens = new int[8];
+        int depth = 0;
+        boolean blank = false;
+        for (int i = 0; i < len; i++) {
+            char c = sql.charAt(i);
+            char next = (i + 1 < len) ? sql.charAt(i + 1) : 0;
+
+            if (isBlank(c)) {
+                blank = true;
+            } else if (c == '/' && next == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = (end < 0) ? len : end + 1;
+                blank = true;
+            } else if (c == '#' || (c == '-' && next == '-' && (i + 2 == len || isBlank(sql.charAt(i + 2))))) {
+                int end = sql.indexOf('\n', i);
+                i = (end < 0) ? len : end;
+                blank = true;
+            } else if (c == '\'' || c == '"') {
+                i = skipQuote(sql, i, c);
+                // x'0F' b'01' n'abc' 前面的字母也是字面量的一部分
+                int last = sbd.length() - 1;
+                if (!blank && last >= 0 && "xXbBnN".indexOf(sbd.charAt(last)) >= 0 && (last == 0 || !isWord(sbd.charAt(last - 1)))) {
+                    sbd.setLength(last);
+                }
+                append(sbd, '?', blank);
+                blank = false;
+            } else if (c == '`') {
+                int end = skipQuote(sql, i, c);
+                append(sbd, c, blank);
+                sbd.append(sql, i + 1, Math.min(end + 1, len));
+                i = end;
+                blank = false;
+            } else if ((isDigit(c) || (c == '.' && isDigit(next))) && (blank || sbd.length() == 0 || !isWord(sbd.charAt(sbd.length() - 1)))) {
+                i = skipNumber(sql, i);
+                // 紧挨着数字的正负号, 前面不是 列名 ) ? 时也是字面量的一部分: id = -1  -->  id = ?
+                if (!blank && isSignOfNumber(sbd)) {
+                    sbd.setLength(sbd.length() - 1);
+                    blank = sbd.length() > 0 && sbd.charAt(sbd.length() - 1) == ' ';
+                    if (blank) {
+                        sbd.setLength(sbd.length() - 1);
+                    }
+                }
+                append(sbd, '?', blank);
+                blank = false;
+            } else if (c == '(') {
+                append(sbd, c, blank);
+                if (depth == parens.length) {
+                    int[] tmp = new int[depth << 1];
+                    System.arraycopy(parens, 0, tmp, 0, depth);
+                    parens = tmp;
+                }
+                parens[depth++] = sbd.length() - 1;
+                blank = false;
+            } else if (c == ')') {
+                sbd.append(c);
+                if (depth > 0) {
+                    collapse(sbd, parens[--depth]);
+                }
+                blank = false;
+            } else if (c == ',') {
+                sbd.append(c);
+                // 逗号后面统一一个空格
+                blank = true;
+            } else {
+                append(sbd, Character.toLowerCase(c), blank);
+                blank = false;
+            }
+        }
+        return sbd.toString();
+    }
+
+    /** 指纹的 16 位摘要(64 位 FNV-1a), 同样的指纹在不同的机器和进程中都一样 */
+    public static String digest(String fingerprint) {
+        if (Obj.isNull(fingerprint)) {
+            return null;
+        }
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < fingerprint.length(); i++) {
+            char c = fingerprint.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        String hex = Long.toHexString(hash);
+        return "0".repeat(16 - hex.length()) + hex;
+    }
+
+    private static void append(StringBuilder sbd, char c, boolean blank) {
+        int length = sbd.length();
+        // 括号内侧和逗号前面不要空格
+        if (blank && length > 0 && sbd.charAt(length - 1) != '(' && c != ',') {
+            sbd.append(' ');
+        }
+        sbd.append(c);
+    }
+
+    /** 刚写入的 ) 和对应的 ( 之间只有 ? 时换成 (?+), 多个 (?+) 挨着时合并成一个 */
+    private static void collapse(StringBuilder sbd, int start) {
+        int end = sbd.length() - 1;
+        boolean hasParam = false;
+        for (int i = start + 1; i < end; i++) {
+            char c = sbd.charAt(i);
+            if (c == '?') {
+                hasParam = true;
+            } else if (c != ',' && c != ' ') {
+                return;
+            }
+        }
+        if (!hasParam) {
+            return;
+        }
+        sbd.setLength(start);
+        sbd.append(LIST);
+
+        // values (?+), (?+)  -->  values (?+)
+        int prev = start - LIST.length() - 2;
+        if (prev >= 0 && sbd.charAt(start - 1) == ' ' && sbd.charAt(start - 2) == ','
+                && sbd.substring(prev, start - 2).equals(LIST)) {
+            sbd.setLength(start - 2);
+        }
+    }
+
+    /** 返回引号结束的位置, 支持 \ 转义和两个引号连写 */
+    private static int skipQuote(String sql, int start, char quote) {
+        int len = sql.length();
+        for (int i = start + 1; i < len; i++) {
+            char c = sql.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i++;
+            } else if (c == quote) {
+                if (i + 1 < len && sql.charAt(i + 1) == quote) {
+                    i++;
+                } else {
+                    return i;
+                }
+            }
+        }
+        return len;
+    }
+
+    /** 返回数字最后一个字符的位置: 123 1.5 1e-3 0x1F */
+    private static int skipNumber(String sql, int start) {
+        int len = sql.length();
+        int i = start;
+        while (i + 1 < len) {
+            char c = sql.charAt(i);
+            char next = sql.charAt(i + 1);
+            if (isWord(next) || next == '.') {
+                i++;
+            } else if ((c == 'e' || c == 'E') && (next == '+' || next == '-') && i + 2 < len && isDigit(sql.charAt(i + 2))) {
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    private static boolean isSignOfNumber(StringBuilder sbd) {
+        int last = sbd.length() - 1;
+        if (last < 0 || (sbd.charAt(last) != '-' && sbd.charAt(last) != '+')) {
+            return false;
+        }
+        int prev = last - 1;
+        if (prev >= 0 && sbd.charAt(prev) == ' ') {
+            prev--;
+        }
+        if (prev < 0) {
+            return true;
+        }
+        char c = sbd.charAt(prev);
+        return !isWord(c) && c != ')' && c != '?' && c != '`';
+    }
+
+    private static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWord(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_' || c == '$' || c >= 0x80;
+    }
+}
@@ -0,0 +1,190 @@
+package com.github.common.sql;
+
+import com.github.common.util.Obj;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 按 {@link SqlFingerprint sql 指纹} 汇总的执行统计: 次数、总耗时、最大耗时、返回条数、耗时分布.
+ *
+ * 最多保留 maxSize 条指纹, 超出时丢弃最久没有执行过的(LRU), 只在查找指纹时加锁, 记录不加锁.
+ * 连接参数中加上 &showSqlStats=true 时由 {@link ShowSqlInterceptor} 记录到 {@link #GLOBAL}
+ * </pre>
+ */
+public final class SqlStatistics {
+
+    private static final int DEFAULT_SIZE = 1000;
+    /** 耗时分布每个桶的上界(毫秒), 最后还有一个大于 10 秒的桶 */
+    private static final long[] BUCKET_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+    private static final long[] BUCKET_NANOS = new long[BUCKET_MS.length];
+    static {
+        for (int i = 0; i < BUCKET_MS.length; i++) {
+            BUCKET_NANOS[i] = BUCKET_MS[i] * 1_000_000L;
+        }
+    }
+
+    public static final SqlStatistics GLOBAL = new SqlStatistics(DEFAULT_SIZE);
+
+    @Getter
+    private final int maxSize;
+    private final LongAdder evicted = new LongAdder();
+    private final LinkedHashMap<String, Stat> stats;
+
+    public SqlStatistics(int maxSize) {
+        this.maxSize = Math.max(maxSize, 1);
+        this.stats = new LinkedHashMap<>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Stat> eldest) {
+                boolean remove = size() > SqlStatistics.this.maxSize;
+                if (remove) {
+                    evicted.increment();
+                }
+                return remove;
+            }
+        };
+    }
+
+    /**
+     * @param sql   原始 sql, 记录前生成指纹
+     * @param nanos 耗时(纳秒)
+     * @param rows  返回条数
+     */
+    public void record(String sql, long nanos, long rows) {
+        String fingerprint = SqlFingerprint.fingerprint(sql);
+        if (Obj.isBlank(fingerprint)) {
+            return;
+        }
+        Stat stat;
+        synchronized (stats) {
+            stat = stats.get(fingerprint);
+            if (Obj.isNull(stat)) {
+                stat = new Stat();
+                stats.put(fingerprint, stat);
+            }
+        }
+        stat.record(nanos, rows);
+    }
+
+    /** 当前的指纹数 */
+    public int size() {
+        synchronized (stats) {
+            return stats.size();
+        }
+    }
+
+    /** 因为超出 maxSize 被丢弃的指纹数 */
+    public long evicted() {
+        return evicted.sum();
+    }
+
+    public void clear() {
+        synchronized (stats) {
+            stats.clear();
+        }
+    }
+
+    /** 总耗时最多的 top 条, 返回的是快照 */
+    public List<SqlStat> top(int top) {
+        List<Map.Entry<String, Stat>> entries;
+        synchronized (stats) {
+            entries = new ArrayList<>(stats.entrySet());
+        }
+        List<SqlStat> list = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Stat> entry : entries) {
+            list.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        list.sort(Comparator.comparingLong(SqlStat::getTotalNanos).reversed());
+        return (top > 0 && list.size() > top) ? new ArrayList<>(list.subList(0, top)) : list;
+    }
+
+    static int bucket(long nanos) {
+        for (int i = 0; i < BUCKET_NANOS.length; i++) {
+            if (nanos <= BUCKET_NANOS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_NANOS.length;
+    }
+
+    private static final class Stat {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder rows = new LongAdder();
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_MS.length + 1);
+
+        private void record(long nanos, long rowSize) {
+            long v = Math.max(nanos, 0);
+            count.increment();
+            totalNanos.add(v);
+            if (v > maxNanos.get()) {
+                maxNanos.accumulateAndGet(v, Math::max);
+            }
+            rows.add(Math.max(rowSize, 0));
+            buckets.incrementAndGet(bucket(v));
+        }
+
+        private SqlStat snapshot(String fingerprint) {
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length(); i++) {
+                long n = buckets.get(i);
+                if (n > 0) {
+                    histogram.put(i < BUCKET_MS.length ? ("<=" + BUCKET_MS[i] + "ms") : (">" + BUCKET_MS[i - 1] + "ms"), n);
+                }
+            }
+            return new SqlStat(SqlFingerprint.digest(fingerprint), fingerprint, count.sum(),
+                    totalNanos.sum(), maxNanos.get(), rows.sum(), histogram);
+        }
+    }
+
+    /** 一条指纹的统计快照 */
+    @Getter
+    public static final class SqlStat {
+        /** 指纹的摘要 */
+        private final String digest;
+        /** 指纹 */
+        private final String sql;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+        /** 返回的总条数 */
+        private final long rows;
+        /** 耗时分布, 只有有记录的桶: <=1ms、<=2ms ... >10000ms */
+        private final Map<String, Long> histogram;
+
+        private SqlStat(String digest, String sql, long count, long totalNanos, long maxNanos, long rows, Map<String, Long> histogram) {
+            this.digest = digest;
+            this.sql = sql;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.rows = rows;
+            this.histogram = histogram;
+        }
+
+        public double getTotalMs() {
+            return toMs(totalNanos);
+        }
+
+        public double getAvgMs() {
+            return count == 0 ? 0 : toMs(totalNanos) / count;
+        }
+
+        public double getMaxMs() {
+            return toMs(maxNanos);
+        }
+
+        private static double toMs(long nanos) {
+            return nanos / 1_000_000D;
+        }
+    }
+}
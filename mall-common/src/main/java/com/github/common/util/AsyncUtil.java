@@ -84,6 +84,30 @@ public final class AsyncUtil {
         }
     }
 
+    /**
+     * 只把主线程的日志上下文(traceId 等)带到执行的线程, 执行完恢复成执行之前的.
+     * 任务被拒绝后在调用方的线程中执行(比如 CallerRunsPolicy)时, 也不会清掉调用方自己的上下文
+     */
+    public static Runnable wrapLogContext(Runnable runnable) {
+        Map<String, String> logContextMap = MDC.getCopyOfContextMap();
+        return () -> {
+            Map<String, String> previous = MDC.getCopyOfContextMap();
+            try {
+                setLogContext(logContextMap);
+                runnable.run();
+            } finally {
+                setLogContext(previous);
+            }
+        };
+    }
+    private static void setLogContext(Map<String, String> logContextMap) {
+        if (Arr.isNotEmpty(logContextMap)) {
+            MDC.setContextMap(logContextMap);
+        } else {
+            MDC.clear();
+        }
+    }
+
     /** 回调线程想要共享主线程的上下文, 使用此方法 */
     public static <T> Callable<T> wrapCallContext(Callable<T> callable) {
         RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
@@ -7,8 +7,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <pre>
@@ -21,13 +19,13 @@ import java.util.concurrent.locks.ReentrantLock;
  * 3. 进程数据
  * 4. 自增数据
  *
- * 当 1 毫秒内自增达到了最大则使用下一毫秒; 如果碰到时钟回拨会休眠到下一时钟;
+ * 当 1 毫秒内自增达到了最大则使用下一毫秒; 如果碰到时钟回拨(5 毫秒内)会继续使用上次的时间截;
+ *
+ * 「上次的时间截 + 自增序列」打包在一个 AtomicLong 中, 用 CAS 更新, 不再加锁, 生成的 id 在当前进程中单调递增
  * </pre>
  */
 public class IdUtil {
 
-    private static final Lock LOCK = new ReentrantLock();
-
     /** 起始时间截 */
     private static final long START_MS = 1391371506897L;
 
@@ -58,11 +56,8 @@ public class IdUtil {
     /** 根据进程得到的 id */
     private static final long WORKER_ID;
 
-    /** 同一毫秒内的自增序列 */
-    private static long sequence = 0L;
-
-    /** 上次生成 id 的时间截 */
-    private static long lastTimestamp = -1L;
+    /** 高位是上次生成 id 的时间截(已减去起始时间截), 低 12 位是同一毫秒内的自增序列 */
+    private static final AtomicLong STATE = new AtomicLong(0L);
 
     static {
         DATACENTER_ID = getDatacenterId();
@@ -91,36 +86,37 @@ public class IdUtil {
         return (sbd.toString().hashCode() & 0xffff) % (MAX_WORKER_ID + 1);
     }
     private static long nextMillis(long lastTimestamp) {
-        long timestamp = getMs();
+        // 用实时的时间, 不依赖每毫秒更新一次的时间戳, 避免多个线程在此自旋时那个更新线程得不到执行
+        long timestamp = System.currentTimeMillis() - START_MS;
         while (timestamp <= lastTimestamp) {
-            timestamp = getMs();
+            Thread.yield();
+            timestamp = System.currentTimeMillis() - START_MS;
         }
         return timestamp;
     }
 
-    public synchronized static long getId() {
-        LOCK.lock();
-        try {
-            long timestamp = getMs();
+    public static long getId() {
+        for (;;) {
+            long state = STATE.get();
+            long lastTimestamp = state >>> SEQUENCE_BITS;
+            long timestamp = getMs() - START_MS;
+            if (timestamp < lastTimestamp) {
+                // 缓存的时间戳可能落后于上次用过的时间截, 用实时的时间再确认一次
+                timestamp = System.currentTimeMillis() - START_MS;
+            }
             if (timestamp < lastTimestamp) {
                 long offset = lastTimestamp - timestamp;
-                if (offset <= 5) {
-                    try {
-                        Thread.sleep(5 - offset);
-                    } catch (Exception e) {
-                        throw new RuntimeException(e);
-                    }
-                    timestamp = getMs();
-                    if (timestamp < lastTimestamp) {
-                        throw new RuntimeException(String.format("再次时钟回拨. %d 毫秒内拒绝生成 id", (lastTimestamp - timestamp)));
-                    }
-                } else {
+                if (offset > 5) {
                     throw new RuntimeException(String.format("时钟回拨. %d 毫秒内拒绝生成 id", offset));
                 }
+                // 5 毫秒内的回拨继续使用上次的时间截
+                timestamp = lastTimestamp;
             }
+
+            long sequence;
             if (lastTimestamp == timestamp) {
                 // 同毫秒时序列号自增
-                sequence = (sequence + 1) & SEQUENCE_MASK;
+                sequence = ((state & SEQUENCE_MASK) + 1) & SEQUENCE_MASK;
                 if (sequence == 0) {
                     // 同一毫秒自增达到最大时用下一毫秒
                     timestamp = nextMillis(lastTimestamp);
@@ -129,15 +125,13 @@ public class IdUtil {
                 // 不同毫秒序列号随机 1 或 2
                 sequence = ThreadLocalRandom.current().nextLong(1, 3);
             }
-            // 上次的时间截
-            lastTimestamp = timestamp;
-            // 移位 及 或运算 组成 64 位 id
-            return ((timestamp - START_MS) << TIMESTAMP_LEFT_SHIFT)
-                    | (DATACENTER_ID << DATACENTER_ID_SHIFT)
-                    | (WORKER_ID << WORKER_ID_SHIFT)
-                    | sequence;
-        } finally {
-            LOCK.unlock();
+            if (STATE.compareAndSet(state, (timestamp << SEQUENCE_BITS) | sequence)) {
+                // 移位 及 或运算 组成 64 位 id
+                return (timestamp << TIMESTAMP_LEFT_SHIFT)
+                        | (DATACENTER_ID << DATACENTER_ID_SHIFT)
+                        | (WORKER_ID << WORKER_ID_SHIFT)
+                        | sequence;
+            }
         }
     }
 
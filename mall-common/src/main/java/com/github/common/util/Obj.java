@@ -43,6 +43,9 @@ public final class Obj {
     /** 递归时的最大深度, 避免无限递归 */
     public static final int MAX_DEPTH = 20;
 
+    /** 导出等场景下日期的默认格式, DateTimeFormatter 是线程安全的, 不需要每次都创建 */
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
     /** 手机号. 见 <a href="https://zh.wikipedia.org/wiki/%E4%B8%AD%E5%9B%BD%E5%86%85%E5%9C%B0%E7%A7%BB%E5%8A%A8%E7%BB%88%E7%AB%AF%E9%80%9A%E8%AE%AF%E5%8F%B7%E6%AE%B5">https://zh.wikipedia.org/wiki/%E4%B8%AD%E5%9B%BD%E5%86%85%E5%9C%B0%E7%A7%BB%E5%8A%A8%E7%BB%88%E7%AB%AF%E9%80%9A%E8%AE%AF%E5%8F%B7%E6%AE%B5</a> */
     private static final Pattern PHONE = Pattern.compile("^1[3-9]\\d{9}$");
     /** _abc-def@123-hij.uvw_xyz.com 是正确的, -123@xyz.com 不是 */
@@ -880,7 +883,7 @@ public final class Obj {
             return toStr(defaultIfNull(invokeMethod(value, "getValue"), value));
         } else if (value instanceof Date d) {
             // 如果是日期, 则格式化
-            return DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").format(LocalDateTime.ofInstant(d.toInstant(), ZoneId.systemDefault()));
+            return DATE_TIME_FORMATTER.format(LocalDateTime.ofInstant(d.toInstant(), ZoneId.systemDefault()));
         } else {
             return toStr(value);
         }
@@ -0,0 +1,150 @@
+package com.github.common.export;
+
+import com.github.common.export.csv.ExportCsv;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+public class ExportCsvTest {
+
+    private static final int COUNT = 1_200_000;
+    /** 子进程的堆大小, 导出的文件(30M 左右)放不进去 */
+    private static final String CHILD_HEAP = "-Xmx32m";
+
+    @Test
+    public void sameAsContent() throws IOException {
+        LinkedHashMap<String, String> titleMap = new LinkedHashMap<>();
+        titleMap.put("id", "编号");
+        titleMap.put("name", "名称");
+        titleMap.put("remark", "备注");
+        List<Map<String, Object>> dataList = List.of(
+                Map.of("id", 1, "name", "abc", "remark", "有,逗号"),
+                Map.of("id", 2, "name", "a\"b", "remark", "换\n行"),
+                Map.of("id", 3, "name", "", "remark", "")
+        );
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ExportCsv.write(titleMap, dataList.iterator(), output);
+        Assert.assertEquals(ExportCsv.getContent(titleMap, dataList), output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void pageIterator() {
+        Iterator<Integer> iterator = ExportCsv.pageIterator(page -> page <= 3 ? List.of(page * 10 + 1, page * 10 + 2) : List.of());
+        List<Integer> list = new ArrayList<>();
+        iterator.forEachRemaining(list::add);
+        Assert.assertEquals(List.of(11, 12, 21, 22, 31, 32), list);
+    }
+
+    @Test
+    public void stream() throws IOException {
+        int[] generated = new int[1];
+        CountOutputStream output = new CountOutputStream(generated);
+        long start = System.currentTimeMillis();
+        ExportCsv.write(titleMap(), iterator(generated), output);
+        long end = System.currentTimeMillis();
+
+        Assert.assertEquals(COUNT + 1, output.lines);
+        // 第一次写入输出流时, 数据还远没有生成完
+        Assert.assertTrue(output.generatedOnFirstWrite < COUNT / 100);
+        // 每次写入输出流的数据是有上限的, 不会把整个文件放进内存
+        Assert.assertTrue(output.maxWrite <= 8192 * 4);
+        System.out.printf("rows: %s, bytes: %s, max write: %s, time: %sms\n", COUNT, output.bytes, output.maxWrite, (end - start));
+    }
+
+    @Test
+    public void boundedMemory() throws Exception {
+        // 在堆很小的子进程中导出: 流式写入能完成, 整个文件放进内存的会 OOM, 说明堆确实放不下整个文件
+        Assert.assertEquals(0, fork("stream"));
+        Assert.assertNotEquals(0, fork("buffer"));
+    }
+
+    /** 子进程: stream 流式写入, buffer 先把整个文件写进内存 */
+    public static void main(String[] args) throws IOException {
+        int[] generated = new int[1];
+        if ("buffer".equals(args[0])) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ExportCsv.write(titleMap(), iterator(generated), output);
+            System.out.println(output.size());
+        } else {
+            CountOutputStream output = new CountOutputStream(generated);
+            ExportCsv.write(titleMap(), iterator(generated), output);
+            if (output.lines != COUNT + 1) {
+                System.exit(2);
+            }
+        }
+    }
+
+    private static int fork(String mode) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, CHILD_HEAP, "-cp",
+                System.getProperty("java.class.path"), ExportCsvTest.class.getName(), mode)
+                .redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+        if (!process.waitFor(5, TimeUnit.MINUTES)) {
+            process.destroyForcibly();
+            Assert.fail("导出(" + mode + ")超时");
+        }
+        return process.exitValue();
+    }
+
+    private static LinkedHashMap<String, String> titleMap() {
+        LinkedHashMap<String, String> titleMap = new LinkedHashMap<>();
+        titleMap.put("id", "编号");
+        titleMap.put("name", "名称");
+        titleMap.put("amount", "金额");
+        return titleMap;
+    }
+
+    /** 数据在迭代时才生成, 不会一次性放进内存 */
+    private static Iterator<Map<String, Object>> iterator(int[] generated) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return generated[0] < COUNT;
+            }
+            @Override
+            public Map<String, Object> next() {
+                int i = generated[0]++;
+                return Map.of("id", i, "name", "name-" + i, "amount", i * 1.5);
+            }
+        };
+    }
+
+    private static class CountOutputStream extends OutputStream {
+        private final int[] generated;
+        private long bytes;
+        private int lines = 1;
+        private int maxWrite;
+        private int generatedOnFirstWrite = -1;
+
+        CountOutputStream(int[] generated) {
+            this.generated = generated;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (generatedOnFirstWrite < 0) {
+                generatedOnFirstWrite = generated[0];
+            }
+            bytes += len;
+            maxWrite = Math.max(maxWrite, len);
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
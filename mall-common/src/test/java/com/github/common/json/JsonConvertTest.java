@@ -0,0 +1,126 @@
+package com.github.common.json;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.github.common.money.Money;
+import lombok.Data;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonConvertTest {
+
+    public enum Status { NORMAL, DISABLE }
+
+    @Data
+    public static class Source {
+        private Long id;
+        private String name;
+        @JsonProperty("nick")
+        private String nickName;
+        private Date createTime;
+        private BigDecimal amount;
+        private Money price;
+        private Status status;
+        private List<String> tags;
+        private Map<String, Integer> counts;
+        private String unknown;
+    }
+
+    @Data
+    public static class Target {
+        private String id;
+        private String name;
+        @JsonProperty("nick")
+        private String nickName;
+        private Date createTime;
+        private BigDecimal amount;
+        private Money price;
+        private Status status;
+        private List<String> tags;
+        private Map<String, Integer> counts;
+    }
+
+    @Data
+    public static class PlainTarget {
+        private String nickName;
+        private String nick;
+    }
+
+    private static Source source(long id) {
+        Source source = new Source();
+        source.setId(id);
+        source.setName("张三 \"quote\"\n");
+        source.setNickName("zs");
+        source.setCreateTime(new Date(1700000000123L));
+        source.setAmount(new BigDecimal("1000.500"));
+        source.setPrice(new Money("12.34"));
+        source.setStatus(Status.DISABLE);
+        source.setTags(List.of("a", "b"));
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        counts.put("x", 1);
+        counts.put("y", 2);
+        source.setCounts(counts);
+        source.setUnknown("ignore");
+        return source;
+    }
+
+    /** 跟先转成 json 字符串再解析的结果一致 */
+    @Test
+    public void sameAsJson() {
+        Source source = source(12345678901234L);
+        Target target = JsonUtil.convert(source, Target.class);
+        // Money 没有 equals, 比较序列化后的结果
+        Assert.assertEquals(JsonUtil.toJson(JsonUtil.convert(JsonUtil.toJson(source), Target.class)), JsonUtil.toJson(target));
+        Assert.assertEquals("12345678901234", target.getId());
+        Assert.assertEquals("zs", target.getNickName());
+        Assert.assertEquals(new BigDecimal("1000.500"), target.getAmount());
+        Assert.assertEquals(1234L, target.getPrice().getCent().longValue());
+        Assert.assertEquals(Status.DISABLE, target.getStatus());
+        Assert.assertEquals(1700000000123L, target.getCreateTime().getTime());
+
+        List<Target> list = JsonUtil.convertList(List.of(source(1), source(2)), Target.class);
+        Assert.assertEquals(2, list.size());
+        Assert.assertEquals("2", list.get(1).getId());
+
+        Map<String, Target> map = JsonUtil.convertMap(Map.of("a", source(3)), String.class, Target.class);
+        Assert.assertEquals("3", map.get("a").getId());
+
+        Map<String, Object> typeMap = JsonUtil.convertType(source, new TypeReference<Map<String, Object>>() {});
+        Assert.assertNotNull(typeMap);
+        Assert.assertEquals("zs", typeMap.get("nick"));
+    }
+
+    @Test
+    public void ignoreAnnotation() {
+        Source source = source(1);
+        // 使用注解: 序列化成 nick, PlainTarget 的 nick 属性接收
+        PlainTarget plain = JsonUtil.convert(source, PlainTarget.class);
+        Assert.assertEquals("zs", plain.getNick());
+        Assert.assertNull(plain.getNickName());
+
+        // 忽略注解: 序列化成 nickName
+        plain = JsonUtil.convertIgnoreAnnotation(source, PlainTarget.class);
+        Assert.assertEquals("zs", plain.getNickName());
+        Assert.assertNull(plain.getNick());
+    }
+
+    @Test
+    public void nullAndError() {
+        Assert.assertNull(JsonUtil.convert(null, Target.class));
+        Assert.assertNull(JsonUtil.convert("  ", Target.class));
+        Assert.assertNull(JsonUtil.convert("{bad json", Target.class));
+        Assert.assertTrue(JsonUtil.convertList(null, Target.class).isEmpty());
+        Assert.assertTrue(JsonUtil.convertMap(null, String.class, Target.class).isEmpty());
+
+        // 字符串依然当成 json 解析
+        Target target = JsonUtil.convert("{\"id\":1,\"nick\":\"zs\"}", Target.class);
+        Assert.assertEquals("1", target.getId());
+        Assert.assertEquals("zs", target.getNickName());
+    }
+}
@@ -0,0 +1,49 @@
+package com.github.common.json;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class JsonReadFieldTest {
+
+    private static final List<String> KEYS = List.of("msgId", "messageId", "msg_id");
+
+    @Test
+    public void nonAscii() {
+        String json = "{\"name\":\"中文名称😀\",\"items\":[{\"msgId\":\"嵌套\"}],\"detail\":{\"msgId\":\"嵌套\"},"
+                + "\"msg_id\":\"靠后的\",\"msgId\":\"编号-１２３😀\"}";
+        Assert.assertEquals("编号-１２３😀", JsonUtil.readField(json, KEYS));
+        Assert.assertEquals("编号-１２３😀", JsonUtil.readField(json.getBytes(StandardCharsets.UTF_8), KEYS));
+        // 字节的编码会自动识别
+        Assert.assertEquals("编号-１２３😀", JsonUtil.readField(json.getBytes(StandardCharsets.UTF_16BE), KEYS));
+        Assert.assertEquals("编号-１２３😀", JsonUtil.readField(json.getBytes(StandardCharsets.UTF_16LE), KEYS));
+    }
+
+    @Test
+    public void priority() {
+        // 靠前的 key 优先, 跟 json 中的顺序无关
+        Assert.assertEquals("a", JsonUtil.readField("{\"msg_id\":\"c\",\"messageId\":\"b\",\"msgId\":\"a\"}", KEYS));
+        Assert.assertEquals("b", JsonUtil.readField("{\"msg_id\":\"c\",\"messageId\":\"b\"}", KEYS));
+        Assert.assertEquals("c", JsonUtil.readField("{\"msg_id\":\"c\",\"msgId\":\"\",\"messageId\":null}", KEYS));
+        Assert.assertEquals("123", JsonUtil.readField("{\"msgId\":123}", KEYS));
+    }
+
+    @Test
+    public void stopEarly() {
+        // 找到第一个 key 之后不再往后读, 后面的内容不完整也不影响
+        byte[] json = "{\"msgId\":\"a\",\"data\":[1,2,".getBytes(StandardCharsets.UTF_8);
+        Assert.assertEquals("a", JsonUtil.readField(json, KEYS));
+    }
+
+    @Test
+    public void notFound() {
+        Assert.assertNull(JsonUtil.readField("{\"id\":1,\"detail\":{\"msgId\":\"x\"}}", KEYS));
+        Assert.assertNull(JsonUtil.readField("[{\"msgId\":\"x\"}]", KEYS));
+        Assert.assertNull(JsonUtil.readField("\"msgId\"", KEYS));
+        Assert.assertNull(JsonUtil.readField("not json", KEYS));
+        Assert.assertNull(JsonUtil.readField(new byte[0], KEYS));
+        Assert.assertNull(JsonUtil.readField((String) null, KEYS));
+    }
+}
@@ -0,0 +1,209 @@
+package com.github.common.mvc;
+
+import com.github.common.Const;
+import com.github.common.encrypt.Encrypt;
+import com.github.common.exception.NotLoginException;
+import lombok.Data;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class AppTokenHandlerTest {
+
+    @Data
+    public static class Session {
+        private Long id;
+        private String name;
+    }
+
+    @After
+    public void clear() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    private static void request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(Const.TOKEN, token);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static Session session(long id) {
+        Session session = new Session();
+        session.setId(id);
+        session.setName("name-" + id);
+        return session;
+    }
+
+    @Test
+    public void cacheInRequest() {
+        String token = AppTokenHandler.generateToken(session(1));
+        request(token);
+        Session first = AppTokenHandler.getSessionInfoWithToken(Session.class);
+        Assert.assertNotNull(first);
+        Assert.assertEquals(1L, first.getId().longValue());
+        // 同一个请求中只转换一次
+        Assert.assertSame(first, AppTokenHandler.getSessionInfoWithToken(Session.class));
+
+        // 新的请求: 再转换一次, 但不再验签(验证过的 token 在缓存中)
+        long size = AppTokenHandler.verifiedTokenSize();
+        request(token);
+        Session second = AppTokenHandler.getSessionInfoWithToken(Session.class);
+        Assert.assertNotSame(first, second);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(size, AppTokenHandler.verifiedTokenSize());
+
+        // 刷新过期时间时不能改到缓存中的数据
+        Assert.assertNotNull(AppTokenHandler.resetTokenExpireTime());
+        request(token);
+        Assert.assertEquals(first, AppTokenHandler.getSessionInfoWithToken(Session.class));
+    }
+
+    @Test
+    public void expired() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("id", 2L);
+        map.put("name", "name-2");
+        String token = Const.TOKEN_PREFIX + Encrypt.jwtEncode(map, 300, TimeUnit.MILLISECONDS);
+
+        request(token);
+        Assert.assertNotNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+
+        TimeUnit.MILLISECONDS.sleep(500);
+        // 验证过的 token 在缓存中, 过期之后也要拒绝
+        request(token);
+        Assert.assertNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+        try {
+            AppTokenHandler.resetTokenExpireTime();
+            Assert.fail();
+        } catch (NotLoginException ignore) {
+        }
+    }
+
+    @Test
+    public void revoked() {
+        String token = AppTokenHandler.generateToken(session(3));
+        request(token);
+        Assert.assertNotNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+
+        // 注销之后当前请求及之后的请求都拒绝
+        AppTokenHandler.revokeToken();
+        Assert.assertNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+        request(token);
+        Assert.assertNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+        try {
+            AppTokenHandler.resetTokenExpireTime();
+            Assert.fail();
+        } catch (NotLoginException ignore) {
+        }
+
+        // 其他 token 不受影响
+        request(AppTokenHandler.generateToken(session(4)));
+        Assert.assertEquals(4L, AppTokenHandler.getSessionInfoWithToken(Session.class).getId().longValue());
+    }
+
+    @Test
+    public void revokedOverCap() {
+        // 注销的数量没有上限, 超过之前的 20000 条之后最早注销的也还是拒绝
+        int count = 25_000;
+        String first = null;
+        for (int i = 0; i < count; i++) {
+            String token = AppTokenHandler.generateToken(session(100_000 + i));
+            if (first == null) {
+                first = token;
+            }
+            request(token);
+            AppTokenHandler.revokeToken();
+        }
+        request(first);
+        Assert.assertNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+        try {
+            AppTokenHandler.resetTokenExpireTime();
+            Assert.fail();
+        } catch (NotLoginException ignore) {
+        }
+    }
+
+    @Test
+    public void revokedExpire() throws Exception {
+        // 过期的 token 不再占用空间
+        MemoryRevokedTokenStore store = new MemoryRevokedTokenStore();
+        store.revoke("a", System.currentTimeMillis() + 200);
+        store.revoke("b", 0);
+        store.revoke("c", System.currentTimeMillis() - 1);
+        Assert.assertTrue(store.isRevoked("a"));
+        Assert.assertTrue(store.isRevoked("b"));
+        Assert.assertFalse(store.isRevoked("c"));
+        Assert.assertEquals(2, store.size());
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        Assert.assertFalse(store.isRevoked("a"));
+        Assert.assertTrue(store.isRevoked("b"));
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void cacheHitSkipStore() {
+        CountingStore store = new CountingStore();
+        AppTokenHandler.setRevokedTokenStore(store);
+        try {
+            String token = AppTokenHandler.generateToken(session(6));
+            request(token);
+            Assert.assertNotNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+            Assert.assertEquals(1, store.queries);
+
+            // 缓存中有的 token 不再查询注销的存储
+            for (int i = 0; i < 10; i++) {
+                request(token);
+                Assert.assertNotNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+            }
+            Assert.assertEquals(1, store.queries);
+
+            // 其他节点注销之后通知清掉缓存, 下一次查询存储并拒绝
+            String digest = Encrypt.toSha256(token.substring(Const.TOKEN_PREFIX.length()));
+            store.revoke(digest, 0);
+            AppTokenHandler.evictVerified(digest);
+            request(token);
+            Assert.assertNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+            Assert.assertEquals(2, store.queries);
+        } finally {
+            AppTokenHandler.setRevokedTokenStore(new MemoryRevokedTokenStore());
+        }
+    }
+
+    /** 记录查询次数的存储 */
+    private static class CountingStore implements RevokedTokenStore {
+        private final MemoryRevokedTokenStore store = new MemoryRevokedTokenStore();
+        private int queries;
+
+        @Override
+        public void revoke(String digest, long expireMs) {
+            store.revoke(digest, expireMs);
+        }
+
+        @Override
+        public boolean isRevoked(String digest) {
+            queries++;
+            return store.isRevoked(digest);
+        }
+    }
+
+    @Test
+    public void tampered() {
+        String token = AppTokenHandler.generateToken(session(5));
+        request(token);
+        Assert.assertNotNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+
+        // 改掉签名中的一个字符(最后一个字符有不参与解码的位, 所以改倒数第 5 个)
+        int index = token.length() - 5;
+        char c = token.charAt(index);
+        request(token.substring(0, index) + (c == 'A' ? 'B' : 'A') + token.substring(index + 1));
+        Assert.assertNull(AppTokenHandler.getSessionInfoWithToken(Session.class));
+    }
+}
@@ -0,0 +1,111 @@
+package com.github.common.mvc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PermissionTrieTest {
+
+    /** 之前逐条比较的逻辑, 用来验证结果一致 */
+    private static boolean linear(List<String[]> permissionList, String url, String method) {
+        for (String[] permission : permissionList) {
+            String permissionUrl = permission[0];
+            String permissionMethod = permission[1];
+            boolean urlCheck = permissionUrl.equals(url)
+                    || (permissionUrl.endsWith("/*") && url.startsWith(permissionUrl.replace("*", "")));
+            boolean methodCheck = "*".equals(permissionMethod) || permissionMethod.contains(method);
+            if (urlCheck && methodCheck) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static PermissionTrie build(List<String[]> permissionList) {
+        PermissionTrie.Builder builder = PermissionTrie.builder();
+        for (String[] permission : permissionList) {
+            builder.add(permission[0], permission[1]);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void match() {
+        List<String[]> permissionList = List.of(
+                new String[] { "/user/*", "GET,POST" },
+                new String[] { "/order/info", "*" },
+                new String[] { "/order/info", "DELETE" },
+                new String[] { "/product/list", "GET" },
+                new String[] { "/a/*/b/*", "PUT" },
+                new String[] { "/*", "HEAD" },
+                new String[] { "/custom", "PROPFIND,GET" }
+        );
+        PermissionTrie trie = build(permissionList);
+
+        String[] urls = { "/user", "/user/", "/user/info", "/user/a/b", "/users", "/order/info", "/order/info/",
+                "/order", "/product/list", "/product/list/1", "/product", "/a//b/c", "/a/x/b/c", "/", "", "/custom", "custom" };
+        String[] methods = { "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "PROPFIND", "MKCOL" };
+        for (String url : urls) {
+            for (String method : methods) {
+                Assert.assertEquals(url + " " + method, linear(permissionList, url, method), trie.match(url, method));
+            }
+        }
+
+        Assert.assertTrue(trie.match("/user/info", "GET"));
+        Assert.assertFalse(trie.match("/user", "GET"));
+        Assert.assertFalse(trie.match("/user/info", "DELETE"));
+        Assert.assertTrue(trie.match("/order/info", "OPTIONS"));
+        Assert.assertTrue(trie.match("/custom", "PROPFIND"));
+        Assert.assertFalse(trie.match(null, "GET"));
+    }
+
+    @Test
+    public void random() {
+        Random random = new Random(42);
+        String[] segments = { "user", "order", "product", "info", "list", "1", "" };
+        String[] methods = { "GET", "POST", "PUT", "DELETE", "*", "GET,POST", "PUT,DELETE" };
+        List<String[]> permissionList = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String url = randomUrl(random, segments);
+            permissionList.add(new String[] { random.nextBoolean() ? url + "/*" : url, methods[random.nextInt(methods.length)] });
+        }
+        PermissionTrie trie = build(permissionList);
+
+        String[] requestMethods = { "GET", "POST", "PUT", "DELETE", "PATCH" };
+        for (int i = 0; i < 20000; i++) {
+            String url = randomUrl(random, segments);
+            String method = requestMethods[random.nextInt(requestMethods.length)];
+            Assert.assertEquals(url + " " + method, linear(permissionList, url, method), trie.match(url, method));
+        }
+    }
+
+    private static String randomUrl(Random random, String[] segments) {
+        StringBuilder sbd = new StringBuilder();
+        int depth = 1 + random.nextInt(4);
+        for (int i = 0; i < depth; i++) {
+            sbd.append("/").append(segments[random.nextInt(segments.length)]);
+        }
+        return sbd.toString();
+    }
+
+    @Test
+    public void serialize() throws Exception {
+        PermissionTrie trie = PermissionTrie.builder().add("/user/*", "GET").add("/order/info", "*").build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(out)) {
+            oos.writeObject(trie);
+        }
+        PermissionTrie copy;
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            copy = (PermissionTrie) ois.readObject();
+        }
+        Assert.assertTrue(copy.match("/user/info", "GET"));
+        Assert.assertTrue(copy.match("/order/info", "PUT"));
+        Assert.assertFalse(copy.match("/order", "PUT"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.github.common.sql;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.github.common.util.LogUtil;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+public class ShowSqlInterceptorTest {
+
+    private static final String SQL = "\n  SELECT id, name\n\tFROM t_user\r\n  WHERE id = 1  AND status IN (1,  2)\n";
+    private static final String COMPACT_SQL = "SELECT id, name FROM t_user WHERE id = 1 AND status IN (1, 2)";
+
+    private final Logger logger = (Logger) LogUtil.SQL_LOG;
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private Level level;
+
+    @Before
+    public void before() {
+        level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @After
+    public void after() {
+        logger.detachAppender(appender);
+        logger.setLevel(level);
+        ShowSqlThreadLocal.clean();
+    }
+
+    @Test
+    public void compact() {
+        Assert.assertEquals(COMPACT_SQL, ShowSqlInterceptor.compact(SQL));
+        Assert.assertSame(COMPACT_SQL, ShowSqlInterceptor.compact(COMPACT_SQL));
+        Assert.assertEquals("", ShowSqlInterceptor.compact(" \n\t "));
+        Assert.assertEquals("a", ShowSqlInterceptor.compact("a "));
+        Assert.assertEquals("a b", ShowSqlInterceptor.compact("a\nb"));
+        Assert.assertNull(ShowSqlInterceptor.compact(null));
+
+        // 跟 正则替换再 trim 的结果一样
+        Pattern blank = Pattern.compile("\\s+");
+        char[] chars = { 'a', 'b', ' ', ' ', '\t', '\n', '\r', '\f', '\u000B' };
+        Random random = new Random(24);
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder sbd = new StringBuilder();
+            for (int j = random.nextInt(12); j > 0; j--) {
+                sbd.append(chars[random.nextInt(chars.length)]);
+            }
+            String sql = sbd.toString();
+            Assert.assertEquals(blank.matcher(sql).replaceAll(" ").trim(), ShowSqlInterceptor.compact(sql));
+        }
+    }
+
+    @Test
+    public void slowSql() {
+        ShowSqlInterceptor interceptor = interceptor("0");
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<String> sql = () -> {
+            calls.incrementAndGet();
+            return SQL;
+        };
+        interceptor.preProcess(sql, null);
+        interceptor.postProcess(sql, null, null, null);
+
+        // 达到阈值: 输出一条 warn, sql 只生成一次
+        List<ILoggingEvent> events = appender.list;
+        Assert.assertEquals(1, events.size());
+        Assert.assertEquals(Level.WARN, events.get(0).getLevel());
+        String message = events.get(0).getFormattedMessage();
+        Assert.assertTrue(message, message.startsWith("slow sql, use-time: "));
+        Assert.assertTrue(message, message.endsWith(", return-size: 0, sql: " + COMPACT_SQL));
+        Assert.assertEquals(1, calls.get());
+
+        // 没有 pre 的 post 不输出
+        interceptor.postProcess(sql, null, null, null);
+        Assert.assertEquals(1, events.size());
+    }
+
+    @Test
+    public void fastSql() {
+        // 没有达到阈值、没有开启时什么都不输出, 也不生成 sql
+        for (String slowMillis : new String[] { "60000", null, "-1", "abc" }) {
+            ShowSqlInterceptor interceptor = interceptor(slowMillis);
+            AtomicInteger calls = new AtomicInteger();
+            Supplier<String> sql = () -> {
+                calls.incrementAndGet();
+                return SQL;
+            };
+            for (int i = 0; i < 100; i++) {
+                interceptor.preProcess(sql, null);
+                interceptor.postProcess(sql, null, null, null);
+            }
+            Assert.assertEquals(0, calls.get());
+        }
+        Assert.assertTrue(appender.list.isEmpty());
+    }
+
+    @Test
+    public void print() {
+        // 开启输出时跟之前一样: 执行前输出 sql, 执行后输出耗时; 同时是慢 sql 的再输出一条 warn
+        logger.setLevel(Level.DEBUG);
+        ShowSqlThreadLocal.setPrint();
+        ShowSqlInterceptor interceptor = interceptor("0");
+        Supplier<String> sql = () -> SQL;
+        interceptor.preProcess(sql, null);
+        interceptor.postProcess(sql, null, null, null);
+
+        List<ILoggingEvent> events = appender.list;
+        Assert.assertEquals(3, events.size());
+        String id = events.get(0).getFormattedMessage().split(",")[0];
+        Assert.assertEquals(id + ", sql: " + COMPACT_SQL, events.get(0).getFormattedMessage());
+        Assert.assertTrue(events.get(1).getFormattedMessage().startsWith(id + ", use-time: "));
+        Assert.assertEquals(Level.DEBUG, events.get(1).getLevel());
+        Assert.assertEquals(Level.WARN, events.get(2).getLevel());
+
+        // 没有开启 debug 时不输出 sql 和耗时
+        logger.setLevel(Level.INFO);
+        interceptor = interceptor(null);
+        interceptor.preProcess(sql, null);
+        interceptor.postProcess(sql, null, null, null);
+        Assert.assertEquals(3, events.size());
+    }
+
+    @Test
+    public void stats() {
+        // 开启汇总时按指纹记录, 不输出日志
+        SqlStatistics.GLOBAL.clear();
+        ShowSqlInterceptor interceptor = interceptor(null);
+        Properties props = new Properties();
+        props.setProperty(ShowSqlInterceptor.STATS, "true");
+        interceptor.init(null, props, null);
+        for (int i = 0; i < 10; i++) {
+            String sql = SQL.replace("id = 1", "id = " + i).replace("(1,  2)", "(" + i + ")");
+            interceptor.preProcess(() -> sql, null);
+            interceptor.postProcess(() -> sql, null, null, null);
+        }
+        List<SqlStatistics.SqlStat> top = SqlStatistics.GLOBAL.top(10);
+        Assert.assertEquals(1, top.size());
+        Assert.assertEquals("select id, name from t_user where id = ? and status in (?+)", top.get(0).getSql());
+        Assert.assertEquals(10, top.get(0).getCount());
+        Assert.assertTrue(appender.list.isEmpty());
+        SqlStatistics.GLOBAL.clear();
+    }
+
+    private static ShowSqlInterceptor interceptor(String slowMillis) {
+        Properties props = new Properties();
+        if (slowMillis != null) {
+            props.setProperty(ShowSqlInterceptor.SLOW_MILLIS, slowMillis);
+        }
+        ShowSqlInterceptor interceptor = new ShowSqlInterceptor();
+        interceptor.init(null, props, null);
+        return interceptor;
+    }
+}
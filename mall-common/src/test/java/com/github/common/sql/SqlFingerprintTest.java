@@ -0,0 +1,81 @@
+package com.github.common.sql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class SqlFingerprintTest {
+
+    @Test
+    public void literal() {
+        String expected = "select id, name from t_user where id = ? and name = ? and price > ? and flag = ?";
+        for (String sql : new String[] {
+                "SELECT id, name FROM t_user WHERE id = 1 AND name = 'abc' AND price > 1.5 AND flag = x'0F'",
+                "select id,name from t_user where id = -20 and name = \"it's\" and price > .5e-3 and flag = b'01'",
+                "\n  select  id ,  name\n\tfrom t_user /* comment */ where id = +3\r\n and name = 'a\\'b''c' and price > 0x1F and flag = N'x'",
+                "select id, name from t_user where id = ? and name = ? and price > ? and flag = ? -- tail comment",
+        }) {
+            Assert.assertEquals(sql, expected, SqlFingerprint.fingerprint(sql));
+        }
+
+        // 列名表名中的数字、减法、`` 中的内容不变
+        Assert.assertEquals("select col1, `T2`.`a 1` from t2 where a-? > ? and b - ? = ?",
+                SqlFingerprint.fingerprint("select col1, `T2`.`a 1` from t2 where a-1 > 2 and b - 3 = -4"));
+        Assert.assertEquals("select count(*) from t_order", SqlFingerprint.fingerprint("select count(*) from t_order"));
+        Assert.assertEquals("", SqlFingerprint.fingerprint(" \n "));
+        Assert.assertNull(SqlFingerprint.fingerprint(null));
+    }
+
+    @Test
+    public void list() {
+        String expected = "select * from t_user where id in (?+) and status not in (?+) limit ?, ?";
+        for (String sql : new String[] {
+                "select * from t_user where id in (1) and status not in ('a', 'b') limit 0, 10",
+                "select * from t_user where id in (1, 2, 3, 4, 5) and status not in ( 'c' ) limit 20,10",
+                "select * from t_user where id in (?,?,?) and status not in (?) limit ?, ?",
+        }) {
+            Assert.assertEquals(sql, expected, SqlFingerprint.fingerprint(sql));
+        }
+
+        // 多行插入合并成一行, 列名不合并
+        String insert = "insert into t_user (name, age) values (?+)";
+        Assert.assertEquals(insert, SqlFingerprint.fingerprint("INSERT INTO t_user (name, age) VALUES ('a', 1)"));
+        Assert.assertEquals(insert, SqlFingerprint.fingerprint("insert into t_user (name, age) values ('a', 1), ('b', 2),('c', -3)"));
+        Assert.assertEquals(insert, SqlFingerprint.fingerprint("insert into t_user (name,age) values (?, ?), (?, ?)"));
+
+        // 子查询的括号不合并
+        Assert.assertEquals("select * from t where id in (select id from t2 where a in (?+))",
+                SqlFingerprint.fingerprint("select * from t where id in (select id from t2 where a in (1,2))"));
+    }
+
+    @Test
+    public void stable() {
+        // 同一个模板换成任意的值, 指纹和摘要都一样
+        String template = "select * from t_order where user_id = %s and status in (%s) and remark = '%s' and amount >= %s";
+        Random random = new Random(25);
+        String fingerprint = null;
+        for (int i = 0; i < 10_000; i++) {
+            StringBuilder in = new StringBuilder();
+            for (int j = random.nextInt(20); j >= 0; j--) {
+                if (in.length() > 0) {
+                    in.append(random.nextBoolean() ? "," : ", ");
+                }
+                in.append(random.nextInt(1000) - 500);
+            }
+            String remark = Long.toString(random.nextLong(), 36).replace("a", "''").replace("b", " ( ");
+            String sql = String.format(template, random.nextLong(), in, remark, random.nextDouble() * 1000);
+            String current = SqlFingerprint.fingerprint(sql);
+            if (fingerprint == null) {
+                fingerprint = current;
+            }
+            Assert.assertEquals(sql, fingerprint, current);
+        }
+        Assert.assertEquals("select * from t_order where user_id = ? and status in (?+) and remark = ? and amount >= ?", fingerprint);
+
+        String digest = SqlFingerprint.digest(fingerprint);
+        Assert.assertEquals(16, digest.length());
+        Assert.assertEquals(digest, SqlFingerprint.digest(SqlFingerprint.fingerprint("SELECT * FROM t_order WHERE user_id = 1 AND status IN (1) AND remark = '' AND amount >= 0")));
+        Assert.assertNotEquals(digest, SqlFingerprint.digest(SqlFingerprint.fingerprint("select * from t_order where user_id = ?")));
+    }
+}
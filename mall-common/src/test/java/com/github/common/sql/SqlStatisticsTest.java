@@ -0,0 +1,105 @@
+package com.github.common.sql;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SqlStatisticsTest {
+
+    @Test
+    public void record() {
+        SqlStatistics statistics = new SqlStatistics(10);
+        for (int i = 1; i <= 100; i++) {
+            statistics.record("select * from t_user where id = " + i, TimeUnit.MILLISECONDS.toNanos(i), 1);
+        }
+        statistics.record("update t_user set name = 'a' where id in (1, 2)", TimeUnit.SECONDS.toNanos(20), 0);
+        statistics.record("update t_user set name = 'b' where id in (3)", TimeUnit.MILLISECONDS.toNanos(1), 0);
+        Assert.assertEquals(2, statistics.size());
+
+        List<SqlStatistics.SqlStat> top = statistics.top(10);
+        Assert.assertEquals(2, top.size());
+        // 按总耗时排序
+        SqlStatistics.SqlStat update = top.get(0);
+        Assert.assertEquals("update t_user set name = ? where id in (?+)", update.getSql());
+        Assert.assertEquals(2, update.getCount());
+        Assert.assertEquals(20_001D, update.getTotalMs(), 0.001);
+        Assert.assertEquals(20_000D, update.getMaxMs(), 0.001);
+        Assert.assertEquals(1L, (long) update.getHistogram().get("<=1ms"));
+        Assert.assertEquals(1L, (long) update.getHistogram().get(">10000ms"));
+
+        SqlStatistics.SqlStat select = top.get(1);
+        Assert.assertEquals("select * from t_user where id = ?", select.getSql());
+        Assert.assertEquals(SqlFingerprint.digest(select.getSql()), select.getDigest());
+        Assert.assertEquals(100, select.getCount());
+        Assert.assertEquals(100, select.getRows());
+        Assert.assertEquals(5050D, select.getTotalMs(), 0.001);
+        Assert.assertEquals(50.5D, select.getAvgMs(), 0.001);
+        Assert.assertEquals(100D, select.getMaxMs(), 0.001);
+        long histogramCount = 0;
+        for (Long count : select.getHistogram().values()) {
+            histogramCount += count;
+        }
+        Assert.assertEquals(100, histogramCount);
+        Assert.assertEquals(50L, (long) select.getHistogram().get("<=100ms"));
+        Assert.assertEquals(List.of("<=1ms", "<=2ms", "<=5ms", "<=10ms", "<=20ms", "<=50ms", "<=100ms"),
+                new ArrayList<>(select.getHistogram().keySet()));
+
+        Assert.assertEquals(1, statistics.top(1).size());
+        statistics.clear();
+        Assert.assertEquals(0, statistics.size());
+        Assert.assertTrue(statistics.top(10).isEmpty());
+    }
+
+    @Test
+    public void lru() {
+        // 超出时丢弃最久没有执行过的
+        SqlStatistics statistics = new SqlStatistics(3);
+        statistics.record("select * from t1", 1, 0);
+        statistics.record("select * from t2", 1, 0);
+        statistics.record("select * from t3", 1, 0);
+        statistics.record("select * from t1", 1, 0);
+        statistics.record("select * from t4", 1, 0);
+        Assert.assertEquals(3, statistics.size());
+        Assert.assertEquals(1, statistics.evicted());
+
+        List<String> sqls = new ArrayList<>();
+        for (SqlStatistics.SqlStat stat : statistics.top(0)) {
+            sqls.add(stat.getSql());
+        }
+        Assert.assertTrue(sqls.contains("select * from t1"));
+        Assert.assertFalse(sqls.contains("select * from t2"));
+
+        statistics.record(null, 1, 0);
+        statistics.record(" ", 1, 0);
+        Assert.assertEquals(3, statistics.size());
+    }
+
+    @Test
+    public void concurrent() throws InterruptedException {
+        SqlStatistics statistics = new SqlStatistics(100);
+        int threads = 8;
+        int perThread = 10_000;
+        List<Thread> list = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            list.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    statistics.record("select * from t_" + (i % 10) + " where id = " + thread, 1000, 1);
+                }
+            }));
+        }
+        list.forEach(Thread::start);
+        for (Thread thread : list) {
+            thread.join();
+        }
+        List<SqlStatistics.SqlStat> top = statistics.top(100);
+        Assert.assertEquals(10, top.size());
+        for (SqlStatistics.SqlStat stat : top) {
+            Assert.assertEquals(threads * perThread / 10, stat.getCount());
+            Assert.assertEquals(stat.getCount(), stat.getRows());
+        }
+    }
+}
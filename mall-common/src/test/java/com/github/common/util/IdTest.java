@@ -1,5 +1,6 @@
 package com.github.common.util;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.time.LocalDateTime;
@@ -50,4 +51,34 @@ public class IdTest {
         System.out.println("all   : " + COUNT);
         System.out.println("real  : " + set.size());
     }
+
+    @Test
+    public void uniqueAndMonotonic() throws Exception {
+        int threads = 64;
+        int perThread = 20_000;
+        Set<Long> set = ConcurrentHashMap.newKeySet();
+        List<Thread> threadList = new ArrayList<>();
+        List<Throwable> errorList = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                long last = 0;
+                for (int j = 0; j < perThread; j++) {
+                    long id = IdUtil.getId();
+                    if (id <= last) {
+                        errorList.add(new AssertionError(id + " <= " + last));
+                        return;
+                    }
+                    last = id;
+                    set.add(id);
+                }
+            });
+            threadList.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+        Assert.assertTrue(errorList.toString(), errorList.isEmpty());
+        Assert.assertEquals(threads * perThread, set.size());
+    }
 }
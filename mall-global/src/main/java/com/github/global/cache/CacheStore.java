@@ -0,0 +1,28 @@
+package com.github.global.cache;
+
+import java.util.function.Consumer;
+
+/** 二级缓存的远程存储(比如 redis), 以及用来通知各节点清除本地缓存的发布订阅 */
+public interface CacheStore {
+
+    /** 取值, 没有则返回 null */
+    Object get(String key);
+
+    /** 放值并设置存活时间 */
+    void put(String key, Object value, long ttlMs);
+
+    /** 删除指定的键 */
+    void evict(String key);
+
+    /** 获取版本号, 没有则返回 0 */
+    long version(String key);
+
+    /** 版本号加 1 并返回加之后的值 */
+    long nextVersion(String key);
+
+    /** 发布消息到所有节点(包括当前节点) */
+    void publish(String message);
+
+    /** 订阅 {@link #publish(String)} 发出的消息 */
+    void subscribe(Consumer<String> listener);
+}
@@ -0,0 +1,63 @@
+package com.github.global.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.codec.SerializationCodec;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 用 redisson 实现的二级缓存存储, 清除本地缓存的消息走 redis 的 pub/sub
+ *
+ * 值固定用 jdk 序列化(跟 spring 的 RedisCacheManager 默认一样, 缓存的对象要实现 Serializable),
+ * 不依赖 redisson 配置的默认 codec, 换了配置也不会读不出之前写入的值; 版本号是 redis 的数字, 消息是字符串
+ * </pre>
+ */
+@RequiredArgsConstructor
+public class RedissonCacheStore implements CacheStore {
+
+    private static final String EVICT_TOPIC = "cache:two-level:evict";
+    private static final Codec VALUE_CODEC = new SerializationCodec();
+    private static final Codec MESSAGE_CODEC = StringCodec.INSTANCE;
+
+    private final RedissonClient redisson;
+
+    @Override
+    public Object get(String key) {
+        return redisson.getBucket(key, VALUE_CODEC).get();
+    }
+
+    @Override
+    public void put(String key, Object value, long ttlMs) {
+        redisson.getBucket(key, VALUE_CODEC).set(value, Duration.ofMillis(ttlMs));
+    }
+
+    @Override
+    public void evict(String key) {
+        redisson.getBucket(key, VALUE_CODEC).delete();
+    }
+
+    @Override
+    public long version(String key) {
+        return redisson.getAtomicLong(key).get();
+    }
+
+    @Override
+    public long nextVersion(String key) {
+        return redisson.getAtomicLong(key).incrementAndGet();
+    }
+
+    @Override
+    public void publish(String message) {
+        redisson.getTopic(EVICT_TOPIC, MESSAGE_CODEC).publish(message);
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        redisson.getTopic(EVICT_TOPIC, MESSAGE_CODEC).addListener(String.class, (channel, msg) -> listener.accept(msg));
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.global.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * <pre>
+ * 二级缓存: 先读本地(caffeine), 没有再读远程(redis), 还没有再调用加载方法, 加载后写入远程和本地.
+ *
+ * 同一个节点同一个 key 只会有一个线程去读远程和调用加载方法(caffeine 的 compute), 其他线程等待它的结果,
+ * 写入及删除时除了处理本地和远程, 还会通知其他节点删除各自的本地缓存.
+ *
+ * 远程的键是 cache:名称:版本号:key, 清空时只把版本号加 1(一条 INCR), 不用 KEYS/SCAN 按前缀删除,
+ * 旧版本的键不会再被读到, 到了存活时间由 redis 自己删除. 版本号在本地最多缓存 localTtlMs, 收到清空的通知时重新读取
+ * </pre>
+ */
+public class TwoLevelCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final Cache<String, Object> localCache;
+    private final CacheStore cacheStore;
+    private final long ttlMs;
+    private final long versionTtlMs;
+    private final TwoLevelCacheManager cacheManager;
+    private final String versionKey;
+
+    /** 当前的版本号及其在本地的过期时间, 过期之后重新从远程读取 */
+    private volatile long version;
+    private volatile long versionExpireAt;
+
+    TwoLevelCache(String name, Cache<String, Object> localCache, CacheStore cacheStore,
+                  long ttlMs, long versionTtlMs, TwoLevelCacheManager cacheManager) {
+        super(true);
+        this.name = name;
+        this.localCache = localCache;
+        this.cacheStore = cacheStore;
+        this.ttlMs = ttlMs;
+        this.versionTtlMs = versionTtlMs;
+        this.cacheManager = cacheManager;
+        this.versionKey = "cache:" + name + ":version";
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return localCache;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        String localKey = toLocalKey(key);
+        Object value = localCache.getIfPresent(localKey);
+        if (value == null) {
+            value = cacheStore.get(toRemoteKey(localKey));
+            if (value != null) {
+                localCache.put(localKey, value);
+            }
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = toLocalKey(key);
+        try {
+            return (T) fromStoreValue(localCache.get(localKey, k -> {
+                String remoteKey = toRemoteKey(k);
+                Object value = cacheStore.get(remoteKey);
+                if (value == null) {
+                    try {
+                        value = toStoreValue(valueLoader.call());
+                    } catch (Exception e) {
+                        throw new LoaderException(e);
+                    }
+                    cacheStore.put(remoteKey, value, ttlMs);
+                }
+                return value;
+            }));
+        } catch (LoaderException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        String localKey = toLocalKey(key);
+        Object storeValue = toStoreValue(value);
+        cacheStore.put(toRemoteKey(localKey), storeValue, ttlMs);
+        localCache.put(localKey, storeValue);
+        cacheManager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public void evict(Object key) {
+        String localKey = toLocalKey(key);
+        cacheStore.evict(toRemoteKey(localKey));
+        localCache.invalidate(localKey);
+        cacheManager.publishEvict(name, localKey);
+    }
+
+    @Override
+    public void clear() {
+        long next = cacheStore.nextVersion(versionKey);
+        version = next;
+        versionExpireAt = System.currentTimeMillis() + versionTtlMs;
+        localCache.invalidateAll();
+        cacheManager.publishClear(name);
+    }
+
+    /** 只删除本地缓存, 收到其他节点的通知时调用 */
+    void evictLocal(String localKey) {
+        localCache.invalidate(localKey);
+    }
+
+    /** 只清空本地缓存, 下次用到时重新读取版本号, 收到其他节点的通知时调用 */
+    void clearLocal() {
+        versionExpireAt = 0;
+        localCache.invalidateAll();
+    }
+
+    private static String toLocalKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    private String toRemoteKey(String localKey) {
+        return "cache:" + name + ":" + currentVersion() + ":" + localKey;
+    }
+
+    private long currentVersion() {
+        long now = System.currentTimeMillis();
+        if (now >= versionExpireAt) {
+            version = cacheStore.version(versionKey);
+            versionExpireAt = now + versionTtlMs;
+        }
+        return version;
+    }
+
+    private static class LoaderException extends RuntimeException {
+        LoaderException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
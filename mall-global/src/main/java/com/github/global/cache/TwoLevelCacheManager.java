@@ -0,0 +1,90 @@
+package com.github.global.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.common.util.LogUtil;
+import com.github.common.util.Obj;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <pre>
+ * 本地(caffeine) + 远程(redis) 的二级缓存. 多实例部署时, 一个节点写入或删除后, 其他节点会通过 pub/sub 删除各自的本地缓存
+ *
+ * &#064;Cacheable(value = "xxx", cacheManager = "twoLevelCacheManager", sync = true)
+ * </pre>
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private static final String SPLIT = "\n";
+    private static final String TYPE_EVICT = "evict";
+    private static final String TYPE_CLEAR = "clear";
+
+    /** 用来忽略自己发出的消息 */
+    private final String nodeId = Obj.uuid16();
+    private final ConcurrentMap<String, TwoLevelCache> cacheMap = new ConcurrentHashMap<>();
+
+    private final CacheStore cacheStore;
+    private final long localMaximumSize;
+    private final long localTtlMs;
+    private final long remoteTtlMs;
+
+    /**
+     * @param localMaximumSize 每个本地缓存的最大条数
+     * @param localTtlMs 本地缓存的存活时间, 一般比远程的短, 这样就算没有收到通知也只会在短时间内不一致
+     * @param remoteTtlMs 远程缓存的存活时间
+     */
+    public TwoLevelCacheManager(CacheStore cacheStore, long localMaximumSize, long localTtlMs, long remoteTtlMs) {
+        this.cacheStore = cacheStore;
+        this.localMaximumSize = localMaximumSize;
+        this.localTtlMs = localTtlMs;
+        this.remoteTtlMs = remoteTtlMs;
+        cacheStore.subscribe(this::onMessage);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return cacheMap.computeIfAbsent(name, key -> {
+            com.github.benmanes.caffeine.cache.Cache<String, Object> localCache = Caffeine.newBuilder()
+                    .maximumSize(localMaximumSize).expireAfterWrite(localTtlMs, TimeUnit.MILLISECONDS).build();
+            return new TwoLevelCache(key, localCache, cacheStore, remoteTtlMs, localTtlMs, this);
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(cacheMap.keySet());
+    }
+
+    void publishEvict(String name, String localKey) {
+        cacheStore.publish(String.join(SPLIT, nodeId, TYPE_EVICT, name, localKey));
+    }
+
+    void publishClear(String name) {
+        cacheStore.publish(String.join(SPLIT, nodeId, TYPE_CLEAR, name, ""));
+    }
+
+    private void onMessage(String message) {
+        String[] arr = Obj.toStr(message).split(SPLIT, 4);
+        if (arr.length != 4 || nodeId.equals(arr[0])) {
+            return;
+        }
+        TwoLevelCache cache = cacheMap.get(arr[2]);
+        if (Obj.isNull(cache)) {
+            return;
+        }
+        if (TYPE_CLEAR.equals(arr[1])) {
+            cache.clearLocal();
+        } else {
+            cache.evictLocal(arr[3]);
+        }
+        if (LogUtil.ROOT_LOG.isDebugEnabled()) {
+            LogUtil.ROOT_LOG.debug("二级缓存({})收到其他节点的通知({} : {})", arr[2], arr[1], arr[3]);
+        }
+    }
+}
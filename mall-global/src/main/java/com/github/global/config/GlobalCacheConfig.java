@@ -1,6 +1,11 @@
 package com.github.global.config;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.global.cache.RedissonCacheStore;
+import com.github.global.cache.TwoLevelCacheManager;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
@@ -41,4 +46,28 @@ public class GlobalCacheConfig {
         cacheManager.setCaffeine(caffeine);
         return cacheManager;
     }
+
+    /**
+     * 本地(caffeine) + 远程(redis) 的二级缓存, 多实例部署且数据需要在各实例间一致时使用
+     *
+     * &#064;Cacheable(value = "xxx", cacheManager = "twoLevelCacheManager", sync = true)
+     */
+    @Configuration
+    @ConditionalOnClass({ RedissonClient.class })
+    public static class TwoLevelCacheConfig {
+
+        @Value("${cache.two-level.local-max-size:5000}")
+        private long localMaxSize;
+
+        @Value("${cache.two-level.local-ttl-ms:60000}")
+        private long localTtlMs;
+
+        @Value("${cache.two-level.remote-ttl-ms:900000}")
+        private long remoteTtlMs;
+
+        @Bean("twoLevelCacheManager")
+        public CacheManager twoLevelCacheManager(RedissonClient redisson) {
+            return new TwoLevelCacheManager(new RedissonCacheStore(redisson), localMaxSize, localTtlMs, remoteTtlMs);
+        }
+    }
 }
@@ -60,6 +60,7 @@ public class GlobalException {
 
     private final I18nService i18nService;
     private final ValidationService validationService;
+    private final GlobalLogHandler logHandler;
 
     private JsonResult<String> handleErrorResult(JsonResult<String> result) {
         if (returnStatusCode) {
@@ -164,6 +165,8 @@ public class GlobalException {
     }
     @ExceptionHandler(HttpMessageNotReadableException.class)
     public ResponseEntity<JsonResult<String>> convertJsonException(HttpMessageNotReadableException e) {
+        // 转换失败时不会走到 RequestBodyAdvice#afterBodyRead, 在这里输出已经读到的请求体
+        RequestBodyAdvice.logFailedBody(logHandler);
         int status = (returnStatusCode ? JsonCode.BAD_REQUEST : JsonCode.SUCCESS).getCode();
         return handle(true, "data convert fail", status, handleErrorResult(JsonResult.badRequest("bad request-body", null)), e);
     }
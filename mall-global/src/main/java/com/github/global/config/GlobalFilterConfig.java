@@ -1,5 +1,6 @@
 package com.github.global.config;
 
+import com.github.global.filter.AsyncAccessLog;
 import com.github.global.filter.LogTraceFilter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -24,6 +25,29 @@ public class GlobalFilterConfig {
     @Value("${req.log-print-header:true}")
     private boolean printHeader;
 
+    /** 响应日志是否输出 json 转换器实际写出去的字节(不再为日志序列化一次), 见 ResponseBodyAdvice */
+    @Value("${req.log-response-capture:false}")
+    private boolean logResponseCapture;
+
+    /** 请求日志是否异步输出: 请求线程只把要输出的内容放进队列, 由一个线程批量格式化并输出, 见 AsyncAccessLog */
+    @Value("${req.log-async:false}")
+    private boolean logAsync;
+
+    /** 异步输出时队列的大小, 向上取到 2 的幂 */
+    @Value("${req.log-async-buffer-size:8192}")
+    private int logAsyncBufferSize;
+
+    /** 异步输出时每批最多输出多少条 */
+    @Value("${req.log-async-batch-size:256}")
+    private int logAsyncBatchSize;
+
+    /** 异步输出的队列满时: drop 丢弃, sample 超过 3/4 时开始按 1/sample-rate 采样, 满了丢弃 */
+    @Value("${req.log-async-full-policy:drop}")
+    private String logAsyncFullPolicy;
+
+    @Value("${req.log-async-sample-rate:10}")
+    private int logAsyncSampleRate;
+
 //    /** 处理语言时的参数名(/path?lang=zh-CN) */
 //    @Value("${http.language.param-name:lang}")
 //    private String languageParam;
@@ -102,7 +126,9 @@ public class GlobalFilterConfig {
     @Bean
     @Order(4)
     public FilterRegistrationBean<LogTraceFilter> traceFilter() {
-        LogTraceFilter filter = new LogTraceFilter(excludePathList, printHeader);
+        AsyncAccessLog asyncLog = logAsync
+                ? new AsyncAccessLog(logAsyncBufferSize, logAsyncBatchSize, logAsyncFullPolicy, logAsyncSampleRate) : null;
+        LogTraceFilter filter = new LogTraceFilter(excludePathList, printHeader, logResponseCapture, asyncLog);
         FilterRegistrationBean<LogTraceFilter> filterBean = new FilterRegistrationBean<>(filter);
         filterBean.setOrder(Integer.MIN_VALUE + 4);
         return filterBean;
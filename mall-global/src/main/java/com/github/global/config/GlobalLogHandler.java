@@ -1,13 +1,24 @@
 package com.github.global.config;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.common.json.JsonModule;
+import com.github.common.util.DesensitizationUtil;
 import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Configuration;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 @Configuration
 @ConditionalOnClass(ObjectMapper.class)
 public class GlobalLogHandler {
@@ -62,6 +73,92 @@ public class GlobalLogHandler {
             }
         }
 
+        return compressAndCut(json);
+    }
+
+    /**
+     * <pre>
+     * 原始的 json 字节(比如请求体)转成日志: 用 parser 逐个 token 复制到 generator, 去掉空白符并对字符串值脱敏(跟 {@link #toJson(Object)}
+     * 一样按字段名), 不构建对象, 不把整个 json 转成 String 再解析.
+     *
+     * 不是 json 对象或数组的原样输出; 只有前 length 个字节(截断了)时输出到能解析的位置为止, 后面加上 ...(总字节数),
+     * 截断的不再按 cut-json 截取头尾, 复制多少字节由 {@link #captureLimit(int)} 决定
+     * </pre>
+     *
+     * @param total 原始数据一共多少字节, 大于 length 时说明有截断
+     */
+    public String toJson(byte[] bytes, int length, long total) {
+        if (Obj.isNull(bytes) || length <= 0) {
+            return Obj.EMPTY;
+        }
+
+        String json;
+        boolean truncated = total > length;
+        if (isJsonContainer(bytes, length)) {
+            JsonFactory factory = objectMapper.getFactory();
+            // 用字节输出, 去掉空白符并脱敏之后一般不会比原始数据长
+            ByteArrayOutputStream output = new ByteArrayOutputStream(length);
+            try (
+                    JsonParser parser = factory.createParser(bytes, 0, length);
+                    JsonGenerator generator = factory.createGenerator(output, JsonEncoding.UTF8)
+            ) {
+                // 截断时不要自动补上没写完的 ] 和 }
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+                try {
+                    copy(parser, generator);
+                } catch (JsonProcessingException e) {
+                    // 截断的数据解析到最后会失败, 输出已经复制的部分; 没有截断却失败的原样输出
+                    if (!truncated) {
+                        return compressAndCut(new String(bytes, 0, length, StandardCharsets.UTF_8));
+                    }
+                }
+                generator.flush();
+                json = output.toString(StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                json = new String(bytes, 0, length, StandardCharsets.UTF_8);
+            }
+        } else {
+            json = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        if (truncated) {
+            // 复制时已经按 captureLimit 截断过, 不再 cut
+            return (hasCompress ? Obj.compress(json) : json) + "...(" + total + " bytes)";
+        } else {
+            return compressAndCut(json);
+        }
+    }
+
+    /** 原始数据最多复制多少字节用来输出日志: json 需要截断时, 只复制截断长度的字节, 写入(或读取)时就截断, 不等整个字符串生成之后再截 */
+    public int captureLimit(int maxBytes) {
+        return cutJson ? Math.min(maxBytes, cutJsonMax) : maxBytes;
+    }
+
+    private void copy(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if (token == JsonToken.VALUE_STRING && hasDesensitization) {
+                generator.writeString(DesensitizationUtil.desWithKey(parser.getCurrentName(), parser.getText()));
+            } else if (token.isNumeric()) {
+                // 数字原样输出, 不解析成数值再写
+                generator.writeRawValue(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            } else {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+    }
+
+    /** 第一个非空白的字符是 { 或 [ */
+    private static boolean isJsonContainer(byte[] bytes, int length) {
+        for (int i = 0; i < length; i++) {
+            byte b = bytes[i];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return b == '{' || b == '[';
+            }
+        }
+        return false;
+    }
+
+    private String compressAndCut(String json) {
         String str = hasCompress ? Obj.compress(json) : json;
         return cutJson ? Obj.foggyValue(str, cutJsonMax, cutJsonLeftRightLen) : str;
     }
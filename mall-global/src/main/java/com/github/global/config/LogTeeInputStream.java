@@ -0,0 +1,88 @@
+package com.github.global.config;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * 读取时把读到的字节复制一份用来输出日志, 最多复制 maxBytes 个, 超出的只计数.
+ * 缓冲按需扩容, 小的请求体不会一开始就分配 maxBytes
+ */
+final class LogTeeInputStream extends FilterInputStream {
+
+    private static final int INIT_SIZE = 512;
+
+    private final int maxBytes;
+    private byte[] buf;
+    private int count;
+    private long total;
+
+    LogTeeInputStream(InputStream in, int maxBytes) {
+        super(in);
+        this.maxBytes = Math.max(maxBytes, 0);
+        this.buf = new byte[Math.min(this.maxBytes, INIT_SIZE)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            total++;
+            if (count < maxBytes) {
+                ensure(1);
+                buf[count++] = (byte) b;
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            total += n;
+            int copy = Math.min(n, maxBytes - count);
+            if (copy > 0) {
+                ensure(copy);
+                System.arraycopy(b, off, buf, count, copy);
+                count += copy;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // 跳过的不复制, 只计数
+        long skipped = super.skip(n);
+        total += Math.max(skipped, 0);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    private void ensure(int add) {
+        int need = count + add;
+        if (need > buf.length) {
+            buf = Arrays.copyOf(buf, (int) Math.min(Math.max((long) buf.length << 1, need), maxBytes));
+        }
+    }
+
+    /** 复制下来的字节, 有效长度是 {@link #length()} */
+    byte[] bytes() {
+        return buf;
+    }
+
+    int length() {
+        return count;
+    }
+
+    /** 一共读了多少字节, 大于 length 说明有截断 */
+    long total() {
+        return total;
+    }
+}
@@ -1,6 +1,5 @@
 package com.github.global.config;
 
-import com.github.common.json.JsonUtil;
 import com.github.common.util.Arr;
 import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
@@ -18,12 +17,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
@@ -37,9 +34,16 @@ import java.util.List;
 @ControllerAdvice(annotations = { Controller.class, RestController.class })
 public class RequestBodyAdvice extends RequestBodyAdviceAdapter {
 
+    /** 复制请求体的流放在请求属性中, 转换器读取失败(比如 json 格式错误)时由全局异常处理取出已经读到的字节输出 */
+    static final String BODY_TEE = RequestBodyAdvice.class.getName() + ".tee";
+
     @Value("${req.log-exclude-path:}")
     private List<String> excludePathList;
 
+    /** 请求体最多复制多少字节用来输出日志, 超出的截断 */
+    @Value("${req.log-body-max-bytes:65536}")
+    private int logBodyMaxBytes;
+
     private final GlobalLogHandler logHandler;
 
     @Override
@@ -50,60 +54,84 @@ public class RequestBodyAdvice extends RequestBodyAdviceAdapter {
     @Override
     public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
                                            Class<? extends HttpMessageConverter<?>> converterType) throws IOException {
-        if (Arr.isEmpty(excludePathList) || !excludePathList.contains(RequestUtil.getRequestUri())) {
-            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-                return new HttpInputMessage() {
-                    @Override
-                    public HttpHeaders getHeaders() {
-                        return inputMessage.getHeaders();
-                    }
-
-                    @Override
-                    public InputStream getBody() throws IOException {
-                        // inputStream 是通过内部偏移来读取的, 读到末尾后没有指回来,
-                        // 一些实现流没有实现 reset 方法, 将会报 inputStream 默认的实现 mark/reset not supported 异常, 比如
-                        //   tomcat 的 org.apache.catalina.connector.CoyoteInputStream
-                        //   undertow 的 io.undertow.servlet.spec.ServletInputStreamImpl
-                        //   jetty 的 org.eclipse.jetty.server.HttpInputOverHTTP
-                        // 这导致当想要重复读取时会报 getXX can't be called after getXXX 异常,
-                        // 所以像下面这样操作: 先将流读取成 byte[], 输出日志后用 byte[] 再返回一个输入流
-                        try (
-                                InputStream input = inputMessage.getBody();
-                                ByteArrayOutputStream output = new ByteArrayOutputStream()
-                        ) {
-                            // 用 ByteArrayOutputStream 的方式是最快的
-                            // 见: https://stackoverflow.com/questions/309424/how-do-i-read-convert-an-inputstream-into-a-string-in-java
-                            Obj.inputToOutput(input, output);
-                            byte[] bytes = output.toByteArray();
-
-                            String method = RequestUtil.getMethod();
-                            String url = RequestUtil.getRequestUrl();
-                            String body = dropWhiteAndDesensitization(new String(bytes, StandardCharsets.UTF_8));
-                            LogUtil.ROOT_LOG.info("[{} {}] request-body({})", method, url, body);
-
-                            // 在 ByteArrayOutputStream 和 ByteArrayInputStream 上调用 close 是无意义的, 它们也都有实现 reset 方法
-                            return new ByteArrayInputStream(bytes);
-                        }
-                    }
-                };
-            }
+        if (needLog()) {
+            return new LogInputMessage(inputMessage, logHandler.captureLimit(logBodyMaxBytes));
         }
         return super.beforeBodyRead(inputMessage, parameter, targetType, converterType);
     }
+
+    /** 请求体是空的时不会调用 beforeBodyRead 和 afterBodyRead, 在这里输出 */
+    @Override
+    public Object handleEmptyBody(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                  Class<? extends HttpMessageConverter<?>> converterType) {
+        if (needLog()) {
+            log(logHandler, null);
+        }
+        return super.handleEmptyBody(body, inputMessage, parameter, targetType, converterType);
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter, Type targetType,
+                                Class<? extends HttpMessageConverter<?>> converterType) {
+        if (inputMessage instanceof LogInputMessage message && LogUtil.ROOT_LOG.isInfoEnabled()) {
+            log(logHandler, message.tee);
+        }
+        return super.afterBodyRead(body, inputMessage, parameter, targetType, converterType);
+    }
+
+    private boolean needLog() {
+        return LogUtil.ROOT_LOG.isInfoEnabled()
+                && (Arr.isEmpty(excludePathList) || !excludePathList.contains(RequestUtil.getRequestUri()));
+    }
+
+    /** 转换器读取请求体失败时 afterBodyRead 不会调用, 由 {@link GlobalException} 调用这里输出已经读到的请求体 */
+    static void logFailedBody(GlobalLogHandler logHandler) {
+        HttpServletRequest request = RequestUtil.getRequest();
+        if (Obj.isNotNull(request) && request.getAttribute(BODY_TEE) instanceof LogTeeInputStream tee
+                && LogUtil.ROOT_LOG.isInfoEnabled()) {
+            log(logHandler, tee);
+        }
+    }
+
+    /** 输出 json 转换器读取时复制下来的字节, 去掉空白符并脱敏, 见 {@link GlobalLogHandler#toJson(byte[], int, long)} */
+    private static void log(GlobalLogHandler logHandler, LogTeeInputStream tee) {
+        String body = Obj.isNull(tee) ? Obj.EMPTY : logHandler.toJson(tee.bytes(), tee.length(), tee.total());
+        LogUtil.ROOT_LOG.info("[{} {}] request-body({})", RequestUtil.getMethod(), RequestUtil.getRequestUrl(), body);
+    }
+
     /**
-     * 这里是为了打印日志, 先转成 object 再 toJson 有两个目的:
-     * 1.去掉原数据中可能有的空白符(比如换行制表空格等), 2.字段脱敏(比如密码字段的值输出成 *** 等)
+     * <pre>
+     * 之前是先把整个请求体读成 byte[], 转成 String 解析成对象再 toJson 输出日志, 最后用 byte[] 再给 json 转换器解析一次.
+     * 现在 json 转换器直接读原始的流, 读到的字节顺便复制一份(最多 maxBytes 个), 读完之后(afterBodyRead)再用流式的方式脱敏输出,
+     * 请求体只解析一次, 也不需要流支持 mark/reset.
+     * json 格式错误时转换器会抛出异常, 不会走到 afterBodyRead, 复制的流放在请求属性中, 由全局异常处理输出
+     * </pre>
      */
-    private String dropWhiteAndDesensitization(String json) {
-        if (Obj.isNotBlank(json)) {
-            String t = json.trim();
-            if ((t.startsWith("[") && t.endsWith("]")) || (t.startsWith("{") && t.endsWith("}"))) {
-                String str = logHandler.toJson(JsonUtil.toObjectNil(t, Object.class));
-                if (Obj.isNotBlank(str)) {
-                    return str;
+    static final class LogInputMessage implements HttpInputMessage {
+        private final HttpInputMessage inputMessage;
+        private final int maxBytes;
+        private LogTeeInputStream tee;
+
+        LogInputMessage(HttpInputMessage inputMessage, int maxBytes) {
+            this.inputMessage = inputMessage;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return inputMessage.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (Obj.isNull(tee)) {
+                tee = new LogTeeInputStream(inputMessage.getBody(), maxBytes);
+                HttpServletRequest request = RequestUtil.getRequest();
+                if (Obj.isNotNull(request)) {
+                    request.setAttribute(BODY_TEE, tee);
                 }
             }
+            return tee;
         }
-        return json;
     }
 }
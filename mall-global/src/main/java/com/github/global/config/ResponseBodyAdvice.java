@@ -5,6 +5,7 @@ import com.github.common.util.Arr;
 import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
 import com.github.common.util.RequestUtil;
+import com.github.global.filter.LogCaptureResponse;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
@@ -14,12 +15,15 @@ import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.http.server.ServerHttpResponse;
 import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.servlet.mvc.method.annotation.AbstractMappingJacksonResponseBodyAdvice;
+import org.springframework.web.util.WebUtils;
 
+import javax.servlet.DispatcherType;
 import java.lang.reflect.Method;
 import java.util.List;
 
@@ -37,28 +41,58 @@ public class ResponseBodyAdvice extends AbstractMappingJacksonResponseBodyAdvice
     @Value("${req.log-exclude-path:}")
     private List<String> excludePathList;
 
+    /** 响应体最多复制多少字节用来输出日志, 超出的截断, 开启 req.log-response-capture 时使用 */
+    @Value("${req.log-body-max-bytes:65536}")
+    private int logBodyMaxBytes;
+
     private final GlobalLogHandler logHandler;
 
+    /**
+     * <pre>
+     * 默认用 {@link GlobalLogHandler#toJson(Object)} 把返回值再序列化一次输出日志.
+     * 开启 req.log-response-capture 时 LogTraceFilter 会包装响应, 这里只登记要输出的日志, json 转换器写响应时顺便复制写出去的字节
+     * (最多 logBodyMaxBytes 个, 写入时就截断), 请求处理完再用流式的方式脱敏输出, 返回值只序列化一次.
+     * 没有包装过的响应(比如异步请求)还是用之前的方式
+     * </pre>
+     */
     @Override
     protected void beforeBodyWriteInternal(MappingJacksonValue bodyContainer, MediaType contentType, MethodParameter parameter,
                                            ServerHttpRequest request, ServerHttpResponse response) {
         if (Arr.isEmpty(excludePathList) || !excludePathList.contains(RequestUtil.getRequestUri())) {
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-                StringBuilder sbd = new StringBuilder();
-                sbd.append(parameter.getContainingClass().getName());
-                Method method = parameter.getMethod();
-                if (Obj.isNotNull(method)) {
-                    sbd.append("#").append(method.getName());
-                }
-                ServletServerHttpRequest req = (ServletServerHttpRequest) request;
-                sbd.append(" [").append(req.getMethod()).append(" ").append(req.getURI()).append("] ");
-                long startTime = LogUtil.getStartTime();
-                if (Obj.greater0(startTime)) {
-                    sbd.append("time(").append(Dates.toHuman(System.currentTimeMillis() - startTime)).append(") ");
+                String log = logPrefix(parameter, (ServletServerHttpRequest) request);
+                LogCaptureResponse captureResponse = captureResponse(request, response);
+                if (Obj.isNotNull(captureResponse)) {
+                    captureResponse.capture(logHandler.captureLimit(logBodyMaxBytes), stream -> LogUtil.ROOT_LOG.info(
+                            log + logHandler.toJson(stream.bytes(), stream.length(), stream.total()) + ")"));
+                } else {
+                    LogUtil.ROOT_LOG.info(log + logHandler.toJson(bodyContainer.getValue()) + ")");
                 }
-                sbd.append("return(").append(logHandler.toJson(bodyContainer.getValue())).append(")");
-                LogUtil.ROOT_LOG.info(sbd.toString());
             }
         }
     }
+
+    private static String logPrefix(MethodParameter parameter, ServletServerHttpRequest req) {
+        StringBuilder sbd = new StringBuilder();
+        sbd.append(parameter.getContainingClass().getName());
+        Method method = parameter.getMethod();
+        if (Obj.isNotNull(method)) {
+            sbd.append("#").append(method.getName());
+        }
+        sbd.append(" [").append(req.getMethod()).append(" ").append(req.getURI()).append("] ");
+        long startTime = LogUtil.getStartTime();
+        if (Obj.greater0(startTime)) {
+            sbd.append("time(").append(Dates.toHuman(System.currentTimeMillis() - startTime)).append(") ");
+        }
+        return sbd.append("return(").toString();
+    }
+
+    /** LogTraceFilter 包装过的响应, 异步分派时 LogTraceFilter 已经结束, 返回 null */
+    private static LogCaptureResponse captureResponse(ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest req && response instanceof ServletServerHttpResponse res
+                && req.getServletRequest().getDispatcherType() == DispatcherType.REQUEST) {
+            return WebUtils.getNativeResponse(res.getServletResponse(), LogCaptureResponse.class);
+        }
+        return null;
+    }
 }
@@ -0,0 +1,96 @@
+package com.github.global.filter;
+
+import com.github.common.util.DesensitizationUtil;
+import com.github.common.util.Obj;
+import com.github.common.util.RequestUtil;
+import org.slf4j.MDC;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一条请求日志要输出的内容: 在请求线程中只从 request 里取出原始的值, 脱敏和拼接放到 {@link #format()} 中,
+ * 异步输出时由 {@link AsyncAccessLog} 的输出线程调用
+ */
+final class AccessLogRecord {
+
+    /** 请求线程的日志上下文(跟踪号等), 只在异步时有 */
+    private final Map<String, String> mdc;
+    private final String ip;
+    private final String method;
+    private final String url;
+    /** 头名和头值交替放, 不输出头信息时是 null */
+    private final String[] headers;
+    private final Map<String, String[]> params;
+    private final boolean upload;
+
+    private AccessLogRecord(Map<String, String> mdc, String ip, String method, String url, String[] headers,
+                            Map<String, String[]> params, boolean upload) {
+        this.mdc = mdc;
+        this.ip = ip;
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.params = params;
+        this.upload = upload;
+    }
+
+    /**
+     * @param async 异步时请求结束后 request 会被容器回收, 参数需要复制一份, 同时带上日志上下文
+     */
+    static AccessLogRecord of(HttpServletRequest request, String ip, boolean printHeader, boolean async) {
+        String[] headers = null;
+        if (printHeader) {
+            List<String> list = new ArrayList<>();
+            Enumeration<String> headerNames = request.getHeaderNames();
+            while (headerNames.hasMoreElements()) {
+                String headName = headerNames.nextElement();
+                list.add(headName);
+                list.add(request.getHeader(headName));
+            }
+            headers = list.toArray(new String[0]);
+        }
+        Map<String, String[]> params = request.getParameterMap();
+        return new AccessLogRecord(
+                async ? MDC.getCopyOfContextMap() : null,
+                ip,
+                request.getMethod(),
+                RequestUtil.getRequestUrl(request),
+                headers,
+                (async && Obj.isNotNull(params)) ? new LinkedHashMap<>(params) : params,
+                RequestUtil.hasUploadFile(request)
+        );
+    }
+
+    Map<String, String> mdc() {
+        return mdc;
+    }
+
+    /** [ip] [method url] [header(<name: value>...) params(...) upload-file] */
+    String format() {
+        StringBuilder sbd = new StringBuilder();
+        if (Obj.isNotNull(headers)) {
+            sbd.append("header(");
+            for (int i = 0; i + 1 < headers.length; i += 2) {
+                sbd.append("<").append(headers[i]).append(": ");
+                sbd.append(DesensitizationUtil.desWithKey(headers[i], headers[i + 1]));
+                sbd.append(">");
+            }
+            sbd.append(")");
+        }
+
+        String paramStr = Obj.formatPrintParam(params);
+        if (Obj.isNotBlank(paramStr)) {
+            sbd.append(" params(").append(paramStr).append(")");
+        }
+
+        if (upload) {
+            sbd.append(" upload-file");
+        }
+        return "[" + ip + "] [" + method + " " + url + "] [" + sbd.toString().trim() + "]";
+    }
+}
@@ -0,0 +1,89 @@
+package com.github.global.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 有界无锁的多生产者单消费者环形队列, 跟 Disruptor 一样每个槽位有一个序号:
+ *   槽位序号 == 写入位置   时槽位空着, 生产者 CAS 抢到写入位置后放入元素, 再把槽位序号设成 位置 + 1 表示可以读
+ *   槽位序号 == 读取位置+1 时槽位可以读, 消费者取出元素后把槽位序号设成 位置 + 容量 表示下一圈可以写
+ * 队列满时 offer 直接返回 false, 不等待、不加锁
+ * </pre>
+ */
+final class AccessLogRing<E> {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<E> elements;
+    /** 下一个写入位置, 多个生产者 CAS 争用 */
+    private final AtomicLong tail = new AtomicLong();
+    /** 下一个读取位置, 只有消费者写, 其他线程读它算 size */
+    private final AtomicLong head = new AtomicLong();
+
+    /** @param capacity 容量, 向上取到 2 的幂 */
+    AccessLogRing(int capacity) {
+        int size = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(capacity, 2) - 1));
+        this.mask = size - 1;
+        this.sequences = new AtomicLongArray(size);
+        this.elements = new AtomicReferenceArray<>(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** 多个线程可以同时调用, 队列满时返回 false */
+    boolean offer(E e) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, e);
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 这个槽位上一圈的元素还没有被消费
+                return false;
+            } else {
+                // 被其他生产者抢走了
+                pos = tail.get();
+            }
+        }
+    }
+
+    /** 只能由一个消费线程调用, 最多取 max 个, 返回取到的个数 */
+    int drain(Consumer<E> consumer, int max) {
+        long pos = head.get();
+        int count = 0;
+        while (count < max) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) {
+                // 空了, 或者生产者抢到了位置但还没有放入元素
+                break;
+            }
+            E e = elements.get(index);
+            elements.lazySet(index, null);
+            sequences.set(index, pos + mask + 1);
+            pos++;
+            count++;
+            head.lazySet(pos);
+            consumer.accept(e);
+        }
+        return count;
+    }
+
+    int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.min(Math.max(size, 0), capacity());
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
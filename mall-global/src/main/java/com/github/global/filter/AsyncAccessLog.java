@@ -0,0 +1,146 @@
+package com.github.global.filter;
+
+import com.github.common.util.LogUtil;
+import com.github.common.util.Obj;
+import org.slf4j.MDC;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 异步输出 {@link LogTraceFilter} 的请求日志(req.log-async).
+ *
+ * 请求线程只把 {@link AccessLogRecord} 放进无锁的环形队列({@link AccessLogRing}), 不脱敏、不拼接、不等日志的锁;
+ * 一个输出线程每次最多取 batchSize 条, 逐条带上请求线程的日志上下文(跟踪号等)格式化并输出, 队列空时休眠 1ms.
+ *
+ * 队列满时不阻塞请求线程:
+ *   drop   直接丢弃
+ *   sample 队列超过 3/4 时开始只保留 1/sampleRate, 满了丢弃
+ * 丢弃的条数每秒最多输出一次.
+ * 请求日志会比同一个请求中其他同步输出的日志晚, 日志中的 RECEIVE_TIME 还是收到请求的时间
+ * </pre>
+ */
+public final class AsyncAccessLog implements AutoCloseable {
+
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long REPORT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AccessLogRing<AccessLogRecord> ring;
+    private final int batchSize;
+    private final boolean sample;
+    private final int sampleRate;
+    private final int sampleSize;
+    private final Consumer<String> writer;
+
+    private final LongAdder dropped = new LongAdder();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    /** 以下只在输出线程中使用 */
+    private long reportedDropped;
+    private long lastReportNanos;
+
+    /**
+     * @param fullPolicy 队列满时的处理: drop 或 sample
+     */
+    public AsyncAccessLog(int bufferSize, int batchSize, String fullPolicy, int sampleRate) {
+        this(bufferSize, batchSize, fullPolicy, sampleRate, LogUtil.ROOT_LOG::info);
+    }
+
+    AsyncAccessLog(int bufferSize, int batchSize, String fullPolicy, int sampleRate, Consumer<String> writer) {
+        this.ring = new AccessLogRing<>(bufferSize);
+        this.batchSize = Math.max(batchSize, 1);
+        this.sample = "sample".equalsIgnoreCase(Obj.toStr(fullPolicy).trim());
+        this.sampleRate = Math.max(sampleRate, 1);
+        this.sampleSize = ring.capacity() / 4 * 3;
+        this.writer = writer;
+
+        thread = new Thread(this::run, "async-access-log");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** 请求线程调用, 不会阻塞, 丢弃时返回 false */
+    boolean offer(AccessLogRecord record) {
+        if (sample && sampleRate > 1 && ring.size() >= sampleSize
+                && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            dropped.increment();
+            return false;
+        }
+        if (ring.offer(record)) {
+            return true;
+        }
+        dropped.increment();
+        return false;
+    }
+
+    /** 丢弃(含采样时没有保留)的条数 */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    private void run() {
+        lastReportNanos = System.nanoTime();
+        while (running) {
+            int count = ring.drain(this::write, batchSize);
+            // 每批之后清掉最后一条的上下文, 丢弃的提示不带某个请求的跟踪号
+            MDC.clear();
+            report(false);
+            if (count == 0) {
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+        // 关闭时把剩下的输出完
+        while (ring.drain(this::write, batchSize) > 0) {
+            // 输出完
+        }
+        MDC.clear();
+        report(true);
+    }
+
+    private void write(AccessLogRecord record) {
+        try {
+            Map<String, String> mdc = record.mdc();
+            if (Obj.isNull(mdc)) {
+                MDC.clear();
+            } else {
+                MDC.setContextMap(mdc);
+            }
+            writer.accept(record.format());
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("输出请求日志异常", e);
+            }
+        }
+    }
+
+    private void report(boolean force) {
+        long now = System.nanoTime();
+        if (force || now - lastReportNanos >= REPORT_NANOS) {
+            lastReportNanos = now;
+            long count = dropped.sum();
+            if (count > reportedDropped) {
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn("请求日志队列({})已满, 丢弃了({})条", ring.capacity(), count - reportedDropped);
+                }
+                reportedDropped = count;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
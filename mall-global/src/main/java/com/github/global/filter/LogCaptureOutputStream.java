@@ -0,0 +1,90 @@
+package com.github.global.filter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 写入时把写出去的字节复制一份用来输出日志, 最多复制 maxBytes 个, 超出的只计数.
+ * 缓冲按需扩容, 小的响应体不会一开始就分配 maxBytes
+ */
+public final class LogCaptureOutputStream extends ServletOutputStream {
+
+    private static final int INIT_SIZE = 512;
+
+    private final ServletOutputStream out;
+    private final int maxBytes;
+    private byte[] buf;
+    private int count;
+    private long total;
+
+    LogCaptureOutputStream(ServletOutputStream out, int maxBytes) {
+        this.out = out;
+        this.maxBytes = Math.max(maxBytes, 0);
+        this.buf = new byte[Math.min(this.maxBytes, INIT_SIZE)];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        total++;
+        if (count < maxBytes) {
+            ensure(1);
+            buf[count++] = (byte) b;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        total += len;
+        int copy = Math.min(len, maxBytes - count);
+        if (copy > 0) {
+            ensure(copy);
+            System.arraycopy(b, off, buf, count, copy);
+            count += copy;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    @Override
+    public boolean isReady() {
+        return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+        out.setWriteListener(writeListener);
+    }
+
+    private void ensure(int add) {
+        int need = count + add;
+        if (need > buf.length) {
+            buf = Arrays.copyOf(buf, (int) Math.min(Math.max((long) buf.length << 1, need), maxBytes));
+        }
+    }
+
+    /** 复制下来的字节, 有效长度是 {@link #length()} */
+    public byte[] bytes() {
+        return buf;
+    }
+
+    public int length() {
+        return count;
+    }
+
+    /** 一共写了多少字节, 大于 length 说明有截断 */
+    public long total() {
+        return total;
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.global.filter;
+
+import com.github.common.util.Obj;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 由 {@link LogTraceFilter} 包装响应, 默认什么都不做.
+ * {@link com.github.global.config.ResponseBodyAdvice} 在 json 转换器写之前调用 {@link #capture} 之后,
+ * 转换器通过 getOutputStream 写出去的字节会复制一份(最多 maxBytes 个), 请求处理完由 LogTraceFilter 交给 logger 输出
+ * </pre>
+ */
+public final class LogCaptureResponse extends HttpServletResponseWrapper {
+
+    private int maxBytes = -1;
+    private Consumer<LogCaptureOutputStream> logger;
+    private LogCaptureOutputStream capture;
+
+    public LogCaptureResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    /** 之后写出的响应体复制最多 maxBytes 个字节, 写完之后交给 logger */
+    public void capture(int maxBytes, Consumer<LogCaptureOutputStream> logger) {
+        this.maxBytes = maxBytes;
+        this.logger = logger;
+        this.capture = null;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (maxBytes < 0) {
+            return super.getOutputStream();
+        }
+        if (Obj.isNull(capture)) {
+            capture = new LogCaptureOutputStream(super.getOutputStream(), maxBytes);
+        }
+        return capture;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        clear();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        clear();
+    }
+
+    /** 响应被重置之后之前复制的已经没用了, 重新写的(比如全局异常处理)会再调用 capture */
+    private void clear() {
+        maxBytes = -1;
+        logger = null;
+        capture = null;
+    }
+
+    /** 请求处理完之后调用, 没有 capture 过时什么都不做 */
+    void log() {
+        if (Obj.isNotNull(logger)) {
+            Consumer<LogCaptureOutputStream> log = logger;
+            LogCaptureOutputStream stream = Obj.isNull(capture) ? new LogCaptureOutputStream(null, 0) : capture;
+            clear();
+            log.accept(stream);
+        }
+    }
+}
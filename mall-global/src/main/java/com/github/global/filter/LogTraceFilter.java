@@ -6,8 +6,8 @@ import org.springframework.context.i18n.LocaleContextHolder;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.util.Enumeration;
 import java.util.List;
 
 /**
@@ -19,9 +19,15 @@ public class LogTraceFilter implements Filter {
 
     private final List<String> excludePathList;
     private final boolean printHeader;
-    public LogTraceFilter(List<String> excludePathList, boolean printHeader) {
+    /** 是否包装响应, 让 ResponseBodyAdvice 可以复制 json 转换器写出去的字节输出日志, 见 {@link LogCaptureResponse} */
+    private final boolean captureResponse;
+    /** 不为 null 时请求日志异步输出, 见 {@link AsyncAccessLog} */
+    private final AsyncAccessLog asyncLog;
+    public LogTraceFilter(List<String> excludePathList, boolean printHeader, boolean captureResponse, AsyncAccessLog asyncLog) {
         this.excludePathList = excludePathList;
         this.printHeader = printHeader;
+        this.captureResponse = captureResponse;
+        this.asyncLog = asyncLog;
     }
 
     @Override
@@ -31,44 +37,38 @@ public class LogTraceFilter implements Filter {
             chain.doFilter(req, res);
             return;
         }
+        LogCaptureResponse response = null;
         try {
             String traceId = request.getHeader(Const.TRACE);
             String ip = RequestUtil.getRealIp(request);
             LogUtil.putTraceAndIp(traceId, ip, LocaleContextHolder.getLocale());
             if (Arr.isEmpty(excludePathList) || !excludePathList.contains(request.getRequestURI())) {
                 if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-                    String method = request.getMethod();
-                    String url = RequestUtil.getRequestUrl(request);
-
-                    StringBuilder sbd = new StringBuilder();
-                    if (printHeader) {
-                        sbd.append("header(");
-                        Enumeration<String> headerNames = request.getHeaderNames();
-                        while (headerNames.hasMoreElements()) {
-                            String headName = headerNames.nextElement();
-                            String value = request.getHeader(headName);
-                            sbd.append("<").append(headName).append(": ");
-                            sbd.append(DesensitizationUtil.desWithKey(headName, value));
-                            sbd.append(">");
-                        }
-                        sbd.append(")");
+                    AccessLogRecord record = AccessLogRecord.of(request, ip, printHeader, Obj.isNotNull(asyncLog));
+                    if (Obj.isNotNull(asyncLog)) {
+                        asyncLog.offer(record);
+                    } else {
+                        LogUtil.ROOT_LOG.info(record.format());
                     }
-
-                    String params = Obj.formatPrintParam(request.getParameterMap());
-                    if (Obj.isNotBlank(params)) {
-                        sbd.append(" params(").append(params).append(")");
+                    if (captureResponse && res instanceof HttpServletResponse r) {
+                        response = new LogCaptureResponse(r);
                     }
-
-                    boolean upload = RequestUtil.hasUploadFile(request);
-                    if (upload) {
-                        sbd.append(" upload-file");
-                    }
-                    LogUtil.ROOT_LOG.info("[{}] [{} {}] [{}]", ip, method, url, sbd.toString().trim());
                 }
             }
-            chain.doFilter(req, res);
+            chain.doFilter(req, Obj.isNull(response) ? res : response);
         } finally {
+            // 异步请求在这里还没有写响应, 异步分派时 ResponseBodyAdvice 不会 capture
+            if (Obj.isNotNull(response) && !request.isAsyncStarted()) {
+                response.log();
+            }
             LogUtil.unbind();
         }
     }
+
+    @Override
+    public void destroy() {
+        if (Obj.isNotNull(asyncLog)) {
+            asyncLog.close();
+        }
+    }
 }
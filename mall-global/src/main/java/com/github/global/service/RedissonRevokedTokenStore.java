@@ -0,0 +1,55 @@
+package com.github.global.service;
+
+import com.github.common.mvc.AppTokenHandler;
+import com.github.common.mvc.RevokedTokenStore;
+import com.github.common.util.Obj;
+import lombok.RequiredArgsConstructor;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 已注销的 token 放在 redis 中(键在 token 过期时失效), 所有节点都拒绝, 启动时注册到 {@link AppTokenHandler}.
+ * 注销时用 pub/sub 通知所有节点清掉本地缓存中验证过的这个 token, 缓存中有的 token 不再每次请求都查 redis
+ */
+@RequiredArgsConstructor
+@Configuration
+@ConditionalOnClass({ RedissonClient.class })
+public class RedissonRevokedTokenStore implements RevokedTokenStore, InitializingBean {
+
+    private static final String KEY_PREFIX = "token:revoked:";
+    private static final String REVOKED = "1";
+    private static final String REVOKED_TOPIC = "token:revoked";
+
+    private final RedissonService redissonService;
+
+    @Override
+    public void afterPropertiesSet() {
+        redissonService.subscribe(REVOKED_TOPIC, AppTokenHandler::evictVerified);
+        AppTokenHandler.setRevokedTokenStore(this);
+    }
+
+    @Override
+    public void revoke(String digest, long expireMs) {
+        String key = KEY_PREFIX + digest;
+        if (expireMs <= 0) {
+            redissonService.set(key, REVOKED);
+        } else {
+            long ttlMs = expireMs - System.currentTimeMillis();
+            if (ttlMs <= 0) {
+                return;
+            }
+            redissonService.set(key, REVOKED, ttlMs, TimeUnit.MILLISECONDS);
+        }
+        // 先写入再通知, 其他节点清掉缓存后再来查询时已经能查到
+        redissonService.publish(REVOKED_TOPIC, digest);
+    }
+
+    @Override
+    public boolean isRevoked(String digest) {
+        return Obj.isNotNull(redissonService.get(KEY_PREFIX + digest));
+    }
+}
@@ -1,8 +1,11 @@
 package com.github.global.service;
 
 import com.github.common.util.Arr;
+import com.github.common.util.Obj;
 import lombok.RequiredArgsConstructor;
+import org.redisson.api.RBatch;
 import org.redisson.api.RMap;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.Codec;
 import org.redisson.client.codec.StringCodec;
@@ -10,11 +13,9 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
-import java.util.Collection;
-import java.util.Date;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 @SuppressWarnings("unchecked")
@@ -31,6 +32,15 @@ public class RedissonService {
     private final RedissonClient redisson;
 
 
+    /** 发布消息, 返回收到消息的订阅者数, 对应命令: PUBLISH channel message */
+    public long publish(String channel, String message) {
+        return redisson.getTopic(channel, USE_CODEC).publish(message);
+    }
+    /** 订阅消息, 对应命令: SUBSCRIBE channel */
+    public void subscribe(String channel, Consumer<String> listener) {
+        redisson.getTopic(channel, USE_CODEC).addListener(String.class, (topic, msg) -> listener.accept(msg));
+    }
+
     /** 从 redis 中删值, 对应命令: DEL key */
     public void delete(String key) {
         redisson.getBucket(key, USE_CODEC).delete();
@@ -91,6 +101,78 @@ public class RedissonService {
         return (T) redisson.getBucket(key, USE_CODEC).get();
     }
 
+    /**
+     * 批量放值(键不存在才放)并设定超时时间, 所有的键在一次 pipeline 中发送, 返回放值成功的键. 对应命令: SET key value NX PX ms
+     *
+     * @return 放值成功的键, 顺序跟参数一致
+     */
+    public <T> Set<String> setIfAbsent(Collection<String> keys, T value, long time, TimeUnit unit) {
+        if (Arr.isEmpty(keys)) {
+            return Collections.emptySet();
+        }
+
+        List<String> keyList = new ArrayList<>(keys);
+        Duration duration = Duration.of(time, unit.toChronoUnit());
+        RBatch batch = redisson.createBatch();
+        for (String key : keyList) {
+            batch.<T>getBucket(key, USE_CODEC).setIfAbsentAsync(value, duration);
+        }
+        List<?> responses = batch.execute().getResponses();
+        Set<String> returnSet = new LinkedHashSet<>();
+        for (int i = 0; i < keyList.size(); i++) {
+            if (Boolean.TRUE.equals(responses.get(i))) {
+                returnSet.add(keyList.get(i));
+            }
+        }
+        return returnSet;
+    }
+    /** 从 redis 中批量删值, 对应命令: DEL key1 key2 ... */
+    public void delete(Collection<String> keys) {
+        if (Arr.isNotEmpty(keys)) {
+            redisson.getKeys().delete(keys.toArray(new String[0]));
+        }
+    }
+
+    /**
+     * 值跟指定的一样才重新设置超时时间, 用来续期用 {@link #setIfAbsent} 获取的租约. 对应命令: GET key + PEXPIRE key ms
+     *
+     * @param value 获取租约时放的值
+     * @return 返回 false 则表示租约已经过期或被其他实例获取了
+     */
+    public boolean expireIfValue(String key, String value, long time, TimeUnit unit) {
+        // 先判断值再续期, 避免当前实例处理太久租约过期被其他实例获取后, 又把其他实例的租约续上
+        String script = """
+                if redis.call('get', KEYS[1]) == ARGV[1] then
+                    return redis.call('pexpire', KEYS[1], ARGV[2]);
+                else
+                    return 0;
+                end
+                """;
+        return Obj.toLong(runScript(script, List.of(key), value, String.valueOf(unit.toMillis(time)))) == 1;
+    }
+    /**
+     * 值跟指定的一样才删除, 用来释放用 {@link #setIfAbsent} 获取的租约. 对应命令: GET key + DEL key
+     *
+     * @param value 获取租约时放的值
+     * @return 返回 false 则表示租约已经过期或被其他实例获取了
+     */
+    public boolean deleteIfValue(String key, String value) {
+        // 先判断值再删除, 避免当前实例处理太久租约过期被其他实例获取后, 又把其他实例的租约删掉
+        String script = """
+                if redis.call('get', KEYS[1]) == ARGV[1] then
+                    return redis.call('del', KEYS[1]);
+                else
+                    return 0;
+                end
+                """;
+        return Obj.toLong(runScript(script, List.of(key), value)) == 1;
+    }
+
+    /** 运行返回整数的 lua 脚本 */
+    public Long runScript(String script, List<Object> keys, Object... args) {
+        return redisson.getScript(USE_CODEC).eval(RScript.Mode.READ_WRITE, script, RScript.ReturnType.INTEGER, keys, args);
+    }
+
 
     /**
      * 用 redis 获取分布式锁后运行并返回(释放不用调用方处理)
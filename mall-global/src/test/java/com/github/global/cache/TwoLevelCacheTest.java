@@ -0,0 +1,180 @@
+package com.github.global.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class TwoLevelCacheTest {
+
+    /** 用内存代替 redis, 多个 manager 共用一个实例就相当于多个节点连同一个 redis */
+    private static class MemoryCacheStore implements CacheStore {
+        private final Map<String, Object> data = new ConcurrentHashMap<>();
+        private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+        private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+        private final AtomicInteger getCount = new AtomicInteger();
+
+        @Override
+        public Object get(String key) {
+            getCount.incrementAndGet();
+            return data.get(key);
+        }
+        @Override
+        public void put(String key, Object value, long ttlMs) {
+            data.put(key, value);
+        }
+        @Override
+        public void evict(String key) {
+            data.remove(key);
+        }
+        @Override
+        public long version(String key) {
+            AtomicLong version = versions.get(key);
+            return version == null ? 0 : version.get();
+        }
+        @Override
+        public long nextVersion(String key) {
+            return versions.computeIfAbsent(key, k -> new AtomicLong()).incrementAndGet();
+        }
+        @Override
+        public void publish(String message) {
+            for (Consumer<String> listener : listeners) {
+                listener.accept(message);
+            }
+        }
+        @Override
+        public void subscribe(Consumer<String> listener) {
+            listeners.add(listener);
+        }
+    }
+
+    @Test
+    public void readThrough() {
+        MemoryCacheStore store = new MemoryCacheStore();
+        Cache node1 = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+        Cache node2 = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+
+        AtomicInteger loadCount = new AtomicInteger();
+        Assert.assertEquals("abc", node1.get(1, () -> { loadCount.incrementAndGet(); return "abc"; }));
+        // 第二个节点本地没有, 从远程取到, 不再调用加载方法
+        Assert.assertEquals("abc", node2.get(1, () -> { loadCount.incrementAndGet(); return "xyz"; }));
+        Assert.assertEquals(1, loadCount.get());
+
+        // 已经在本地了, 不再读远程
+        int getCount = store.getCount.get();
+        Assert.assertEquals("abc", node2.get(1, String.class));
+        Assert.assertEquals(getCount, store.getCount.get());
+
+        // null 值也会缓存
+        Assert.assertNull(node1.get(2, () -> { loadCount.incrementAndGet(); return null; }));
+        Assert.assertNull(node2.get(2, () -> { loadCount.incrementAndGet(); return null; }));
+        Assert.assertEquals(2, loadCount.get());
+    }
+
+    @Test
+    public void evictOtherNode() {
+        MemoryCacheStore store = new MemoryCacheStore();
+        Cache node1 = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+        Cache node2 = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+
+        node1.put(1, "abc");
+        Assert.assertEquals("abc", node2.get(1, String.class));
+
+        // 节点 1 更新后, 节点 2 的本地缓存被清除, 再读时拿到新值
+        node1.put(1, "def");
+        Assert.assertEquals("def", node2.get(1, String.class));
+
+        node2.evict(1);
+        Assert.assertNull(node1.get(1));
+
+        node1.put(2, "abc");
+        node1.put(3, "abc");
+        Assert.assertEquals("abc", node2.get(2, String.class));
+        node1.clear();
+        Assert.assertNull(node2.get(2));
+        Assert.assertNull(node2.get(3));
+    }
+
+    @Test
+    public void clearByVersion() {
+        MemoryCacheStore store = new MemoryCacheStore();
+        Cache node1 = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+        Cache node2 = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+        Cache other = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("order");
+        node1.put(1, "abc");
+        node1.put(2, "abc");
+        other.put(1, "order");
+        int remoteSize = store.data.size();
+
+        // 清空只是版本号加 1, 不删除远程的键, 旧版本的键不会再被读到
+        node1.clear();
+        Assert.assertEquals(remoteSize, store.data.size());
+        Assert.assertNull(node1.get(1));
+        Assert.assertNull(node2.get(2));
+        // 之后启动的节点也读不到
+        Cache node3 = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+        Assert.assertNull(node3.get(1));
+        // 其他缓存不受影响
+        Assert.assertEquals("order", other.get(1, String.class));
+
+        node2.put(1, "def");
+        Assert.assertEquals("def", node1.get(1, String.class));
+        Assert.assertEquals("def", node3.get(1, String.class));
+    }
+
+    @Test
+    public void singleLoader() throws Exception {
+        MemoryCacheStore store = new MemoryCacheStore();
+        Cache cache = new TwoLevelCacheManager(store, 100, 60000, 60000).getCache("user");
+
+        int threads = 32;
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future[threads];
+            for (int i = 0; i < threads; i++) {
+                futures[i] = pool.submit(() -> {
+                    start.await();
+                    return cache.get("hot", () -> {
+                        loadCount.incrementAndGet();
+                        TimeUnit.MILLISECONDS.sleep(100);
+                        return "value";
+                    });
+                });
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                Assert.assertEquals("value", future.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assert.assertEquals(1, loadCount.get());
+    }
+
+    @Test
+    public void loaderException() {
+        Cache cache = new TwoLevelCacheManager(new MemoryCacheStore(), 100, 60000, 60000).getCache("user");
+        try {
+            cache.get(1, () -> { throw new IllegalStateException("db error"); });
+            Assert.fail();
+        } catch (Cache.ValueRetrievalException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // 异常时不缓存, 下次还会调用加载方法
+        Assert.assertEquals("abc", cache.get(1, () -> "abc"));
+    }
+}
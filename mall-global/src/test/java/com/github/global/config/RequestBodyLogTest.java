@@ -0,0 +1,148 @@
+package com.github.global.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class RequestBodyLogTest {
+
+    private static final int MAX_BYTES = 65536;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GlobalLogHandler logHandler = logHandler(objectMapper);
+
+    private static GlobalLogHandler logHandler(ObjectMapper objectMapper) {
+        GlobalLogHandler handler = new GlobalLogHandler(objectMapper);
+        ReflectionTestUtils.setField(handler, "hasDesensitization", true);
+        return handler;
+    }
+
+    @Test
+    public void sameAsTree() throws IOException {
+        // 流式脱敏的结果跟之前 先解析成对象再 toJson 的一样
+        String json = "{\n  \"userName\" : \"zhangsan\",\n\t\"password\": \"123456\", \"phone\": \"13012345678\",\n"
+                + "  \"list\": [ {\"token\": \"d1651d1122894b7faf27255149c14dbc\", \"n\": 12, \"ok\": true, \"x\": null} ],\n"
+                + "  \"tags\": [\"a\", \"b\"], \"name\": \"张三\" }";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        String stream = logHandler.toJson(bytes, bytes.length, bytes.length);
+        Assert.assertEquals(treeLog(json), stream);
+        Assert.assertFalse(stream.contains("123456"));
+        Assert.assertFalse(stream.contains(" "));
+    }
+
+    @Test
+    public void notJson() {
+        for (String body : List.of("a=1&b=2", "  123", "\"str\"", "{not json}")) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            Assert.assertEquals(body, logHandler.toJson(bytes, bytes.length, bytes.length));
+        }
+        Assert.assertEquals("", logHandler.toJson(new byte[0], 0, 0));
+    }
+
+    @Test
+    public void tee() throws IOException {
+        String json = body(200_000);
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+
+        // json 转换器照常读取, 复制下来的是前 MAX_BYTES 个字节
+        LogTeeInputStream tee = new LogTeeInputStream(new ByteArrayInputStream(bytes), MAX_BYTES);
+        Object value = objectMapper.readValue(tee, Object.class);
+        Assert.assertEquals(objectMapper.readValue(bytes, Object.class), value);
+        Assert.assertEquals(bytes.length, tee.total());
+        Assert.assertEquals(MAX_BYTES, tee.length());
+        Assert.assertArrayEquals(Arrays.copyOf(bytes, MAX_BYTES), Arrays.copyOf(tee.bytes(), tee.length()));
+
+        // 截断的输出到能解析的位置为止, 是完整结果的前缀
+        String log = logHandler.toJson(tee.bytes(), tee.length(), tee.total());
+        String suffix = "...(" + bytes.length + " bytes)";
+        Assert.assertTrue(log.endsWith(suffix));
+        String prefix = log.substring(0, log.length() - suffix.length());
+        Assert.assertTrue(prefix.length() > MAX_BYTES / 2);
+        Assert.assertTrue(treeLog(json).startsWith(prefix));
+
+        // 单字节读取也一样, 小的请求体不截断
+        byte[] small = body(300).getBytes(StandardCharsets.UTF_8);
+        tee = new LogTeeInputStream(new ByteArrayInputStream(small), MAX_BYTES);
+        while (tee.read() >= 0) {
+            // 读完
+        }
+        Assert.assertEquals(small.length, tee.length());
+        Assert.assertEquals(small.length, tee.total());
+        Assert.assertTrue(tee.bytes().length < MAX_BYTES);
+        Assert.assertEquals(treeLog(new String(small, StandardCharsets.UTF_8)), logHandler.toJson(tee.bytes(), tee.length(), tee.total()));
+    }
+
+    @Test
+    public void malformedBody() throws IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/order");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        try {
+            byte[] bytes = "{\"orderNo\": \"A0001\", \"amount\": }".getBytes(StandardCharsets.UTF_8);
+            HttpInputMessage input = new HttpInputMessage() {
+                @Override
+                public HttpHeaders getHeaders() {
+                    return new HttpHeaders();
+                }
+                @Override
+                public InputStream getBody() {
+                    return new ByteArrayInputStream(bytes);
+                }
+            };
+            RequestBodyAdvice.LogInputMessage message = new RequestBodyAdvice.LogInputMessage(input, MAX_BYTES);
+            try {
+                objectMapper.readValue(message.getBody(), Object.class);
+                Assert.fail();
+            } catch (JsonProcessingException e) {
+                // json 格式错误
+            }
+
+            // 转换失败时不会走到 afterBodyRead, 全局异常处理从请求属性中取出已经读到的字节
+            LogTeeInputStream tee = (LogTeeInputStream) request.getAttribute(RequestBodyAdvice.BODY_TEE);
+            Assert.assertNotNull(tee);
+            Assert.assertEquals(bytes.length, tee.length());
+            Assert.assertEquals("{\"orderNo\": \"A0001\", \"amount\": }", logHandler.toJson(tee.bytes(), tee.length(), tee.total()));
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+
+    /** 之前的方式: 先解析成对象再 toJson */
+    private String treeLog(String json) {
+        try {
+            return logHandler.toJson(objectMapper.readValue(json.trim(), Object.class));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /** 不超过 size 字节(utf-8)的请求体 */
+    private String body(int size) throws IOException {
+        StringBuilder sbd = new StringBuilder("{\"orderNo\": \"A0001\", \"items\": [\n");
+        int bytes = sbd.length() + 3;
+        for (int i = 0; ; i++) {
+            String item = (i > 0 ? ",\n" : "") + objectMapper.writeValueAsString(Map.of("id", i, "userName", "user" + i,
+                    "password", "pwd" + i, "phone", "130" + (10_000_000 + i), "address", "北京市东城区紫禁城乾清宫" + i, "remark", "备注"));
+            bytes += item.getBytes(StandardCharsets.UTF_8).length;
+            if (bytes > size) {
+                break;
+            }
+            sbd.append(item);
+        }
+        return sbd.append("\n]}").toString();
+    }
+}
@@ -0,0 +1,165 @@
+package com.github.global.filter;
+
+import com.github.common.util.LogUtil;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncAccessLogTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void ring() throws InterruptedException {
+        // 多个生产者同时放, 一个消费者取: 每个都取到且只取到一次, 同一个生产者放的按顺序
+        int perThread = 100_000;
+        AccessLogRing<long[]> ring = new AccessLogRing<>(1000);
+        Assert.assertEquals(1024, ring.capacity());
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int producer = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    long[] e = { producer, i };
+                    while (!ring.offer(e)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        long[] next = new long[THREADS];
+        int total = 0;
+        while (total < THREADS * perThread) {
+            int count = ring.drain(e -> {
+                Assert.assertEquals(next[(int) e[0]], e[1]);
+                next[(int) e[0]]++;
+            }, 100);
+            if (count == 0) {
+                Thread.yield();
+            }
+            total += count;
+        }
+        for (Thread thread : producers) {
+            thread.join();
+        }
+        Assert.assertEquals(0, ring.size());
+        Assert.assertEquals(0, ring.drain(e -> Assert.fail(), 100));
+
+        // 满了之后放不进去, 取走一个之后又可以放
+        AccessLogRing<Integer> small = new AccessLogRing<>(4);
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(small.offer(i));
+        }
+        Assert.assertFalse(small.offer(4));
+        Assert.assertEquals(4, small.size());
+        Assert.assertEquals(1, small.drain(e -> Assert.assertEquals(0, (int) e), 1));
+        Assert.assertTrue(small.offer(4));
+        List<Integer> list = new ArrayList<>();
+        Assert.assertEquals(4, small.drain(list::add, 10));
+        Assert.assertEquals(Arrays.asList(1, 2, 3, 4), list);
+    }
+
+    @Test
+    public void mdc() throws InterruptedException {
+        // 输出线程输出每一条时, 日志上下文是放入这一条的请求线程当时的
+        int perThread = 2000;
+        Map<String, String> lines = new ConcurrentHashMap<>();
+        AsyncAccessLog asyncLog = new AsyncAccessLog(1024, 64, "drop", 1, line -> lines.put(LogUtil.getTraceId(), line));
+        Map<String, String> syncLines = new ConcurrentHashMap<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    String traceId = "trace-" + thread + "-" + i;
+                    LogUtil.putTraceAndIp(traceId, "10.0.0." + thread, null);
+                    MockHttpServletRequest request = request(thread + "-" + i);
+                    syncLines.put(traceId, AccessLogRecord.of(request, "10.0.0." + thread, true, false).format());
+                    while (!asyncLog.offer(AccessLogRecord.of(request, "10.0.0." + thread, true, true))) {
+                        Thread.yield();
+                    }
+                    LogUtil.unbind();
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        asyncLog.close();
+
+        Assert.assertEquals(THREADS * perThread, lines.size());
+        // 跟同步输出的内容一样
+        Assert.assertEquals(syncLines, lines);
+        for (Map.Entry<String, String> entry : lines.entrySet()) {
+            Assert.assertTrue(entry.getValue().contains("n=" + entry.getKey().substring("trace-".length())));
+        }
+    }
+
+    @Test
+    public void full() throws InterruptedException {
+        // 输出线程卡住时请求线程不阻塞: drop 满了就丢, sample 超过 3/4 之后就开始丢
+        for (String policy : new String[] { "drop", "sample" }) {
+            CountDownLatch latch = new CountDownLatch(1);
+            List<String> lines = new ArrayList<>();
+            AsyncAccessLog asyncLog = new AsyncAccessLog(64, 16, policy, 4, line -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                lines.add(line);
+            });
+            // 等输出线程取走第一条并卡住
+            AccessLogRecord first = AccessLogRecord.of(request("first"), "10.0.0.1", false, true);
+            Assert.assertTrue(asyncLog.offer(first));
+            TimeUnit.MILLISECONDS.sleep(50);
+
+            int accepted = 1;
+            int firstDropped = -1;
+            for (int i = 0; i < 1000; i++) {
+                if (asyncLog.offer(AccessLogRecord.of(request("n" + i), "10.0.0.1", false, true))) {
+                    accepted++;
+                } else if (firstDropped < 0) {
+                    firstDropped = i;
+                }
+            }
+            System.out.printf("%s: accepted %s, first dropped at %s, dropped %s%n", policy, accepted, firstDropped, asyncLog.dropped());
+            Assert.assertEquals(65, accepted);
+            Assert.assertEquals(1001 - accepted, asyncLog.dropped());
+            if ("drop".equals(policy)) {
+                Assert.assertEquals(64, firstDropped);
+            } else {
+                Assert.assertTrue(firstDropped >= 48 && firstDropped < 60);
+            }
+
+            latch.countDown();
+            asyncLog.close();
+            Assert.assertEquals(accepted, lines.size());
+        }
+    }
+
+    private static MockHttpServletRequest request(String n) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/order/create");
+        request.addHeader("Content-Type", "application/x-www-form-urlencoded");
+        request.addHeader("token", "d1651d1122894b7faf27255149c14dbc");
+        request.addHeader("User-Agent", "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)");
+        Map<String, String[]> params = new HashMap<>();
+        params.put("n", new String[] { n });
+        params.put("phone", new String[] { "13012345678" });
+        request.addParameters(params);
+        return request;
+    }
+}
@@ -0,0 +1,142 @@
+package com.github.global.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.global.config.GlobalLogHandler;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LogCaptureResponseTest {
+
+    private static final int MAX_BYTES = 65536;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GlobalLogHandler logHandler = logHandler(objectMapper, false);
+
+    private static GlobalLogHandler logHandler(ObjectMapper objectMapper, boolean cutJson) {
+        GlobalLogHandler handler = new GlobalLogHandler(objectMapper);
+        ReflectionTestUtils.setField(handler, "hasDesensitization", true);
+        ReflectionTestUtils.setField(handler, "cutJson", cutJson);
+        ReflectionTestUtils.setField(handler, "cutJsonMax", 10000);
+        ReflectionTestUtils.setField(handler, "cutJsonLeftRightLen", 1000);
+        return handler;
+    }
+
+    @Test
+    public void sameAsSerialize() throws IOException {
+        // 复制转换器写出去的字节再流式脱敏, 跟之前 把返回值再序列化一次 的日志一样
+        for (Object value : List.of(body(300), body(20_000), List.of(Map.of("phone", "13012345678")), Map.of())) {
+            MockHttpServletResponse mock = new MockHttpServletResponse();
+            String log = write(new LogCaptureResponse(mock), logHandler, value);
+            Assert.assertEquals(oldLog(value), log);
+            // 客户端收到的不受影响
+            Assert.assertArrayEquals(objectMapper.writeValueAsBytes(value), mock.getContentAsByteArray());
+        }
+    }
+
+    @Test
+    public void truncate() throws IOException {
+        Map<String, Object> value = body(500_000);
+        byte[] bytes = objectMapper.writeValueAsBytes(value);
+        MockHttpServletResponse mock = new MockHttpServletResponse();
+        LogCaptureResponse response = new LogCaptureResponse(mock);
+        LogCaptureOutputStream[] captured = new LogCaptureOutputStream[1];
+        String[] log = new String[1];
+        response.capture(logHandler.captureLimit(MAX_BYTES), stream -> {
+            captured[0] = stream;
+            log[0] = logHandler.toJson(stream.bytes(), stream.length(), stream.total());
+        });
+        objectMapper.writeValue(response.getOutputStream(), value);
+        response.log();
+
+        // 写入时就只复制了前 MAX_BYTES 个字节, 日志是完整日志的前缀
+        Assert.assertArrayEquals(bytes, mock.getContentAsByteArray());
+        Assert.assertEquals(MAX_BYTES, captured[0].length());
+        Assert.assertEquals(MAX_BYTES, captured[0].bytes().length);
+        Assert.assertEquals(bytes.length, captured[0].total());
+        String suffix = "...(" + bytes.length + " bytes)";
+        Assert.assertTrue(log[0].endsWith(suffix));
+        String prefix = log[0].substring(0, log[0].length() - suffix.length());
+        Assert.assertTrue(prefix.length() > MAX_BYTES / 2);
+        Assert.assertTrue(oldLog(value).startsWith(prefix));
+
+        // 开启 cut-json 时只复制 cutJsonMax 个字节
+        GlobalLogHandler cutHandler = logHandler(objectMapper, true);
+        response = new LogCaptureResponse(new MockHttpServletResponse());
+        response.capture(cutHandler.captureLimit(MAX_BYTES), stream -> captured[0] = stream);
+        objectMapper.writeValue(response.getOutputStream(), value);
+        response.log();
+        Assert.assertEquals(10000, captured[0].length());
+        Assert.assertEquals(10000, captured[0].bytes().length);
+        Assert.assertTrue(cutHandler.toJson(captured[0].bytes(), captured[0].length(), captured[0].total()).endsWith(suffix));
+    }
+
+    @Test
+    public void noCapture() throws IOException {
+        // 没有 capture 时直接写原始的流, 也不输出日志; 重置之后之前复制的丢掉
+        MockHttpServletResponse mock = new MockHttpServletResponse();
+        LogCaptureResponse response = new LogCaptureResponse(mock);
+        Assert.assertSame(mock.getOutputStream(), response.getOutputStream());
+        response.log();
+
+        int[] count = new int[1];
+        response.capture(MAX_BYTES, stream -> count[0]++);
+        response.getOutputStream().write(new byte[] { '{', '}' });
+        response.resetBuffer();
+        Assert.assertSame(mock.getOutputStream(), response.getOutputStream());
+        response.log();
+        Assert.assertEquals(0, count[0]);
+
+        // capture 了但没有写, 输出空
+        String[] log = new String[1];
+        response.capture(MAX_BYTES, stream -> log[0] = logHandler.toJson(stream.bytes(), stream.length(), stream.total()));
+        response.log();
+        Assert.assertEquals("", log[0]);
+        response.log();
+        Assert.assertEquals("", log[0]);
+    }
+
+    /** 跟 ResponseBodyAdvice 一样: 写之前 capture, 转换器写响应, 处理完由 LogTraceFilter 输出 */
+    private String write(LogCaptureResponse response, GlobalLogHandler handler, Object value) throws IOException {
+        String[] log = new String[1];
+        response.capture(handler.captureLimit(MAX_BYTES), stream -> log[0] = handler.toJson(stream.bytes(), stream.length(), stream.total()));
+        objectMapper.writeValue(response.getOutputStream(), value);
+        response.log();
+        return log[0];
+    }
+
+    /** 之前的方式: 把返回值再序列化一次 */
+    private String oldLog(Object value) {
+        return logHandler.toJson(value);
+    }
+
+    /** 大约 size 字节的返回值 */
+    private static Map<String, Object> body(int size) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        for (int i = 0, bytes = 0; bytes < size; i++) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", i);
+            item.put("userName", "user" + i);
+            item.put("password", "pwd" + i);
+            item.put("phone", "130" + (10_000_000 + i));
+            item.put("address", "北京市东城区紫禁城乾清宫" + i);
+            item.put("amount", i * 1.5);
+            item.put("vip", i % 2 == 0);
+            item.put("remark", null);
+            items.add(item);
+            bytes += 180;
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("code", 0);
+        body.put("msg", "成功");
+        body.put("data", Map.of("orderNo", "A0001", "items", items));
+        return body;
+    }
+}
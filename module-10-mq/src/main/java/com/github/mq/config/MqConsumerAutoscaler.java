@@ -0,0 +1,281 @@
+package com.github.mq.config;
+
+import com.github.common.util.LogUtil;
+import com.github.common.util.Obj;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRoute;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * 按队列积压自动调整监听容器({@link SimpleMessageListenerContainer})的消费者数和预取数, 默认关闭(mq.consumer-autoscale-enabled).
+ *
+ * MqReceiverHandler 每处理完一条(或一批)消息调用 {@link #consumed} 记录条数和耗时, 这里每隔 intervalMs 毫秒:
+ *   1. 用 RabbitAdmin 查出每个容器所监听队列中待消费的条数
+ *   2. 加上这个周期的处理条数和耗时交给 {@link MqConsumerScaling} 计算, 算法见该类
+ *   3. 有变化时调用容器的 setConcurrentConsumers / setPrefetchCount
+ *
+ * 开启后 maxConcurrentConsumers 跟 concurrentConsumers 保持一致, 不再使用容器自带的按空闲扩缩(max-concurrency);
+ * 新的预取数只对之后启动的消费者生效, 已经在运行的消费者不会为了改预取数而重启
+ * </pre>
+ */
+@RequiredArgsConstructor
+@Configuration
+@ConditionalOnClass(SimpleMessageListenerContainer.class)
+public class MqConsumerAutoscaler implements InitializingBean, DisposableBean {
+
+    @Value("${mq.consumer-autoscale-enabled:false}")
+    private boolean autoscaleEnabled;
+
+    /** 每隔多少毫秒采样并调整一次 */
+    @Value("${mq.consumer-autoscale-interval-ms:5000}")
+    private long autoscaleIntervalMs;
+
+    @Value("${mq.consumer-autoscale-min-consumers:1}")
+    private int autoscaleMinConsumers;
+
+    @Value("${mq.consumer-autoscale-max-consumers:16}")
+    private int autoscaleMaxConsumers;
+
+    /** 目标利用率(消费者处理消息的时间占比), 留出余量应对突发 */
+    @Value("${mq.consumer-autoscale-target-utilization:0.75}")
+    private double autoscaleTargetUtilization;
+
+    /** 积压的消息希望在多少秒内消化掉 */
+    @Value("${mq.consumer-autoscale-drain-seconds:30}")
+    private double autoscaleDrainSeconds;
+
+    /** 连续多少个周期都可以缩容时才缩 */
+    @Value("${mq.consumer-autoscale-scale-down-samples:3}")
+    private int autoscaleScaleDownSamples;
+
+    @Value("${mq.consumer-autoscale-min-prefetch:1}")
+    private int autoscaleMinPrefetch;
+
+    @Value("${mq.consumer-autoscale-max-prefetch:250}")
+    private int autoscaleMaxPrefetch;
+
+    /** 每个消费者预取大约多少秒能处理完的消息 */
+    @Value("${mq.consumer-autoscale-prefetch-seconds:1}")
+    private double autoscalePrefetchSeconds;
+
+    @Value("${spring.rabbitmq.listener.simple.concurrency:1}")
+    private int consumerConcurrency;
+
+    @Value("${spring.rabbitmq.listener.simple.prefetch:250}")
+    private int consumerPrefetch;
+
+    @Value("${mq.consumer-batch-size:100}")
+    private int consumerBatchSize;
+
+    private static final MqInfo[] INFOS = MqInfo.values();
+
+    private final RabbitAdmin rabbitAdmin;
+    private final RabbitListenerEndpointRegistry rabbitListenerEndpointRegistry;
+
+    /** 每个 MqInfo 处理完的条数和耗时, 只增不减, 采样时跟上次的值相减 */
+    private final LongAdder[] processedCounts = newAdders();
+    private final LongAdder[] busyNanos = newAdders();
+    private final long[] lastProcessedCounts = new long[INFOS.length];
+    private final long[] lastBusyNanos = new long[INFOS.length];
+
+    /** 以下只在调整线程中使用 */
+    private final Map<String, ContainerState> stateMap = new HashMap<>();
+    private final Map<String, List<MqInfo>> queueInfoMap = queueInfoMap();
+    private ScheduledExecutorService scheduler;
+    private long lastSampleNanos;
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[INFOS.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static Map<String, List<MqInfo>> queueInfoMap() {
+        Map<String, List<MqInfo>> map = new HashMap<>();
+        for (MqRoute route : MqRoute.all()) {
+            map.computeIfAbsent(route.queueName(), k -> new ArrayList<>()).add(route.mqInfo());
+        }
+        return map;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!autoscaleEnabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mq-consumer-autoscaler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lastSampleNanos = System.nanoTime();
+        long period = Math.max(autoscaleIntervalMs, 100);
+        scheduler.scheduleWithFixedDelay(this::run, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (Obj.isNotNull(scheduler)) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 处理完消息时调用, 没有开启时什么都不做
+     *
+     * @param count 处理的条数, 批量消费时是一批的条数
+     * @param nanos 占用消费线程的耗时(含等锁、读写表)
+     */
+    public void consumed(MqInfo mqInfo, int count, long nanos) {
+        if (autoscaleEnabled && Obj.isNotNull(mqInfo)) {
+            processedCounts[mqInfo.ordinal()].add(count);
+            busyNanos[mqInfo.ordinal()].add(Math.max(nanos, 0));
+        }
+    }
+
+    private void run() {
+        try {
+            long now = System.nanoTime();
+            long intervalNanos = now - lastSampleNanos;
+            lastSampleNanos = now;
+            long[] processed = new long[INFOS.length];
+            long[] busy = new long[INFOS.length];
+            for (int i = 0; i < INFOS.length; i++) {
+                long count = processedCounts[i].sum();
+                long nanos = busyNanos[i].sum();
+                processed[i] = count - lastProcessedCounts[i];
+                busy[i] = nanos - lastBusyNanos[i];
+                lastProcessedCounts[i] = count;
+                lastBusyNanos[i] = nanos;
+            }
+
+            for (String id : rabbitListenerEndpointRegistry.getListenerContainerIds()) {
+                MessageListenerContainer container = rabbitListenerEndpointRegistry.getListenerContainer(id);
+                if (container instanceof SimpleMessageListenerContainer simple && simple.isRunning()) {
+                    scale(id, simple, processed, busy, intervalNanos);
+                }
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("调整 mq 消费者数异常", e);
+            }
+        }
+    }
+
+    private void scale(String id, SimpleMessageListenerContainer container, long[] processed, long[] busy, long intervalNanos) {
+        long depth = 0;
+        long processedCount = 0;
+        long busyCount = 0;
+        for (String queueName : container.getQueueNames()) {
+            QueueInformation info = rabbitAdmin.getQueueInfo(queueName);
+            if (Obj.isNotNull(info)) {
+                depth += info.getMessageCount();
+            }
+            for (MqInfo mqInfo : queueInfoMap.getOrDefault(queueName, List.of())) {
+                processedCount += processed[mqInfo.ordinal()];
+                busyCount += busy[mqInfo.ordinal()];
+            }
+        }
+
+        ContainerState state = stateMap.get(id);
+        if (Obj.isNull(state)) {
+            // 批量消费时预取数不能小于批量数, 不然一批永远攒不满
+            int minPrefetch = container.isConsumerBatchEnabled()
+                    ? Math.max(autoscaleMinPrefetch, consumerBatchSize) : autoscaleMinPrefetch;
+            // 从容器实际的设置开始(@RabbitListener 上的 concurrency、自定义的容器工厂都可能跟全局配置不一样)
+            DirectFieldAccessor accessor = new DirectFieldAccessor(container);
+            int consumers = intValue(accessor, "concurrentConsumers", consumerConcurrency);
+            int prefetch = intValue(accessor, "prefetchCount", consumerPrefetch);
+            MqConsumerScaling scaling = new MqConsumerScaling(autoscaleMinConsumers, autoscaleMaxConsumers,
+                    autoscaleTargetUtilization, autoscaleDrainSeconds, minPrefetch, Math.max(autoscaleMaxPrefetch, minPrefetch),
+                    autoscalePrefetchSeconds, autoscaleScaleDownSamples, consumers, prefetch);
+            state = new ContainerState(scaling, consumers, prefetch);
+            stateMap.put(id, state);
+            // 第一次先把容器设置成范围之内的值, 并关掉容器自带的扩缩
+            apply(id, container, state);
+        }
+
+        MqConsumerScaling scaling = state.scaling;
+        if (scaling.sample(depth, processedCount, busyCount, intervalNanos)) {
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("mq 容器({})积压({})到达({}/s)单条({}ms)利用率({}%), 消费者数({} -> {})预取数({})",
+                        id, depth, Math.round(scaling.arrivalRate()), String.format("%.3f", scaling.costSeconds() * 1000),
+                        Math.round(scaling.utilization() * 100), state.consumers, scaling.consumers(), scaling.prefetch());
+            }
+            apply(id, container, state);
+        }
+    }
+
+    private static int intValue(DirectFieldAccessor accessor, String field, int defaultValue) {
+        try {
+            Object value = accessor.getPropertyValue(field);
+            if (value instanceof Integer i && i > 0) {
+                return i;
+            }
+        } catch (RuntimeException e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("读取 mq 容器的({})失败, 使用配置的值({}): {}", field, defaultValue, e.getMessage());
+            }
+        }
+        return defaultValue;
+    }
+
+    /** 把计算出的值设置到容器, 失败时计算的状态退回到容器实际的值, 下个周期重新计算 */
+    private void apply(String id, SimpleMessageListenerContainer container, ContainerState state) {
+        int consumers = state.scaling.consumers();
+        int prefetch = state.scaling.prefetch();
+        try {
+            // 先设置预取数, 之后新启动的消费者用新的值
+            container.setPrefetchCount(prefetch);
+            state.prefetch = prefetch;
+            // concurrentConsumers 不能大于 maxConcurrentConsumers, 扩容先改上限, 缩容后改上限
+            if (consumers >= state.consumers) {
+                container.setMaxConcurrentConsumers(consumers);
+                container.setConcurrentConsumers(consumers);
+            } else {
+                container.setConcurrentConsumers(consumers);
+                container.setMaxConcurrentConsumers(consumers);
+            }
+            state.consumers = consumers;
+        } catch (RuntimeException e) {
+            if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("调整 mq 容器({})的消费者数({} -> {})失败: {}", id, state.consumers, consumers, e.getMessage());
+            }
+            state.scaling.rollback(state.consumers, state.prefetch);
+        }
+    }
+
+    private static class ContainerState {
+        private final MqConsumerScaling scaling;
+        /** 已经设置到容器的消费者数 */
+        private int consumers;
+        /** 已经设置到容器的预取数 */
+        private int prefetch;
+
+        private ContainerState(MqConsumerScaling scaling, int consumers, int prefetch) {
+            this.scaling = scaling;
+            this.consumers = consumers;
+            this.prefetch = prefetch;
+        }
+    }
+}
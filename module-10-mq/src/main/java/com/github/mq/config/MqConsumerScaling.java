@@ -0,0 +1,152 @@
+package com.github.mq.config;
+
+/**
+ * <pre>
+ * 一个监听容器的消费者数和预取数的计算, 由 {@link MqConsumerAutoscaler} 每个采样周期调用一次 {@link #sample}.
+ *
+ * 每个周期用 处理条数、处理耗时、队列中待消费的条数 估算出:
+ *   单条耗时 cost    = 处理耗时 / 处理条数
+ *   到达速率 arrival = (处理条数 + 队列增长的条数) / 周期
+ * 两者都做指数平滑, 需要的消费者数是
+ *   need = (arrival * cost + 积压条数 * cost / drainSeconds) / targetUtilization
+ * 即在目标利用率下跟上到达速率, 并在 drainSeconds 内消化掉积压.
+ *
+ * 为了不来回抖动:
+ *   扩容: ceil(need) 大于当前数时立即扩到 ceil(need)
+ *   缩容: ceil(need * (1 + HYSTERESIS)) 连续 scaleDownSamples 个周期都小于当前数时才缩, 缩到这几个周期中最大的那个,
+ *         缩完之后还留有 HYSTERESIS 的余量, 需要 need 上涨超过这个余量才会再扩
+ * 预取数让每个消费者手里有大约 prefetchSeconds 秒的消息(处理快的多预取, 慢的少预取, 分配更均匀),
+ * 跟当前值相差一倍以上才调整
+ * </pre>
+ */
+final class MqConsumerScaling {
+
+    /** 缩容时保留的余量 */
+    static final double HYSTERESIS = 0.2;
+    /** 指数平滑的系数, 越大越看重最近的采样 */
+    private static final double ALPHA = 0.5;
+
+    private final int minConsumers;
+    private final int maxConsumers;
+    private final double targetUtilization;
+    private final double drainSeconds;
+    private final int minPrefetch;
+    private final int maxPrefetch;
+    private final double prefetchSeconds;
+    private final int scaleDownSamples;
+
+    private int consumers;
+    private int prefetch;
+    /** 平滑后的到达速率(条/秒), 小于 0 表示还没有 */
+    private double arrivalRate = -1;
+    /** 平滑后的单条耗时(秒), 小于 0 表示还没有处理过消息 */
+    private double costSeconds = -1;
+    private long lastDepth = -1;
+    private double utilization;
+    private int downCount;
+    private int downTarget;
+
+    MqConsumerScaling(int minConsumers, int maxConsumers, double targetUtilization, double drainSeconds,
+                      int minPrefetch, int maxPrefetch, double prefetchSeconds, int scaleDownSamples,
+                      int consumers, int prefetch) {
+        this.minConsumers = Math.max(minConsumers, 1);
+        this.maxConsumers = Math.max(maxConsumers, this.minConsumers);
+        this.targetUtilization = Math.min(Math.max(targetUtilization, 0.1), 1);
+        this.drainSeconds = Math.max(drainSeconds, 1);
+        this.minPrefetch = Math.max(minPrefetch, 1);
+        this.maxPrefetch = Math.max(maxPrefetch, this.minPrefetch);
+        this.prefetchSeconds = Math.max(prefetchSeconds, 0);
+        this.scaleDownSamples = Math.max(scaleDownSamples, 1);
+        this.consumers = clamp(consumers, this.minConsumers, this.maxConsumers);
+        this.prefetch = clamp(prefetch, this.minPrefetch, this.maxPrefetch);
+    }
+
+    /**
+     * @param depth 队列中待消费的条数(不含已经预取到消费者的)
+     * @param processed 这个周期处理完的条数
+     * @param busyNanos 这个周期处理完的消息的耗时之和
+     * @param intervalNanos 周期的纳秒数
+     * @return 消费者数或预取数有变化时返回 true
+     */
+    boolean sample(long depth, long processed, long busyNanos, long intervalNanos) {
+        if (intervalNanos <= 0) {
+            return false;
+        }
+        double seconds = intervalNanos / 1e9;
+        utilization = busyNanos / 1e9 / (consumers * seconds);
+        if (processed > 0) {
+            costSeconds = smooth(costSeconds, busyNanos / 1e9 / processed);
+        }
+        if (lastDepth >= 0) {
+            arrivalRate = smooth(arrivalRate, Math.max(processed + depth - lastDepth, 0) / seconds);
+        }
+        lastDepth = Math.max(depth, 0);
+        if (costSeconds < 0 || arrivalRate < 0) {
+            return false;
+        }
+
+        double need = (arrivalRate * costSeconds + lastDepth * costSeconds / drainSeconds) / targetUtilization;
+        int upTarget = clamp(ceil(need), minConsumers, maxConsumers);
+        int keepTarget = clamp(ceil(need * (1 + HYSTERESIS)), minConsumers, maxConsumers);
+        int oldConsumers = consumers;
+        if (upTarget > consumers) {
+            consumers = upTarget;
+            downCount = 0;
+        } else if (keepTarget < consumers) {
+            downTarget = (downCount == 0) ? keepTarget : Math.max(downTarget, keepTarget);
+            if (++downCount >= scaleDownSamples) {
+                consumers = downTarget;
+                downCount = 0;
+            }
+        } else {
+            downCount = 0;
+        }
+
+        int oldPrefetch = prefetch;
+        int prefetchTarget = clamp(ceil(prefetchSeconds / Math.max(costSeconds, 1e-9)), minPrefetch, maxPrefetch);
+        if (prefetchTarget >= prefetch * 2L || prefetchTarget * 2L <= prefetch) {
+            prefetch = prefetchTarget;
+        }
+        return consumers != oldConsumers || prefetch != oldPrefetch;
+    }
+
+    /** 调整容器失败时退回到容器实际的值, 之后按实际的值计算利用率和扩缩 */
+    void rollback(int consumers, int prefetch) {
+        this.consumers = Math.max(consumers, 1);
+        this.prefetch = Math.max(prefetch, 1);
+        downCount = 0;
+    }
+
+    int consumers() {
+        return consumers;
+    }
+
+    int prefetch() {
+        return prefetch;
+    }
+
+    /** 上个周期的利用率: 处理耗时 / (消费者数 * 周期) */
+    double utilization() {
+        return utilization;
+    }
+
+    double arrivalRate() {
+        return arrivalRate;
+    }
+
+    double costSeconds() {
+        return costSeconds;
+    }
+
+    private static double smooth(double old, double value) {
+        return old < 0 ? value : old + ALPHA * (value - old);
+    }
+
+    private static int ceil(double value) {
+        return (int) Math.min(Math.ceil(value), Integer.MAX_VALUE);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.min(Math.max(value, min), max);
+    }
+}
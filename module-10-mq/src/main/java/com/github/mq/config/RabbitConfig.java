@@ -1,18 +1,21 @@
 package com.github.mq.config;
 
-import com.github.common.util.Arr;
 import com.github.common.util.LogUtil;
-import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRoute;
 import lombok.RequiredArgsConstructor;
 import org.springframework.amqp.core.*;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @Configuration
@@ -20,71 +23,90 @@ import java.util.Map;
 @RequiredArgsConstructor
 public class RabbitConfig {
 
+    /** 批量消费时使用: &#064;RabbitListener(queues = MqConst.xxx, containerFactory = RabbitConfig.BATCH_LISTENER_FACTORY) */
+    public static final String BATCH_LISTENER_FACTORY = "batchRabbitListenerContainerFactory";
+
+    @Value("${mq.consumer-batch-size:100}")
+    private int consumerBatchSize;
+
+    @Value("${mq.consumer-batch-receive-timeout-ms:200}")
+    private long consumerBatchReceiveTimeoutMs;
+
+    @Value("${spring.rabbitmq.listener.simple.prefetch:250}")
+    private int consumerPrefetch;
+
     /** @see org.springframework.boot.autoconfigure.amqp.RabbitProperties */
     private final ConnectionFactory connectionFactory;
 
+    /**
+     * 批量消费的容器, 其他配置跟 spring.rabbitmq.listener.simple 一致.
+     * 攒够 batch-size 条或等待 receive-timeout 之后, 将这一批消息(List&lt;Message&gt;)交给监听方法, 正常返回则整批 ack
+     *
+     * @see com.github.mq.handle.MqReceiverHandler#doConsumeBatch
+     */
+    @Bean(BATCH_LISTENER_FACTORY)
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        int batchSize = Math.max(consumerBatchSize, 1);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(batchSize);
+        factory.setReceiveTimeout(consumerBatchReceiveTimeoutMs);
+        // 预取数量不能小于批量数, 不然一批永远攒不满
+        factory.setPrefetchCount(Math.max(batchSize, consumerPrefetch));
+        return factory;
+    }
+
     @Bean
     public RabbitAdmin rabbitAdmin() {
         RabbitAdmin rabbitAdmin = new RabbitAdmin(connectionFactory);
+        Declarables declarables = declarables();
 
-        Map<String, Exchange> exchangeMap = new LinkedHashMap<>();
-        Map<String, Queue> queueMap = new LinkedHashMap<>();
-        Map<String, Binding> bindingMap = new LinkedHashMap<>();
-        for (MqInfo mqInfo : MqInfo.values()) {
-            final String exchangeType = mqInfo.getExchangeType();
-            final String exchangeName = mqInfo.getExchangeName();
-            final String routingKey = mqInfo.getRoutingKey();
-            final String queueName = mqInfo.getQueueName();
-            final Map<String, Object> exchangeArgs = Collections.emptyMap(); // mqInfo.getExchangeArgs();
-            final Map<String, Object> mqArgs = mqInfo.getMqArgs();
-            final Map<String, Object> bindingArgs = Collections.emptyMap(); // mqInfo.getBindingArgs();
-            final String bindingName = String.format("(%s -- %s --> %s)", exchangeName, routingKey, queueName);
-
-            final Exchange exchange = exchangeMap.computeIfAbsent(exchangeName, key -> {
-                // 持久化(durable 是 true), 不自动删除(autoDelete 是 false)
-                ExchangeBuilder builder = new ExchangeBuilder(key, exchangeType);
-                if (mqInfo.isDelayExchange()) {
-                    builder.delayed();
-                }
-                if (Arr.isNotEmpty(exchangeArgs)) {
-                    builder.withArguments(exchangeArgs);
-                }
-                return builder.build();
-            });
-
-            final Queue queue = queueMap.computeIfAbsent(queueName, key -> {
-                // 持久化(durable 是 true), 不自动删除(autoDelete 是 false)
-                QueueBuilder builder = QueueBuilder.durable(key);
-                if (Arr.isNotEmpty(mqArgs)) {
-                    builder.withArguments(mqArgs);
-                }
-                return builder.build();
-            });
-
-            bindingMap.computeIfAbsent(bindingName, k -> BindingBuilder.bind(queue).to(exchange).with(routingKey)
-                    .and(Arr.isEmpty(bindingArgs) ? Collections.emptyMap() : bindingArgs));
-        }
-
-        for (Exchange exchange : exchangeMap.values()) {
+        List<Exchange> exchangeList = declarables.getDeclarablesByType(Exchange.class);
+        for (Exchange exchange : exchangeList) {
             rabbitAdmin.declareExchange(exchange);
         }
         if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-            LogUtil.ROOT_LOG.info("declare RabbitMQ exchange({} : {})", exchangeMap.size(), exchangeMap.keySet());
+            LogUtil.ROOT_LOG.info("declare RabbitMQ exchange({} : {})", exchangeList.size(),
+                    exchangeList.stream().map(Exchange::getName).toList());
         }
 
-        for (Queue queue : queueMap.values()) {
+        List<Queue> queueList = declarables.getDeclarablesByType(Queue.class);
+        for (Queue queue : queueList) {
             rabbitAdmin.declareQueue(queue);
         }
         if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-            LogUtil.ROOT_LOG.info("declare RabbitMQ queue({} : {})", queueMap.size(), queueMap.keySet());
+            LogUtil.ROOT_LOG.info("declare RabbitMQ queue({} : {})", queueList.size(),
+                    queueList.stream().map(Queue::getName).toList());
         }
 
-        for (Binding binding : bindingMap.values()) {
+        List<Binding> bindingList = declarables.getDeclarablesByType(Binding.class);
+        for (Binding binding : bindingList) {
             rabbitAdmin.declareBinding(binding);
         }
         if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-            LogUtil.ROOT_LOG.info("declare RabbitMQ binding({} : {})", bindingMap.size(), bindingMap.keySet());
+            LogUtil.ROOT_LOG.info("declare RabbitMQ binding({} : {})", bindingList.size(), bindingList.stream()
+                    .map(b -> String.format("(%s -- %s --> %s)", b.getExchange(), b.getRoutingKey(), b.getDestination())).toList());
         }
         return rabbitAdmin;
     }
+
+    /** 要声明的交换机、队列和绑定, 来自 {@link MqRoute}, 同名的只声明一次 */
+    static Declarables declarables() {
+        Map<String, Declarable> exchangeMap = new LinkedHashMap<>();
+        Map<String, Declarable> queueMap = new LinkedHashMap<>();
+        Map<String, Declarable> bindingMap = new LinkedHashMap<>();
+        for (MqRoute route : MqRoute.all()) {
+            exchangeMap.putIfAbsent(route.exchangeName(), route.exchange());
+            queueMap.putIfAbsent(route.queueName(), route.queue());
+            String bindingName = String.format("(%s -- %s --> %s)", route.exchangeName(), route.routingKey(), route.queueName());
+            bindingMap.putIfAbsent(bindingName, route.binding());
+        }
+        List<Declarable> declarableList = new ArrayList<>(exchangeMap.values());
+        declarableList.addAll(queueMap.values());
+        declarableList.addAll(bindingMap.values());
+        return new Declarables(declarableList);
+    }
 }
@@ -33,12 +33,19 @@ package com.github.mq.constant;
  */
 public class MqConst {
 
-    /** 0.初始, 1.失败, 2.成功 */
+    /** 0.初始, 1.失败, 2.成功, 3.延迟, 4.outbox 待发送 */
     public static final int INIT = 0;
-    /** 0.初始, 1.失败, 2.成功 */
+    /** 0.初始, 1.失败, 2.成功, 3.延迟, 4.outbox 待发送 */
     public static final int FAIL = 1;
-    /** 0.初始, 1.失败, 2.成功 */
+    /** 0.初始, 1.失败, 2.成功, 3.延迟, 4.outbox 待发送 */
     public static final int SUCCESS = 2;
+    /** 0.初始, 1.失败, 2.成功, 3.延迟(到期时间是 next_retry_time, 由 MqDelayScheduler 发送), 4.outbox 待发送 */
+    public static final int SCHEDULED = 3;
+    /**
+     * 0.初始, 1.失败, 2.成功, 3.延迟, 4.outbox 待发送(由 MqOutboxRelay 发送, 重试不会查这个状态,
+     * 发送前改成初始, 收到 confirm 之后再改成成功或失败)
+     */
+    public static final int OUTBOX = 4;
 
     /** rabbitmq 用在死信队列时的交换机名. 见: <a href="https://www.rabbitmq.com/dlx.html">...</a> */
     public static final String DEAD_EXCHANGE = "x-dead-letter-exchange";
@@ -46,6 +53,13 @@ public class MqConst {
     public static final String DEAD_ROUTE_KEY = "x-dead-letter-routing-key";
     /** rabbitmq 用在延迟队列时的配置名. 见: <a href="https://www.rabbitmq.com/ttl.html">...</a> */
     public static final String DELAY = "x-message-ttl";
+    /** 发送时间(毫秒)的消息头, 消费时用来算从发送到消费的延迟 */
+    public static final String SEND_TIME = "x-send-time";
+    /**
+     * 处理一条消息时占用的键前缀(后面跟 msgId), 单条消费、批量消费、重试都用 SET NX 占用这个键,
+     * 同一条消息同时只在一处处理. 占用时间是 mq.msg-lock-seconds
+     */
+    public static final String MSG_LOCK_PREFIX = "mq:msg:";
 
 
     private static final String DEAD = ":dead";
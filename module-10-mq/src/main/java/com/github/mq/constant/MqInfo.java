@@ -4,6 +4,7 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.amqp.core.ExchangeTypes;
 
+import java.util.HashMap;
 import java.util.Map;
 
 import static com.github.mq.constant.MqConst.*;
@@ -81,16 +82,32 @@ public enum MqInfo {
     private final String queueName;
     private final Map<String, Object> mqArgs;
 
+    /** name 及其小写(写到表中的 type) 对应的枚举 */
+    private static final Map<String, MqInfo> INDEX;
+    static {
+        Map<String, MqInfo> index = new HashMap<>();
+        for (MqInfo value : values()) {
+            index.put(value.name(), value);
+            index.put(value.name().toLowerCase(), value);
+        }
+        INDEX = Map.copyOf(index);
+    }
+
+    /** 解析好的路由信息 */
+    public MqRoute route() {
+        return MqRoute.of(this);
+    }
+
     public String showDesc() {
-        return String.format("%s(%s -- %s --> %s)", desc, exchangeName, routingKey, queueName);
+        return MqRoute.of(this).desc();
     }
 
+    /** 忽略大小写 */
     public static MqInfo from(String name) {
-        for (MqInfo value : values()) {
-            if (value.name().equalsIgnoreCase(name)) {
-                return value;
-            }
+        if (name == null) {
+            return null;
         }
-        return null;
+        MqInfo value = INDEX.get(name);
+        return (value != null) ? value : INDEX.get(name.toLowerCase());
     }
 }
@@ -0,0 +1,91 @@
+package com.github.mq.constant;
+
+import com.github.common.date.Dates;
+import com.github.common.json.JsonUtil;
+import com.github.common.util.Obj;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <pre>
+ * t_mq_send 和 t_mq_receive 中 remark 的格式: 处理的总次数 及 最近 {@link #MAX_SIZE} 次的处理记录(新的在前面)
+ * {"count":12,"list":[["2026-01-01 10:00:12","消息(示例)发送成功"],["2026-01-01 10:00:11","发送(示例)数据异常(xx)"]]}
+ *
+ * 不管重试多少次, 只保留最近的记录且每条记录的长度有上限, 行的大小不会一直增长.
+ * 之前的纯文本备注(不是当前格式的)作为第一条记录保留下来(时间为空, 长度同样有上限), 次数从 1 开始.
+ * 只能在 sql 中追加时(比如 confirm 回调的批量更新不查库)用 json 函数处理, 见 MqSendMapper.xml
+ * </pre>
+ */
+@Data
+public class MqRemark {
+
+    /** 最多保留最近多少次的处理记录 */
+    public static final int MAX_SIZE = 10;
+    /** 每次处理记录的最大长度, 超出的截掉 */
+    public static final int MAX_LENGTH = 200;
+    /** 在 sql 中追加到头部之后, 超出上限的那条记录的路径 */
+    public static final String OVERFLOW_PATH = "$.list[" + MAX_SIZE + "]";
+
+    /** 处理的总次数 */
+    private int count;
+
+    /** 最近的处理记录, 新的在前面, 每条是 [ 时间, 内容 ] */
+    private List<List<String>> list;
+
+    /** 在原来的备注中追加一条当前时间的处理记录, 返回新的备注 */
+    public static String append(String remark, String msg) {
+        return append(remark, Dates.nowDateTime(), msg);
+    }
+
+    static String append(String remark, String time, String msg) {
+        MqRemark mqRemark = parse(remark);
+        List<List<String>> list = new ArrayList<>(MAX_SIZE);
+        list.add(List.of(Obj.toStr(time), truncate(msg)));
+        for (List<String> item : mqRemark.getList()) {
+            if (list.size() >= MAX_SIZE) {
+                break;
+            }
+            list.add(item);
+        }
+        mqRemark.setCount(mqRemark.getCount() + 1);
+        mqRemark.setList(list);
+        return JsonUtil.toJson(mqRemark);
+    }
+
+    /** 解析备注, 为空时返回没有记录的, 不是当前格式时返回只有一条记录(之前的备注)的 */
+    public static MqRemark parse(String remark) {
+        if (Obj.isBlank(remark)) {
+            MqRemark mqRemark = new MqRemark();
+            mqRemark.setList(new ArrayList<>());
+            return mqRemark;
+        }
+        if (remark.trim().startsWith("{")) {
+            MqRemark mqRemark = JsonUtil.toObjectNil(remark, MqRemark.class);
+            if (Obj.isNotNull(mqRemark) && Obj.isNotNull(mqRemark.getList())) {
+                return mqRemark;
+            }
+        }
+        // 跟 MqSendMapper.xml 中的 remarkJson 一致
+        MqRemark mqRemark = new MqRemark();
+        mqRemark.setCount(1);
+        List<List<String>> list = new ArrayList<>();
+        list.add(List.of(Obj.EMPTY, truncate(remark)));
+        mqRemark.setList(list);
+        return mqRemark;
+    }
+
+    /** 超出长度的截掉, 不会把一个字符(代理对)截成两半 */
+    public static String truncate(String msg) {
+        String str = Obj.toStr(msg);
+        if (str.length() <= MAX_LENGTH) {
+            return str;
+        }
+        int end = MAX_LENGTH - 3;
+        if (Character.isHighSurrogate(str.charAt(end - 1))) {
+            end--;
+        }
+        return str.substring(0, end) + "...";
+    }
+}
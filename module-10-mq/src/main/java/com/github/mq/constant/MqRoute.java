@@ -0,0 +1,89 @@
+package com.github.mq.constant;
+
+import com.github.common.util.Arr;
+import org.springframework.amqp.core.*;
+
+import java.util.*;
+
+/**
+ * <pre>
+ * 每个 {@link MqInfo} 解析好的路由信息: 交换机、队列、绑定, 以及发送和记录时用到的 type、desc.
+ * 类加载时构建一次, 之后只读; 同名的交换机、队列共用一个实例.
+ * RabbitConfig 用它来声明交换机、队列和绑定, 发送和消费时直接取, 不用每条消息再去拼
+ * </pre>
+ *
+ * @param type 写到表中的类型, 也是 {@link MqInfo#from} 的入参
+ * @param desc 日志中用到的描述
+ */
+public record MqRoute(MqInfo mqInfo, String type, String desc, Exchange exchange, Queue queue, Binding binding) {
+
+    private static final Map<MqInfo, MqRoute> ROUTES = resolve();
+
+    public static MqRoute of(MqInfo mqInfo) {
+        return ROUTES.get(mqInfo);
+    }
+
+    /** 按 {@link MqInfo} 声明的顺序 */
+    public static Collection<MqRoute> all() {
+        return ROUTES.values();
+    }
+
+    public String exchangeName() {
+        return exchange.getName();
+    }
+
+    public String routingKey() {
+        return binding.getRoutingKey();
+    }
+
+    public String queueName() {
+        return queue.getName();
+    }
+
+    /** 是否是延迟交换机, 是才能用 x-delay 延迟发送 */
+    public boolean delayExchange() {
+        return exchange.isDelayed();
+    }
+
+    private static Map<MqInfo, MqRoute> resolve() {
+        Map<String, Exchange> exchangeMap = new HashMap<>();
+        Map<String, Queue> queueMap = new HashMap<>();
+        Map<MqInfo, MqRoute> routeMap = new EnumMap<>(MqInfo.class);
+        for (MqInfo mqInfo : MqInfo.values()) {
+            final String exchangeType = mqInfo.getExchangeType();
+            final String exchangeName = mqInfo.getExchangeName();
+            final String routingKey = mqInfo.getRoutingKey();
+            final String queueName = mqInfo.getQueueName();
+            final Map<String, Object> exchangeArgs = Collections.emptyMap(); // mqInfo.getExchangeArgs();
+            final Map<String, Object> mqArgs = mqInfo.getMqArgs();
+            final Map<String, Object> bindingArgs = Collections.emptyMap(); // mqInfo.getBindingArgs();
+
+            final Exchange exchange = exchangeMap.computeIfAbsent(exchangeName, key -> {
+                // 持久化(durable 是 true), 不自动删除(autoDelete 是 false)
+                ExchangeBuilder builder = new ExchangeBuilder(key, exchangeType);
+                if (mqInfo.isDelayExchange()) {
+                    builder.delayed();
+                }
+                if (Arr.isNotEmpty(exchangeArgs)) {
+                    builder.withArguments(exchangeArgs);
+                }
+                return builder.build();
+            });
+
+            final Queue queue = queueMap.computeIfAbsent(queueName, key -> {
+                // 持久化(durable 是 true), 不自动删除(autoDelete 是 false)
+                QueueBuilder builder = QueueBuilder.durable(key);
+                if (Arr.isNotEmpty(mqArgs)) {
+                    builder.withArguments(mqArgs);
+                }
+                return builder.build();
+            });
+
+            Binding binding = BindingBuilder.bind(queue).to(exchange).with(routingKey)
+                    .and(Arr.isEmpty(bindingArgs) ? Collections.emptyMap() : bindingArgs);
+            String desc = String.format("%s(%s -- %s --> %s)", mqInfo.getDesc(), exchangeName, routingKey, queueName);
+            routeMap.put(mqInfo, new MqRoute(mqInfo, mqInfo.name().toLowerCase(), desc, exchange, queue, binding));
+        }
+        return Collections.unmodifiableMap(routeMap);
+    }
+}
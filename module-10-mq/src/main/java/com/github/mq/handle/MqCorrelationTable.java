@@ -0,0 +1,208 @@
+package com.github.mq.handle;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.common.util.LogUtil;
+import com.github.mq.constant.SelfCorrelationData;
+import com.github.mq.service.MqSendService;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 已发送、还没收到 confirm 的消息表(key 是 {@link SelfCorrelationData} 的 id, 也就是 msgId), 放在内存中.
+ * 里面有重发需要的所有数据, confirm 和 returnedMessage 回调时不用再查 t_mq_send 表.
+ *
+ * 数量有上限, 超时(一直没有 confirm)或超出数量的会被淘汰, 淘汰之后收到 nack 只标记为失败, 由 {@link MqRetryHandler} 重试.
+ * 异步发送时的 future 也放在这里, 收到最终的 confirm(或被淘汰、关闭)时完成.
+ *
+ * 回调中的状态变更不直接写库, 同一个 msgId 只保留最后一次, 由后台线程每隔 flushMs 毫秒(或攒够 flushSize 条时)
+ * 按 状态 + 原因 分组用 update ... where msg_id in (...) 批量写入; 需要重发的也在后台线程中发送, 不占用 mq 的回调线程
+ * </pre>
+ */
+final class MqCorrelationTable implements AutoCloseable {
+
+    private final Cache<String, Pending> pendingCache;
+    /** 待写入的状态变更, key 是 msgId */
+    private final Map<String, Change> changeMap = new ConcurrentHashMap<>();
+    private final Queue<Pending> republishQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private final int flushSize;
+    private final MqSendService mqSendService;
+    private final Consumer<Pending> republisher;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param maxSize 最多保存多少条未 confirm 的消息
+     * @param timeoutMs 多久没有 confirm 就淘汰
+     * @param flushMs 每隔多少毫秒写一次库
+     * @param flushSize 状态变更攒够多少条时提前写库, 也是一条 update 中 msg_id 的最大数量
+     * @param republisher 重发消息
+     */
+    MqCorrelationTable(int maxSize, long timeoutMs, long flushMs, int flushSize,
+                       MqSendService mqSendService, Consumer<Pending> republisher) {
+        this.pendingCache = Caffeine.newBuilder().maximumSize(Math.max(maxSize, 1))
+                .expireAfterWrite(Duration.ofMillis(Math.max(timeoutMs, 1)))
+                .<String, Pending>removalListener((msgId, pending, cause) -> {
+                    if (cause.wasEvicted() && pending != null) {
+                        pending.fail(String.format("消息(%s)等待 confirm 时被淘汰(%s)", msgId, cause));
+                    }
+                }).build();
+        this.flushSize = Math.max(flushSize, 1);
+        this.mqSendService = mqSendService;
+        this.republisher = republisher;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mq-confirm-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(flushMs, 1);
+        scheduler.scheduleWithFixedDelay(this::flush, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 发送之前放入
+     *
+     * @param retryCount 已经重发的次数
+     * @param markOnAck 收到 ack 时是否要把状态写成成功, 见 {@link Pending#markOnAck()}
+     */
+    void put(SelfCorrelationData data, int retryCount, boolean markOnAck) {
+        put(data, retryCount, markOnAck, null);
+    }
+
+    /** @param future 异步发送时等待 confirm 的 future, 同步发送时是 null */
+    void put(SelfCorrelationData data, int retryCount, boolean markOnAck, CompletableFuture<String> future) {
+        pendingCache.put(data.getId(), new Pending(data, retryCount, markOnAck, future, System.nanoTime()));
+    }
+
+    /** 收到 confirm 或 return 时取出, 已经被淘汰则返回 null */
+    Pending remove(String msgId) {
+        return pendingCache.asMap().remove(msgId);
+    }
+
+    /** 记录状态变更, 在后台批量写入 */
+    void change(String msgId, int status, String reason) {
+        changeMap.put(msgId, new Change(status, reason));
+        if (changeMap.size() >= flushSize) {
+            requestFlush();
+        }
+    }
+
+    /** 在后台线程中重发 */
+    void republish(Pending pending) {
+        republishQueue.add(pending);
+        requestFlush();
+    }
+
+    long pendingSize() {
+        pendingCache.cleanUp();
+        return pendingCache.estimatedSize();
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                // 已经关闭, close 时会再写一次
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /** 只在后台线程(或关闭时)调用 */
+    void flush() {
+        flushRequested.set(false);
+        writeChange();
+        Pending pending;
+        while ((pending = republishQueue.poll()) != null) {
+            try {
+                republisher.accept(pending);
+            } catch (RuntimeException e) {
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error("重发 mq 消息({})异常", pending.data().getId(), e);
+                }
+            }
+        }
+    }
+
+    private void writeChange() {
+        if (changeMap.isEmpty()) {
+            return;
+        }
+
+        Map<Change, List<String>> group = new LinkedHashMap<>();
+        for (String msgId : changeMap.keySet()) {
+            Change change = changeMap.remove(msgId);
+            if (change != null) {
+                group.computeIfAbsent(change, k -> new ArrayList<>()).add(msgId);
+            }
+        }
+        for (Map.Entry<Change, List<String>> entry : group.entrySet()) {
+            Change change = entry.getKey();
+            List<String> msgIds = entry.getValue();
+            for (int i = 0; i < msgIds.size(); i += flushSize) {
+                List<String> subList = msgIds.subList(i, Math.min(i + flushSize, msgIds.size()));
+                try {
+                    mqSendService.updateStatusByMsgIds(subList, change.status(), change.reason());
+                } catch (RuntimeException e) {
+                    if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                        LogUtil.ROOT_LOG.error("写入 mq confirm 状态({})异常, 下次再写", change, e);
+                    }
+                    // 期间有新变更的以新的为准
+                    for (String msgId : subList) {
+                        changeMap.putIfAbsent(msgId, change);
+                    }
+                }
+            }
+        }
+    }
+
+    /** 关闭时把还没写入的状态写完, 还在等待 confirm 的 future 都失败 */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS) && LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("等待 mq confirm 写入线程结束超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        for (Pending pending : pendingCache.asMap().values()) {
+            pending.fail(String.format("消息(%s)等待 confirm 时关闭", pending.data().getId()));
+        }
+    }
+
+    /**
+     * @param retryCount 已经重发的次数
+     * @param markOnAck 收到 ack 时是否要把状态写成成功: nack 之后的重发(之前已经标记为失败)、
+     *                  outbox 的发送(发送时还是初始状态)是; 同步发送在发送时已经标记为成功, 不是
+     * @param future 异步发送时等待 confirm 的 future, 重发时沿用同一个
+     * @param sendNanos 放入时的 System.nanoTime(), 用来记录 confirm 的耗时
+     */
+    record Pending(SelfCorrelationData data, int retryCount, boolean markOnAck, CompletableFuture<String> future,
+                   long sendNanos) {
+
+        /** 到交换机成功, future 的值是 msgId */
+        void complete() {
+            if (future != null) {
+                future.complete(data.getId());
+            }
+        }
+
+        void fail(String reason) {
+            if (future != null) {
+                future.completeExceptionally(new RuntimeException(reason));
+            }
+        }
+    }
+
+    private record Change(int status, String reason) {}
+}
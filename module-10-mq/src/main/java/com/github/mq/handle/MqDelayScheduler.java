@@ -0,0 +1,255 @@
+package com.github.mq.handle;
+
+import com.github.common.util.Arr;
+import com.github.common.util.LogUtil;
+import com.github.common.util.Obj;
+import com.github.global.service.RedissonService;
+import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/**
+ * <pre>
+ * 不依赖 delay 插件的延迟发送: 延迟消息先写到 t_mq_send(状态是延迟, next_retry_time 是到期时间, 见
+ * {@link MqSenderHandler#doProvide(MqInfo, String, String, int)}), 由这里在到期时交给 MqSenderHandler 发送.
+ *
+ * 多个实例用 redis 租约保证同一时间只有一个实例在调度, 实例宕机后租约到期由其他实例接手. 持有租约的实例每隔 pollMs 毫秒:
+ *   1. 把已经到期还没发出去的(之前的实例宕机、写入的事务提交得晚等)从表里查出来直接发送
+ *   2. 从上次读到的位置 (next_retry_time, id) 往后, 把 lookaheadMs 之内到期的读进分层时间轮 {@link MqTimingWheel}
+ * 时间轮每隔 tickMs 毫秒走一格, 到期的用 {@link MqSenderHandler#doProvideJustJsonAsync(String, MqInfo, String, String)}
+ * 异步发送, 发送时会把状态改成成功或失败(失败的由 {@link MqRetryHandler} 重试), confirm 之后从内存中移除.
+ *
+ * 内存中(时间轮 + 发送中)的消息数不超过 capacity, 超出的留在表里, 等前面的发出去再读, 表里的消息数没有上限.
+ * next_retry_time 只到秒, 消息不会提前发送; 从时间轮发出的最多晚 tickMs, 由第 1 步发出的最多晚 pollMs.
+ * 切换实例时可能会重复发送, 消费时按 msgId 去重
+ * </pre>
+ */
+@RequiredArgsConstructor
+@Configuration
+@ConditionalOnClass(RabbitTemplate.class)
+public class MqDelayScheduler implements InitializingBean, DisposableBean {
+
+    /** 为 false 时当前实例不调度, 需要有其他实例开着 */
+    @Value("${mq.delay-scheduler-enabled:true}")
+    private boolean delaySchedulerEnabled;
+
+    /** 时间轮一格的毫秒数 */
+    @Value("${mq.delay-tick-ms:100}")
+    private long delayTickMs;
+
+    /** 每隔多少毫秒读一次表 */
+    @Value("${mq.delay-poll-ms:1000}")
+    private long delayPollMs;
+
+    /** 提前多少毫秒把快到期的消息读进时间轮 */
+    @Value("${mq.delay-lookahead-ms:60000}")
+    private long delayLookaheadMs;
+
+    /** 内存中(时间轮 + 发送中)最多有多少条消息 */
+    @Value("${mq.delay-capacity:100000}")
+    private int delayCapacity;
+
+    /** 每次从表里读多少条 */
+    @Value("${mq.delay-batch-size:1000}")
+    private int delayBatchSize;
+
+    /** 调度租约的秒数, 每次读表时续期 */
+    @Value("${mq.delay-lease-seconds:30}")
+    private int delayLeaseSeconds;
+
+    private static final String LEASE_KEY = "mq:delay-scheduler";
+    /** 时间轮每层 2^8 格 */
+    private static final int WHEEL_BITS = 8;
+
+    /** 当前实例的标识, 存到租约的值里 */
+    private final String nodeId = Obj.uuid16();
+
+    private final RedissonService redissonService;
+    private final MqSendService mqSendService;
+    private final MqSenderHandler mqSenderHandler;
+
+    /** 时间轮中和发送中的消息 id, 读表时跳过这些; 发送的回调在其他线程中移除 */
+    private final Set<Long> loadedIds = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService scheduler;
+    private MqTimingWheel<MqSend> wheel;
+    /** 时间轮已经读到的位置 */
+    private Date cursorTime;
+    private long cursorId;
+    private long lastPollMs;
+    private long lastLeaseMs;
+    private boolean leader;
+
+    @Override
+    public void afterPropertiesSet() {
+        reset(System.currentTimeMillis());
+        if (!delaySchedulerEnabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "mq-delay-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(delayTickMs, 1);
+        scheduler.scheduleWithFixedDelay(this::run, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (Obj.isNull(scheduler)) {
+            return;
+        }
+        scheduler.shutdown();
+        try {
+            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS) && LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("等待 mq 延迟调度线程结束超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (leader) {
+            redissonService.deleteIfValue(LEASE_KEY, nodeId);
+        }
+    }
+
+    private void run() {
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastLeaseMs >= delayPollMs) {
+                lastLeaseMs = now;
+                boolean hold = holdLease();
+                if (hold != leader) {
+                    if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                        LogUtil.ROOT_LOG.info(hold ? "开始调度 mq 延迟消息" : "mq 延迟消息的调度租约已被其他实例取得");
+                    }
+                    // 拿到租约时从头开始读, 失去租约时丢掉内存中的, 都在表里
+                    reset(now);
+                    leader = hold;
+                }
+            }
+            if (leader) {
+                tick(now);
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("调度 mq 延迟消息异常", e);
+            }
+        }
+    }
+
+    private boolean holdLease() {
+        if (!redissonService.setIfAbsent(List.of(LEASE_KEY), nodeId, delayLeaseSeconds, TimeUnit.SECONDS).isEmpty()) {
+            return true;
+        }
+        return redissonService.expireIfValue(LEASE_KEY, nodeId, delayLeaseSeconds, TimeUnit.SECONDS);
+    }
+
+    void reset(long nowMs) {
+        wheel = new MqTimingWheel<>(delayTickMs, WHEEL_BITS, nowMs);
+        loadedIds.clear();
+        // 到期的由 poll 的第 1 步从头读, 时间轮从当前时间之后开始读
+        cursorTime = new Date(nowMs);
+        cursorId = Long.MAX_VALUE;
+        lastPollMs = Long.MIN_VALUE / 2;
+    }
+
+    /** 每隔 tickMs 调用一次: 到了 pollMs 就读表, 再把时间轮走到 nowMs */
+    void tick(long nowMs) {
+        if (nowMs - lastPollMs >= delayPollMs) {
+            lastPollMs = nowMs;
+            poll(nowMs);
+        }
+        wheel.advance(nowMs, this::publish);
+    }
+
+    private void poll(long nowMs) {
+        // 已经到期还没发出去的, 从头开始读, 直接发送
+        load(null, 0, new Date(nowMs));
+
+        // 快到期的, 从上次的位置往后读进时间轮
+        MqSend last = load(cursorTime, cursorId, new Date(nowMs + Math.max(delayLookaheadMs, 0)));
+        if (Obj.isNotNull(last)) {
+            cursorTime = last.getNextRetryTime();
+            cursorId = last.getId();
+        }
+    }
+
+    /** 按 (到期时间, id) 从 (afterTime, afterId) 之后分页读到 until 或内存中的消息达到上限, 返回最后读到的一条 */
+    private MqSend load(Date afterTime, long afterId, Date until) {
+        MqSend last = null;
+        for (;;) {
+            int limit = Math.min(Math.max(delayBatchSize, 1), delayCapacity - loadedIds.size());
+            if (limit <= 0) {
+                return last;
+            }
+            List<MqSend> list = mqSendService.queryScheduledMsg(afterTime, afterId, until, limit);
+            if (Arr.isEmpty(list)) {
+                return last;
+            }
+            for (MqSend mqSend : list) {
+                // 已经在时间轮中或正在发送的跳过
+                if (loadedIds.add(mqSend.getId()) && !wheel.add(mqSend.getNextRetryTime().getTime(), mqSend)) {
+                    publish(mqSend);
+                }
+            }
+            last = list.get(list.size() - 1);
+            if (list.size() < limit) {
+                return last;
+            }
+            afterTime = last.getNextRetryTime();
+            afterId = last.getId();
+        }
+    }
+
+    private void publish(MqSend mqSend) {
+        Long id = mqSend.getId();
+        String msgId = mqSend.getMsgId();
+        MqInfo mqInfo = MqInfo.from(mqSend.getType());
+        if (Obj.isNull(mqInfo)) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("延迟消息({})没有业务类型场景({})", msgId, mqSend.getType());
+            }
+            loadedIds.remove(id);
+            mqSendService.updateStatusByIds(List.of(id), MqConst.FAIL, "延迟消息没有业务类型场景");
+            return;
+        }
+
+        CompletableFuture<String> future;
+        try {
+            future = mqSenderHandler.doProvideJustJsonAsync(msgId, mqInfo, mqSend.getSearchKey(), mqSend.getMsg());
+        } catch (RuntimeException e) {
+            // 状态还是延迟, 下次读表时再发
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("发送到期的延迟消息({} : {})异常", mqInfo.showDesc(), msgId, e);
+            }
+            loadedIds.remove(id);
+            return;
+        }
+        future.whenComplete((result, e) -> {
+            // 发送时已经把状态改成成功或失败; 没能发送(比如等待 confirm 的太多)的状态还是延迟, 下次读表时再发
+            loadedIds.remove(id);
+            if (Obj.isNotNull(e) && LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("发送到期的延迟消息({} : {})失败: {}", mqInfo.showDesc(), msgId, e.getMessage());
+            }
+        });
+    }
+
+    /** 内存中(时间轮 + 发送中)的消息数 */
+    int loadedSize() {
+        return loadedIds.size();
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.mq.handle;
+
+import com.github.common.util.Arr;
+import com.github.common.util.LogUtil;
+import com.github.common.util.Obj;
+import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.SelfCorrelationData;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * <pre>
+ * 将 outbox 中的消息(用 {@link MqSenderHandler#doProvideOutbox} 写入的「outbox 待发送」状态记录)批量发送到 mq
+ *
+ * 每一批: 一条 select 取出 batchSize 条, 先用一条 update ... where id in (...) 改成「初始」并把下次重试时间推到
+ * confirm 超时之后, 再逐条发到 mq(放进 confirm 表), 发送异常的再用一条 update 标记为失败, 因此 N 条消息只需要 O(N / batchSize) 条 sql.
+ *
+ * 发送之后不标记成功: 收到 ack 才标记为成功, nack 重发或标记为失败, 都由 confirm 表批量写入;
+ * 一直没有 confirm 的还是「初始」, 到了下次重试时间由 {@link MqRetryHandler} 重发.
+ * 「outbox 待发送」的记录重试不会查, 所以同一条消息不会同时被这里和重试发送
+ * </pre>
+ */
+@RequiredArgsConstructor
+@Configuration
+@ConditionalOnClass(RabbitTemplate.class)
+public class MqOutboxRelay {
+
+    @Value("${mq.outbox-batch-size:200}")
+    private int outboxBatchSize;
+
+    private final MqSenderHandler mqSenderHandler;
+    private final MqSendService mqSendService;
+
+    /** 发送 outbox 中所有待发送的消息 */
+    public boolean relay() {
+        int batchSize = Math.max(outboxBatchSize, 1);
+        for (;;) {
+            List<MqSend> mqSendList = mqSendService.queryOutboxMsg(batchSize);
+            if (Arr.isEmpty(mqSendList)) {
+                return true;
+            }
+            publishBatch(mqSendList);
+            // 如果上面查到的已经是最后一批数据也退出循环, 剩下的在下一次运行时处理
+            if (mqSendList.size() < batchSize) {
+                return true;
+            }
+        }
+    }
+
+    private void publishBatch(List<MqSend> mqSendList) {
+        List<Long> ids = new ArrayList<>(mqSendList.size());
+        for (MqSend mqSend : mqSendList) {
+            ids.add(mqSend.getId());
+        }
+        // 先改成初始再发送: confirm 可能比这里更早回来, 不能把 confirm 写入的状态覆盖掉
+        Date nextRetryTime = new Date(System.currentTimeMillis() + Math.max(mqSenderHandler.confirmTimeoutMs(), 0));
+        mqSendService.updateStatusByIds(ids, MqConst.INIT, nextRetryTime, "outbox 消息开始发送, 等待 confirm");
+
+        int sent = 0;
+        List<Long> failIds = new ArrayList<>();
+        for (MqSend mqSend : mqSendList) {
+            String msgId = mqSend.getMsgId();
+            MqInfo mqInfo = MqInfo.from(mqSend.getType());
+            if (Obj.isNull(mqInfo)) {
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error("outbox 消息({})没有业务类型场景({})", msgId, mqSend.getType());
+                }
+                failIds.add(mqSend.getId());
+                continue;
+            }
+
+            try {
+                // msgId 放在 messageId, traceId 在 MqData 里面, 消费时会从中获取
+                mqSenderHandler.publishOutbox(new SelfCorrelationData(msgId, null, mqInfo, mqSend.getMsg(), 0));
+                sent++;
+            } catch (RuntimeException e) {
+                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                    LogUtil.ROOT_LOG.error("发送 outbox 消息({} : {})异常", mqInfo.showDesc(), msgId, e);
+                }
+                failIds.add(mqSend.getId());
+            }
+        }
+
+        mqSendService.updateStatusByIds(failIds, MqConst.FAIL, "outbox 消息发送异常");
+        if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+            LogUtil.ROOT_LOG.info("outbox 发送完成, 等待 confirm({})失败({})", sent, failIds.size());
+        }
+    }
+}
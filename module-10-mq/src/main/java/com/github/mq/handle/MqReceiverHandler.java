@@ -1,26 +1,31 @@
 package com.github.mq.handle;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.github.common.date.Dates;
 import com.github.common.json.JsonUtil;
 import com.github.common.util.Arr;
 import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
 import com.github.global.service.RedissonService;
+import com.github.mq.config.MqConsumerAutoscaler;
 import com.github.mq.constant.MqConst;
-import com.github.mq.constant.MqData;
 import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRemark;
+import com.github.mq.metric.MqMetric;
+import com.github.mq.metric.MqMetrics;
 import com.github.mq.model.MqReceive;
 import com.github.mq.service.MqReceiveService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 /**
@@ -44,17 +49,44 @@ import java.util.function.Function;
 @ConditionalOnClass(RabbitListener.class)
 public class MqReceiverHandler {
 
-    private static final TypeReference<Map<String, Object>> MAP_REFERENCE = new TypeReference<>(){};
+    private static final String BATCH_LOCK_VALUE = "1";
+    /** MqData 中的字段, 解析时直接从消息体的字节中流式读取 */
+    private static final List<String> MQ_INFO_KEY = List.of("mqInfo");
+    private static final List<String> TRACE_ID_KEY = List.of("traceId");
+    private static final List<String> DATA_KEY = List.of("json");
+    private static final List<String> SEND_TIME_KEY = List.of("sendTime");
 
     @Value("${spring.rabbitmq.listener.simple.retry.max-attempts:3}")
     private int consumerRetryCount;
 
     @Value("${mq.consumer-msg-id-key:msgId,messageId,msg_id,message_id}")
     private String msgIdKey;
+    /** msgIdKey 按逗号拆开的, 第一次用到时生成 */
+    private volatile List<String> msgIdKeyList;
+
+    /** 处理一条消息时 msgId 的占用时间, 处理完会主动删除, 这个时间只在进程异常退出或处理太久时生效 */
+    @Value("${mq.msg-lock-seconds:60}")
+    private int msgLockSeconds;
 
     private final MqReceiveService mqReceiveService;
     private final RedissonService redissonService;
 
+    /** 消费、等锁、写表的耗时及从发送到消费的延迟, 没有 MqMetrics 的 bean 时不记录 */
+    private MqMetrics mqMetrics = MqMetrics.NONE;
+
+    /** 每处理完一条(或一批)记录条数和耗时, 用来调整消费者数, 没有时不记录 */
+    private MqConsumerAutoscaler mqConsumerAutoscaler;
+
+    @Autowired(required = false)
+    public void setMqMetrics(MqMetrics mqMetrics) {
+        this.mqMetrics = mqMetrics;
+    }
+
+    @Autowired(required = false)
+    public void setMqConsumerAutoscaler(MqConsumerAutoscaler mqConsumerAutoscaler) {
+        this.mqConsumerAutoscaler = mqConsumerAutoscaler;
+    }
+
     /**
      * 消息处理. !!!消费体一定要包含 msgId 信息!!!
      *
@@ -67,57 +99,268 @@ public class MqReceiverHandler {
             }
             return;
         }
-        String json = new String(message.getBody());
-        if (Obj.isBlank(json)) {
+        ConsumeData consumeData = parse(mqInfo, message);
+        if (Obj.isNull(consumeData)) {
+            return;
+        }
+
+        String desc = mqInfo.showDesc();
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        try {
+            LogUtil.putTraceId(consumeData.traceId());
+            handleData(consumeData, mqInfo, desc, fun);
+        } finally {
+            consumed(mqInfo, 1, startNanos);
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                long now = System.currentTimeMillis();
+                LogUtil.ROOT_LOG.info("消费 {} 结束, 耗时: ({})", desc, Dates.toHuman(now - start));
+            }
+            LogUtil.unbind();
+        }
+    }
+
+    /**
+     * 批量消息处理. !!!消费体一定要包含 msgId 信息!!!
+     * <pre>
+     * 跟 doConsume 的区别:
+     *   1. 整批的 msgId 用一次 redis pipeline(SET NX) 占用, 占用不到的(其他节点正在处理)跳过
+     *   2. 一条 select 查出整批的消费记录, 已经消费成功的(重复投递)跳过, 同一批中重复的 msgId 只处理一次
+     *   3. 整批的消费结果用一条 insert ... on duplicate key update 写入, 业务异常的记为失败交给 MqRetryHandler 重发, 不抛出
+     * 因此每一批只有 2 次 redis 和 2 次 db 往返, 方法正常返回后整批一起 ack
+     *
+     * &#064;RabbitListener(queues = MqConst.xxx, containerFactory = RabbitConfig.BATCH_LISTENER_FACTORY)
+     * public void onReceive(List&lt;Message&gt; messages) {
+     *     handler.doConsumeBatch(MqInfo.xxx, messages, this::business);
+     * }
+     * </pre>
+     *
+     * @param fun 业务处理: 入参是数据对应的 json, 返回 searchKey
+     */
+    public void doConsumeBatch(MqInfo mqInfo, List<Message> messages, Function<String, String> fun) {
+        if (Obj.isNull(mqInfo)) {
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-                LogUtil.ROOT_LOG.info("消费数据({})是空的, 无需处理", json);
+                LogUtil.ROOT_LOG.info("没有队列信息, 无法处理");
             }
             return;
         }
-        MqData mqData = JsonUtil.toObjectNil(json, MqData.class);
-        if (Obj.isNotNull(mqData)) {
-            MqInfo info = MqInfo.from(mqData.getMqInfo());
-            if (Obj.isNotNull(info) && !info.equals(mqInfo)) {
-                if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                    LogUtil.ROOT_LOG.error("消费数据({})信息是({})却在用({})消费, 请检查代码", json, info, mqInfo);
-                }
-                return;
+        if (Arr.isEmpty(messages)) {
+            return;
+        }
+
+        Map<String, ConsumeData> dataMap = new LinkedHashMap<>();
+        for (Message message : messages) {
+            ConsumeData consumeData = parse(mqInfo, message);
+            if (Obj.isNotNull(consumeData)) {
+                dataMap.putIfAbsent(consumeData.msgId(), consumeData);
             }
         }
+        if (dataMap.isEmpty()) {
+            return;
+        }
 
         String desc = mqInfo.showDesc();
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        Map<String, String> lockKeyMap = new LinkedHashMap<>();
+        for (String msgId : dataMap.keySet()) {
+            lockKeyMap.put(MqConst.MSG_LOCK_PREFIX + msgId, msgId);
+        }
+        long lockStart = System.nanoTime();
+        Set<String> lockKeys = redissonService.setIfAbsent(lockKeyMap.keySet(), BATCH_LOCK_VALUE, msgLockSeconds, TimeUnit.SECONDS);
+        mqMetrics.record(mqInfo, MqMetric.LOCK_WAIT, System.nanoTime() - lockStart);
+        try {
+            List<String> msgIdList = new ArrayList<>();
+            for (String lockKey : lockKeys) {
+                msgIdList.add(lockKeyMap.get(lockKey));
+            }
+            if (msgIdList.size() < dataMap.size() && LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("批量消费 {} 数据, 其中({})条正在处理", desc, dataMap.size() - msgIdList.size());
+            }
+
+            long dbStart = System.nanoTime();
+            Map<String, MqReceive> existMap = new HashMap<>();
+            for (MqReceive exist : mqReceiveService.queryByMsgIds(msgIdList)) {
+                existMap.put(exist.getMsgId(), exist);
+            }
+            long dbNanos = System.nanoTime() - dbStart;
+            List<MqReceive> saveList = new ArrayList<>();
+            for (String msgId : msgIdList) {
+                MqReceive exist = existMap.get(msgId);
+                if (Obj.isNotNull(exist) && Obj.toInt(exist.getStatus()) == MqConst.SUCCESS) {
+                    if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                        LogUtil.ROOT_LOG.info("消费 {} 数据({})已经处理过", desc, msgId);
+                    }
+                    continue;
+                }
+                saveList.add(doBatchDataConsume(dataMap.get(msgId), exist, mqInfo, desc, fun));
+            }
+            dbStart = System.nanoTime();
+            mqReceiveService.saveBatch(saveList);
+            mqMetrics.record(mqInfo, MqMetric.DB, dbNanos + System.nanoTime() - dbStart);
+        } finally {
+            redissonService.delete(lockKeys);
+            consumed(mqInfo, messages.size(), startNanos);
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                long now = System.currentTimeMillis();
+                LogUtil.ROOT_LOG.info("批量消费 {}({}) 条结束, 耗时: ({})", desc, messages.size(), Dates.toHuman(now - start));
+            }
+            LogUtil.unbind();
+        }
+    }
+
+    /** 处理单条数据并返回需要写入的消费记录, 业务异常记为失败, 不抛出 */
+    private MqReceive doBatchDataConsume(ConsumeData consumeData, MqReceive exist, MqInfo mqInfo,
+                                         String desc, Function<String, String> fun) {
+        String msgId = consumeData.msgId();
+        String json = consumeData.json();
+        MqReceive model = new MqReceive();
+        model.setMsgId(msgId);
+        model.setType(mqInfo.route().type());
+        model.setRetryCount(0);
+        model.setMsg(json);
+        String oldRemark = Obj.isNull(exist) ? null : exist.getRemark();
+
+        LogUtil.putTraceId(consumeData.traceId());
+        try {
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("开始消费 {} 数据({})", desc, json);
+            }
+            model.setSearchKey(Obj.toStr(apply(mqInfo, fun, consumeData.data())));
+            model.setStatus(MqConst.SUCCESS);
+            model.setRemark(MqRemark.append(oldRemark, String.format("消费(%s)数据成功", desc)));
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("消费({})数据({})成功", desc, msgId);
+            }
+        } catch (Exception e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("消费({})数据({})异常", desc, msgId, e);
+            }
+            model.setSearchKey(Obj.EMPTY);
+            model.setStatus(MqConst.FAIL);
+            int currentRetryCount = Obj.isNull(exist) ? 0 : Obj.toInt(exist.getRetryCount());
+            model.setRemark(MqRemark.append(oldRemark, String.format("消费(%s)数据异常(%s), 已重试(%s)", desc,
+                    e.getMessage(), currentRetryCount)));
+        }
+        return model;
+    }
+
+    /**
+     * 解析出 msgId 等信息, 无需处理时返回 null.
+     * mqInfo、traceId 从消息体的字节中流式读取, 不解码整个消息体, 消息体的字符串和业务数据在用到时才生成
+     */
+    private ConsumeData parse(MqInfo mqInfo, Message message) {
+        byte[] body = message.getBody();
+        if (isBlank(body)) {
+            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
+                LogUtil.ROOT_LOG.info("消费 {} 数据是空的, 无需处理", mqInfo.showDesc());
+            }
+            return null;
+        }
+        ConsumeData consumeData = new ConsumeData(body);
+        MqInfo info = MqInfo.from(JsonUtil.readField(body, MQ_INFO_KEY));
+        if (Obj.isNotNull(info) && !info.equals(mqInfo)) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("消费数据({})信息是({})却在用({})消费, 请检查代码", consumeData.json(), info, mqInfo);
+            }
+            return null;
+        }
+
         MessageProperties mp = message.getMessageProperties();
         // 发布消息时: msgId 放在 messageId, traceId 放在 correlationId
-        String msgId = getMsgId(mp.getMessageId(), mqData, json);
+        String msgId = getMsgId(mp.getMessageId(), consumeData);
         // msgId 如果没有不处理
         if (Obj.isBlank(msgId)) {
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-                LogUtil.ROOT_LOG.info("消费 {} 数据({})没有 msgId, 请与发送方沟通", desc, json);
+                LogUtil.ROOT_LOG.info("消费 {} 数据({})没有 msgId, 请与发送方沟通", mqInfo.showDesc(), consumeData.json());
             }
+            return null;
+        }
+        consumeData.msgId = msgId;
+        String traceId = mp.getCorrelationId();
+        consumeData.traceId = Obj.isNotBlank(traceId) ? traceId : Obj.toStr(JsonUtil.readField(body, TRACE_ID_KEY));
+        recordLag(mqInfo, mp, consumeData);
+        return consumeData;
+    }
+
+    private static boolean isBlank(byte[] body) {
+        if (Obj.isNotNull(body)) {
+            for (byte b : body) {
+                if (b < 0 || !Character.isWhitespace(b)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从发送到开始消费的延迟: 发送时间用消息头(没有时才从消息体中流式读取 MqData 的 sendTime),
+     * 延迟交换机的消息减去设置的延迟时间. 不记录指标时直接返回
+     */
+    private void recordLag(MqInfo mqInfo, MessageProperties mp, ConsumeData consumeData) {
+        if (mqMetrics == MqMetrics.NONE) {
             return;
         }
+        long sendTime;
+        Object header = mp.getHeaders().get(MqConst.SEND_TIME);
+        if (header instanceof Number number) {
+            sendTime = number.longValue();
+        } else {
+            sendTime = parseSendTime(JsonUtil.readField(consumeData.body, SEND_TIME_KEY));
+        }
+        if (sendTime <= 0) {
+            return;
+        }
+        long lagMs = System.currentTimeMillis() - sendTime;
+        Integer delayMs = mp.getReceivedDelay();
+        if (Obj.isNotNull(delayMs) && delayMs > 0) {
+            lagMs -= delayMs;
+        }
+        mqMetrics.record(mqInfo, MqMetric.LAG, TimeUnit.MILLISECONDS.toNanos(lagMs));
+    }
 
-        long start = System.currentTimeMillis();
+    /** JsonUtil 把 Date 序列化成 yyyy-MM-dd HH:mm:ss(反序列化时用 Dates.parseToDate), 其他方式发的可能是毫秒数 */
+    private static long parseSendTime(String sendTime) {
+        if (Obj.isBlank(sendTime)) {
+            return 0;
+        }
+        if (Obj.isLong(sendTime)) {
+            return Obj.toLong(sendTime);
+        }
+        Date date = Dates.parseToDate(sendTime);
+        return Obj.isNull(date) ? 0 : date.getTime();
+    }
+
+    private void consumed(MqInfo mqInfo, int count, long startNanos) {
+        if (Obj.isNotNull(mqConsumerAutoscaler)) {
+            mqConsumerAutoscaler.consumed(mqInfo, count, System.nanoTime() - startNanos);
+        }
+    }
+
+    private String apply(MqInfo mqInfo, Function<String, String> fun, String data) {
+        long start = System.nanoTime();
         try {
-            // 发布消息时: msgId 放在 messageId, traceId 放在 correlationId
-            LogUtil.putTraceId(Obj.defaultIfBlank(mp.getCorrelationId(), (Obj.isNull(mqData) ? "" : mqData.getTraceId())));
-            handleData(msgId, mqData, json, mqInfo, desc, fun);
+            return fun.apply(data);
         } finally {
-            if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-                long now = System.currentTimeMillis();
-                LogUtil.ROOT_LOG.info("消费 {} 结束, 耗时: ({})", desc, Dates.toHuman(now - start));
-            }
-            LogUtil.unbind();
+            mqMetrics.record(mqInfo, MqMetric.CONSUME, System.nanoTime() - start);
         }
     }
 
     /** 在每一个节点都要确保会发送 ack 或 nack */
-    private void handleData(String msgId, MqData mqData, String json, MqInfo mqInfo, String desc, Function<String, String> fun) {
-        if (redissonService.tryLock(msgId)) {
+    private void handleData(ConsumeData consumeData, MqInfo mqInfo, String desc, Function<String, String> fun) {
+        String msgId = consumeData.msgId();
+        // 跟批量消费、重试用同一个键, 同一条消息同时只在一处处理
+        String lockKey = MqConst.MSG_LOCK_PREFIX + msgId;
+        String lockValue = Obj.uuid16();
+        long lockStart = System.nanoTime();
+        boolean locked = !redissonService.setIfAbsent(List.of(lockKey), lockValue, msgLockSeconds, TimeUnit.SECONDS).isEmpty();
+        mqMetrics.record(mqInfo, MqMetric.LOCK_WAIT, System.nanoTime() - lockStart);
+        if (locked) {
             try {
-                doDataConsume(msgId, mqData, json, mqInfo, desc, fun);
+                doDataConsume(consumeData, mqInfo, desc, fun);
             } finally {
-                redissonService.unlock(msgId);
+                redissonService.deleteIfValue(lockKey, lockValue);
             }
         } else {
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
@@ -126,57 +369,58 @@ public class MqReceiverHandler {
         }
     }
 
-    private void doDataConsume(String msgId, MqData mqData, String json, MqInfo mqInfo, String desc, Function<String, String> fun) {
+    private void doDataConsume(ConsumeData consumeData, MqInfo mqInfo, String desc, Function<String, String> fun) {
+        String msgId = consumeData.msgId();
         MqReceive model = null;
         boolean needAdd = false;
         String remark = Obj.EMPTY;
         int status = MqConst.INIT;
         int currentRetryCount = 0;
+        long dbNanos = 0;
         try {
+            long dbStart = System.nanoTime();
             model = mqReceiveService.queryByMsg(msgId);
+            dbNanos = System.nanoTime() - dbStart;
             needAdd = Obj.isNull(model);
             if (needAdd) {
                 model = new MqReceive();
                 model.setMsgId(msgId);
-                model.setType(mqInfo.name().toLowerCase());
+                model.setType(mqInfo.route().type());
                 model.setRetryCount(0);
-                model.setMsg(json);
+                model.setMsg(consumeData.json());
             }
             currentRetryCount = Obj.toInt(model.getRetryCount());
 
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
-                LogUtil.ROOT_LOG.info("开始消费 {} 数据({})", desc, json);
+                LogUtil.ROOT_LOG.info("开始消费 {} 数据({})", desc, consumeData.json());
             }
-            String data = Obj.isNotNull(mqData) && Obj.isNotBlank(mqData.getJson()) ? mqData.getJson() : json;
-            String searchKey = Obj.toStr(fun.apply(data));
-            StringBuilder sbd = new StringBuilder(Obj.toStr(model.getRemark()));
+            String searchKey = Obj.toStr(apply(mqInfo, fun, consumeData.data()));
             String oldSearchKey = Obj.toStr(model.getSearchKey());
-            if (Obj.isNotBlank(oldSearchKey) && !oldSearchKey.equals(searchKey)) {
-                sbd.append(" -- old-search-key: ").append(oldSearchKey);
-            }
+            String searchKeyRemark = (Obj.isNotBlank(oldSearchKey) && !oldSearchKey.equals(searchKey))
+                    ? (" -- old-search-key: " + oldSearchKey) : Obj.EMPTY;
             model.setSearchKey(searchKey);
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
                 LogUtil.ROOT_LOG.info("消费({})数据({})成功", desc, msgId);
             }
             status = MqConst.SUCCESS;
-            remark = String.format("<%s : 消费(%s)数据成功>%s", Dates.nowDateTime(), desc, sbd);
+            remark = MqRemark.append(model.getRemark(), String.format("消费(%s)数据成功%s", desc, searchKeyRemark));
         } catch (Exception e) {
             if (LogUtil.ROOT_LOG.isErrorEnabled()) {
                 LogUtil.ROOT_LOG.error("消费({})数据({})异常", desc, msgId, e);
             }
             status = MqConst.FAIL;
-            String oldRemark = Obj.isNull(model) ? "" : Obj.toStr(model.getRemark());
-            String now = Dates.nowDateTime();
+            String oldRemark = Obj.isNull(model) ? null : model.getRemark();
             String msg = e.getMessage();
             if (currentRetryCount < consumerRetryCount) {
-                remark = String.format("<%s : 消费(%s)数据异常(%s)>%s", now, desc, msg, oldRemark);
+                remark = MqRemark.append(oldRemark, String.format("消费(%s)数据异常(%s)", desc, msg));
                 throw e;
             } else {
-                remark = String.format("<%s : 消费(%s)数据异常(%s)且重试(%s)达到上限(%s)>%s", now, desc, msg,
-                        currentRetryCount, consumerRetryCount, oldRemark);
+                remark = MqRemark.append(oldRemark, String.format("消费(%s)数据异常(%s)且重试(%s)达到上限(%s)", desc, msg,
+                        currentRetryCount, consumerRetryCount));
             }
         } finally {
             if (Obj.isNotNull(model)) {
+                long dbStart = System.nanoTime();
                 if (needAdd) {
                     model.setStatus(status);
                     model.setRemark(remark);
@@ -190,25 +434,77 @@ public class MqReceiverHandler {
                     update.setRetryCount(currentRetryCount + 1);
                     mqReceiveService.updateById(update);
                 }
+                mqMetrics.record(mqInfo, MqMetric.DB, dbNanos + System.nanoTime() - dbStart);
             }
         }
     }
 
-    private String getMsgId(String defaultId, MqData mqData, String json) {
+    /** 发布时 msgId 放在 messageId, 没有时从业务数据的第一层中流式读取(不解析整个 json), 读到 msgIdKey 中靠前的 key 就停止 */
+    private String getMsgId(String defaultId, ConsumeData consumeData) {
         if (Obj.isNotBlank(defaultId)) {
             return defaultId;
         }
 
-        String dataJson = Obj.isNull(mqData) ? json : Obj.defaultIfBlank(mqData.getJson(), json);
-        Map<String, Object> map = JsonUtil.toObjectType(dataJson, MAP_REFERENCE);
-        if (Arr.isNotEmpty(map)) {
+        List<String> keys = msgIdKeys();
+        String data = consumeData.mqDataJson();
+        return Obj.toStr(Obj.isNotBlank(data) ? JsonUtil.readField(data, keys) : JsonUtil.readField(consumeData.body, keys));
+    }
+
+    private List<String> msgIdKeys() {
+        List<String> keys = msgIdKeyList;
+        if (Obj.isNull(keys)) {
+            keys = new ArrayList<>();
             for (String key : msgIdKey.split(",")) {
-                String msgId = Obj.toStr(map.get(key.trim()));
-                if (Obj.isNotBlank(msgId)) {
-                    return msgId;
+                if (Obj.isNotBlank(key)) {
+                    keys.add(key.trim());
                 }
             }
+            keys = List.copyOf(keys);
+            msgIdKeyList = keys;
+        }
+        return keys;
+    }
+
+    /** 消费的数据, 消息体的字符串和业务数据第一次用到时才生成 */
+    private static final class ConsumeData {
+        private final byte[] body;
+        private String msgId;
+        private String traceId;
+        private String json;
+        /** 消息体是 MqData 时其中的 json, 否则是空字符串 */
+        private String mqDataJson;
+
+        private ConsumeData(byte[] body) {
+            this.body = body;
+        }
+
+        private String msgId() {
+            return msgId;
+        }
+
+        private String traceId() {
+            return traceId;
+        }
+
+        /** 整个消息体 */
+        private String json() {
+            if (Obj.isNull(json)) {
+                json = new String(body, StandardCharsets.UTF_8);
+            }
+            return json;
+        }
+
+        private String mqDataJson() {
+            if (Obj.isNull(mqDataJson)) {
+                mqDataJson = Obj.toStr(JsonUtil.readField(body, DATA_KEY));
+            }
+            return mqDataJson;
+        }
+
+        /** 业务数据: 消息体是 MqData 时是其中的 json, 否则是整个消息体 */
+        private String data() {
+            String data = mqDataJson();
+            return Obj.isNotBlank(data) ? data : json();
         }
-        return Obj.EMPTY;
     }
 }
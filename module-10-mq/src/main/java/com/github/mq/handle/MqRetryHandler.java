@@ -1,24 +1,44 @@
 package com.github.mq.handle;
 
-import com.github.common.date.Dates;
 import com.github.common.util.Arr;
+import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
 import com.github.global.service.RedissonService;
 import com.github.mq.constant.MqConst;
 import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRemark;
 import com.github.mq.model.MqReceive;
 import com.github.mq.model.MqSend;
 import com.github.mq.service.MqReceiveService;
 import com.github.mq.service.MqSendService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+/**
+ * <pre>
+ * 重试失败的 mq 消息
+ *
+ * 表中的记录按 id % shards 分成多个分片, 每个分片用 redis 租约(SET key nodeId NX EX)保证同一时间只在一个实例上处理,
+ * 多个实例从随机的分片开始抢, 可以一起处理积压的消息; 实例宕机后租约到期, 分片由其他实例接手.
+ * 续期和释放都先比较值是不是当前实例(lua 脚本), 租约过期被其他实例获取后, 当前实例续期失败就不再处理这个分片, 也不会删掉其他实例的租约.
+ * 分片中的消息每批 retryLimit 条, 用有界的线程池(启动时创建, 关闭时销毁)并行重试,
+ * 重试前先把下次重试时间按重试次数指数退避(base * 2^n, 不超过 max)往后推, 失败的要等到这个时间之后才会再查出来
+ * </pre>
+ */
 @Configuration
 @RequiredArgsConstructor
-public class MqRetryHandler {
+public class MqRetryHandler implements InitializingBean, DisposableBean {
 
     @Value("${mq.retry-limit:20}")
     private int mqRetryLimit;
@@ -26,11 +46,64 @@ public class MqRetryHandler {
     @Value("${mq.max-retry-count:5}")
     private int maxRetryCount;
 
+    /** 分片数 */
+    @Value("${mq.retry-shards:8}")
+    private int retryShards;
+
+    /** 同时重试的消息数(重试线程数) */
+    @Value("${mq.retry-parallelism:4}")
+    private int retryParallelism;
+
+    /** 分片租约的秒数, 每处理完一批会续期 */
+    @Value("${mq.retry-lease-seconds:300}")
+    private int retryLeaseSeconds;
+
+    /** 指数退避的基数(毫秒), 重试了 n 次的消息在 base * 2^n 之后才会再重试 */
+    @Value("${mq.retry-backoff-ms:30000}")
+    private long retryBackoffMs;
+
+    /** 指数退避的上限(毫秒) */
+    @Value("${mq.retry-max-backoff-ms:3600000}")
+    private long retryMaxBackoffMs;
+
+    /** 重试一条消息时 msgId 的占用时间, 跟消费时的一样, 处理完会主动删除 */
+    @Value("${mq.msg-lock-seconds:60}")
+    private int msgLockSeconds;
+
+    private static final String SEND_LEASE_PREFIX = "mq:retry:send:";
+    private static final String RECEIVE_LEASE_PREFIX = "mq:retry:receive:";
+
+    /** 当前实例的标识, 存到租约的值里 */
+    private final String nodeId = Obj.uuid16();
+
     private final RedissonService redissonService;
     private final MqSendService mqSendService;
     private final MqReceiveService mqReceiveService;
     private final MqSenderHandler mqSenderHandler;
 
+    private ExecutorService executor;
+
+    @Override
+    public void afterPropertiesSet() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(Math.max(retryParallelism, 1), runnable -> {
+            Thread thread = new Thread(runnable, "mq-retry-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS) && LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("等待 mq 重试线程结束超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
     /**
      * 处理消费重试(将失败的重发到队列), 可以使用自带的 spring.rabbitmq.listener.simple.retry.enabled 方式进行自动重试
@@ -38,33 +111,23 @@ public class MqRetryHandler {
      * @see com.github.mq.handle.MqReceiverHandler
      */
     public boolean handlerReceive() {
-        for (;;) {
-            List<MqReceive> mqReceiveList = mqReceiveService.queryRetryMsg(maxRetryCount, mqRetryLimit);
-            if (Arr.isEmpty(mqReceiveList)) {
-                return true;
-            }
-            for (MqReceive mqReceive : mqReceiveList) {
-                retryReceive(mqReceive);
-            }
-            // 如果上面查到的已经是最后一批数据也退出循环, 这样当上面的处理失败, 将会在下一次运行时执行
-            if (mqReceiveList.size() < mqRetryLimit) {
-                return true;
-            }
-        }
+        return retryShards(new RetryTask<MqReceive>("消费", RECEIVE_LEASE_PREFIX,
+                (shard, shards) -> mqReceiveService.queryRetryMsg(shard, shards, maxRetryCount, mqRetryLimit),
+                MqReceive::getId, MqReceive::getRetryCount, mqReceiveService::updateNextRetryTime, this::retryReceive));
     }
     private void retryReceive(MqReceive mqReceive) {
-        String oldRemark = Obj.toStr(mqReceive.getRemark());
+        String oldRemark = mqReceive.getRemark();
         int status = MqConst.SUCCESS;
         String remark = null;
         try {
             MqInfo mqInfo = MqInfo.from(mqReceive.getType());
             if (Obj.isNull(mqInfo)) {
-                remark = String.format("<%s : 没有这个业务类型场景>%s", Dates.nowDateTime(), oldRemark);
+                remark = MqRemark.append(oldRemark, "没有这个业务类型场景");
             } else {
                 if (sendMsg(mqReceive.getMsgId(), mqReceive.getSearchKey(), mqInfo, mqReceive.getMsg())) {
-                    remark = String.format("<%s : 重试时发到 mq 成功>%s", Dates.nowDateTime(), oldRemark);
+                    remark = MqRemark.append(oldRemark, "重试时发到 mq 成功");
                 } else {
-                    remark = String.format("<%s : 同 msg_id 的任务正在执行>%s", Dates.nowDateTime(), oldRemark);
+                    remark = MqRemark.append(oldRemark, "同 msg_id 的任务正在执行");
                 }
             }
         } catch (Exception e) {
@@ -86,29 +149,19 @@ public class MqRetryHandler {
 
     /** 处理发送重试(将失败的重发到队列) */
     public boolean handlerSend() {
-        for (;;) {
-            List<MqSend> mqSendList = mqSendService.queryRetryMsg(maxRetryCount, mqRetryLimit);
-            if (Arr.isEmpty(mqSendList)) {
-                return true;
-            }
-            for (MqSend mqSend : mqSendList) {
-                retrySend(mqSend);
-            }
-            // 如果上面查到的已经是最后一批数据也退出循环, 这样当上面的处理失败, 将会在下一次运行时执行
-            if (mqSendList.size() < mqRetryLimit) {
-                return true;
-            }
-        }
+        return retryShards(new RetryTask<MqSend>("发送", SEND_LEASE_PREFIX,
+                (shard, shards) -> mqSendService.queryRetryMsg(shard, shards, maxRetryCount, mqRetryLimit),
+                MqSend::getId, MqSend::getRetryCount, mqSendService::updateNextRetryTime, this::retrySend));
     }
     private void retrySend(MqSend mqSend) {
-        String oldRemark = Obj.toStr(mqSend.getRemark());
+        String oldRemark = mqSend.getRemark();
         String remark = null;
         MqInfo mqInfo = MqInfo.from(mqSend.getType());
         if (Obj.isNull(mqInfo)) {
-            remark = String.format("<%s : 没有这个业务类型场景>%s", Dates.nowDateTime(), oldRemark);
+            remark = MqRemark.append(oldRemark, "没有这个业务类型场景");
         } else {
             if (!sendMsg(mqSend.getMsgId(), mqSend.getSearchKey(), mqInfo, mqSend.getMsg())) {
-                remark = String.format("<%s : 同 msg_id 的任务正在执行>%s", Dates.nowDateTime(), oldRemark);
+                remark = MqRemark.append(oldRemark, "同 msg_id 的任务正在执行");
             }
         }
         // 上面的 sendMsg 调用返回为 true 时, 内部方法会自动处理「成功」或「失败且重试次数 + 1」, 因此当前只处理 remark 有值的场景
@@ -121,16 +174,102 @@ public class MqRetryHandler {
         }
     }
 
+    private <T> boolean retryShards(RetryTask<T> task) {
+        int shards = Math.max(retryShards, 1);
+        // 从随机的分片开始, 多个实例同时运行时尽量不抢同一个分片
+        int start = ThreadLocalRandom.current().nextInt(shards);
+        for (int i = 0; i < shards; i++) {
+            int shard = (start + i) % shards;
+            String key = task.leasePrefix() + shard;
+            if (redissonService.setIfAbsent(List.of(key), nodeId, retryLeaseSeconds, TimeUnit.SECONDS).isEmpty()) {
+                // 其他实例正在处理这个分片
+                continue;
+            }
+            try {
+                retryShard(task, shard, shards, key);
+            } finally {
+                redissonService.deleteIfValue(key, nodeId);
+            }
+        }
+        return true;
+    }
+    private <T> void retryShard(RetryTask<T> task, int shard, int shards, String key) {
+        for (;;) {
+            List<T> list = task.query().apply(shard, shards);
+            if (Arr.isEmpty(list)) {
+                return;
+            }
+            delay(task, list);
+
+            List<Future<?>> futureList = new ArrayList<>(list.size());
+            for (T data : list) {
+                futureList.add(executor.submit(() -> task.retry().accept(data)));
+            }
+            for (Future<?> future : futureList) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    // 失败的状态和重试次数在发送时已经处理, 等退避时间到了再重试
+                    if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                        LogUtil.ROOT_LOG.warn("重试 mq {}消息异常: {}", task.desc(), e.getCause().getMessage());
+                    }
+                }
+            }
+            // 如果上面查到的已经是最后一批数据也退出循环, 这样当上面的处理失败, 将会在下一次运行时执行
+            if (list.size() < mqRetryLimit) {
+                return;
+            }
+            if (!redissonService.expireIfValue(key, nodeId, retryLeaseSeconds, TimeUnit.SECONDS)) {
+                // 租约已经过期且被其他实例获取了, 剩下的由它处理
+                if (LogUtil.ROOT_LOG.isWarnEnabled()) {
+                    LogUtil.ROOT_LOG.warn("重试 mq {}消息的分片({})租约已失效, 不再处理", task.desc(), shard);
+                }
+                return;
+            }
+        }
+    }
+    /** 按重试次数分组, 每组用一条 sql 把下次重试时间往后推 */
+    private <T> void delay(RetryTask<T> task, List<T> list) {
+        Map<Integer, List<Long>> idMap = new HashMap<>();
+        for (T data : list) {
+            idMap.computeIfAbsent(Obj.toInt(task.retryCount().apply(data)), k -> new ArrayList<>()).add(task.id().apply(data));
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Integer, List<Long>> entry : idMap.entrySet()) {
+            task.delay().accept(entry.getValue(), new Date(now + backoffMs(entry.getKey())));
+        }
+    }
+    long backoffMs(int retryCount) {
+        long max = Math.max(retryMaxBackoffMs, 1);
+        long backoff = Math.max(retryBackoffMs, 1) << Math.min(Math.max(retryCount, 0), 30);
+        return Math.min(backoff, max);
+    }
+
     private boolean sendMsg(String msgId, String searchKey, MqInfo mqInfo, String json) {
-        if (redissonService.tryLock(msgId)) {
+        // 跟消费用同一个键, 正在消费的消息不会同时重试
+        String lockKey = MqConst.MSG_LOCK_PREFIX + msgId;
+        String lockValue = Obj.uuid16();
+        if (!redissonService.setIfAbsent(List.of(lockKey), lockValue, msgLockSeconds, TimeUnit.SECONDS).isEmpty()) {
             try {
                 mqSenderHandler.doProvideJustJson(msgId, mqInfo, searchKey, json);
             } finally {
-                redissonService.unlock(msgId);
+                redissonService.deleteIfValue(lockKey, lockValue);
             }
             return true;
         } else {
             return false;
         }
     }
+
+    /**
+     * @param desc 发送 或 消费
+     * @param query 入参是 分片 和 分片数, 返回这个分片中需要重试的一批消息
+     * @param delay 将 id 对应记录的下次重试时间更新成指定值
+     */
+    private record RetryTask<T>(String desc, String leasePrefix, BiFunction<Integer, Integer, List<T>> query,
+                                Function<T, Long> id, Function<T, Integer> retryCount,
+                                BiConsumer<List<Long>, Date> delay, Consumer<T> retry) {}
 }
@@ -1,14 +1,17 @@
 package com.github.mq.handle;
 
-import com.github.common.date.Dates;
 import com.github.common.json.JsonUtil;
-import com.github.common.util.ApplicationContexts;
+import com.github.common.util.AsyncUtil;
 import com.github.common.util.LogUtil;
 import com.github.common.util.Obj;
 import com.github.mq.constant.MqConst;
 import com.github.mq.constant.MqData;
 import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRemark;
+import com.github.mq.constant.MqRoute;
 import com.github.mq.constant.SelfCorrelationData;
+import com.github.mq.metric.MqMetric;
+import com.github.mq.metric.MqMetrics;
 import com.github.mq.model.MqSend;
 import com.github.mq.service.MqSendService;
 import lombok.RequiredArgsConstructor;
@@ -17,24 +20,118 @@ import org.springframework.amqp.core.MessageBuilder;
 import org.springframework.amqp.core.ReturnedMessage;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Configuration;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RequiredArgsConstructor
 @Configuration
 @ConditionalOnClass(RabbitTemplate.class)
-public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTemplate.ReturnsCallback {
+public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTemplate.ReturnsCallback,
+        InitializingBean, DisposableBean {
 
     @Value("${mq.provider-retry-count:2}")
     private int providerRetryCount;
 
+    /** 延迟发送是否用 {@link MqDelayScheduler} 代替 delay 插件, 不是延迟交换机的总是用 MqDelayScheduler */
+    @Value("${mq.delay-local:false}")
+    private boolean delayLocal;
+
+    /** 最多保存多少条未 confirm 的消息 */
+    @Value("${mq.confirm-table-size:100000}")
+    private int confirmTableSize;
+
+    /** 多久没有 confirm 就不再保存 */
+    @Value("${mq.confirm-timeout-ms:600000}")
+    private long confirmTimeoutMs;
+
+    /** confirm 的状态变更每隔多少毫秒批量写一次库 */
+    @Value("${mq.confirm-flush-ms:200}")
+    private long confirmFlushMs;
+
+    /** confirm 的状态变更攒够多少条时提前写库 */
+    @Value("${mq.confirm-flush-size:500}")
+    private int confirmFlushSize;
+
+    /** 异步发送的线程数 */
+    @Value("${mq.publish-threads:8}")
+    private int publishThreads;
+
+    /** 异步发送的队列长度, 满了之后由调用方的线程自己发送 */
+    @Value("${mq.publish-queue-size:10000}")
+    private int publishQueueSize;
+
+    /** 异步发送时最多有多少条在等待 confirm, 超出后要等前面的 confirm 回来 */
+    @Value("${mq.publish-max-in-flight:10000}")
+    private int publishMaxInFlight;
+
+    /** 等待 in-flight 名额的最长毫秒数, 超时则 future 失败 */
+    @Value("${mq.publish-acquire-timeout-ms:5000}")
+    private long publishAcquireTimeoutMs;
+
     private final RabbitTemplate rabbitTemplate;
     private final MqSendService mqSendService;
 
+    /** 发送、confirm、写表的耗时, 没有 MqMetrics 的 bean 时不记录 */
+    private MqMetrics mqMetrics = MqMetrics.NONE;
+
+    private MqCorrelationTable correlationTable;
+    private ThreadPoolExecutor publishExecutor;
+    private Semaphore inFlight;
+
+    @Autowired(required = false)
+    public void setMqMetrics(MqMetrics mqMetrics) {
+        this.mqMetrics = mqMetrics;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        correlationTable = new MqCorrelationTable(confirmTableSize, confirmTimeoutMs, confirmFlushMs,
+                confirmFlushSize, mqSendService, this::republish);
+        int threads = Math.max(publishThreads, 1);
+        AtomicInteger threadIndex = new AtomicInteger();
+        publishExecutor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(Math.max(publishQueueSize, 1)), runnable -> {
+                    Thread thread = new Thread(runnable, "mq-publish-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, executor) -> {
+                    // 队列满了由调用方的线程自己发送, 慢下来就是背压; 关闭之后不再接收
+                    // 任务只带了日志上下文且执行完会恢复, 在调用方的线程中执行不会清掉调用方的请求和日志上下文
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("mq 异步发送已经关闭");
+                    }
+                    runnable.run();
+                });
+        inFlight = new Semaphore(Math.max(publishMaxInFlight, 1));
+        // 需要 spring.rabbitmq.publisher-confirm-type = correlated 及 spring.rabbitmq.template.mandatory = true
+        if (Obj.isNotNull(rabbitTemplate)) {
+            rabbitTemplate.setConfirmCallback(this);
+            rabbitTemplate.setReturnsCallback(this);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        publishExecutor.shutdown();
+        try {
+            if (!publishExecutor.awaitTermination(5, TimeUnit.SECONDS) && LogUtil.ROOT_LOG.isWarnEnabled()) {
+                LogUtil.ROOT_LOG.warn("等待 mq 异步发送线程结束超时");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        correlationTable.close();
+    }
+
     /**
      * 用这个发送的 mq 信息, 实际发送的是 {@link MqData} 对象, 里面有「发送时间、队列信息」信息
      *
@@ -47,18 +144,26 @@ public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTe
     /**
      * 用这个发送的 mq 信息, 实际发送的是 {@link MqData} 对象, 里面有「发送时间、队列信息」信息
      *
-     * @param delayMs 延迟发送毫秒数, 需要安装 <a href="https://www.rabbitmq.com/community-plugins.html">delay</a> 插件
+     * @param delayMs 延迟发送毫秒数, 需要安装 <a href="https://www.rabbitmq.com/community-plugins.html">delay</a> 插件,
+     *                没有安装(不是延迟交换机)或设置了 mq.delay-local 时由 {@link MqDelayScheduler} 到期后发送
      */
     public void doProvide(MqInfo mqInfo, String searchKey, String json, int delayMs) {
-        String msgId = Obj.uuid16();
         String traceId = LogUtil.getTraceId();
+        String mqDataJson = toMqDataJson(mqInfo, traceId, json);
+        if (useDelayScheduler(mqInfo, delayMs)) {
+            schedule(mqInfo, searchKey, mqDataJson, delayMs);
+        } else {
+            provide(searchKey, new SelfCorrelationData(Obj.uuid16(), traceId, mqInfo, mqDataJson, delayMs));
+        }
+    }
 
+    private static String toMqDataJson(MqInfo mqInfo, String traceId, String json) {
         MqData data = new MqData();
         data.setSendTime(new Date());
-        data.setMqInfo(mqInfo.name().toLowerCase());
+        data.setMqInfo(mqInfo.route().type());
         data.setTraceId(traceId);
         data.setJson(json);
-        provide(searchKey, new SelfCorrelationData(msgId, traceId, mqInfo, JsonUtil.toJson(data), delayMs));
+        return JsonUtil.toJson(data);
     }
 
     /** 发送 mq 消息, 不包「发送时间、队列信息」这些内容 */
@@ -69,10 +174,14 @@ public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTe
     /**
      * 发送 mq 消息, 不包「发送时间、队列信息」这些内容
      *
-     * @param delayMs 延迟发送毫秒数, 需要安装 <a href="https://www.rabbitmq.com/community-plugins.html">delay</a> 插件
+     * @param delayMs 延迟发送毫秒数, 见 {@link #doProvide(MqInfo, String, String, int)}
      */
     public void doProvideJustJson(MqInfo mqInfo, String searchKey, String json, int delayMs) {
-        provide(searchKey, new SelfCorrelationData(Obj.uuid16(), LogUtil.getTraceId(), mqInfo, json, delayMs));
+        if (useDelayScheduler(mqInfo, delayMs)) {
+            schedule(mqInfo, searchKey, json, delayMs);
+        } else {
+            provide(searchKey, new SelfCorrelationData(Obj.uuid16(), LogUtil.getTraceId(), mqInfo, json, delayMs));
+        }
     }
 
     /** 指定 msgId 发送 mq 消息(发送的 mq 消息不包「发送时间、队列信息」这些内容), 一般用于重试 */
@@ -80,31 +189,144 @@ public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTe
         provide(searchKey, new SelfCorrelationData(msgId, LogUtil.getTraceId(), mqInfo, json, 0));
     }
 
+    /**
+     * <pre>
+     * 异步发送 mq 信息(实际发送的是 {@link MqData} 对象), 调用方不等待写表和发送.
+     * 返回的 future 在消息到交换机(broker confirm 是 ack)之后完成, 值是 msgId;
+     * nack 且重发达到上限、路由不到队列、等待 confirm 超时时以异常完成.
+     *
+     * future 在 mq 的回调线程中完成, 后续的处理如果比较重请用 thenXxxAsync 放到自己的线程池
+     * </pre>
+     *
+     * @param searchKey 保存到表中用来做搜索的值, 比如单号等
+     */
+    public CompletableFuture<String> doProvideAsync(MqInfo mqInfo, String searchKey, String json) {
+        String traceId = LogUtil.getTraceId();
+        return provideAsync(searchKey, new SelfCorrelationData(Obj.uuid16(), traceId, mqInfo,
+                toMqDataJson(mqInfo, traceId, json), 0));
+    }
+
+    /** 异步发送 mq 消息, 不包「发送时间、队列信息」这些内容, 见 {@link #doProvideAsync} */
+    public CompletableFuture<String> doProvideJustJsonAsync(MqInfo mqInfo, String searchKey, String json) {
+        return provideAsync(searchKey, new SelfCorrelationData(Obj.uuid16(), LogUtil.getTraceId(), mqInfo, json, 0));
+    }
+
+    /** 指定 msgId 异步发送 mq 消息, 一般用于发送表中已有的消息(比如到期的延迟消息), 见 {@link #doProvideAsync} */
+    public CompletableFuture<String> doProvideJustJsonAsync(String msgId, MqInfo mqInfo, String searchKey, String json) {
+        return provideAsync(searchKey, new SelfCorrelationData(msgId, LogUtil.getTraceId(), mqInfo, json, 0));
+    }
+
+    private CompletableFuture<String> provideAsync(String searchKey, SelfCorrelationData correlationData) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        // 只把日志上下文(traceId 等)带到发送线程, 队列满了在调用方的线程中执行时, 执行完恢复调用方自己的上下文
+        Runnable task = AsyncUtil.wrapLogContext(() -> {
+            try {
+                if (!inFlight.tryAcquire(publishAcquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    future.completeExceptionally(new RuntimeException(String.format("等待 confirm 的消息超过(%s)条, 发送(%s)超时",
+                            publishMaxInFlight, correlationData.getId())));
+                    return;
+                }
+                future.whenComplete((msgId, e) -> inFlight.release());
+                provide(searchKey, correlationData, future);
+            } catch (Exception e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                future.completeExceptionally(e);
+            }
+        });
+        try {
+            publishExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * 用 outbox 的方式发送 mq 信息(实际发送的是 {@link MqData} 对象): 只在调用方的事务中往表里写一条「outbox 待发送」状态的记录,
+     * 由 {@link MqOutboxRelay} 在后台批量发送, 收到 confirm 后再更新状态, 调用方无需等待跟 mq 的交互
+     *
+     * @param searchKey 保存到表中用来做搜索的值, 比如单号等
+     */
+    public void doProvideOutbox(MqInfo mqInfo, String searchKey, String json) {
+        outbox(mqInfo, searchKey, toMqDataJson(mqInfo, LogUtil.getTraceId(), json));
+    }
+
+    /** 用 outbox 的方式发送 mq 消息, 不包「发送时间、队列信息」这些内容 */
+    public void doProvideOutboxJustJson(MqInfo mqInfo, String searchKey, String json) {
+        outbox(mqInfo, searchKey, json);
+    }
+
+    private void outbox(MqInfo mqInfo, String searchKey, String json) {
+        MqSend model = new MqSend();
+        model.setMsgId(Obj.uuid16());
+        if (Obj.isNotBlank(searchKey)) {
+            model.setSearchKey(Obj.toStr(searchKey));
+        }
+        model.setType(mqInfo.route().type());
+        model.setStatus(MqConst.OUTBOX);
+        model.setRetryCount(0);
+        model.setMsg(json);
+        model.setRemark(MqRemark.append(null, String.format("消息(%s)写入 outbox", mqInfo.showDesc())));
+        // 事务的传播是 REQUIRED, 有事务时跟调用方一起提交或回滚
+        mqSendService.add(model);
+    }
+
+    private boolean useDelayScheduler(MqInfo mqInfo, int delayMs) {
+        return delayMs > 0 && (delayLocal || !mqInfo.route().delayExchange());
+    }
+
+    /** 写一条「延迟」状态的记录, 到期时间放在 next_retry_time, 由 {@link MqDelayScheduler} 到期后发送 */
+    private void schedule(MqInfo mqInfo, String searchKey, String json, int delayMs) {
+        MqSend model = new MqSend();
+        model.setMsgId(Obj.uuid16());
+        if (Obj.isNotBlank(searchKey)) {
+            model.setSearchKey(Obj.toStr(searchKey));
+        }
+        model.setType(mqInfo.route().type());
+        model.setStatus(MqConst.SCHEDULED);
+        model.setRetryCount(0);
+        model.setMsg(json);
+        // next_retry_time 只到秒, 向上取整, 不会提前发送
+        long dueMs = System.currentTimeMillis() + delayMs;
+        model.setNextRetryTime(new Date(Math.floorDiv(dueMs + 999, 1000) * 1000));
+        model.setRemark(MqRemark.append(null, String.format("消息(%s)延迟(%sms)发送", mqInfo.showDesc(), delayMs)));
+        // 事务的传播是 REQUIRED, 有事务时跟调用方一起提交或回滚
+        mqSendService.add(model);
+    }
+
     private void provide(String searchKey, SelfCorrelationData correlationData) {
+        provide(searchKey, correlationData, null);
+    }
+
+    /** @param future 异步发送时等待 confirm 的 future, 发送异常时由调用方处理 */
+    private void provide(String searchKey, SelfCorrelationData correlationData, CompletableFuture<String> future) {
         String msgId = correlationData.getId();
-        String traceId = correlationData.getTraceId();
         MqInfo mqInfo = correlationData.getMqInfo();
         String json = correlationData.getJson();
-        int delayMs = correlationData.getDelayMs();
-
-        String exchangeName = mqInfo.getExchangeName();
-        String routingKey = mqInfo.getRoutingKey();
         String desc = mqInfo.showDesc();
 
         MqSend model = null;
         boolean needAdd = false;
+        boolean firstSend = false;
         String remark = Obj.EMPTY;
         int status = MqConst.INIT;
+        long dbNanos = 0;
         try {
+            long dbStart = System.nanoTime();
             model = mqSendService.queryByMsgId(msgId);
+            dbNanos = System.nanoTime() - dbStart;
             needAdd = Obj.isNull(model);
+            // 到期的延迟消息是第一次发送, 不算重试
+            firstSend = needAdd || Obj.toInt(model.getStatus()) == MqConst.SCHEDULED;
             if (needAdd) {
                 model = new MqSend();
                 model.setMsgId(msgId);
                 if (Obj.isNotBlank(searchKey)) {
                     model.setSearchKey(Obj.toStr(searchKey));
                 }
-                model.setType(mqInfo.name().toLowerCase());
+                model.setType(mqInfo.route().type());
                 model.setRetryCount(0);
                 model.setMsg(json);
             }
@@ -112,31 +334,26 @@ public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTe
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
                 LogUtil.ROOT_LOG.info("开始发送 {} 数据({})", desc, json);
             }
-            // msgId 放在 messageId, traceId 放在 correlationId
-            // 默认是持久化的 setDeliveryMode(MessageDeliveryMode.PERSISTENT)
-            Message msg = MessageBuilder.withBody(json.getBytes(StandardCharsets.UTF_8))
-                    .setMessageId(msgId).setCorrelationId(traceId).build();
-            if (delayMs > 0) {
-                rabbitTemplate.convertAndSend(exchangeName, routingKey, msg, new DelayMessage(delayMs), correlationData);
-            } else {
-                rabbitTemplate.convertAndSend(exchangeName, routingKey, msg, correlationData);
-            }
+            // 先放进 confirm 表再发送, confirm 可能比 send 返回得更早
+            correlationTable.put(correlationData, firstSend ? 0 : Obj.toInt(model.getRetryCount()) + 1, false, future);
+            send(correlationData);
             if (LogUtil.ROOT_LOG.isInfoEnabled()) {
                 LogUtil.ROOT_LOG.info("发送({})数据({})成功", desc, msgId);
             }
             status = MqConst.SUCCESS;
-            remark = String.format("<%s : 消息(%s)发送成功>%s", Dates.nowDateTime(), desc, Obj.toStr(model.getRemark()));
+            remark = MqRemark.append(model.getRemark(), String.format("消息(%s)发送成功", desc));
         } catch (RuntimeException e) {
             if (LogUtil.ROOT_LOG.isErrorEnabled()) {
                 LogUtil.ROOT_LOG.error("发送({})数据({})异常", desc, msgId, e);
             }
+            correlationTable.remove(msgId);
             status = MqConst.FAIL;
-            String oldRemark = Obj.toStr(Obj.isNull(model) ? null : model.getRemark());
-            remark = String.format("<%s : 发送(%s)数据异常(%s)>%s", Dates.nowDateTime(),
-                    desc, e.getMessage(), oldRemark);
+            String oldRemark = Obj.isNull(model) ? null : model.getRemark();
+            remark = MqRemark.append(oldRemark, String.format("发送(%s)数据异常(%s)", desc, e.getMessage()));
             throw e;
         } finally {
             if (Obj.isNotNull(model)) {
+                long dbStart = System.nanoTime();
                 if (needAdd) {
                     model.setStatus(status);
                     model.setRemark(remark);
@@ -146,43 +363,117 @@ public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTe
                     update.setId(model.getId());
                     update.setStatus(status);
                     update.setRemark(remark);
-                    update.setRetryCount(model.getRetryCount() + 1);
+                    if (!firstSend) {
+                        update.setRetryCount(Obj.toInt(model.getRetryCount()) + 1);
+                    }
                     mqSendService.updateById(update);
                 }
+                mqMetrics.record(mqInfo, MqMetric.DB, dbNanos + System.nanoTime() - dbStart);
+            }
+        }
+    }
+
+    private void send(SelfCorrelationData correlationData) {
+        MqInfo mqInfo = correlationData.getMqInfo();
+        MqRoute route = mqInfo.route();
+        int delayMs = correlationData.getDelayMs();
+        // msgId 放在 messageId, traceId 放在 correlationId, 发送时间(毫秒)放在头里用来算消费的延迟
+        // 默认是持久化的 setDeliveryMode(MessageDeliveryMode.PERSISTENT)
+        Message msg = MessageBuilder.withBody(correlationData.getJson().getBytes(StandardCharsets.UTF_8))
+                .setMessageId(correlationData.getId()).setCorrelationId(correlationData.getTraceId())
+                .setHeader(MqConst.SEND_TIME, System.currentTimeMillis()).build();
+        if (delayMs > 0) {
+            // 不是延迟交换机的在 doProvide 时已经交给 MqDelayScheduler, 到这里的都是延迟交换机
+            msg = new DelayMessage(delayMs).postProcessMessage(msg);
+        }
+        // 消息已经是 Message, 不需要 convertAndSend 再转换
+        long start = System.nanoTime();
+        try {
+            rabbitTemplate.send(route.exchangeName(), route.routingKey(), msg, correlationData);
+        } finally {
+            mqMetrics.record(mqInfo, MqMetric.PUBLISH, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 发送 outbox 中的消息, 不读写表: 状态在 confirm 回调中(ack 成功, nack 重发或失败)批量写入.
+     * 发送异常时从 confirm 表中移除并抛出, 由调用方标记为失败
+     */
+    void publishOutbox(SelfCorrelationData correlationData) {
+        correlationTable.put(correlationData, 0, true);
+        try {
+            send(correlationData);
+        } catch (RuntimeException e) {
+            correlationTable.remove(correlationData.getId());
+            throw e;
+        }
+    }
+
+    /** 多久没有 confirm 就不再等待, 这之后由 {@link MqRetryHandler} 重试 */
+    long confirmTimeoutMs() {
+        return confirmTimeoutMs;
+    }
+
+    /** 在 confirm 表的后台线程中重发收到 nack 的消息, 用 confirm 表中的数据, 不查库 */
+    private void republish(MqCorrelationTable.Pending pending) {
+        SelfCorrelationData data = pending.data();
+        SelfCorrelationData correlationData = new SelfCorrelationData(data.getId(), data.getTraceId(),
+                data.getMqInfo(), data.getJson(), data.getDelayMs());
+        int retryCount = pending.retryCount() + 1;
+        correlationTable.put(correlationData, retryCount, true, pending.future());
+        try {
+            send(correlationData);
+        } catch (RuntimeException e) {
+            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+                LogUtil.ROOT_LOG.error("重发({})数据({})异常", data.getMqInfo().showDesc(), data.getId(), e);
             }
+            correlationTable.remove(data.getId());
+            String reason = String.format("第 %s 次重发异常(%s)", retryCount, e.getMessage());
+            correlationTable.change(data.getId(), MqConst.FAIL, reason);
+            pending.fail(reason);
         }
     }
 
     @Override
     public void confirm(CorrelationData correlationData, boolean ack, String cause) {
+        String msgId = Obj.isNull(correlationData) ? null : correlationData.getId();
+        if (Obj.isBlank(msgId)) {
+            return;
+        }
+
+        MqCorrelationTable.Pending pending = correlationTable.remove(msgId);
+        if (Obj.isNotNull(pending)) {
+            mqMetrics.record(pending.data().getMqInfo(), MqMetric.CONFIRM, System.nanoTime() - pending.sendNanos());
+        }
         if (ack) {
             if (LogUtil.ROOT_LOG.isDebugEnabled()) {
-                LogUtil.ROOT_LOG.debug("消息({})到交换机成功", JsonUtil.toJson(correlationData));
+                LogUtil.ROOT_LOG.debug("消息({})到交换机成功", msgId);
             }
-        } else {
-            if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-                LogUtil.ROOT_LOG.error("消息({})到交换机失败, 原因({})", JsonUtil.toJson(correlationData), cause);
-            }
-            String msgId = correlationData.getId();
-            if (Obj.isNotBlank(msgId)) {
-                MqSend mqSend = mqSendService.queryByMsgId(msgId);
-                if (Obj.isNotNull(mqSend)) {
-                    if (correlationData instanceof SelfCorrelationData data) {
-                        int retryCount = Obj.toInt(mqSend.getRetryCount());
-                        // 如果重试次数未达到设定的值则进行重试
-                        if (retryCount < providerRetryCount) {
-                            ApplicationContexts.getBean(MqSenderHandler.class).provide(null, data);
-                        } else {
-                            String remark = String.format("<%s : 发送失败且重试(%s)达到上限(%s)>",
-                                    Dates.nowDateTime(), retryCount, providerRetryCount);
-                            handleError(mqSend, remark);
-                        }
-                    } else {
-                        String remark = String.format("<%s : 消息到交换机失败>", Dates.nowDateTime());
-                        handleError(mqSend, remark);
-                    }
+            if (Obj.isNotNull(pending)) {
+                // 同步发送时已经标记为成功, nack 之后重发的和 outbox 发送的收到 ack 才标记为成功
+                if (pending.markOnAck()) {
+                    correlationTable.change(msgId, MqConst.SUCCESS, pending.retryCount() > 0
+                            ? String.format("第 %s 次重发到交换机成功", pending.retryCount()) : "消息到交换机成功");
                 }
+                pending.complete();
             }
+            return;
+        }
+
+        if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+            LogUtil.ROOT_LOG.error("消息({})到交换机失败, 原因({})", msgId, cause);
+        }
+        if (Obj.isNull(pending)) {
+            // 已经从 confirm 表中淘汰, 只标记为失败, 由 MqRetryHandler 重试
+            correlationTable.change(msgId, MqConst.FAIL, String.format("消息到交换机失败(%s)", cause));
+        } else if (pending.retryCount() < providerRetryCount) {
+            // 如果重试次数未达到设定的值则进行重试
+            correlationTable.change(msgId, MqConst.FAIL, String.format("消息到交换机失败(%s), 重发", cause));
+            correlationTable.republish(pending);
+        } else {
+            String reason = String.format("发送失败且重试(%s)达到上限(%s)", pending.retryCount(), providerRetryCount);
+            correlationTable.change(msgId, MqConst.FAIL, reason);
+            pending.fail(reason);
         }
     }
 
@@ -197,27 +488,27 @@ public class MqSenderHandler implements RabbitTemplate.ConfirmCallback, RabbitTe
     @SuppressWarnings("NullableProblems")
     @Override
     public void returnedMessage(ReturnedMessage msg) {
-        if (LogUtil.ROOT_LOG.isErrorEnabled()) {
-            LogUtil.ROOT_LOG.error("消息({})到队列失败", JsonUtil.toJson(msg));
-        }
         // msgId 放在 messageId, traceId 放在 correlationId
         String msgId = msg.getMessage().getMessageProperties().getMessageId();
+        if (LogUtil.ROOT_LOG.isErrorEnabled()) {
+            LogUtil.ROOT_LOG.error("消息({})到队列失败({} -> {})", msgId, msg.getReplyCode(), msg.getReplyText());
+        }
         if (Obj.isNotBlank(msgId)) {
-            MqSend mqSend = mqSendService.queryByMsgId(msgId);
-            if (Obj.isNotNull(mqSend)) {
-                int code = msg.getReplyCode();
-                String text = msg.getReplyText();
-                String remark = String.format("<%s : 消息到队列时失败(%s -> %s)>", Dates.nowDateTime(), code, text);
-                handleError(mqSend, remark);
+            // 路由不到队列, 重发也一样, 之后的 confirm 是 ack, 不需要再处理
+            MqCorrelationTable.Pending pending = correlationTable.remove(msgId);
+            String reason = String.format("消息到队列时失败(%s -> %s)", msg.getReplyCode(), msg.getReplyText());
+            correlationTable.change(msgId, MqConst.FAIL, reason);
+            if (Obj.isNotNull(pending)) {
+                pending.fail(reason);
             }
         }
     }
 
-    private void handleError(MqSend mqSend, String remark) {
-        MqSend model = new MqSend();
-        model.setId(mqSend.getId());
-        model.setStatus(MqConst.FAIL);
-        model.setRemark(remark + Obj.toStr(mqSend.getRemark()));
-        mqSendService.updateById(model);
+    long confirmPendingSize() {
+        return correlationTable.pendingSize();
+    }
+
+    void flushConfirm() {
+        correlationTable.flush();
     }
 }
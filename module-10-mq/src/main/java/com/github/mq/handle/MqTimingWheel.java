@@ -0,0 +1,121 @@
+package com.github.mq.handle;
+
+import java.util.function.Consumer;
+
+/**
+ * <pre>
+ * 分层时间轮, 给 {@link MqDelayScheduler} 用, 只在调度线程中使用(不是线程安全的)
+ *
+ * 以 tickMs 为一格, 格子号是 时间 / tickMs, 每层有 2^bits 格, 第 n 层的一格是第 n - 1 层转一圈.
+ * 到期的格子号是 到期时间 / tickMs 向上取整, 跟当前格子号只在第 n 段(每段 bits 位)及更低的位上不同的放在第 n 层;
+ * 走到第 n 层的边界(低 n 段都是 0)时, 把这一层当前格子中的数据重新放一遍(会落到更低的层), 第 0 层走到的格子里就是到期的.
+ * 放入和到期都是 O(1), 只会比到期时间晚(最多一格), 不会提前
+ * </pre>
+ */
+final class MqTimingWheel<T> {
+
+    /** 层数要能放下任意的 long 格子号 */
+    private static final int MAX_BITS = 63;
+
+    private final long tickMs;
+    private final int bits;
+    private final int mask;
+    /** 每层的格子, 用到时才创建; 每个格子是一个单向链表的头 */
+    private final Node<T>[][] levels;
+
+    /** 当前走到的格子号 */
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param bits 每层 2^bits 格
+     * @param startMs 从这个时间开始走
+     */
+    @SuppressWarnings("unchecked")
+    MqTimingWheel(long tickMs, int bits, long startMs) {
+        this.tickMs = Math.max(tickMs, 1);
+        this.bits = Math.min(Math.max(bits, 1), 16);
+        this.mask = (1 << this.bits) - 1;
+        this.levels = new Node[(MAX_BITS + this.bits - 1) / this.bits][];
+        this.currentTick = Math.floorDiv(startMs, this.tickMs);
+    }
+
+    /** 放入时间轮, 已经到期(不晚于当前格子)则不放入, 返回 false */
+    boolean add(long dueMs, T data) {
+        long tick = Math.floorDiv(dueMs, tickMs) + (Math.floorMod(dueMs, tickMs) == 0 ? 0 : 1);
+        if (tick <= currentTick) {
+            return false;
+        }
+        put(new Node<>(tick, data));
+        size++;
+        return true;
+    }
+
+    /** 走到 nowMs, 到期的按格子的顺序交给 expired */
+    void advance(long nowMs, Consumer<T> expired) {
+        long target = Math.floorDiv(nowMs, tickMs);
+        while (currentTick < target) {
+            if (size == 0) {
+                // 没有数据就不用一格一格地走
+                currentTick = target;
+                return;
+            }
+            currentTick++;
+            // 先从高层往下落, 落到第 0 层当前格子的在下面一起到期
+            for (int level = levels.length - 1; level > 0; level--) {
+                Node<T>[] slots = levels[level];
+                if (slots != null && (currentTick & ((1L << (bits * level)) - 1)) == 0) {
+                    int index = (int) ((currentTick >>> (bits * level)) & mask);
+                    Node<T> node = slots[index];
+                    slots[index] = null;
+                    while (node != null) {
+                        Node<T> next = node.next;
+                        node.next = null;
+                        put(node);
+                        node = next;
+                    }
+                }
+            }
+            Node<T>[] slots = levels[0];
+            if (slots != null) {
+                int index = (int) (currentTick & mask);
+                Node<T> node = slots[index];
+                slots[index] = null;
+                while (node != null) {
+                    size--;
+                    expired.accept(node.data);
+                    node = node.next;
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void put(Node<T> node) {
+        // 跟当前格子号不同的最高位在第几段, 就放在第几层; 落下来时正好是当前格子的(没有不同的位)放在第 0 层的当前格子
+        int level = (63 - Long.numberOfLeadingZeros(node.tick ^ currentTick)) / bits;
+        Node<T>[] slots = levels[level];
+        if (slots == null) {
+            slots = new Node[mask + 1];
+            levels[level] = slots;
+        }
+        int index = (int) ((node.tick >>> (bits * level)) & mask);
+        node.next = slots[index];
+        slots[index] = node;
+    }
+
+    private static final class Node<T> {
+        private final long tick;
+        private final T data;
+        private Node<T> next;
+
+        private Node(long tick, T data) {
+            this.tick = tick;
+            this.data = data;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.github.mq.metric;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <pre>
+ * HdrHistogram 一样的对数-线性分桶直方图, 记录和查询都不加锁, 内存固定(约 30K), 可以记录 0 到 Long.MAX_VALUE.
+ *
+ * 小于 2^7 的每个值一个桶; 之后每个 2 的幂区间 [2^n, 2^(n+1)) 平均分成 2^6 个桶,
+ * 因此返回的分位值跟实际值的相对误差不超过 1/64(约 1.6%), 返回的是桶的上界, 不会比实际值小
+ * </pre>
+ */
+public final class MqHistogram {
+
+    /** 每个 2 的幂区间分成 2^SUB_BITS 个桶 */
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /** 小于这个值的每个值一个桶 */
+    private static final int LINEAR_COUNT = SUB_COUNT << 1;
+    private static final int BUCKET_COUNT = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+        long v = Math.max(value, 0);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long total = count.sum();
+        return total == 0 ? 0 : (double) sum.sum() / total;
+    }
+
+    /**
+     * @param percentile 0 到 100, 比如 99.9
+     * @return 不小于 percentile% 的记录值的最小值(桶的上界, 不超过记录过的最大值), 没有记录时返回 0
+     */
+    public long percentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(highest(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int index(long value) {
+        if (value < LINEAR_COUNT) {
+            return (int) value;
+        }
+        // 最高位是第 n 位时, 右移 n - SUB_BITS 位之后落在 [2^SUB_BITS, 2^(SUB_BITS + 1))
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    /** 桶中的最大值 */
+    static long highest(int index) {
+        if (index < LINEAR_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long sub = index - (long) shift * SUB_COUNT;
+        // 最后一个桶是 (128 << 56) - 1, 溢出之后减 1 正好是 Long.MAX_VALUE
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,61 @@
+package com.github.mq.metric;
+
+import com.github.mq.constant.MqInfo;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 每个 MqInfo 的每项耗时一个 {@link MqHistogram}, 用到时才创建; 可以定时把分位值打到日志或转给监控
+ *
+ * <pre>
+ * MqHistogram histogram = mqHistogramMetrics.histogram(MqInfo.EXAMPLE, MqMetric.LAG);
+ * long p99 = histogram.percentile(99);
+ * </pre>
+ */
+public class MqHistogramMetrics implements MqMetrics {
+
+    private static final MqInfo[] INFOS = MqInfo.values();
+    private static final MqMetric[] METRICS = MqMetric.values();
+
+    private final AtomicReferenceArray<MqHistogram> histograms = new AtomicReferenceArray<>(INFOS.length * METRICS.length);
+
+    @Override
+    public void record(MqInfo mqInfo, MqMetric metric, long nanos) {
+        int index = mqInfo.ordinal() * METRICS.length + metric.ordinal();
+        MqHistogram histogram = histograms.get(index);
+        if (histogram == null) {
+            histograms.compareAndSet(index, null, new MqHistogram());
+            histogram = histograms.get(index);
+        }
+        histogram.record(nanos);
+    }
+
+    /** 没有记录过时返回 null */
+    public MqHistogram histogram(MqInfo mqInfo, MqMetric metric) {
+        return histograms.get(mqInfo.ordinal() * METRICS.length + metric.ordinal());
+    }
+
+    /** 每项耗时的次数和 p50/p99/p999/max(毫秒), 没有记录的不输出 */
+    public String summary() {
+        StringBuilder sbd = new StringBuilder();
+        for (MqInfo mqInfo : INFOS) {
+            for (MqMetric metric : METRICS) {
+                MqHistogram histogram = histogram(mqInfo, metric);
+                if (histogram == null || histogram.count() == 0) {
+                    continue;
+                }
+                if (sbd.length() > 0) {
+                    sbd.append("\n");
+                }
+                sbd.append(String.format("%s %s: count %s, p50 %.3fms, p99 %.3fms, p999 %.3fms, max %.3fms",
+                        mqInfo.showDesc(), metric.getDesc(), histogram.count(), toMs(histogram.percentile(50)),
+                        toMs(histogram.percentile(99)), toMs(histogram.percentile(99.9)), toMs(histogram.max())));
+            }
+        }
+        return sbd.toString();
+    }
+
+    private static double toMs(long nanos) {
+        return nanos / 1_000_000D;
+    }
+}
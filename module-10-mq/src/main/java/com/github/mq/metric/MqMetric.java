@@ -0,0 +1,25 @@
+package com.github.mq.metric;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/** mq 记录的耗时, 都是纳秒 */
+@Getter
+@RequiredArgsConstructor
+public enum MqMetric {
+
+    /** 调用 RabbitTemplate#send 的耗时 */
+    PUBLISH("发送"),
+    /** 从发送到收到 broker 的 confirm(ack 或 nack) */
+    CONFIRM("confirm"),
+    /** 消费时业务处理的耗时 */
+    CONSUME("消费"),
+    /** 消费时占用 msgId 的耗时(单条是分布式锁, 批量是一次 redis pipeline) */
+    LOCK_WAIT("等锁"),
+    /** 发送和消费时读写 t_mq_send、t_mq_receive 表的耗时 */
+    DB("写表"),
+    /** 从发送(消息头中的发送时间)到开始消费, 跨机器时包含时钟偏差 */
+    LAG("延迟");
+
+    private final String desc;
+}
@@ -0,0 +1,28 @@
+package com.github.mq.metric;
+
+import com.github.mq.constant.MqInfo;
+
+/**
+ * <pre>
+ * mq 的耗时记录, MqSenderHandler 和 MqReceiverHandler 在发送、confirm、消费时调用.
+ * 默认是 {@link #NONE} 不记录; 在 spring 中放一个实现就会用上, 可以用自带的 {@link MqHistogramMetrics},
+ * 也可以转到 micrometer 等指标库, 比如:
+ *
+ * &#064;Bean
+ * public MqMetrics mqMetrics() {
+ *     return new MqHistogramMetrics();
+ * }
+ * </pre>
+ */
+public interface MqMetrics {
+
+    /** 不记录 */
+    MqMetrics NONE = (mqInfo, metric, nanos) -> {};
+
+    /**
+     * 会在发送和消费的线程中调用, 实现要足够快且线程安全
+     *
+     * @param nanos 耗时纳秒数, 小于 0 的(比如跨机器的时钟偏差)当成 0
+     */
+    void record(MqInfo mqInfo, MqMetric metric, long nanos);
+}
@@ -39,6 +39,9 @@ public class MqReceive implements Serializable {
     /** 备注 --> remark */
     private String remark;
 
+    /** 下次重试时间, 重试失败后按重试次数指数退避 --> next_retry_time */
+    private Date nextRetryTime;
+
     /** 创建时间 --> create_time */
     private Date createTime;
 
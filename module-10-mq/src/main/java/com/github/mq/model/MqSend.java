@@ -27,7 +27,7 @@ public class MqSend implements Serializable {
     @Column("`type`")
     private String type;
 
-    /** 0.初始, 1.失败, 2.成功(需要重试则改为 1) --> status */
+    /** 0.初始, 1.失败, 2.成功(需要重试则改为 1), 3.延迟 --> status */
     private Integer status;
 
     /** 重试次数(需要重试则改为 0) --> retry_count */
@@ -39,6 +39,9 @@ public class MqSend implements Serializable {
     /** 备注 --> remark */
     private String remark;
 
+    /** 下次重试时间, 重试失败后按重试次数指数退避; 延迟消息是到期时间 --> next_retry_time */
+    private Date nextRetryTime;
+
     /** 创建时间 --> create_time */
     private Date createTime;
 
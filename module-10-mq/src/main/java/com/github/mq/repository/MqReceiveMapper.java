@@ -3,10 +3,27 @@ package com.github.mq.repository;
 import com.github.mq.model.MqReceive;
 import com.mybatisflex.core.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
 
 /** mq 消费记录 --> mq_receive */
 @Mapper
 public interface MqReceiveMapper extends BaseMapper<MqReceive> {
 
     int insertOrUpdate(MqReceive data);
+
+    /** 批量写入, msg_id 已经存在则更新状态、重试次数(+1)并将备注加在前面 */
+    int batchInsertOrUpdate(@Param("list") List<MqReceive> list);
+
+    /**
+     * 查询第 shard 个分片(id % shards = shard)中到了重试时间的消息(整行数据), 见 xml 中的说明
+     *
+     * @param initTime 初始状态的消息创建时间在这之前才重试
+     */
+    List<MqReceive> selectRetryMsg(@Param("shard") int shard, @Param("shards") int shards,
+            @Param("initStatus") int initStatus, @Param("initTime") Date initTime,
+            @Param("failStatus") int failStatus, @Param("maxRetryCount") int maxRetryCount,
+            @Param("now") Date now, @Param("limit") int limit);
 }
@@ -3,8 +3,42 @@ package com.github.mq.repository;
 import com.github.mq.model.MqSend;
 import com.mybatisflex.core.BaseMapper;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 
 /** mq 生产记录 --> mq_send */
 @Mapper
 public interface MqSendMapper extends BaseMapper<MqSend> {
+
+    /**
+     * 将 msgId 对应的记录批量更新成同一个状态, 备注加在前面
+     *
+     * @param remarkTime 备注的时间
+     * @param overflowPath 超出上限的那条备注的路径, 见 {@link com.github.mq.constant.MqRemark#OVERFLOW_PATH}
+     */
+    int updateStatusByMsgIds(@Param("msgIds") Collection<String> msgIds, @Param("status") int status,
+            @Param("remarkTime") String remarkTime, @Param("remark") String remark,
+            @Param("overflowPath") String overflowPath);
+
+    /**
+     * 将 id 对应的记录批量更新成同一个状态, 备注加在前面, 参数同 {@link #updateStatusByMsgIds}
+     *
+     * @param nextRetryTime 下次重试时间, 为空则不更新
+     */
+    int updateStatusByIds(@Param("ids") Collection<Long> ids, @Param("status") int status,
+            @Param("nextRetryTime") Date nextRetryTime, @Param("remarkTime") String remarkTime, @Param("remark") String remark,
+            @Param("overflowPath") String overflowPath);
+
+    /**
+     * 查询第 shard 个分片(id % shards = shard)中到了重试时间的消息(整行数据), 见 xml 中的说明
+     *
+     * @param initTime 初始状态的消息创建时间在这之前才重试
+     */
+    List<MqSend> selectRetryMsg(@Param("shard") int shard, @Param("shards") int shards,
+            @Param("initStatus") int initStatus, @Param("initTime") Date initTime,
+            @Param("failStatus") int failStatus, @Param("maxRetryCount") int maxRetryCount,
+            @Param("now") Date now, @Param("limit") int limit);
 }
@@ -12,7 +12,10 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 @RequiredArgsConstructor
@@ -35,27 +38,59 @@ public class MqReceiveService {
         }
     }
 
+    /** 一条 insert ... on duplicate key update 写入所有消费结果 */
+    @Transactional
+    public void saveBatch(List<MqReceive> list) {
+        if (Arr.isNotEmpty(list)) {
+            mqReceiveMapper.batchInsertOrUpdate(list);
+        }
+    }
+
+    /** 用一条 sql 查出 msgId 对应的记录(不包含 msg 字段) */
+    public List<MqReceive> queryByMsgIds(Collection<String> msgIds) {
+        if (Arr.isEmpty(msgIds)) {
+            return Collections.emptyList();
+        }
+
+        MqReceiveTableDef mrDef = MqReceiveTableDef.MQ_RECEIVE;
+        QueryWrapper query = QueryWrapper.create()
+                .select(mrDef.ID, mrDef.MSG_ID, mrDef.STATUS, mrDef.RETRY_COUNT, mrDef.REMARK)
+                .and(mrDef.MSG_ID.in(msgIds));
+        return mqReceiveMapper.selectListByQuery(query);
+    }
+
     public MqReceive queryByMsg(String msgId) {
         if (msgId == null || msgId.trim().isEmpty()) {
             return null;
         }
 
         MqReceiveTableDef mrDef = MqReceiveTableDef.MQ_RECEIVE;
-        QueryWrapper query = QueryWrapper.create().select(mrDef.ID, mrDef.RETRY_COUNT).and(mrDef.MSG_ID.eq(msgId));
+        QueryWrapper query = QueryWrapper.create().select(mrDef.ID, mrDef.RETRY_COUNT, mrDef.REMARK).and(mrDef.MSG_ID.eq(msgId));
         return Pages.returnOne(mqReceiveMapper.paginate(Pages.paramOnlyLimit(1), query));
     }
 
-    public List<MqReceive> queryRetryMsg(int maxRetryCount, int limit) {
-        // select id ... where ( status = .. and create < .. ) or ( status = .. and retry < .. ) order by update
-        // ( 状态是初始 且 创建时间是在 2 分钟之前 ) 或 ( 状态是失败 且 重试次数小于指定数量 )
-        MqReceiveTableDef mrDef = MqReceiveTableDef.MQ_RECEIVE;
-        QueryWrapper query = QueryWrapper.create()
-                .select(mrDef.ID)
-                .or(mrDef.STATUS.eq(MqConst.INIT).and(mrDef.CREATE_TIME.lt(Dates.addMinute(Dates.now(), -2))))
-                .or(mrDef.STATUS.eq(MqConst.FAIL).and(mrDef.RETRY_COUNT.lt(maxRetryCount)))
-                .orderBy(mrDef.UPDATE_TIME.asc());
-        // 表中有 text 字段, 因此先只查出 id, 再用 id 查具体的数据
-        List<MqReceive> receiveList = Pages.returnList(mqReceiveMapper.paginate(Pages.paramOnlyLimit(limit), query));
-        return Arr.isEmpty(receiveList) ? Collections.emptyList() : mqReceiveMapper.selectListByIds(Arr.collect(receiveList, MqReceive::getId));
+    /**
+     * 查询第 shard 个分片(id % shards = shard)中到了重试时间的消息
+     *
+     * @param shard 分片, 0 到 shards - 1
+     * @param shards 分片数
+     */
+    public List<MqReceive> queryRetryMsg(int shard, int shards, int maxRetryCount, int limit) {
+        // ( 状态是初始 且 创建时间是在 2 分钟之前 ) 或 ( 状态是失败 且 重试次数小于指定数量 ), 且到了下次重试的时间
+        // 用 union all 代替 or, 两个分支都走 (status, next_retry_time) 索引, 一条 sql 返回整行数据
+        LocalDateTime now = Dates.now();
+        return mqReceiveMapper.selectRetryMsg(shard, shards, MqConst.INIT, Dates.toDate(Dates.addMinute(now, -2)),
+                MqConst.FAIL, maxRetryCount, Dates.toDate(now), limit);
+    }
+
+    /** 将指定 id 的记录的下次重试时间批量更新成同一个值, 只用一条 update ... where id in (...) 语句 */
+    @Transactional
+    public void updateNextRetryTime(List<Long> ids, Date nextRetryTime) {
+        if (Arr.isNotEmpty(ids)) {
+            MqReceive update = new MqReceive();
+            update.setNextRetryTime(nextRetryTime);
+            MqReceiveTableDef mrDef = MqReceiveTableDef.MQ_RECEIVE;
+            mqReceiveMapper.updateByQuery(update, QueryWrapper.create().and(mrDef.ID.in(ids)));
+        }
     }
 }
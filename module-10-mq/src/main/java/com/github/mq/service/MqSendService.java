@@ -4,6 +4,7 @@ import com.github.common.date.Dates;
 import com.github.common.page.Pages;
 import com.github.common.util.Arr;
 import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqRemark;
 import com.github.mq.model.MqSend;
 import com.github.mq.model.table.MqSendTableDef;
 import com.github.mq.repository.MqSendMapper;
@@ -12,7 +13,9 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.util.Collections;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Service
@@ -35,27 +38,93 @@ public class MqSendService {
         }
     }
 
+    /** 将指定 id 的记录批量更新成同一个状态(备注加在前面), 只用一条 update ... where id in (...) 语句 */
+    @Transactional
+    public void updateStatusByIds(List<Long> ids, int status, String remark) {
+        updateStatusByIds(ids, status, null, remark);
+    }
+
+    /** 同 {@link #updateStatusByIds(List, int, String)}, 同时更新下次重试时间(为空则不更新) */
+    @Transactional
+    public void updateStatusByIds(List<Long> ids, int status, Date nextRetryTime, String remark) {
+        if (Arr.isNotEmpty(ids)) {
+            mqSendMapper.updateStatusByIds(ids, status, nextRetryTime, Dates.nowDateTime(),
+                    MqRemark.truncate(remark), MqRemark.OVERFLOW_PATH);
+        }
+    }
+
+    /** 将 msgId 对应的记录批量更新成同一个状态(备注加在前面), 只用一条 update ... where msg_id in (...) 语句 */
+    @Transactional
+    public void updateStatusByMsgIds(Collection<String> msgIds, int status, String remark) {
+        if (Arr.isNotEmpty(msgIds)) {
+            mqSendMapper.updateStatusByMsgIds(msgIds, status, Dates.nowDateTime(),
+                    MqRemark.truncate(remark), MqRemark.OVERFLOW_PATH);
+        }
+    }
+
     public MqSend queryByMsgId(String msgId) {
         if (msgId == null || msgId.trim().isEmpty()) {
             return null;
         }
 
         MqSendTableDef msDef = MqSendTableDef.MQ_SEND;
-        QueryWrapper query = QueryWrapper.create().select(msDef.ID, msDef.RETRY_COUNT).and(msDef.MSG_ID.eq(msgId));
+        QueryWrapper query = QueryWrapper.create().select(msDef.ID, msDef.STATUS, msDef.RETRY_COUNT, msDef.REMARK).and(msDef.MSG_ID.eq(msgId));
         return Pages.returnOne(mqSendMapper.paginate(Pages.paramOnlyLimit(1), query));
     }
 
-    public List<MqSend> queryRetryMsg(int maxRetryCount, int limit) {
-        // select id ... where ( status = .. and create < .. ) or ( status = .. and retry < .. ) order by update
-        // ( 状态是初始 且 创建时间是在 2 分钟之前 ) 或 ( 状态是失败 且 重试次数小于指定数量 )
+    /**
+     * 查询第 shard 个分片(id % shards = shard)中到了重试时间的消息
+     *
+     * @param shard 分片, 0 到 shards - 1
+     * @param shards 分片数
+     */
+    public List<MqSend> queryRetryMsg(int shard, int shards, int maxRetryCount, int limit) {
+        // ( 状态是初始 且 创建时间是在 2 分钟之前 ) 或 ( 状态是失败 且 重试次数小于指定数量 ), 且到了下次重试的时间
+        // 用 union all 代替 or, 两个分支都走 (status, next_retry_time) 索引, 一条 sql 返回整行数据
+        LocalDateTime now = Dates.now();
+        return mqSendMapper.selectRetryMsg(shard, shards, MqConst.INIT, Dates.toDate(Dates.addMinute(now, -2)),
+                MqConst.FAIL, maxRetryCount, Dates.toDate(now), limit);
+    }
+
+    /** 将指定 id 的记录的下次重试时间批量更新成同一个值, 只用一条 update ... where id in (...) 语句 */
+    @Transactional
+    public void updateNextRetryTime(List<Long> ids, Date nextRetryTime) {
+        if (Arr.isNotEmpty(ids)) {
+            MqSend update = new MqSend();
+            update.setNextRetryTime(nextRetryTime);
+            MqSendTableDef msDef = MqSendTableDef.MQ_SEND;
+            mqSendMapper.updateByQuery(update, QueryWrapper.create().and(msDef.ID.in(ids)));
+        }
+    }
+
+    /** 查询 outbox 中还未发送(状态是 outbox 待发送)的消息, 按 id 从小到大 */
+    public List<MqSend> queryOutboxMsg(int limit) {
+        // select id, msg_id, type, msg ... where status = .. order by id limit ..
         MqSendTableDef msDef = MqSendTableDef.MQ_SEND;
         QueryWrapper query = QueryWrapper.create()
-                .select(msDef.ID)
-                .or(msDef.STATUS.eq(MqConst.INIT).and(msDef.CREATE_TIME.lt(Dates.addMinute(Dates.now(), -2))))
-                .or(msDef.STATUS.eq(MqConst.FAIL).and(msDef.RETRY_COUNT.lt(maxRetryCount)))
-                .orderBy(msDef.UPDATE_TIME.asc());
-        // 表中有 text 字段, 因此先只查出 id, 再用 id 查具体的数据
-        List<MqSend> sendList = Pages.returnList(mqSendMapper.paginate(Pages.paramOnlyLimit(limit), query));
-        return Arr.isEmpty(sendList) ? Collections.emptyList() : mqSendMapper.selectListByIds(Arr.collect(sendList, MqSend::getId));
+                .select(msDef.ID, msDef.MSG_ID, msDef.TYPE, msDef.MSG)
+                .and(msDef.STATUS.eq(MqConst.OUTBOX))
+                .orderBy(msDef.ID.asc());
+        return Pages.returnList(mqSendMapper.paginate(Pages.paramOnlyLimit(limit), query));
+    }
+
+    /**
+     * 按 (到期时间, id) 从小到大查询 until 之前到期的延迟消息, 走 (status, next_retry_time) 索引
+     *
+     * @param afterTime 从 (afterTime, afterId) 之后开始查, 为空则从头开始
+     */
+    public List<MqSend> queryScheduledMsg(Date afterTime, long afterId, Date until, int limit) {
+        // select id, msg_id, search_key, type, msg, next_retry_time ... where status = .. and next_retry_time <= ..
+        //   and next_retry_time >= .. and (next_retry_time > .. or id > ..) order by next_retry_time, id limit ..
+        MqSendTableDef msDef = MqSendTableDef.MQ_SEND;
+        QueryWrapper query = QueryWrapper.create()
+                .select(msDef.ID, msDef.MSG_ID, msDef.SEARCH_KEY, msDef.TYPE, msDef.MSG, msDef.NEXT_RETRY_TIME)
+                .and(msDef.STATUS.eq(MqConst.SCHEDULED))
+                .and(msDef.NEXT_RETRY_TIME.le(until));
+        if (afterTime != null) {
+            query.and(msDef.NEXT_RETRY_TIME.ge(afterTime)).and(msDef.NEXT_RETRY_TIME.gt(afterTime).or(msDef.ID.gt(afterId)));
+        }
+        query.orderBy(msDef.NEXT_RETRY_TIME.asc(), msDef.ID.asc());
+        return Pages.returnList(mqSendMapper.paginate(Pages.paramOnlyLimit(limit), query));
     }
 }
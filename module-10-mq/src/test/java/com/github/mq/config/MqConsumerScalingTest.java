@@ -0,0 +1,188 @@
+package com.github.mq.config;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class MqConsumerScalingTest {
+
+    private static final double TARGET_UTILIZATION = 0.75;
+    private static final int MAX_CONSUMERS = 32;
+    /** 模拟的步长 10ms, 每 5s 采样一次 */
+    private static final long TICK_MS = 10;
+    private static final int TICKS_PER_SAMPLE = 500;
+    /** 每个阶段 10 分钟, 前 2 分钟用来收敛 */
+    private static final int PHASE_SAMPLES = 120;
+    private static final int CONVERGE_SAMPLES = 24;
+
+    @Test
+    public void converge() {
+        Simulation sim = new Simulation(new Random(20), 0, 0);
+        // 单条 20ms: 每秒 200、1000、50、200 条分别需要 4、20、1、4 个消费者满负荷
+        double[] rates = { 200, 1000, 50, 200 };
+        for (double rate : rates) {
+            Phase phase = sim.run(rate, 0.02, PHASE_SAMPLES);
+            assertConverged(rate, 0.02, phase);
+        }
+    }
+
+    @Test
+    public void noisyWorkload() {
+        // 到达速率每一步有 ±50% 的波动, 单条耗时有 ±30% 的波动, 收敛后也不来回调整
+        Simulation sim = new Simulation(new Random(21), 0.5, 0.3);
+        Phase phase = sim.run(300, 0.01, PHASE_SAMPLES * 6);
+        assertConverged(300, 0.01, phase);
+        Assert.assertEquals(0, phase.changesAfterConverge);
+    }
+
+    @Test
+    public void slowConsumer() {
+        // 单条 2s 的慢消息: 预取数降到 1, 不让一个消费者压住很多消息
+        Simulation sim = new Simulation(new Random(22), 0, 0);
+        Phase phase = sim.run(4, 2, PHASE_SAMPLES);
+        assertConverged(4, 2, phase);
+        Assert.assertEquals(1, sim.scaling.prefetch());
+
+        // 单条 1ms 的快消息: 预取数到上限
+        phase = sim.run(500, 0.001, PHASE_SAMPLES);
+        assertConverged(500, 0.001, phase);
+        Assert.assertEquals(250, sim.scaling.prefetch());
+    }
+
+    @Test
+    public void rollback() {
+        MqConsumerScaling scaling = new MqConsumerScaling(1, MAX_CONSUMERS, TARGET_UTILIZATION, 30, 1, 250, 1, 3, 4, 100);
+        long second = 1_000_000_000L;
+        Assert.assertFalse(scaling.sample(0, 100, 2 * second, second));
+        // 每秒 1000 条、单条 20ms 需要 27 个消费者, 预取数 50
+        Assert.assertTrue(scaling.sample(0, 1000, 20 * second, second));
+        Assert.assertEquals(27, scaling.consumers());
+        Assert.assertEquals(50, scaling.prefetch());
+
+        // 设置到容器失败, 退回到容器实际的值, 下个周期重新调整
+        scaling.rollback(4, 100);
+        Assert.assertEquals(4, scaling.consumers());
+        Assert.assertEquals(100, scaling.prefetch());
+        Assert.assertTrue(scaling.sample(0, 1000, 20 * second, second));
+        Assert.assertEquals(27, scaling.consumers());
+        Assert.assertEquals(50, scaling.prefetch());
+    }
+
+    @Test
+    public void overload() {
+        // 需要的超过上限时停在上限, 积压一直增长也不会超出
+        Simulation sim = new Simulation(new Random(23), 0, 0);
+        Phase phase = sim.run(2000, 0.02, PHASE_SAMPLES);
+        Assert.assertEquals(MAX_CONSUMERS, phase.min);
+        Assert.assertEquals(MAX_CONSUMERS, sim.scaling.consumers());
+        Assert.assertTrue(phase.endDepth > 0);
+
+        // 降下来之后先消化积压再逐步缩容, 只缩不扩
+        phase = sim.run(200, 0.02, PHASE_SAMPLES * 3);
+        Assert.assertEquals(0, phase.ups);
+        Assert.assertEquals(0, phase.reversals);
+        Assert.assertEquals(0, phase.endDepth);
+        phase = sim.run(200, 0.02, PHASE_SAMPLES);
+        assertConverged(200, 0.02, phase);
+        Assert.assertEquals(0, phase.changesAfterConverge);
+    }
+
+    private static void assertConverged(double rate, double cost, Phase phase) {
+        double load = rate * cost / TARGET_UTILIZATION;
+        int low = Math.min((int) Math.ceil(load), MAX_CONSUMERS);
+        int high = Math.min((int) Math.ceil(load * (1 + MqConsumerScaling.HYSTERESIS)) + 1, MAX_CONSUMERS);
+        String msg = String.format("rate %s, cost %s, consumers [%s, %s], expected [%s, %s], changes %s, reversals %s, depth %s",
+                rate, cost, phase.min, phase.max, low, high, phase.changesAfterConverge, phase.reversals, phase.endDepth);
+        System.out.println(msg);
+        // 收敛之后在目标范围之内且不再变化, 整个阶段最多反向一次(为消化积压先扩再缩)
+        Assert.assertTrue(msg, phase.min >= low && phase.max <= high);
+        Assert.assertTrue(msg, phase.changesAfterConverge <= 1);
+        Assert.assertTrue(msg, phase.reversals <= 1);
+        // 积压在 2 秒的量以内
+        Assert.assertTrue(msg, phase.endDepth <= rate * 2);
+    }
+
+    private static class Phase {
+        private int min = Integer.MAX_VALUE;
+        private int max;
+        private int changesAfterConverge;
+        private int reversals;
+        private int ups;
+        private long endDepth;
+    }
+
+    /** 生产者按到达速率往队列里放消息, 每个消费者按单条耗时处理, 每 5 秒把采样交给 MqConsumerScaling 并按结果调整消费者数 */
+    private static class Simulation {
+        private final Random random;
+        private final double rateNoise;
+        private final double costNoise;
+        private final MqConsumerScaling scaling = new MqConsumerScaling(1, MAX_CONSUMERS, TARGET_UTILIZATION, 30,
+                1, 250, 1, 3, 1, 250);
+        private long depth;
+        private double arrivalCarry;
+        /** 每个消费者手上的消息还要多久处理完 */
+        private final double[] busyUntil = new double[MAX_CONSUMERS];
+        private double now;
+
+        Simulation(Random random, double rateNoise, double costNoise) {
+            this.random = random;
+            this.rateNoise = rateNoise;
+            this.costNoise = costNoise;
+        }
+
+        Phase run(double rate, double cost, int samples) {
+            Phase phase = new Phase();
+            int lastDirection = 0;
+            double dt = TICK_MS / 1000D;
+            for (int s = 0; s < samples; s++) {
+                long processed = 0;
+                double busy = 0;
+                for (int t = 0; t < TICKS_PER_SAMPLE; t++) {
+                    double noise = 1 + rateNoise * (random.nextDouble() * 2 - 1);
+                    arrivalCarry += rate * dt * noise;
+                    long arrived = (long) arrivalCarry;
+                    arrivalCarry -= arrived;
+                    depth += arrived;
+
+                    now += dt;
+                    int consumers = scaling.consumers();
+                    for (int c = 0; c < consumers; c++) {
+                        // 空闲的消费者取下一条, 一个步长内可以处理多条
+                        busyUntil[c] = Math.max(busyUntil[c], now - dt);
+                        while (busyUntil[c] < now && depth > 0) {
+                            double one = cost * (1 + costNoise * (random.nextDouble() * 2 - 1));
+                            busyUntil[c] += one;
+                            busy += one;
+                            depth--;
+                            processed++;
+                        }
+                    }
+                }
+
+                int before = scaling.consumers();
+                scaling.sample(depth, processed, (long) (busy * 1e9), TICKS_PER_SAMPLE * TICK_MS * 1_000_000L);
+                int after = scaling.consumers();
+                if (after != before) {
+                    int direction = Integer.signum(after - before);
+                    if (lastDirection != 0 && direction != lastDirection) {
+                        phase.reversals++;
+                    }
+                    lastDirection = direction;
+                    if (direction > 0) {
+                        phase.ups++;
+                    }
+                    if (s >= CONVERGE_SAMPLES) {
+                        phase.changesAfterConverge++;
+                    }
+                }
+                if (s >= CONVERGE_SAMPLES) {
+                    phase.min = Math.min(phase.min, after);
+                    phase.max = Math.max(phase.max, after);
+                }
+            }
+            phase.endDepth = depth;
+            return phase;
+        }
+    }
+}
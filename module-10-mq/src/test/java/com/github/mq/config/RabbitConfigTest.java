@@ -0,0 +1,92 @@
+package com.github.mq.config;
+
+import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRoute;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.Declarables;
+import org.springframework.amqp.core.Exchange;
+import org.springframework.amqp.core.Queue;
+
+import java.util.*;
+
+public class RabbitConfigTest {
+
+    @Test
+    public void index() {
+        for (MqInfo mqInfo : MqInfo.values()) {
+            MqRoute route = mqInfo.route();
+            Assert.assertSame(mqInfo, route.mqInfo());
+            // 写到表中的 type 及各种大小写都能找回来
+            Assert.assertSame(mqInfo, MqInfo.from(route.type()));
+            Assert.assertSame(mqInfo, MqInfo.from(mqInfo.name()));
+            Assert.assertSame(mqInfo, MqInfo.from(mqInfo.name().toLowerCase()));
+            Assert.assertSame(mqInfo, MqInfo.from(swapCase(mqInfo.name())));
+
+            Assert.assertEquals(mqInfo.getExchangeName(), route.exchangeName());
+            Assert.assertEquals(mqInfo.getExchangeType(), route.exchange().getType());
+            Assert.assertEquals(mqInfo.isDelayExchange(), route.delayExchange());
+            Assert.assertEquals(mqInfo.getRoutingKey(), route.routingKey());
+            Assert.assertEquals(mqInfo.getQueueName(), route.queueName());
+            Assert.assertEquals(mqInfo.getMqArgs() == null ? Map.of() : mqInfo.getMqArgs(), route.queue().getArguments());
+            Assert.assertEquals(String.format("%s(%s -- %s --> %s)", mqInfo.getDesc(), mqInfo.getExchangeName(),
+                    mqInfo.getRoutingKey(), mqInfo.getQueueName()), mqInfo.showDesc());
+        }
+        Assert.assertNull(MqInfo.from(null));
+        Assert.assertNull(MqInfo.from(""));
+        Assert.assertNull(MqInfo.from("not-exists"));
+    }
+
+    @Test
+    public void declarables() {
+        Declarables declarables = RabbitConfig.declarables();
+        Map<String, MqRoute> queueRouteMap = new HashMap<>();
+        for (MqRoute route : MqRoute.all()) {
+            Assert.assertNull(queueRouteMap.put(route.queueName(), route));
+        }
+
+        // 声明的每个队列都能通过索引找回对应的 MqInfo 及路由, 且是同一个实例
+        List<Queue> queueList = declarables.getDeclarablesByType(Queue.class);
+        Assert.assertEquals(MqInfo.values().length, queueList.size());
+        for (Queue queue : queueList) {
+            MqRoute route = queueRouteMap.get(queue.getName());
+            Assert.assertNotNull(queue.getName(), route);
+            Assert.assertSame(route, MqInfo.from(route.type()).route());
+            Assert.assertSame(queue, route.queue());
+            Assert.assertTrue(queue.isDurable());
+        }
+
+        // 每个绑定都能对应到路由的 交换机 -- 路由键 --> 队列
+        List<Binding> bindingList = declarables.getDeclarablesByType(Binding.class);
+        Assert.assertEquals(MqInfo.values().length, bindingList.size());
+        for (Binding binding : bindingList) {
+            MqRoute route = queueRouteMap.get(binding.getDestination());
+            Assert.assertNotNull(binding.getDestination(), route);
+            Assert.assertSame(route, MqInfo.from(route.type()).route());
+            Assert.assertEquals(route.exchangeName(), binding.getExchange());
+            Assert.assertEquals(route.routingKey(), binding.getRoutingKey());
+            Assert.assertSame(binding, route.binding());
+        }
+
+        // 同名的交换机只声明一次
+        Set<String> exchangeNames = new LinkedHashSet<>();
+        for (MqInfo mqInfo : MqInfo.values()) {
+            exchangeNames.add(mqInfo.getExchangeName());
+        }
+        List<Exchange> exchangeList = declarables.getDeclarablesByType(Exchange.class);
+        Assert.assertEquals(exchangeNames.size(), exchangeList.size());
+        for (Exchange exchange : exchangeList) {
+            Assert.assertTrue(exchangeNames.contains(exchange.getName()));
+        }
+    }
+
+    private static String swapCase(String str) {
+        StringBuilder sbd = new StringBuilder();
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            sbd.append(i % 2 == 0 ? Character.toLowerCase(c) : Character.toUpperCase(c));
+        }
+        return sbd.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.mq.constant;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class MqRemarkTest {
+
+    @Test
+    public void ordering() {
+        String remark = null;
+        for (int i = 1; i <= 3; i++) {
+            remark = MqRemark.append(remark, "2026-01-01 00:00:0" + i, "msg-" + i);
+        }
+        MqRemark mqRemark = MqRemark.parse(remark);
+        Assert.assertEquals(3, mqRemark.getCount());
+        // 新的在前面
+        Assert.assertEquals(List.of(
+                List.of("2026-01-01 00:00:03", "msg-3"),
+                List.of("2026-01-01 00:00:02", "msg-2"),
+                List.of("2026-01-01 00:00:01", "msg-1")
+        ), mqRemark.getList());
+    }
+
+    @Test
+    public void ring() {
+        String remark = null;
+        int fullLength = 0;
+        for (int i = 1; i <= 1000; i++) {
+            remark = MqRemark.append(remark, "2026-01-01 00:00:00", ("重试(" + i + ")").repeat(100));
+            if (i == MqRemark.MAX_SIZE) {
+                fullLength = remark.length();
+            } else if (i > MqRemark.MAX_SIZE) {
+                // 超出条数之后大小不再增长(只有次数的位数会变)
+                Assert.assertTrue(remark.length() <= fullLength + 2);
+            }
+        }
+        MqRemark mqRemark = MqRemark.parse(remark);
+        // 次数一直累加, 记录只保留最近的
+        Assert.assertEquals(1000, mqRemark.getCount());
+        Assert.assertEquals(MqRemark.MAX_SIZE, mqRemark.getList().size());
+        for (int i = 0; i < MqRemark.MAX_SIZE; i++) {
+            Assert.assertTrue(mqRemark.getList().get(i).get(1).startsWith("重试(" + (1000 - i) + ")"));
+        }
+    }
+
+    @Test
+    public void truncate() {
+        Assert.assertEquals("", MqRemark.truncate(null));
+        String max = "a".repeat(MqRemark.MAX_LENGTH);
+        Assert.assertEquals(max, MqRemark.truncate(max));
+
+        String truncate = MqRemark.truncate(max + "b");
+        Assert.assertEquals(MqRemark.MAX_LENGTH, truncate.length());
+        Assert.assertTrue(truncate.endsWith("..."));
+
+        // 代理对不会被截成两半
+        String emoji = "a".repeat(MqRemark.MAX_LENGTH - 4) + "😀".repeat(10);
+        truncate = MqRemark.truncate(emoji);
+        Assert.assertTrue(truncate.length() <= MqRemark.MAX_LENGTH);
+        Assert.assertFalse(Character.isHighSurrogate(truncate.charAt(truncate.length() - 4)));
+
+        String remark = MqRemark.append(null, "2026-01-01 00:00:00", "x".repeat(10_000));
+        Assert.assertEquals(MqRemark.MAX_LENGTH, MqRemark.parse(remark).getList().get(0).get(1).length());
+    }
+
+    @Test
+    public void legacy() {
+        // 之前的纯文本备注作为第一条记录保留下来
+        String legacy = "<2026-01-01 00:00:00 : 消息(示例)发送成功><2026-01-01 : 发送异常>";
+        String remark = MqRemark.append(legacy, "2026-01-02 00:00:00", "ok");
+        MqRemark mqRemark = MqRemark.parse(remark);
+        Assert.assertEquals(2, mqRemark.getCount());
+        Assert.assertEquals(List.of(List.of("2026-01-02 00:00:00", "ok"), List.of("", legacy)), mqRemark.getList());
+
+        // 太长的同样截掉
+        mqRemark = MqRemark.parse("旧".repeat(1000));
+        Assert.assertEquals(1, mqRemark.getCount());
+        Assert.assertEquals(MqRemark.MAX_LENGTH, mqRemark.getList().get(0).get(1).length());
+
+        // 不是当前格式的 json 也当成纯文本, 空的没有记录
+        Assert.assertEquals(List.of(List.of("", "{}")), MqRemark.parse("{}").getList());
+        Assert.assertEquals(List.of(List.of("", "{ broken")), MqRemark.parse("{ broken").getList());
+        Assert.assertEquals(0, MqRemark.parse(null).getCount());
+        Assert.assertTrue(MqRemark.parse(" ").getList().isEmpty());
+
+        // mysql 的 json 函数写回的格式(有空格, key 的顺序不同)也能解析
+        mqRemark = MqRemark.parse("{\"list\": [[\"2026-01-01 00:00:00\", \"ok\"]], \"count\": 5}");
+        Assert.assertEquals(5, mqRemark.getCount());
+        Assert.assertEquals(1, mqRemark.getList().size());
+    }
+
+    @Test
+    public void sqlAppend() throws Exception {
+        // xml 中用 json 函数追加时, 路径要跟字段及上限一致
+        String xml;
+        try (InputStream in = MqRemarkTest.class.getClassLoader().getResourceAsStream("mapper/mq/MqSendMapper.xml")) {
+            Assert.assertNotNull(in);
+            xml = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        Assert.assertTrue(xml.contains("'$.count', '$.list'"));
+        Assert.assertTrue(xml.contains("'$.list[0]', json_array(#{remarkTime}, #{remark})), #{overflowPath})"));
+        Assert.assertFalse(xml.contains("concat("));
+        // 之前的纯文本备注在 sql 中也保留, 截取的长度跟 MqRemark#truncate 一致
+        Assert.assertTrue(xml.contains("json_array(json_array('', if(char_length(`remark`) &gt; " + MqRemark.MAX_LENGTH
+                + ", insert(left(`remark`, " + MqRemark.MAX_LENGTH + "), " + (MqRemark.MAX_LENGTH - 2) + ", 3, '...'), `remark`))"));
+        Assert.assertEquals("$.list[" + MqRemark.MAX_SIZE + "]", MqRemark.OVERFLOW_PATH);
+    }
+}
@@ -0,0 +1,274 @@
+package com.github.mq.handle;
+
+import com.github.mq.constant.MqInfo;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+public class MqDelaySchedulerTest {
+
+    private static final long TICK_MS = 100;
+    private static final long POLL_MS = 1000;
+    private static final long LOOKAHEAD_MS = 60_000;
+    private static final int CAPACITY = 10_000;
+    private static final int BATCH_SIZE = 1000;
+    /** 秒的整数倍, 跟 next_retry_time 一样只到秒 */
+    private static final long BASE = 1_700_000_000_000L;
+
+    @Test
+    public void wheel() {
+        long start = BASE + 123;
+        MqTimingWheel<long[]> wheel = new MqTimingWheel<>(TICK_MS, 8, start);
+        Random random = new Random(1);
+        int count = 200_000;
+        long[] clock = { start };
+        long[] maxLate = { 0 };
+        int[] fired = { 0 };
+        List<long[]> entries = new ArrayList<>();
+
+        // 一半先放进去, 一半在走的过程中放进去
+        for (int i = 0; i < count / 2; i++) {
+            long[] entry = { clock[0] + randomDelay(random), -1 };
+            entries.add(entry);
+            Assert.assertTrue(wheel.add(entry[0], entry));
+        }
+        int added = count / 2;
+        while (fired[0] < count) {
+            long step = random.nextInt(500);
+            clock[0] += step;
+            wheel.advance(clock[0], entry -> {
+                // 不会提前, 最多晚一格
+                Assert.assertEquals(-1, entry[1]);
+                Assert.assertTrue(clock[0] >= entry[0]);
+                Assert.assertTrue(clock[0] - entry[0] < TICK_MS + step);
+                maxLate[0] = Math.max(maxLate[0], clock[0] - entry[0]);
+                entry[1] = clock[0];
+                fired[0]++;
+            });
+            if (added < count && random.nextInt(4) == 0) {
+                long[] entry = { clock[0] + randomDelay(random), -1 };
+                entries.add(entry);
+                added++;
+                if (!wheel.add(entry[0], entry)) {
+                    Assert.assertTrue(entry[0] <= clock[0]);
+                    entry[1] = clock[0];
+                    fired[0]++;
+                }
+            }
+        }
+        Assert.assertEquals(0, wheel.size());
+        for (long[] entry : entries) {
+            Assert.assertTrue(entry[1] >= entry[0]);
+        }
+        System.out.printf("wheel: %s entries, max late %sms\n", count, maxLate[0]);
+    }
+
+    private static long randomDelay(Random random) {
+        return switch (random.nextInt(4)) {
+            case 0 -> random.nextInt(1000);
+            case 1 -> random.nextInt(60_000);
+            case 2 -> random.nextInt(3_600_000);
+            default -> random.nextLong(3 * 24 * 3_600_000L);
+        };
+    }
+
+    @Test
+    public void millionMessages() {
+        int count = 1_000_000;
+        Random random = new Random(2);
+        long[] dueById = new long[count + 1];
+        long maxDue = BASE;
+        for (int id = 1; id <= count; id++) {
+            // 1 分钟内、10 分钟内、2 小时内、1 天内 各占 10%、30%、30%、30%
+            int tier = random.nextInt(10);
+            long delayMs = tier == 0 ? 1000 + random.nextInt(59_000)
+                    : tier <= 3 ? 60_000 + random.nextInt(540_000)
+                    : tier <= 6 ? 600_000 + random.nextInt(6_600_000)
+                    : 7_200_000 + random.nextInt(79_200_000);
+            dueById[id] = BASE + (delayMs + 999) / 1000 * 1000;
+            maxDue = Math.max(maxDue, dueById[id]);
+        }
+        MemoryMqSendService store = new MemoryMqSendService(dueById);
+        RecordingSenderHandler handler = new RecordingSenderHandler(store);
+        MqDelayScheduler scheduler = scheduler(store, handler);
+
+        int maxLoaded = 0;
+        long start = System.currentTimeMillis();
+        for (long now = BASE; now <= maxDue + POLL_MS + TICK_MS; now += TICK_MS) {
+            handler.confirmAll();
+            handler.clock = now;
+            scheduler.tick(now);
+            maxLoaded = Math.max(maxLoaded, scheduler.loadedSize());
+        }
+        handler.confirmAll();
+        long end = System.currentTimeMillis();
+
+        Assert.assertEquals(count, handler.published);
+        Assert.assertEquals(0, handler.duplicates);
+        Assert.assertTrue(handler.minLate >= 0);
+        Assert.assertTrue(handler.maxLate <= TICK_MS);
+        // 内存中的消息数不超过上限, 且上限被用满过
+        Assert.assertEquals(CAPACITY, maxLoaded);
+        Assert.assertEquals(0, scheduler.loadedSize());
+        System.out.printf("message: %s, capacity: %s, max late: %sms, query: %s, time: %sms\n",
+                count, CAPACITY, handler.maxLate, store.statements, (end - start));
+    }
+
+    @Test
+    public void lateCommit() {
+        long[] dueById = { 0, BASE + 5_000, BASE + 10_000, BASE + 20_000, BASE + 30_000 };
+        MemoryMqSendService store = new MemoryMqSendService(dueById);
+        // 2 和 4 的事务还没提交, 时间轮读过这个位置之后才能查到
+        store.hidden.set(2);
+        store.hidden.set(4);
+        RecordingSenderHandler handler = new RecordingSenderHandler(store);
+        MqDelayScheduler scheduler = scheduler(store, handler);
+
+        Map<Integer, Long> commitTime = Map.of(2, BASE + 3_000, 4, BASE + 35_000);
+        for (long now = BASE; now <= BASE + 40_000; now += TICK_MS) {
+            for (Map.Entry<Integer, Long> entry : commitTime.entrySet()) {
+                if (entry.getValue() == now) {
+                    store.hidden.clear(entry.getKey());
+                }
+            }
+            handler.confirmAll();
+            handler.clock = now;
+            scheduler.tick(now);
+        }
+
+        Assert.assertEquals(4, handler.published);
+        Assert.assertEquals(0, handler.duplicates);
+        // 读进时间轮的准时发送, 在读过的位置之后才提交的最多晚一次读表的间隔
+        Assert.assertEquals(BASE + 5_000, handler.publishTime.get(1).longValue());
+        Assert.assertEquals(BASE + 20_000, handler.publishTime.get(3).longValue());
+        long late2 = handler.publishTime.get(2) - dueById[2];
+        Assert.assertTrue(late2 >= 0 && late2 <= POLL_MS);
+        long late4 = handler.publishTime.get(4) - commitTime.get(4);
+        Assert.assertTrue(late4 >= 0 && late4 <= POLL_MS);
+    }
+
+    private static MqDelayScheduler scheduler(MemoryMqSendService store, RecordingSenderHandler handler) {
+        MqDelayScheduler scheduler = new MqDelayScheduler(null, store, handler);
+        ReflectionTestUtils.setField(scheduler, "delaySchedulerEnabled", false);
+        ReflectionTestUtils.setField(scheduler, "delayTickMs", TICK_MS);
+        ReflectionTestUtils.setField(scheduler, "delayPollMs", POLL_MS);
+        ReflectionTestUtils.setField(scheduler, "delayLookaheadMs", LOOKAHEAD_MS);
+        ReflectionTestUtils.setField(scheduler, "delayCapacity", CAPACITY);
+        ReflectionTestUtils.setField(scheduler, "delayBatchSize", BATCH_SIZE);
+        scheduler.afterPropertiesSet();
+        scheduler.reset(BASE);
+        return scheduler;
+    }
+
+    /**
+     * 用数组模拟 t_mq_send 中延迟状态的记录, 按 (到期时间, id) 排序, 跟 (status, next_retry_time) 索引一样;
+     * 只有查询时才生成 MqSend, 1M 条记录只占十几 M
+     */
+    private static class MemoryMqSendService extends MqSendService {
+        private static final int ID_BITS = 21;
+        private static final long ID_MASK = (1L << ID_BITS) - 1;
+
+        /** (到期时间 - BASE) << ID_BITS | id */
+        private final long[] keys;
+        private final long[] dueById;
+        /** 状态已经不是延迟的 */
+        private final BitSet sent = new BitSet();
+        /** 事务还没提交的 */
+        private final BitSet hidden = new BitSet();
+        /** keys 中这之前的都已经发送 */
+        private int head;
+        private int statements;
+
+        MemoryMqSendService(long[] dueById) {
+            super(null);
+            this.dueById = dueById;
+            this.keys = new long[dueById.length - 1];
+            for (int id = 1; id < dueById.length; id++) {
+                keys[id - 1] = (dueById[id] - BASE) << ID_BITS | id;
+            }
+            Arrays.sort(keys);
+        }
+
+        @Override
+        public List<MqSend> queryScheduledMsg(Date afterTime, long afterId, Date until, int limit) {
+            statements++;
+            while (head < keys.length && sent.get((int) (keys[head] & ID_MASK))) {
+                head++;
+            }
+            int from = head;
+            if (afterTime != null) {
+                long afterKey = (afterTime.getTime() - BASE) << ID_BITS | Math.min(afterId, ID_MASK);
+                int index = Arrays.binarySearch(keys, afterKey);
+                from = Math.max(from, index >= 0 ? index + 1 : -index - 1);
+            }
+            long untilMs = until.getTime() - BASE;
+            List<MqSend> list = new ArrayList<>();
+            for (int i = from; i < keys.length && list.size() < limit; i++) {
+                long key = keys[i];
+                if ((key >>> ID_BITS) > untilMs) {
+                    break;
+                }
+                int id = (int) (key & ID_MASK);
+                if (sent.get(id) || hidden.get(id)) {
+                    continue;
+                }
+                MqSend row = new MqSend();
+                row.setId((long) id);
+                row.setMsgId(String.valueOf(id));
+                row.setType(MqInfo.EXAMPLE.route().type());
+                row.setMsg("{}");
+                row.setNextRetryTime(new Date(dueById[id]));
+                list.add(row);
+            }
+            return list;
+        }
+    }
+
+    /** 记录发送的时间, 发送时把状态改掉(跟 MqSenderHandler 一样), confirm 在下一格才回来 */
+    private static class RecordingSenderHandler extends MqSenderHandler {
+        private final MemoryMqSendService store;
+        private final List<CompletableFuture<String>> inFlight = new ArrayList<>();
+        private final Map<Integer, Long> publishTime = new HashMap<>();
+        private long clock;
+        private int published;
+        private int duplicates;
+        private long minLate = Long.MAX_VALUE;
+        private long maxLate;
+
+        RecordingSenderHandler(MemoryMqSendService store) {
+            super(null, null);
+            this.store = store;
+        }
+
+        @Override
+        public CompletableFuture<String> doProvideJustJsonAsync(String msgId, MqInfo mqInfo, String searchKey, String json) {
+            int id = Integer.parseInt(msgId);
+            if (store.sent.get(id)) {
+                duplicates++;
+            }
+            store.sent.set(id);
+            published++;
+            long late = clock - store.dueById[id];
+            minLate = Math.min(minLate, late);
+            maxLate = Math.max(maxLate, late);
+            if (store.dueById.length < 100) {
+                publishTime.put(id, clock);
+            }
+            CompletableFuture<String> future = new CompletableFuture<>();
+            inFlight.add(future);
+            return future;
+        }
+
+        private void confirmAll() {
+            for (CompletableFuture<String> future : inFlight) {
+                future.complete("ok");
+            }
+            inFlight.clear();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.github.mq.handle;
+
+import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRemark;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MqOutboxRelayTest {
+
+    private static final int COUNT = 10_000;
+    private static final int BATCH_SIZE = 200;
+    private static final long CONFIRM_TIMEOUT_MS = 600_000L;
+
+    @Test
+    public void relay() {
+        MemoryMqSendService sendService = new MemoryMqSendService();
+        for (int i = 0; i < COUNT; i++) {
+            sendService.row(i + 1, MqInfo.EXAMPLE.name().toLowerCase());
+        }
+        MemoryRabbitTemplate rabbitTemplate = new MemoryRabbitTemplate();
+        MqSenderHandler handler = handler(rabbitTemplate, sendService);
+
+        MqOutboxRelay relay = new MqOutboxRelay(handler, sendService);
+        ReflectionTestUtils.setField(relay, "outboxBatchSize", BATCH_SIZE);
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(relay.relay());
+        long end = System.currentTimeMillis();
+
+        Assert.assertEquals(COUNT, rabbitTemplate.sent.size());
+        // 发送之后还没有 confirm: 是初始状态, 下次重试时间在 confirm 超时之后, 重试不会马上查出来
+        for (MqSend row : sendService.rows) {
+            Assert.assertEquals(MqConst.INIT, row.getStatus().intValue());
+            Assert.assertTrue(row.getNextRetryTime().getTime() >= start + CONFIRM_TIMEOUT_MS);
+        }
+        // 每一批是 1 条 select + 1 条 update, 最后再加 1 条查不到数据的 select
+        int batch = (COUNT + BATCH_SIZE - 1) / BATCH_SIZE;
+        Assert.assertEquals(batch * 2 + 1, sendService.statements.get());
+        Assert.assertEquals(0, sendService.queries.get());
+        System.out.printf("message: %s, batch size: %s, sql: %s, time: %sms\n",
+                COUNT, BATCH_SIZE, sendService.statements.get(), (end - start));
+
+        // 收到 ack 才标记为成功
+        for (CorrelationData data : rabbitTemplate.sent) {
+            handler.confirm(data, true, null);
+        }
+        handler.flushConfirm();
+        Assert.assertEquals(COUNT, sendService.count(MqConst.SUCCESS));
+        Assert.assertEquals(0, handler.confirmPendingSize());
+    }
+
+    @Test
+    public void relayWithFail() {
+        MemoryMqSendService sendService = new MemoryMqSendService();
+        for (int i = 0; i < 10; i++) {
+            sendService.row(i + 1, i % 2 == 0 ? MqInfo.EXAMPLE.name().toLowerCase() : "not-exists");
+        }
+        MemoryRabbitTemplate rabbitTemplate = new MemoryRabbitTemplate();
+        MqSenderHandler handler = handler(rabbitTemplate, sendService);
+        MqOutboxRelay relay = new MqOutboxRelay(handler, sendService);
+        ReflectionTestUtils.setField(relay, "outboxBatchSize", BATCH_SIZE);
+        Assert.assertTrue(relay.relay());
+
+        for (MqSend row : sendService.rows) {
+            int status = row.getId() % 2 == 1 ? MqConst.INIT : MqConst.FAIL;
+            Assert.assertEquals(status, row.getStatus().intValue());
+        }
+        // 1 条 select + 改成初始 1 条 update + 失败 1 条 update
+        Assert.assertEquals(3, sendService.statements.get());
+        Assert.assertEquals(5, rabbitTemplate.sent.size());
+
+        // nack 的标记为失败并重发, 重发的 ack 之后改回成功; 其他的 ack 标记为成功
+        List<CorrelationData> sent = new ArrayList<>(rabbitTemplate.sent);
+        handler.confirm(sent.get(0), false, "nack");
+        handler.flushConfirm();
+        Assert.assertEquals(MqConst.FAIL, sendService.row(sent.get(0).getId()).getStatus().intValue());
+        Assert.assertEquals(6, rabbitTemplate.sent.size());
+        handler.confirm(rabbitTemplate.sent.peekLast(), true, null);
+        for (int i = 1; i < sent.size(); i++) {
+            handler.confirm(sent.get(i), true, null);
+        }
+        handler.flushConfirm();
+        Assert.assertEquals(5, sendService.count(MqConst.SUCCESS));
+        Assert.assertEquals(5, sendService.count(MqConst.FAIL));
+    }
+
+    @Test
+    public void sendException() {
+        // 发送异常的标记为失败, 不留在 confirm 表中
+        MemoryMqSendService sendService = new MemoryMqSendService();
+        sendService.row(1, MqInfo.EXAMPLE.name().toLowerCase());
+        MqSenderHandler handler = handler(new RabbitTemplate() {
+            @Override
+            public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+                throw new IllegalStateException("connection closed");
+            }
+        }, sendService);
+        MqOutboxRelay relay = new MqOutboxRelay(handler, sendService);
+        ReflectionTestUtils.setField(relay, "outboxBatchSize", BATCH_SIZE);
+        Assert.assertTrue(relay.relay());
+        Assert.assertEquals(MqConst.FAIL, sendService.rows.get(0).getStatus().intValue());
+        Assert.assertEquals(0, handler.confirmPendingSize());
+    }
+
+    private static MqSenderHandler handler(RabbitTemplate rabbitTemplate, MqSendService db) {
+        MqSenderHandler handler = new MqSenderHandler(rabbitTemplate, db);
+        ReflectionTestUtils.setField(handler, "providerRetryCount", 2);
+        ReflectionTestUtils.setField(handler, "confirmTableSize", COUNT * 2);
+        ReflectionTestUtils.setField(handler, "confirmTimeoutMs", CONFIRM_TIMEOUT_MS);
+        ReflectionTestUtils.setField(handler, "confirmFlushMs", 60_000L);
+        ReflectionTestUtils.setField(handler, "confirmFlushSize", 500);
+        handler.afterPropertiesSet();
+        // 停掉后台线程, 由测试调用 flushConfirm 写入
+        handler.destroy();
+        return handler;
+    }
+
+
+    /** 用内存模拟 mq_send 表, relay 的每次调用算一条 sql(statements), confirm 写入的不算 */
+    private static class MemoryMqSendService extends MqSendService {
+        private final List<MqSend> rows = new ArrayList<>();
+        private final AtomicInteger statements = new AtomicInteger();
+        private final AtomicInteger queries = new AtomicInteger();
+
+        MemoryMqSendService() {
+            super(null);
+        }
+
+        private void row(long id, String type) {
+            MqSend model = new MqSend();
+            model.setId(id);
+            model.setMsgId("msg-" + id);
+            model.setType(type);
+            model.setStatus(MqConst.OUTBOX);
+            model.setRetryCount(0);
+            model.setMsg("{\"id\":" + id + "}");
+            rows.add(model);
+        }
+
+        private MqSend row(String msgId) {
+            for (MqSend row : rows) {
+                if (row.getMsgId().equals(msgId)) {
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        private int count(int status) {
+            int count = 0;
+            for (MqSend row : rows) {
+                if (row.getStatus() == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public List<MqSend> queryOutboxMsg(int limit) {
+            statements.incrementAndGet();
+            List<MqSend> list = new ArrayList<>();
+            for (MqSend row : rows) {
+                if (row.getStatus() == MqConst.OUTBOX) {
+                    list.add(row);
+                    if (list.size() == limit) {
+                        break;
+                    }
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public MqSend queryByMsgId(String msgId) {
+            queries.incrementAndGet();
+            return row(msgId);
+        }
+
+        @Override
+        public void updateStatusByIds(List<Long> ids, int status, Date nextRetryTime, String remark) {
+            if (!ids.isEmpty()) {
+                statements.incrementAndGet();
+                Set<Long> idSet = new HashSet<>(ids);
+                for (MqSend row : rows) {
+                    if (idSet.contains(row.getId())) {
+                        row.setStatus(status);
+                        if (nextRetryTime != null) {
+                            row.setNextRetryTime(nextRetryTime);
+                        }
+                        row.setRemark(MqRemark.append(row.getRemark(), remark));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void updateStatusByMsgIds(Collection<String> msgIds, int status, String remark) {
+            for (String msgId : msgIds) {
+                MqSend row = row(msgId);
+                if (row != null) {
+                    row.setStatus(status);
+                    row.setRemark(MqRemark.append(row.getRemark(), remark));
+                }
+            }
+        }
+    }
+
+    /** 代替 mq 的内存实现, 记录发送时的 CorrelationData */
+    private static class MemoryRabbitTemplate extends RabbitTemplate {
+        private final Deque<CorrelationData> sent = new ConcurrentLinkedDeque<>();
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            sent.add(correlationData);
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.mq.handle;
+
+import com.github.global.service.RedissonService;
+import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRemark;
+import com.github.mq.metric.MqMetric;
+import com.github.mq.model.MqReceive;
+import com.github.mq.service.MqReceiveService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+public class MqReceiverBatchTest {
+
+    private static final int COUNT = 2_000;
+    private static final int BATCH_SIZE = 100;
+    /** 模拟每次 redis 或 db 往返的耗时 */
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Test
+    public void throughput() {
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            messages.add(message("msg-" + i));
+        }
+
+        MemoryRedissonService singleRedis = new MemoryRedissonService();
+        MemoryMqReceiveService singleDb = new MemoryMqReceiveService();
+        MqReceiverHandler single = handler(singleDb, singleRedis);
+        AtomicInteger singleConsumed = new AtomicInteger();
+        long start = System.nanoTime();
+        for (Message message : messages) {
+            single.doConsume(MqInfo.EXAMPLE, message, counter(singleConsumed));
+        }
+        long singleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        MemoryRedissonService batchRedis = new MemoryRedissonService();
+        MemoryMqReceiveService batchDb = new MemoryMqReceiveService();
+        MqReceiverHandler batch = handler(batchDb, batchRedis);
+        AtomicInteger batchConsumed = new AtomicInteger();
+        start = System.nanoTime();
+        for (int i = 0; i < COUNT; i += BATCH_SIZE) {
+            batch.doConsumeBatch(MqInfo.EXAMPLE, messages.subList(i, Math.min(i + BATCH_SIZE, COUNT)), counter(batchConsumed));
+        }
+        long batchMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        Assert.assertEquals(COUNT, singleConsumed.get());
+        Assert.assertEquals(COUNT, batchConsumed.get());
+        Assert.assertEquals(COUNT, batchDb.rows.size());
+        for (MqReceive row : batchDb.rows.values()) {
+            Assert.assertEquals(MqConst.SUCCESS, row.getStatus().intValue());
+        }
+
+        // 单条: 每条消息 set nx + 比较后删除 + select + insert
+        Assert.assertEquals(COUNT * 2, singleRedis.roundTrips.get());
+        Assert.assertEquals(COUNT * 2, singleDb.statements.get());
+        // 批量: 每批 set nx(pipeline) + del, select + insert ... on duplicate key update
+        int batchCount = COUNT / BATCH_SIZE;
+        Assert.assertEquals(batchCount * 2, batchRedis.roundTrips.get());
+        Assert.assertEquals(batchCount * 2, batchDb.statements.get());
+        Assert.assertTrue(batchRedis.keys.isEmpty());
+
+        System.out.printf("message: %s, single: %sms(redis %s, sql %s), batch(%s): %sms(redis %s, sql %s)\n",
+                COUNT, singleMs, singleRedis.roundTrips.get(), singleDb.statements.get(),
+                BATCH_SIZE, batchMs, batchRedis.roundTrips.get(), batchDb.statements.get());
+        Assert.assertTrue(batchMs < singleMs);
+    }
+
+    @Test
+    public void dedupe() {
+        MemoryRedissonService redis = new MemoryRedissonService();
+        MemoryMqReceiveService db = new MemoryMqReceiveService();
+        MqReceiverHandler handler = handler(db, redis);
+
+        Map<String, Integer> consumed = new HashMap<>();
+        Function<String, String> fun = json -> {
+            consumed.merge(json, 1, Integer::sum);
+            if (json.contains("fail")) {
+                throw new RuntimeException("business error");
+            }
+            return "key-" + json.length();
+        };
+
+        // 同一批中重复的只处理一次, 异常的记为失败且不抛出
+        handler.doConsumeBatch(MqInfo.EXAMPLE, List.of(message("a"), message("a"), message("b"), message("fail")), fun);
+        Assert.assertEquals(Integer.valueOf(1), consumed.get(body("a")));
+        Assert.assertEquals(MqConst.SUCCESS, db.rows.get("a").getStatus().intValue());
+        Assert.assertEquals(MqConst.FAIL, db.rows.get("fail").getStatus().intValue());
+        Assert.assertEquals(0, db.rows.get("fail").getRetryCount().intValue());
+
+        // 重复投递: 成功过的跳过, 失败的再处理一次且重试次数 +1
+        handler.doConsumeBatch(MqInfo.EXAMPLE, List.of(message("a"), message("b"), message("fail")), fun);
+        Assert.assertEquals(Integer.valueOf(1), consumed.get(body("a")));
+        Assert.assertEquals(Integer.valueOf(1), consumed.get(body("b")));
+        Assert.assertEquals(Integer.valueOf(2), consumed.get(body("fail")));
+        Assert.assertEquals(1, db.rows.get("fail").getRetryCount().intValue());
+        // 两次的处理记录都在备注中, 新的在前面
+        MqRemark remark = MqRemark.parse(db.rows.get("fail").getRemark());
+        Assert.assertEquals(2, remark.getCount());
+        Assert.assertEquals(2, remark.getList().size());
+        Assert.assertTrue(remark.getList().get(0).get(1).contains("已重试(0)"));
+
+        // 其他节点正在处理的跳过
+        redis.keys.add(MqConst.MSG_LOCK_PREFIX + "c");
+        handler.doConsumeBatch(MqInfo.EXAMPLE, List.of(message("c"), message("d")), fun);
+        Assert.assertNull(consumed.get(body("c")));
+        Assert.assertEquals(Integer.valueOf(1), consumed.get(body("d")));
+        Assert.assertTrue(redis.keys.contains(MqConst.MSG_LOCK_PREFIX + "c"));
+        Assert.assertFalse(redis.keys.contains(MqConst.MSG_LOCK_PREFIX + "d"));
+    }
+
+    @Test
+    public void sameLockKey() {
+        MemoryRedissonService redis = new MemoryRedissonService();
+        MemoryMqReceiveService db = new MemoryMqReceiveService();
+        MqReceiverHandler handler = handler(db, redis);
+        AtomicInteger consumed = new AtomicInteger();
+
+        // 单条消费跟批量消费占用同一个键: 其他地方正在处理的, 两种方式都跳过
+        redis.keys.add(MqConst.MSG_LOCK_PREFIX + "e");
+        handler.doConsume(MqInfo.EXAMPLE, message("e"), counter(consumed));
+        handler.doConsumeBatch(MqInfo.EXAMPLE, List.of(message("e")), counter(consumed));
+        Assert.assertEquals(0, consumed.get());
+
+        redis.keys.clear();
+        handler.doConsume(MqInfo.EXAMPLE, message("e"), counter(consumed));
+        Assert.assertEquals(1, consumed.get());
+        Assert.assertTrue(redis.keys.isEmpty());
+    }
+
+    @Test
+    public void lagFromBody() {
+        MqReceiverHandler handler = handler(new MemoryMqReceiveService(), new MemoryRedissonService());
+        List<Long> lagList = new ArrayList<>();
+        handler.setMqMetrics((mqInfo, metric, nanos) -> {
+            if (metric == MqMetric.LAG) {
+                lagList.add(TimeUnit.NANOSECONDS.toMillis(nanos));
+            }
+        });
+
+        // 没有发送时间的消息头时从消息体中读: 毫秒数 和 yyyy-MM-dd HH:mm:ss(到秒) 都可以
+        long sendTime = System.currentTimeMillis() - 5000;
+        String formatted = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                .format(LocalDateTime.ofInstant(Instant.ofEpochMilli(sendTime), ZoneId.systemDefault()));
+        AtomicInteger consumed = new AtomicInteger();
+        handler.doConsume(MqInfo.EXAMPLE, mqDataMessage("lag-1", Long.toString(sendTime)), counter(consumed));
+        handler.doConsume(MqInfo.EXAMPLE, mqDataMessage("lag-2", "\"" + formatted + "\""), counter(consumed));
+        Assert.assertEquals(2, consumed.get());
+        Assert.assertEquals(2, lagList.size());
+        for (long lagMs : lagList) {
+            Assert.assertTrue(String.valueOf(lagMs), lagMs >= 5000 && lagMs < 7000);
+        }
+    }
+
+    private static MqReceiverHandler handler(MqReceiveService mqReceiveService, RedissonService redissonService) {
+        MqReceiverHandler handler = new MqReceiverHandler(mqReceiveService, redissonService);
+        ReflectionTestUtils.setField(handler, "consumerRetryCount", 3);
+        ReflectionTestUtils.setField(handler, "msgIdKey", "msgId");
+        ReflectionTestUtils.setField(handler, "msgLockSeconds", 60);
+        return handler;
+    }
+
+    private static String body(String msgId) {
+        return "{\"msgId\":\"" + msgId + "\"}";
+    }
+
+    private static Message message(String msgId) {
+        return MessageBuilder.withBody(body(msgId).getBytes(StandardCharsets.UTF_8)).setMessageId(msgId).build();
+    }
+
+    /** 消息体是 MqData, sendTime 是 json 中的值 */
+    private static Message mqDataMessage(String msgId, String sendTime) {
+        String json = "{\"sendTime\":" + sendTime + ",\"json\":\"" + body(msgId).replace("\"", "\\\"") + "\"}";
+        return MessageBuilder.withBody(json.getBytes(StandardCharsets.UTF_8)).setMessageId(msgId).build();
+    }
+
+    private static Function<String, String> counter(AtomicInteger count) {
+        return json -> {
+            count.incrementAndGet();
+            return Integer.toString(json.length());
+        };
+    }
+
+    private static void roundTrip() {
+        LockSupport.parkNanos(ROUND_TRIP_NANOS);
+    }
+
+    private static class MemoryRedissonService extends RedissonService {
+        private final Set<String> keys = ConcurrentHashMap.newKeySet();
+        private final AtomicLong roundTrips = new AtomicLong();
+
+        MemoryRedissonService() {
+            super(null);
+        }
+
+        @Override
+        public <T> Set<String> setIfAbsent(Collection<String> keyList, T value, long time, TimeUnit unit) {
+            roundTrips.incrementAndGet();
+            roundTrip();
+            Set<String> returnSet = new LinkedHashSet<>();
+            for (String key : keyList) {
+                if (keys.add(key)) {
+                    returnSet.add(key);
+                }
+            }
+            return returnSet;
+        }
+        @Override
+        public boolean deleteIfValue(String key, String value) {
+            roundTrips.incrementAndGet();
+            roundTrip();
+            return keys.remove(key);
+        }
+        @Override
+        public void delete(Collection<String> keyList) {
+            if (!keyList.isEmpty()) {
+                roundTrips.incrementAndGet();
+                roundTrip();
+                keys.removeAll(keyList);
+            }
+        }
+    }
+
+    private static class MemoryMqReceiveService extends MqReceiveService {
+        private final Map<String, MqReceive> rows = new ConcurrentHashMap<>();
+        private final AtomicInteger statements = new AtomicInteger();
+        private final AtomicLong id = new AtomicLong();
+
+        MemoryMqReceiveService() {
+            super(null);
+        }
+
+        @Override
+        public MqReceive queryByMsg(String msgId) {
+            statements.incrementAndGet();
+            roundTrip();
+            MqReceive row = rows.get(msgId);
+            if (row == null) {
+                return null;
+            }
+            MqReceive returnRow = new MqReceive();
+            returnRow.setId(row.getId());
+            returnRow.setRetryCount(row.getRetryCount());
+            returnRow.setRemark(row.getRemark());
+            return returnRow;
+        }
+        @Override
+        public void add(MqReceive data) {
+            statements.incrementAndGet();
+            roundTrip();
+            data.setId(id.incrementAndGet());
+            rows.put(data.getMsgId(), data);
+        }
+        @Override
+        public void updateById(MqReceive data) {
+            statements.incrementAndGet();
+            roundTrip();
+            for (MqReceive row : rows.values()) {
+                if (row.getId().equals(data.getId())) {
+                    row.setStatus(data.getStatus());
+                    row.setRetryCount(data.getRetryCount());
+                    row.setRemark(data.getRemark());
+                }
+            }
+        }
+        @Override
+        public List<MqReceive> queryByMsgIds(Collection<String> msgIds) {
+            if (msgIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+            statements.incrementAndGet();
+            roundTrip();
+            List<MqReceive> list = new ArrayList<>();
+            for (String msgId : msgIds) {
+                MqReceive row = rows.get(msgId);
+                if (row != null) {
+                    MqReceive returnRow = new MqReceive();
+                    returnRow.setId(row.getId());
+                    returnRow.setMsgId(row.getMsgId());
+                    returnRow.setStatus(row.getStatus());
+                    returnRow.setRetryCount(row.getRetryCount());
+                    returnRow.setRemark(row.getRemark());
+                    list.add(returnRow);
+                }
+            }
+            return list;
+        }
+        /** 跟 MqReceiveMapper.xml 中的 insert ... on duplicate key update 逻辑一致 */
+        @Override
+        public void saveBatch(List<MqReceive> list) {
+            if (list.isEmpty()) {
+                return;
+            }
+            statements.incrementAndGet();
+            roundTrip();
+            for (MqReceive data : list) {
+                MqReceive row = rows.get(data.getMsgId());
+                if (row == null) {
+                    data.setId(id.incrementAndGet());
+                    rows.put(data.getMsgId(), data);
+                } else {
+                    row.setStatus(data.getStatus());
+                    if (!data.getSearchKey().isEmpty()) {
+                        row.setSearchKey(data.getSearchKey());
+                    }
+                    row.setRetryCount(row.getRetryCount() + 1);
+                    row.setRemark(data.getRemark());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.github.mq.handle;
+
+import com.github.global.service.RedissonService;
+import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MqRetryHandlerTest {
+
+    private static final int COUNT = 10_000;
+    private static final int RETRY_LIMIT = 200;
+    private static final long BACKOFF_MS = 60_000;
+
+    @Test
+    public void drainBacklog() {
+        MemoryRedissonService redis = new MemoryRedissonService();
+        MemoryMqSendService db = backlog();
+        MqRetryHandler handler = handler(redis, db, 8, 8);
+        Assert.assertTrue(handler.handlerSend());
+
+        // 每条都重试了一次, 其中 1/10 失败了, 失败的重试次数 +1 且要等退避时间之后才会再重试
+        Assert.assertEquals(COUNT, db.attempts.get());
+        Assert.assertEquals(COUNT / 10, db.count(MqConst.FAIL));
+        long now = System.currentTimeMillis();
+        for (MqSend row : db.rows.values()) {
+            if (row.getStatus() == MqConst.FAIL) {
+                Assert.assertEquals(1, row.getRetryCount().intValue());
+                Assert.assertTrue(row.getNextRetryTime().getTime() > now + BACKOFF_MS / 2);
+            }
+        }
+        Assert.assertTrue(redis.keys.isEmpty());
+
+        // 还没到退避时间, 不会重试
+        handler.handlerSend();
+        Assert.assertEquals(COUNT, db.attempts.get());
+
+        // 退避时间到了之后再重试就都成功了
+        Date past = new Date(System.currentTimeMillis() - 1000);
+        for (MqSend row : db.rows.values()) {
+            row.setNextRetryTime(past);
+        }
+        handler.handlerSend();
+        Assert.assertEquals(COUNT + COUNT / 10, db.attempts.get());
+        Assert.assertEquals(COUNT, db.count(MqConst.SUCCESS));
+        Assert.assertTrue(redis.keys.isEmpty());
+        handler.destroy();
+    }
+
+    @Test
+    public void leaseHeldByOtherNode() {
+        MemoryRedissonService redis = new MemoryRedissonService();
+        MemoryMqSendService db = backlog();
+        MqRetryHandler handler = handler(redis, db, 8, 4);
+
+        // 分片 3 在其他实例上处理, 当前实例跳过
+        redis.keys.put("mq:retry:send:3", "other");
+        handler.handlerSend();
+        for (MqSend row : db.rows.values()) {
+            if (row.getId() % 8 == 3) {
+                Assert.assertEquals(MqConst.FAIL, row.getStatus().intValue());
+                Assert.assertEquals(0, row.getRetryCount().intValue());
+            } else if (row.getId() % 10 != 0) {
+                Assert.assertEquals(MqConst.SUCCESS, row.getStatus().intValue());
+            }
+        }
+        Assert.assertEquals(Map.of("mq:retry:send:3", "other"), redis.keys);
+        handler.destroy();
+    }
+
+    @Test
+    public void leaseLost() {
+        MemoryRedissonService redis = new MemoryRedissonService();
+        MemoryMqSendService db = backlog();
+        MqRetryHandler handler = handler(redis, db, 1, 4);
+
+        // 处理完第一批后租约已经过期并被其他实例获取: 续期失败, 不再处理, 也不删除其他实例的租约
+        redis.takeOverOnRenew = true;
+        handler.handlerSend();
+        Assert.assertEquals(RETRY_LIMIT, db.attempts.get());
+        Assert.assertEquals(Map.of("mq:retry:send:0", "other"), redis.keys);
+        handler.destroy();
+    }
+
+    @Test
+    public void backoff() {
+        MqRetryHandler handler = handler(new MemoryRedissonService(), new MemoryMqSendService(), 1, 1);
+        ReflectionTestUtils.setField(handler, "retryBackoffMs", 1000L);
+        ReflectionTestUtils.setField(handler, "retryMaxBackoffMs", 60_000L);
+        Assert.assertEquals(1000, handler.backoffMs(0));
+        Assert.assertEquals(2000, handler.backoffMs(1));
+        Assert.assertEquals(32_000, handler.backoffMs(5));
+        Assert.assertEquals(60_000, handler.backoffMs(6));
+        Assert.assertEquals(60_000, handler.backoffMs(100));
+    }
+
+    /** id 从 1 开始, 都是失败且重试次数是 0 的消息, 其中 id 是 10 的倍数的第一次重试会失败 */
+    private static MemoryMqSendService backlog() {
+        MemoryMqSendService db = new MemoryMqSendService();
+        Date past = new Date(System.currentTimeMillis() - 1000);
+        for (int i = 1; i <= COUNT; i++) {
+            MqSend row = new MqSend();
+            row.setId((long) i);
+            row.setMsgId("msg-" + i);
+            row.setType(MqInfo.EXAMPLE.name().toLowerCase());
+            row.setStatus(MqConst.FAIL);
+            row.setRetryCount(0);
+            row.setMsg("{\"id\":" + i + "}");
+            row.setCreateTime(past);
+            row.setNextRetryTime(past);
+            db.rows.put(row.getId(), row);
+            if (i % 10 == 0) {
+                db.failOnce.add(row.getMsgId());
+            }
+        }
+        return db;
+    }
+
+    private static MqRetryHandler handler(RedissonService redis, MemoryMqSendService db, int shards, int parallelism) {
+        MqRetryHandler handler = new MqRetryHandler(redis, db, null, new MemoryMqSenderHandler(db));
+        ReflectionTestUtils.setField(handler, "mqRetryLimit", RETRY_LIMIT);
+        ReflectionTestUtils.setField(handler, "maxRetryCount", 5);
+        ReflectionTestUtils.setField(handler, "retryShards", shards);
+        ReflectionTestUtils.setField(handler, "retryParallelism", parallelism);
+        ReflectionTestUtils.setField(handler, "retryLeaseSeconds", 60);
+        ReflectionTestUtils.setField(handler, "retryBackoffMs", BACKOFF_MS);
+        ReflectionTestUtils.setField(handler, "retryMaxBackoffMs", 60_000L);
+        ReflectionTestUtils.setField(handler, "msgLockSeconds", 60);
+        handler.afterPropertiesSet();
+        return handler;
+    }
+
+    private static class MemoryRedissonService extends RedissonService {
+        private final Map<String, Object> keys = new ConcurrentHashMap<>();
+        /** 续期时模拟租约已经过期并被其他实例获取 */
+        private volatile boolean takeOverOnRenew;
+
+        MemoryRedissonService() {
+            super(null);
+        }
+
+        @Override
+        public <T> Set<String> setIfAbsent(Collection<String> keyList, T value, long time, TimeUnit unit) {
+            Set<String> returnSet = new LinkedHashSet<>();
+            for (String key : keyList) {
+                if (keys.putIfAbsent(key, value) == null) {
+                    returnSet.add(key);
+                }
+            }
+            return returnSet;
+        }
+        @Override
+        public boolean deleteIfValue(String key, String value) {
+            return keys.remove(key, value);
+        }
+        @Override
+        public boolean expireIfValue(String key, String value, long time, TimeUnit unit) {
+            if (takeOverOnRenew) {
+                keys.put(key, "other");
+            }
+            return value.equals(keys.get(key));
+        }
+    }
+
+    private static class MemoryMqSendService extends MqSendService {
+        private final Map<Long, MqSend> rows = new ConcurrentHashMap<>();
+        private final Set<String> failOnce = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        MemoryMqSendService() {
+            super(null);
+        }
+
+        private int count(int status) {
+            int count = 0;
+            for (MqSend row : rows.values()) {
+                if (row.getStatus() == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private MqSend byMsgId(String msgId) {
+            return rows.get(Long.parseLong(msgId.substring("msg-".length())));
+        }
+
+        /** 跟 sql 的条件一致 */
+        @Override
+        public List<MqSend> queryRetryMsg(int shard, int shards, int maxRetryCount, int limit) {
+            long now = System.currentTimeMillis();
+            List<MqSend> list = new ArrayList<>();
+            for (MqSend row : rows.values()) {
+                boolean retry = (row.getStatus() == MqConst.INIT && row.getCreateTime().getTime() < now - 120_000)
+                        || (row.getStatus() == MqConst.FAIL && row.getRetryCount() < maxRetryCount);
+                if (row.getId() % shards == shard && retry && row.getNextRetryTime().getTime() <= now) {
+                    list.add(row);
+                }
+            }
+            list.sort(Comparator.comparing(MqSend::getNextRetryTime));
+            List<MqSend> returnList = new ArrayList<>();
+            for (MqSend row : list.subList(0, Math.min(limit, list.size()))) {
+                MqSend returnRow = new MqSend();
+                returnRow.setId(row.getId());
+                returnRow.setMsgId(row.getMsgId());
+                returnRow.setType(row.getType());
+                returnRow.setRetryCount(row.getRetryCount());
+                returnRow.setMsg(row.getMsg());
+                returnList.add(returnRow);
+            }
+            return returnList;
+        }
+        @Override
+        public void updateNextRetryTime(List<Long> ids, Date nextRetryTime) {
+            for (Long id : ids) {
+                rows.get(id).setNextRetryTime(nextRetryTime);
+            }
+        }
+        @Override
+        public void updateById(MqSend data) {
+            MqSend row = rows.get(data.getId());
+            row.setStatus(data.getStatus());
+            if (data.getRetryCount() != null) {
+                row.setRetryCount(data.getRetryCount());
+            }
+        }
+    }
+
+    /** 跟 MqSenderHandler#provide 一样: 发送成功则状态改为成功, 失败则改为失败, 重试次数 +1 */
+    private static class MemoryMqSenderHandler extends MqSenderHandler {
+        private final MemoryMqSendService db;
+
+        MemoryMqSenderHandler(MemoryMqSendService db) {
+            super(null, db);
+            this.db = db;
+        }
+
+        @Override
+        public void doProvideJustJson(String msgId, MqInfo mqInfo, String searchKey, String json) {
+            db.attempts.incrementAndGet();
+            MqSend row = db.byMsgId(msgId);
+            boolean fail = db.failOnce.remove(msgId);
+            MqSend update = new MqSend();
+            update.setId(row.getId());
+            update.setStatus(fail ? MqConst.FAIL : MqConst.SUCCESS);
+            update.setRetryCount(row.getRetryCount() + 1);
+            db.updateById(update);
+            if (fail) {
+                throw new RuntimeException("send fail");
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.github.mq.handle;
+
+import com.github.common.util.LogUtil;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+public class MqSenderAsyncTest {
+
+    private static final int THREADS = 100;
+    private static final int PER_THREAD = 100;
+    /** 模拟每次 db 或 mq 往返的耗时 */
+    private static final long ROUND_TRIP_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    @Test
+    public void callerLatency() throws Exception {
+        StubRabbitTemplate syncBroker = new StubRabbitTemplate(true);
+        MqSenderHandler sync = handler(syncBroker, new MemoryMqSendService(), 10_000, 5_000);
+        long[] syncLatency = concurrentSend(threadIndex -> sync.doProvide(MqInfo.EXAMPLE, "key", "{}"));
+        sync.destroy();
+        syncBroker.close();
+
+        StubRabbitTemplate broker = new StubRabbitTemplate(true);
+        MemoryMqSendService db = new MemoryMqSendService();
+        MqSenderHandler handler = handler(broker, db, 10_000, 5_000);
+        Queue<CompletableFuture<String>> futures = new ConcurrentLinkedQueue<>();
+        long[] asyncLatency = concurrentSend(threadIndex -> futures.add(handler.doProvideAsync(MqInfo.EXAMPLE, "key", "{}")));
+
+        // 每个 future 都在 confirm 之后完成, 值是 msgId
+        Set<String> msgIds = new HashSet<>();
+        for (CompletableFuture<String> future : futures) {
+            msgIds.add(future.get(30, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(THREADS * PER_THREAD, msgIds.size());
+        Assert.assertEquals(THREADS * PER_THREAD, broker.confirmed.get());
+        Assert.assertEquals(THREADS * PER_THREAD, db.added.get());
+        handler.destroy();
+        broker.close();
+
+        long syncP99 = percentile(syncLatency, 99);
+        long asyncP99 = percentile(asyncLatency, 99);
+        System.out.printf("%s concurrent send, caller p50/p99: sync %s/%sus, async %s/%sus\n", THREADS * PER_THREAD,
+                percentile(syncLatency, 50), syncP99, percentile(asyncLatency, 50), asyncP99);
+        Assert.assertTrue(asyncP99 < syncP99);
+    }
+
+    @Test
+    public void backpressure() throws Exception {
+        StubRabbitTemplate broker = new StubRabbitTemplate(false);
+        MqSenderHandler handler = handler(broker, new MemoryMqSendService(), 50, 10_000);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            futures.add(handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}"));
+        }
+
+        // 不 confirm 就只会发出 50 条, 之后每 confirm 一条才能再发一条
+        while (broker.pending.size() < 50) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        Assert.assertEquals(50, broker.pending.size());
+        Assert.assertEquals(0, futures.stream().filter(CompletableFuture::isDone).count());
+        while (futures.stream().filter(CompletableFuture::isDone).count() < futures.size()) {
+            Thread.sleep(5);
+            Assert.assertTrue(broker.inFlight.get() <= 50);
+            broker.confirmAll();
+        }
+        for (CompletableFuture<String> future : futures) {
+            Assert.assertNotNull(future.get());
+        }
+        Assert.assertEquals(50, broker.maxInFlight.get());
+        handler.destroy();
+        broker.close();
+    }
+
+    @Test
+    public void acquireTimeoutAndNack() throws Exception {
+        StubRabbitTemplate broker = new StubRabbitTemplate(false);
+        MqSenderHandler handler = handler(broker, new MemoryMqSendService(), 1, 50);
+        CompletableFuture<String> first = handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+        // 名额被第一条占着, 第二条等待超时
+        CompletableFuture<String> second = handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+        try {
+            second.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("超过(1)条"));
+        }
+        Assert.assertFalse(first.isDone());
+
+        // nack 之后在后台重发, 重发达到上限(2)才以异常完成
+        for (int i = 0; i <= 2; i++) {
+            while (broker.pending.isEmpty()) {
+                Thread.sleep(1);
+            }
+            Assert.assertFalse(first.isDone());
+            handler.confirm(broker.pending.poll(), false, "nack");
+        }
+        try {
+            first.get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("达到上限(2)"));
+        }
+        // 名额已经还回来了
+        CompletableFuture<String> third = handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+        while (broker.pending.isEmpty()) {
+            Thread.sleep(1);
+        }
+        broker.confirmAll();
+        Assert.assertNotNull(third.get(5, TimeUnit.SECONDS));
+        handler.destroy();
+        broker.close();
+    }
+
+    @Test
+    public void logContext() throws Exception {
+        StubRabbitTemplate broker = new StubRabbitTemplate(true);
+        MemoryMqSendService db = new MemoryMqSendService();
+        MqSenderHandler handler = handler(broker, db, 100, 1_000);
+        LogUtil.putTraceId("trace-async");
+        CompletableFuture<String> future;
+        try {
+            future = handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+        } finally {
+            LogUtil.unbind();
+        }
+        String msgId = future.get(5, TimeUnit.SECONDS);
+        // 写表是在发送线程中, 日志上下文跟调用方一致
+        Assert.assertEquals("trace-async", db.traceIds.get(msgId));
+        handler.destroy();
+        broker.close();
+    }
+
+    @Test
+    public void callerRunsKeepContext() throws Exception {
+        StubRabbitTemplate broker = new StubRabbitTemplate(false);
+        MemoryMqSendService db = new MemoryMqSendService();
+        // 1 个发送线程, 队列长度 1
+        MqSenderHandler handler = handler(broker, db, 1, 200, 1, 1);
+        LogUtil.putTraceId("trace-caller");
+        try {
+            CompletableFuture<String> first = handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+            while (broker.pending.isEmpty()) {
+                Thread.sleep(1);
+            }
+            // 名额被第一条占着, 第二条在发送线程中等待, 第三条在队列中, 第四条在调用方的线程中执行
+            handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+            Thread.sleep(20);
+            handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+            CompletableFuture<String> callerRuns = handler.doProvideJustJsonAsync(MqInfo.EXAMPLE, "key", "{}");
+            Assert.assertTrue(callerRuns.isCompletedExceptionally());
+            // 在调用方的线程中执行完, 调用方的日志上下文还在
+            Assert.assertEquals("trace-caller", LogUtil.getTraceId());
+
+            broker.confirmAll();
+            Assert.assertEquals("trace-caller", db.traceIds.get(first.get(5, TimeUnit.SECONDS)));
+        } finally {
+            LogUtil.unbind();
+        }
+        handler.destroy();
+        broker.close();
+    }
+
+    private static MqSenderHandler handler(StubRabbitTemplate broker, MqSendService db, int maxInFlight, long acquireTimeoutMs) {
+        return handler(broker, db, maxInFlight, acquireTimeoutMs, 8, 10_000);
+    }
+
+    private static MqSenderHandler handler(StubRabbitTemplate broker, MqSendService db, int maxInFlight, long acquireTimeoutMs,
+                                           int threads, int queueSize) {
+        MqSenderHandler handler = new MqSenderHandler(broker, db);
+        ReflectionTestUtils.setField(handler, "providerRetryCount", 2);
+        ReflectionTestUtils.setField(handler, "confirmTableSize", 100_000);
+        ReflectionTestUtils.setField(handler, "confirmTimeoutMs", 600_000L);
+        ReflectionTestUtils.setField(handler, "confirmFlushMs", 50L);
+        ReflectionTestUtils.setField(handler, "confirmFlushSize", 500);
+        ReflectionTestUtils.setField(handler, "publishThreads", threads);
+        ReflectionTestUtils.setField(handler, "publishQueueSize", queueSize);
+        ReflectionTestUtils.setField(handler, "publishMaxInFlight", maxInFlight);
+        ReflectionTestUtils.setField(handler, "publishAcquireTimeoutMs", acquireTimeoutMs);
+        handler.afterPropertiesSet();
+        broker.handler = handler;
+        return handler;
+    }
+
+    /** THREADS 个线程同时开始, 每个发送 PER_THREAD 次, 返回每次调用的耗时(微秒) */
+    private static long[] concurrentSend(Consumer send) throws Exception {
+        long[] latency = new long[THREADS * PER_THREAD];
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> list = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int threadIndex = t;
+            list.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < PER_THREAD; i++) {
+                    long begin = System.nanoTime();
+                    send.accept(threadIndex);
+                    latency[threadIndex * PER_THREAD + i] = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - begin);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : list) {
+            future.get();
+        }
+        pool.shutdown();
+        return latency;
+    }
+
+    private static long percentile(long[] values, int percent) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * percent / 100.0) - 1)];
+    }
+
+    private static void roundTrip() {
+        LockSupport.parkNanos(ROUND_TRIP_NANOS);
+    }
+
+    private interface Consumer {
+        void accept(int threadIndex);
+    }
+
+    /** 用内存模拟 mq_send 表, 记录写入时日志上下文中的 traceId */
+    private static class MemoryMqSendService extends MqSendService {
+        private final Map<String, String> traceIds = new ConcurrentHashMap<>();
+        private final AtomicInteger added = new AtomicInteger();
+
+        MemoryMqSendService() {
+            super(null);
+        }
+
+        @Override
+        public MqSend queryByMsgId(String msgId) {
+            roundTrip();
+            return null;
+        }
+        @Override
+        public void add(MqSend data) {
+            roundTrip();
+            added.incrementAndGet();
+            traceIds.put(data.getMsgId(), LogUtil.getTraceId());
+        }
+        @Override
+        public void updateStatusByMsgIds(Collection<String> msgIds, int status, String remark) {
+        }
+    }
+
+    /** 本地的 broker 桩: 发送有一次往返的耗时, autoConfirm 时在另一个线程中 ack, 否则等 confirmAll */
+    private static class StubRabbitTemplate extends RabbitTemplate {
+        private final boolean autoConfirm;
+        private final ScheduledExecutorService confirmExecutor = Executors.newSingleThreadScheduledExecutor();
+        private final Queue<CorrelationData> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        private final AtomicInteger confirmed = new AtomicInteger();
+        private volatile MqSenderHandler handler;
+
+        StubRabbitTemplate(boolean autoConfirm) {
+            this.autoConfirm = autoConfirm;
+        }
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            roundTrip();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            if (autoConfirm) {
+                confirmExecutor.schedule(() -> ack(correlationData), 1, TimeUnit.MILLISECONDS);
+            } else {
+                pending.add(correlationData);
+            }
+        }
+
+        private void ack(CorrelationData correlationData) {
+            inFlight.decrementAndGet();
+            confirmed.incrementAndGet();
+            handler.confirm(correlationData, true, null);
+        }
+
+        private void confirmAll() {
+            CorrelationData correlationData;
+            while ((correlationData = pending.poll()) != null) {
+                ack(correlationData);
+            }
+        }
+
+        private void close() {
+            confirmExecutor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.github.mq.handle;
+
+import com.github.mq.constant.MqConst;
+import com.github.mq.constant.MqInfo;
+import com.github.mq.constant.MqRemark;
+import com.github.mq.constant.SelfCorrelationData;
+import com.github.mq.model.MqSend;
+import com.github.mq.service.MqSendService;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageBuilder;
+import org.springframework.amqp.core.ReturnedMessage;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MqSenderConfirmTest {
+
+    private static final int COUNT = 100_000;
+
+    @Test
+    public void flood() {
+        MemoryMqSendService db = new MemoryMqSendService();
+        MemoryRabbitTemplate rabbitTemplate = new MemoryRabbitTemplate();
+        MqSenderHandler handler = handler(rabbitTemplate, db, COUNT * 2, 50);
+        MqCorrelationTable table = table(handler);
+        List<SelfCorrelationData> sent = new ArrayList<>();
+        for (int i = 0; i < COUNT; i++) {
+            SelfCorrelationData data = data("msg-" + i);
+            db.row(data.getId());
+            table.put(data, 0, false);
+            sent.add(data);
+        }
+
+        // 1% 是 nack, 会标记为失败并重发
+        long start = System.nanoTime();
+        for (int i = 0; i < COUNT; i++) {
+            handler.confirm(sent.get(i), i % 100 != 0, i % 100 != 0 ? null : "nack");
+        }
+        long confirmMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 停掉后台线程, 把剩下的写完
+        handler.destroy();
+
+        int nack = COUNT / 100;
+        Assert.assertEquals(nack, rabbitTemplate.sent.size());
+        Assert.assertEquals(nack, db.count(MqConst.FAIL));
+        int failStatements = db.statements.get();
+
+        // 重发的都 ack 了, 改回成功
+        for (CorrelationData data : rabbitTemplate.sent) {
+            handler.confirm(data, true, null);
+        }
+        handler.flushConfirm();
+        Assert.assertEquals(COUNT, db.count(MqConst.SUCCESS));
+        Assert.assertEquals(0, handler.confirmPendingSize());
+
+        // 不再查库, 之前每个 nack 要 select + (select + update)
+        Assert.assertEquals(0, db.queries.get());
+        Assert.assertTrue(db.statements.get() < 100);
+        System.out.printf("confirm: %s(nack %s), time: %sms, sql: %s(fail %s), per message would be: %s\n",
+                COUNT, nack, confirmMs, db.statements.get(), failStatements, nack * 3);
+    }
+
+    @Test
+    public void retryLimit() {
+        MemoryMqSendService db = new MemoryMqSendService();
+        MemoryRabbitTemplate rabbitTemplate = new MemoryRabbitTemplate();
+        MqSenderHandler handler = handler(rabbitTemplate, db, 100, 60_000);
+        handler.destroy();
+        SelfCorrelationData data = data("a");
+        db.row("a");
+        table(handler).put(data, 0, false);
+
+        // provider-retry-count 是 2: 重发 2 次之后再 nack 就不再重发
+        CorrelationData current = data;
+        for (int i = 0; i < 2; i++) {
+            handler.confirm(current, false, "nack");
+            handler.flushConfirm();
+            Assert.assertEquals(i + 1, rabbitTemplate.sent.size());
+            current = rabbitTemplate.sent.peekLast();
+        }
+        handler.confirm(current, false, "nack");
+        handler.flushConfirm();
+        Assert.assertEquals(2, rabbitTemplate.sent.size());
+        Assert.assertEquals(MqConst.FAIL, db.rows.get("a").getStatus().intValue());
+        Assert.assertTrue(db.rows.get("a").getRemark().contains("达到上限(2)"));
+        Assert.assertEquals(0, handler.confirmPendingSize());
+    }
+
+    @Test
+    public void returnedAndEvicted() {
+        MemoryMqSendService db = new MemoryMqSendService();
+        MemoryRabbitTemplate rabbitTemplate = new MemoryRabbitTemplate();
+        MqSenderHandler handler = handler(rabbitTemplate, db, 1_000, 60_000);
+        handler.destroy();
+        MqCorrelationTable table = table(handler);
+
+        // 路由不到队列: 标记为失败, 之后的 ack 不会改回成功
+        SelfCorrelationData data = data("returned");
+        db.row("returned");
+        table.put(data, 0, false);
+        Message message = MessageBuilder.withBody(new byte[0]).setMessageId("returned").build();
+        handler.returnedMessage(new ReturnedMessage(message, 312, "NO_ROUTE", "exchange", "routing"));
+        handler.confirm(data, true, null);
+        handler.flushConfirm();
+        Assert.assertEquals(MqConst.FAIL, db.rows.get("returned").getStatus().intValue());
+
+        // 数量有上限, 淘汰之后的 nack 只标记为失败, 不重发也不查库
+        for (int i = 0; i < 5_000; i++) {
+            db.row("msg-" + i);
+            table.put(data("msg-" + i), 0, false);
+        }
+        Assert.assertTrue(handler.confirmPendingSize() <= 1_000);
+        for (int i = 0; i < 5_000; i++) {
+            handler.confirm(data("msg-" + i), false, "nack");
+        }
+        handler.flushConfirm();
+        Assert.assertEquals(5_000 + 1, db.count(MqConst.FAIL));
+        Assert.assertTrue(rabbitTemplate.sent.size() <= 1_000);
+        Assert.assertEquals(0, db.queries.get());
+    }
+
+    private static SelfCorrelationData data(String msgId) {
+        return new SelfCorrelationData(msgId, "trace", MqInfo.EXAMPLE, "{\"id\":\"" + msgId + "\"}", 0);
+    }
+
+    private static MqSenderHandler handler(RabbitTemplate rabbitTemplate, MqSendService db, int tableSize, long flushMs) {
+        MqSenderHandler handler = new MqSenderHandler(rabbitTemplate, db);
+        ReflectionTestUtils.setField(handler, "providerRetryCount", 2);
+        ReflectionTestUtils.setField(handler, "confirmTableSize", tableSize);
+        ReflectionTestUtils.setField(handler, "confirmTimeoutMs", 600_000L);
+        ReflectionTestUtils.setField(handler, "confirmFlushMs", flushMs);
+        ReflectionTestUtils.setField(handler, "confirmFlushSize", 500);
+        handler.afterPropertiesSet();
+        return handler;
+    }
+
+    private static MqCorrelationTable table(MqSenderHandler handler) {
+        return (MqCorrelationTable) ReflectionTestUtils.getField(handler, "correlationTable");
+    }
+
+    /** 用内存模拟 mq_send 表, 写入的语句算在 statements, 查询的语句算在 queries */
+    private static class MemoryMqSendService extends MqSendService {
+        private final Map<String, MqSend> rows = new ConcurrentHashMap<>();
+        private final AtomicInteger statements = new AtomicInteger();
+        private final AtomicInteger queries = new AtomicInteger();
+
+        MemoryMqSendService() {
+            super(null);
+        }
+
+        private void row(String msgId) {
+            MqSend row = new MqSend();
+            row.setMsgId(msgId);
+            row.setStatus(MqConst.SUCCESS);
+            row.setRetryCount(0);
+            row.setRemark("");
+            rows.put(msgId, row);
+        }
+
+        private int count(int status) {
+            int count = 0;
+            for (MqSend row : rows.values()) {
+                if (row.getStatus() == status) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public MqSend queryByMsgId(String msgId) {
+            queries.incrementAndGet();
+            return rows.get(msgId);
+        }
+        @Override
+        public void updateById(MqSend data) {
+            statements.incrementAndGet();
+        }
+        /** 跟 MqSendMapper.xml 中的 update 逻辑一致 */
+        @Override
+        public void updateStatusByMsgIds(Collection<String> msgIds, int status, String remark) {
+            if (!msgIds.isEmpty()) {
+                statements.incrementAndGet();
+                for (String msgId : msgIds) {
+                    MqSend row = rows.get(msgId);
+                    if (row != null) {
+                        row.setStatus(status);
+                        row.setRemark(MqRemark.append(row.getRemark(), remark));
+                    }
+                }
+            }
+        }
+    }
+
+    /** 代替 mq 的内存实现, 记录发送时的 CorrelationData */
+    private static class MemoryRabbitTemplate extends RabbitTemplate {
+        private final Deque<CorrelationData> sent = new ConcurrentLinkedDeque<>();
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            sent.add(correlationData);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.mq.metric;
+
+import com.github.mq.constant.MqInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class MqHistogramTest {
+
+    private static final double[] PERCENTILES = { 0, 10, 50, 90, 99, 99.9, 99.99, 100 };
+
+    @Test
+    public void index() {
+        // 每个值都落在上界不小于它的桶里, 桶的上界跟值的相对误差不超过 1/64
+        long[] values = { 0, 1, 127, 128, 129, 255, 256, 1000, 65_535, 1_000_000_007L, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+        for (long value : values) {
+            long highest = MqHistogram.highest(MqHistogram.index(value));
+            Assert.assertTrue(value + " -> " + highest, highest >= value);
+            Assert.assertTrue(value + " -> " + highest, highest - value <= value / 64);
+        }
+        Assert.assertEquals(Long.MAX_VALUE, MqHistogram.highest(MqHistogram.index(Long.MAX_VALUE)));
+        // 相邻的桶是连续的
+        for (int i = 1; i <= MqHistogram.index(Long.MAX_VALUE); i++) {
+            Assert.assertEquals(MqHistogram.highest(i - 1) + 1, lowest(i));
+        }
+    }
+
+    private static long lowest(int index) {
+        long value = index == 0 ? 0 : MqHistogram.highest(index - 1) + 1;
+        Assert.assertEquals(index, MqHistogram.index(value));
+        return value;
+    }
+
+    @Test
+    public void syntheticWorkload() {
+        // 模拟消费耗时: 大部分 0.2 ~ 5ms(对数正态), 1% 的 50 ~ 500ms 慢请求, 0.01% 的 1 ~ 3s 超时
+        Random random = new Random(19);
+        int count = 1_000_000;
+        long[] values = new long[count];
+        MqHistogram histogram = new MqHistogram();
+        for (int i = 0; i < count; i++) {
+            int tier = random.nextInt(10_000);
+            long nanos;
+            if (tier == 0) {
+                nanos = 1_000_000_000L + random.nextLong(2_000_000_000L);
+            } else if (tier <= 100) {
+                nanos = 50_000_000L + random.nextLong(450_000_000L);
+            } else {
+                nanos = (long) (1_000_000 * Math.exp(random.nextGaussian() * 0.8));
+            }
+            values[i] = nanos;
+            histogram.record(nanos);
+        }
+        Arrays.sort(values);
+
+        Assert.assertEquals(count, histogram.count());
+        Assert.assertEquals(values[count - 1], histogram.max());
+        Assert.assertEquals(Arrays.stream(values).average().orElse(0), histogram.mean(), 1);
+        for (double percentile : PERCENTILES) {
+            long expected = values[Math.max(0, (int) Math.ceil(percentile / 100 * count) - 1)];
+            long actual = histogram.percentile(percentile);
+            // 不比实际值小, 相对误差不超过 1/64
+            Assert.assertTrue(percentile + ": " + expected + " -> " + actual, actual >= expected);
+            Assert.assertTrue(percentile + ": " + expected + " -> " + actual, actual - expected <= expected / 64);
+            System.out.printf("p%s: expected %.3fms, histogram %.3fms\n", percentile, expected / 1e6, actual / 1e6);
+        }
+    }
+
+    @Test
+    public void edge() {
+        MqHistogram histogram = new MqHistogram();
+        Assert.assertEquals(0, histogram.percentile(99));
+        Assert.assertEquals(0, histogram.mean(), 0);
+
+        // 时钟偏差的负数当成 0, 只有一个值时所有分位都是它
+        histogram.record(-5);
+        Assert.assertEquals(0, histogram.percentile(50));
+        histogram = new MqHistogram();
+        histogram.record(1_234_567);
+        for (double percentile : PERCENTILES) {
+            Assert.assertEquals(1_234_567, histogram.percentile(percentile));
+        }
+    }
+
+    @Test
+    public void concurrentRecord() throws Exception {
+        int threads = 8;
+        int perThread = 500_000;
+        MqHistogramMetrics metrics = new MqHistogramMetrics();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                // 均匀分布在 1 ~ 1000 微秒
+                for (int i = 0; i < perThread; i++) {
+                    metrics.record(MqInfo.EXAMPLE, MqMetric.CONSUME, (i % 1000 + 1) * 1000L);
+                    metrics.record(MqInfo.DELAY_EXAMPLE, MqMetric.LAG, 7);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+
+        MqHistogram consume = metrics.histogram(MqInfo.EXAMPLE, MqMetric.CONSUME);
+        Assert.assertEquals((long) threads * perThread, consume.count());
+        Assert.assertEquals(1_000_000, consume.max());
+        long p50 = consume.percentile(50);
+        Assert.assertTrue(p50 >= 500_000 && p50 - 500_000 <= 500_000 / 64);
+        long p99 = consume.percentile(99);
+        Assert.assertTrue(p99 >= 990_000 && p99 - 990_000 <= 990_000 / 64);
+
+        MqHistogram lag = metrics.histogram(MqInfo.DELAY_EXAMPLE, MqMetric.LAG);
+        Assert.assertEquals((long) threads * perThread, lag.count());
+        Assert.assertEquals(7, lag.percentile(99.9));
+        // 没有记录过的不创建
+        Assert.assertNull(metrics.histogram(MqInfo.EXAMPLE, MqMetric.LAG));
+        Assert.assertNull(metrics.histogram(MqInfo.DELAY_EXAMPLE, MqMetric.CONSUME));
+        System.out.println(metrics.summary());
+    }
+}
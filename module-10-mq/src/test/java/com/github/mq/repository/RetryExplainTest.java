@@ -0,0 +1,136 @@
+package com.github.mq.repository;
+
+import com.github.mq.constant.MqConst;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.MySQLContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <pre>
+ * 用 docker 启动 mysql(没有 docker 时跳过), 按 mq.sql 建表并写入数据, 对 mapper 中的 selectRetryMsg 执行 explain:
+ * union all 的每个分支都要走 idx_status_next_retry_time(type 是 range), 并且没有 Using filesort.
+ * 外层按 next_retry_time 排序的最多是两个分支 limit 之和的行, 不检查
+ * </pre>
+ */
+public class RetryExplainTest {
+
+    private static final String INDEX = "idx_status_next_retry_time";
+    private static final Pattern PARAM = Pattern.compile("#\\{(\\w+)}");
+    /** 行数: 大部分是成功的, 初始和失败的各占 1/10, 失败的下次重试时间一半已到、一半未到 */
+    private static final int ROWS = 20000;
+
+    private static MySQLContainer<?> mysql;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        Assume.assumeTrue("没有 docker, 跳过 explain", DockerClientFactory.instance().isDockerAvailable());
+        mysql = new MySQLContainer<>(DockerImageName.parse("mysql:8.0"));
+        mysql.start();
+
+        try (Connection conn = connection(); Statement stmt = conn.createStatement()) {
+            for (String sql : ddl(RetrySqlTest.read("mq.sql"))) {
+                stmt.execute(sql);
+            }
+            stmt.execute("SET SESSION cte_max_recursion_depth = " + ROWS);
+            for (String table : new String[] { "t_mq_send", "t_mq_receive" }) {
+                stmt.execute("INSERT INTO `" + table + "` (`msg_id`, `status`, `retry_count`, `msg`, `next_retry_time`, `create_time`)"
+                        + " WITH RECURSIVE `seq` (`n`) AS (SELECT 1 UNION ALL SELECT `n` + 1 FROM `seq` WHERE `n` < " + ROWS + ")"
+                        + " SELECT CONCAT('msg-', `n`), CASE `n` % 10 WHEN 0 THEN 0 WHEN 1 THEN 1 ELSE 2 END, `n` % 7, REPEAT('x', 200),"
+                        + " CASE WHEN `n` % 20 = 1 THEN NOW() + INTERVAL `n` SECOND ELSE NOW() - INTERVAL `n` SECOND END,"
+                        + " NOW() - INTERVAL `n` SECOND FROM `seq`");
+                stmt.execute("ANALYZE TABLE `" + table + "`");
+            }
+        }
+    }
+
+    @AfterClass
+    public static void stop() {
+        if (mysql != null) {
+            mysql.stop();
+        }
+    }
+
+    @Test
+    public void sendPlan() throws Exception {
+        checkPlan("mapper/mq/MqSendMapper.xml", "t_mq_send");
+    }
+
+    @Test
+    public void receivePlan() throws Exception {
+        checkPlan("mapper/mq/MqReceiveMapper.xml", "t_mq_receive");
+    }
+
+    private static void checkPlan(String mapper, String table) throws Exception {
+        LocalDateTime now = LocalDateTime.now();
+        // 跟 MqSendService/MqReceiveService 的 queryRetryMsg 一样的参数
+        Map<String, Object> params = Map.of("initStatus", MqConst.INIT, "failStatus", MqConst.FAIL, "now", now, "initTime", now.minusMinutes(2),
+                "maxRetryCount", 5, "shards", 8, "shard", 0, "limit", 200);
+
+        List<Object> values = new ArrayList<>();
+        Matcher matcher = PARAM.matcher(RetrySqlTest.selectSql(mapper, "selectRetryMsg"));
+        StringBuilder sbd = new StringBuilder("explain ");
+        while (matcher.find()) {
+            Assert.assertTrue(matcher.group(1), params.containsKey(matcher.group(1)));
+            values.add(params.get(matcher.group(1)));
+            matcher.appendReplacement(sbd, "?");
+        }
+        matcher.appendTail(sbd);
+
+        int branch = 0;
+        try (Connection conn = connection(); PreparedStatement ps = conn.prepareStatement(sbd.toString())) {
+            for (int i = 0; i < values.size(); i++) {
+                ps.setObject(i + 1, values.get(i));
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String selectType = rs.getString("select_type");
+                    // 两个分支是 DERIVED 和 UNION, 外层(PRIMARY)是派生表跟主键关联
+                    if (!table.equals(rs.getString("table")) || "PRIMARY".equals(selectType)) {
+                        continue;
+                    }
+                    branch++;
+                    String plan = selectType + ": " + rs.getString("type") + ", " + rs.getString("key") + ", " + rs.getString("Extra");
+                    Assert.assertEquals(plan, INDEX, rs.getString("key"));
+                    Assert.assertEquals(plan, "range", rs.getString("type"));
+                    String extra = rs.getString("Extra");
+                    Assert.assertTrue(plan, extra == null || !extra.contains("Using filesort"));
+                }
+            }
+        }
+        Assert.assertEquals(2, branch);
+    }
+
+    private static Connection connection() throws SQLException {
+        return DriverManager.getConnection(mysql.getJdbcUrl(), mysql.getUsername(), mysql.getPassword());
+    }
+
+    /** 去掉 mq.sql 中的注释(升级的 alter 和 update 都在注释中), 按分号拆成一条一条的 */
+    private static List<String> ddl(String sql) {
+        StringBuilder sbd = new StringBuilder();
+        for (String line : sql.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                sbd.append(line).append("\n");
+            }
+        }
+        List<String> list = new ArrayList<>();
+        for (String statement : sbd.toString().split(";")) {
+            if (!statement.trim().isEmpty()) {
+                list.add(statement.trim());
+            }
+        }
+        return list;
+    }
+}
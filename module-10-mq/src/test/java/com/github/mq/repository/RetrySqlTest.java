@@ -0,0 +1,110 @@
+package com.github.mq.repository;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 检查 sql 的形状跟 mq.sql 中的索引对得上: 每个 union all 分支的条件都以 idx_status_next_retry_time 的列
+ * (status 等值, next_retry_time 范围)开头且没有 or. 执行计划在 {@link RetryExplainTest} 中用 mysql 验证
+ */
+public class RetrySqlTest {
+
+    private static final String INDEX = "KEY `idx_status_next_retry_time` (`status`,`next_retry_time`)";
+    private static final Pattern BRANCH = Pattern.compile(
+            "\\(\\s*select `id`, `next_retry_time` from `(\\w+)`\\s+where (.+?)\\s+order by `next_retry_time` limit #\\{limit}\\s*\\)");
+
+    @Test
+    public void sendQuery() throws Exception {
+        checkRetrySql("mapper/mq/MqSendMapper.xml", "t_mq_send");
+    }
+
+    @Test
+    public void receiveQuery() throws Exception {
+        checkRetrySql("mapper/mq/MqReceiveMapper.xml", "t_mq_receive");
+    }
+
+    @Test
+    public void index() throws Exception {
+        String ddl = read("mq.sql");
+        for (String table : new String[] { "t_mq_send", "t_mq_receive" }) {
+            int start = ddl.indexOf("CREATE TABLE IF NOT EXISTS `" + table + "`");
+            Assert.assertTrue(start >= 0);
+            String create = ddl.substring(start, ddl.indexOf(";", start));
+            Assert.assertTrue(table, create.contains(INDEX));
+            Assert.assertTrue(table, create.contains("`next_retry_time` datetime NOT NULL"));
+        }
+    }
+
+    @Test
+    public void upgrade() throws Exception {
+        // 已有的表: 加列、加索引, 初始和失败的记录都要回填下次重试时间
+        String ddl = read("mq.sql").replaceAll("\\s*\n--\\s*", " ");
+        for (String table : new String[] { "t_mq_send", "t_mq_receive" }) {
+            int start = ddl.indexOf("ALTER TABLE `" + table + "`");
+            Assert.assertTrue(table, start >= 0);
+            String alter = ddl.substring(start, ddl.indexOf(";", start));
+            Assert.assertTrue(table, alter.contains("ADD COLUMN `next_retry_time` datetime NOT NULL"));
+            Assert.assertTrue(table, alter.contains("ADD " + INDEX));
+            for (int status : new int[] { 0, 1 }) {
+                Assert.assertTrue(table + " " + status, Pattern.compile("UPDATE `" + table + "` SET `next_retry_time` = `\\w+`, "
+                        + "`update_time` = `update_time` WHERE `status` = " + status + " ").matcher(ddl).find());
+            }
+        }
+    }
+
+    private static void checkRetrySql(String mapper, String table) throws Exception {
+        String sql = selectSql(mapper, "selectRetryMsg");
+        Assert.assertFalse(sql, sql.toLowerCase().contains(" or "));
+        Assert.assertEquals(2, sql.split("union all", -1).length);
+
+        Matcher matcher = BRANCH.matcher(sql);
+        int branch = 0;
+        while (matcher.find()) {
+            branch++;
+            Assert.assertEquals(table, matcher.group(1));
+            String where = matcher.group(2);
+            Assert.assertTrue(where, where.matches("`status` = #\\{\\w+Status} and `next_retry_time` <= #\\{now} and .+"));
+            Assert.assertTrue(where, where.endsWith("and `id` % #{shards} = #{shard}"));
+        }
+        Assert.assertEquals(2, branch);
+
+        // 外层用主键关联出整行, 一条 sql 返回
+        Assert.assertTrue(sql, sql.startsWith("select `t`.* from `" + table + "` `t` inner join"));
+        Assert.assertTrue(sql, sql.contains("`r` on `r`.`id` = `t`.`id`"));
+        Assert.assertTrue(sql, sql.endsWith("order by `r`.`next_retry_time` limit #{limit}"));
+    }
+
+    static String selectSql(String mapper, String id) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+        Document document;
+        try (InputStream in = RetrySqlTest.class.getClassLoader().getResourceAsStream(mapper)) {
+            Assert.assertNotNull(mapper, in);
+            document = factory.newDocumentBuilder().parse(in);
+        }
+        NodeList selects = document.getElementsByTagName("select");
+        for (int i = 0; i < selects.getLength(); i++) {
+            Element select = (Element) selects.item(i);
+            if (id.equals(select.getAttribute("id"))) {
+                return select.getTextContent().trim().replaceAll("\\s+", " ");
+            }
+        }
+        throw new AssertionError(mapper + " has no " + id);
+    }
+
+    static String read(String resource) throws Exception {
+        try (InputStream in = RetrySqlTest.class.getClassLoader().getResourceAsStream(resource)) {
+            Assert.assertNotNull(resource, in);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
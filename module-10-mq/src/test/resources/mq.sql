@@ -1,3 +1,19 @@
+-- 重试查询(MqSendMapper.xml / MqReceiveMapper.xml 中的 selectRetryMsg)是 union all 的两个分支,
+-- 每个分支都是 status 等值 + next_retry_time 范围, 走 idx_status_next_retry_time 索引(type 是 range, 没有 Using filesort),
+-- 索引中带了主键 id, 分片条件 id % shards = shard 在索引上就能过滤. 可以用 explain 确认:
+-- explain select `t`.* from `t_mq_send` `t` inner join (
+--   (select `id`, `next_retry_time` from `t_mq_send` where `status` = 0 and `next_retry_time` <= now()
+--      and `create_time` < now() - interval 2 minute and `id` % 8 = 0 order by `next_retry_time` limit 200)
+--   union all
+--   (select `id`, `next_retry_time` from `t_mq_send` where `status` = 1 and `next_retry_time` <= now()
+--      and `retry_count` < 5 and `id` % 8 = 0 order by `next_retry_time` limit 200)
+-- ) `r` on `r`.`id` = `t`.`id` order by `r`.`next_retry_time` limit 200;
+--
+-- 延迟消息(status = 3, next_retry_time 是到期时间)的查询(MqSendService#queryScheduledMsg)也走这个索引:
+-- select `id`, `msg_id`, `search_key`, `type`, `msg`, `next_retry_time` from `t_mq_send`
+--   where `status` = 3 and `next_retry_time` <= ? and `next_retry_time` >= ? and (`next_retry_time` > ? or `id` > ?)
+--   order by `next_retry_time`, `id` limit 1000;
+
 
 DROP TABLE IF EXISTS `t_mq_send`;
 CREATE TABLE IF NOT EXISTS `t_mq_send` (
@@ -5,16 +21,18 @@ CREATE TABLE IF NOT EXISTS `t_mq_send` (
   `msg_id` varchar(32) NOT NULL DEFAULT '' COMMENT '消息 id',
   `search_key` varchar(64) NOT NULL DEFAULT '' COMMENT '搜索键',
   `type` varchar(32) NOT NULL DEFAULT '' COMMENT '业务场景',
-  `status` int unsigned NOT NULL DEFAULT '0' COMMENT '0.初始, 1.失败, 2.成功(需要重试则改为 1)',
+  `status` int unsigned NOT NULL DEFAULT '0' COMMENT '0.初始, 1.失败, 2.成功(需要重试则改为 1), 3.延迟, 4.outbox 待发送',
   `retry_count` int unsigned NOT NULL DEFAULT '0' COMMENT '重试次数(需要重试则改为 0)',
   `msg` longtext COMMENT '消息内容',
   `remark` longtext COMMENT '备注',
+  `next_retry_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次重试时间(延迟消息是到期时间)',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
   UNIQUE KEY `udx_msg_id` (`msg_id`),
   KEY `idx_search_key` (`search_key`),
   KEY `idx_status_retry_count` (`status`,`retry_count`),
+  KEY `idx_status_next_retry_time` (`status`,`next_retry_time`),
   KEY `idx_create_time` (`create_time`),
   KEY `idx_update_time` (`update_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='mq 发送消息表';
@@ -30,12 +48,36 @@ CREATE TABLE IF NOT EXISTS `t_mq_receive` (
   `retry_count` int unsigned NOT NULL DEFAULT '0' COMMENT '重试次数(需要重试则改为 0)',
   `msg` longtext COMMENT '消息内容',
   `remark` longtext COMMENT '备注',
+  `next_retry_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次重试时间',
   `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
   `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
   PRIMARY KEY (`id`),
   UNIQUE KEY `udx_msg_id` (`msg_id`),
   KEY `idx_search_key` (`search_key`),
   KEY `idx_status_retry_count` (`status`,`retry_count`),
+  KEY `idx_status_next_retry_time` (`status`,`next_retry_time`),
   KEY `idx_create_time` (`create_time`),
   KEY `idx_update_time` (`update_time`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='mq 消费消息表';
+
+
+-- 已有表的升级(上面的 create 是新建表用的): 加 next_retry_time 列和 idx_status_next_retry_time 索引, 再回填待重试的记录.
+-- 加列时已有的行都是执行 alter 的时间, 不回填的话: 初始的要等到 alter 之后 2 分钟、失败的马上都会被重试(不再按重试次数退避).
+-- 回填时 update_time 赋值为自己, 不会被 ON UPDATE 改掉; 数据量大时每次改 10000 条, 重复执行到影响行数为 0.
+--
+-- ALTER TABLE `t_mq_send`
+--   ADD COLUMN `next_retry_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次重试时间(延迟消息是到期时间)' AFTER `remark`,
+--   ADD KEY `idx_status_next_retry_time` (`status`,`next_retry_time`);
+-- ALTER TABLE `t_mq_receive`
+--   ADD COLUMN `next_retry_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次重试时间' AFTER `remark`,
+--   ADD KEY `idx_status_next_retry_time` (`status`,`next_retry_time`);
+--
+-- 初始的从创建时间开始算(重试时还要求创建超过 2 分钟), 失败的从最后一次更新(上次重试)的时间开始算
+-- UPDATE `t_mq_send` SET `next_retry_time` = `create_time`, `update_time` = `update_time`
+--   WHERE `status` = 0 AND `next_retry_time` <> `create_time` LIMIT 10000;
+-- UPDATE `t_mq_send` SET `next_retry_time` = `update_time`, `update_time` = `update_time`
+--   WHERE `status` = 1 AND `next_retry_time` <> `update_time` LIMIT 10000;
+-- UPDATE `t_mq_receive` SET `next_retry_time` = `create_time`, `update_time` = `update_time`
+--   WHERE `status` = 0 AND `next_retry_time` <> `create_time` LIMIT 10000;
+-- UPDATE `t_mq_receive` SET `next_retry_time` = `update_time`, `update_time` = `update_time`
+--   WHERE `status` = 1 AND `next_retry_time` <> `update_time` LIMIT 10000;
@@ -0,0 +1,30 @@
+package com.github.task;
+
+import com.github.common.util.CronUtil;
+import com.github.global.service.RedissonService;
+import com.github.mq.handle.MqOutboxRelay;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+@Configuration
+@RequiredArgsConstructor
+@SuppressWarnings("NullableProblems")
+public class RelayMqOutboxTask implements SchedulingConfigurer {
+
+    /** 多实例时只让一个实例发送 outbox */
+    private static final String LOCK_KEY = "mq:outbox-relay";
+
+    private final RedissonService redissonService;
+    private final MqOutboxRelay mqOutboxRelay;
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar schedule) {
+        String cron = "* * * * * *";
+        CronUtil.runTask(schedule, "发送 mq outbox", cron, desc -> {
+            Boolean flag = redissonService.tryLockAndRun(LOCK_KEY, mqOutboxRelay::relay);
+            return flag == null || flag;
+        });
+    }
+}
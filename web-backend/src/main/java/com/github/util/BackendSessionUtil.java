@@ -102,8 +102,9 @@ public class BackendSessionUtil {
         }
     }
 
-    /** 退出登录时调用. 清空 session */
+    /** 退出登录时调用. 清空 session 并注销 token */
     public static void signOut() {
+        AppTokenHandler.revokeToken();
         HttpSession session = RequestUtil.getSession();
         if (Obj.isNotNull(session)) {
             session.invalidate();
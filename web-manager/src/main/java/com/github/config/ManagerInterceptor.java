@@ -13,8 +13,8 @@ import org.springframework.web.servlet.ModelAndView;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.lang.annotation.Annotation;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.regex.Pattern;
 
 @Configuration
 @SuppressWarnings("NullableProblems")
@@ -23,6 +23,18 @@ public class ManagerInterceptor implements HandlerInterceptor {
     private static final List<String> LET_IT_GO = Arrays.asList(
             "/error", "/api/project", "/api/info", "/api/example/*"
     );
+    /** 不需要检查的全字路径 */
+    private static final Set<String> LET_IT_GO_PATH = new HashSet<>();
+    /** 不需要检查的通配路径, 启动时编译好, 不再每个请求都编译一次 */
+    private static final List<Pattern> LET_IT_GO_PATTERN = new ArrayList<>();
+    static {
+        for (String letItGo : LET_IT_GO) {
+            LET_IT_GO_PATH.add(letItGo);
+            if (letItGo.contains("*")) {
+                LET_IT_GO_PATTERN.add(Pattern.compile(letItGo.replace("*", "(.*)?")));
+            }
+        }
+    }
 
     @Override
     public boolean preHandle(HttpServletRequest req, HttpServletResponse res, Object handler) {
@@ -52,16 +64,13 @@ public class ManagerInterceptor implements HandlerInterceptor {
 
     /** 检查登录及权限 */
     private void checkLoginAndPermission(String uri, Object handler) {
-        for (String letItGo : LET_IT_GO) {
-            if (letItGo.equals(uri)) {
+        if (LET_IT_GO_PATH.contains(uri)) {
+            return;
+        }
+        for (Pattern pattern : LET_IT_GO_PATTERN) {
+            if (pattern.matcher(uri).matches()) {
                 return;
             }
-            if (letItGo.contains("*")) {
-                letItGo = letItGo.replace("*", "(.*)?");
-                if (uri.matches(letItGo)) {
-                    return;
-                }
-            }
         }
         if (!handler.getClass().isAssignableFrom(HandlerMethod.class)) {
             return;
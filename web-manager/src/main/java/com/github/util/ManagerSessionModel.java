@@ -1,8 +1,10 @@
 package com.github.util;
 
 import com.github.common.json.JsonUtil;
+import com.github.common.mvc.PermissionTrie;
 import com.github.common.util.Arr;
 import com.github.common.util.Obj;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -40,11 +42,22 @@ class ManagerSessionModel implements Serializable {
 
     // ========== 存放在 session 中的数据 ==========
 
+    /** 基于权限列表构建的权限树, 反序列化之后为 null, 用到时再构建 */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private transient PermissionTrie permissionTrie;
+
     private ManagerSessionModel(Long id, String userName) {
         this.id = id;
         this.userName = userName;
     }
 
+    public ManagerSessionModel setPermissionList(List<Permission> permissionList) {
+        this.permissionList = permissionList;
+        this.permissionTrie = null;
+        return this;
+    }
+
     public String userInfo() {
         return Obj.toStr(id) + "/"  + Obj.toStr(userName);
     }
@@ -95,25 +108,27 @@ class ManagerSessionModel implements Serializable {
 
     /** 有访问权限就返回 true */
     private boolean wasPermission(String url, String method) {
-        if (Arr.isNotEmpty(permissionList)) {
-            for (Permission permission : permissionList) {
-                String permissionUrl = permission.getUrl();
-                String permissionMethod = permission.getMethod();
-
-                // 如果配置的 url 是 /user/*, 传进来的是 /user/info 也可以通过, 通配 或 全字
-                boolean matchUrl = permissionUrl.endsWith("/*") && url.startsWith(permissionUrl.replace("*", ""));
-                boolean urlCheck = matchUrl || url.equals(permissionUrl);
-
-                // 如果配置的 method 是 *, 传进来的是 GET 也可以通过, 通配 或 全字
-                boolean methodCheck = (("*").equals(permissionMethod) || permissionMethod.contains(method));
-
-                // url 和 method 都通过才表示有访问权限
-                if (urlCheck && methodCheck) {
-                    return true;
-                }
-            }
+        if (Arr.isEmpty(permissionList)) {
+            return false;
+        }
+
+        PermissionTrie trie = permissionTrie;
+        if (Obj.isNull(trie)) {
+            trie = buildPermissionTrie(permissionList);
+            permissionTrie = trie;
+        }
+        return trie.match(url, method);
+    }
+    /**
+     * 如果配置的 url 是 /user/*, 传进来的是 /user/info 也可以通过, 通配 或 全字;
+     * 如果配置的 method 是 *, 传进来的是 GET 也可以通过, 通配 或 全字. url 和 method 都通过才表示有访问权限
+     */
+    private static PermissionTrie buildPermissionTrie(List<Permission> permissionList) {
+        PermissionTrie.Builder builder = PermissionTrie.builder();
+        for (Permission permission : permissionList) {
+            builder.add(permission.getUrl(), permission.getMethod());
         }
-        return false;
+        return builder.build();
     }
     /** 无访问权限就返回 true */
     boolean notPermission(String url, String method) {
@@ -131,6 +146,7 @@ class ManagerSessionModel implements Serializable {
             List<Permission> permissionList = JsonUtil.convertList(permissions, Permission.class);
             if (Arr.isNotEmpty(permissionList)) {
                 sessionModel.setPermissionList(permissionList);
+                sessionModel.permissionTrie = buildPermissionTrie(permissionList);
             }
         }
         return sessionModel;
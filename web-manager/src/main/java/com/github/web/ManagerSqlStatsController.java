@@ -0,0 +1,61 @@
+package com.github.web;
+
+import com.github.common.json.JsonResult;
+import com.github.common.sql.SqlStatistics;
+import com.github.common.util.Obj;
+import com.github.liuanxin.api.annotation.ApiIgnore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <pre>
+ * 按指纹汇总的 sql 统计(总耗时最多的前 N 条), 数据来自连接参数 &showSqlStats=true 的 ShowSqlInterceptor.
+ *
+ * GET    /actuator/sql-stats?top=20  查看
+ * DELETE /actuator/sql-stats         清空
+ *
+ * 返回的指纹中有表名和列名, 所以只放在管理后台: 经过 ManagerInterceptor 的登录和权限(url + method)检查,
+ * 非超级管理员需要分配这两个权限. sql.stats-endpoint 为 false(默认)时返回 404
+ * </pre>
+ */
+@ApiIgnore
+@RestController
+public class ManagerSqlStatsController {
+
+    @Value("${sql.stats-endpoint:false}")
+    private boolean enable;
+
+    /** 不传 top 时返回的条数 */
+    @Value("${sql.stats-top:20}")
+    private int defaultTop;
+
+    @GetMapping("/actuator/sql-stats")
+    public JsonResult<Map<String, Object>> stats(Integer top) {
+        check();
+        SqlStatistics statistics = SqlStatistics.GLOBAL;
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("size", statistics.size());
+        data.put("maxSize", statistics.getMaxSize());
+        data.put("evicted", statistics.evicted());
+        data.put("top", statistics.top((top == null || top <= 0) ? defaultTop : top));
+        return JsonResult.success("sql 统计", data);
+    }
+
+    @DeleteMapping("/actuator/sql-stats")
+    public JsonResult<Void> clear() {
+        check();
+        SqlStatistics.GLOBAL.clear();
+        return JsonResult.success("sql 统计已清空");
+    }
+
+    private void check() {
+        if (!enable) {
+            Obj.notFoundException("sql stats endpoint is disabled");
+        }
+    }
+}